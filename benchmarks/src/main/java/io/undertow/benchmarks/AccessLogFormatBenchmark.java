@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.benchmarks;
+
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.attribute.ExchangeAttributes;
+import io.undertow.attribute.SubstituteEmptyWrapper;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.accesslog.BatchingAccessLogReceiver;
+import io.undertow.server.handlers.accesslog.StructuredAccessLogFormat;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.Protocols;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of formatting an access log message with the common log pattern and with the equivalent JSON
+ * format, both as a string and when written to a {@link BatchingAccessLogReceiver}.
+ */
+@State(Scope.Thread)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AccessLogFormatBenchmark implements Executor {
+
+    /**
+     * The number of messages that are logged before the receiver is drained
+     */
+    private static final int BATCH = 256;
+
+    private static final Path DEV_NULL = Paths.get("/dev/null");
+
+    @Param({"common", "json"})
+    private String format;
+
+    private ExchangeAttribute attribute;
+    private HttpServerExchange exchange;
+    private Path directory;
+    private BatchingAccessLogReceiver receiver;
+    private Runnable pendingWrite;
+    private int logged;
+
+    @Setup
+    public void setup() throws IOException {
+        final ClassLoader classLoader = AccessLogFormatBenchmark.class.getClassLoader();
+        if (format.equals("json")) {
+            attribute = StructuredAccessLogFormat.json("common", classLoader);
+        } else {
+            attribute = ExchangeAttributes.parser(classLoader, new SubstituteEmptyWrapper("-")).parse("%h %l %u %t \"%r\" %s %b");
+        }
+        exchange = new HttpServerExchange(null);
+        exchange.setSourceAddress(new InetSocketAddress("127.0.0.1", 54321));
+        exchange.setRequestMethod(Methods.GET);
+        exchange.setProtocol(Protocols.HTTP_1_1);
+        exchange.setRequestURI("/static/app.js");
+        exchange.setRequestPath("/static/app.js");
+        exchange.setQueryString("v=1.2.3&lang=en");
+        exchange.getRequestHeaders().put(Headers.USER_AGENT, "Mozilla/5.0 (X11; Linux x86_64; rv:120.0) Gecko/20100101 Firefox/120.0");
+        exchange.setStatusCode(200);
+        final BatchingAccessLogReceiver.Builder builder = BatchingAccessLogReceiver.builder()
+                .setLogWriteExecutor(this)
+                .setRotate(false);
+        if (Files.exists(DEV_NULL)) {
+            //avoid measuring the disk, and filling it up
+            builder.setOutputDirectory(DEV_NULL.getParent()).setLogBaseName(DEV_NULL.getFileName().toString()).setLogNameSuffix("");
+        } else {
+            directory = Files.createTempDirectory("access-log-benchmark");
+            builder.setOutputDirectory(directory).setLogBaseName("access.");
+        }
+        receiver = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        receiver.close();
+        if (directory != null) {
+            Files.deleteIfExists(directory.resolve("access.log"));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Writes are deferred so that the benchmark thread drains the receiver in batches, as the log writer thread would
+     */
+    @Override
+    public void execute(Runnable command) {
+        pendingWrite = command;
+    }
+
+    @Benchmark
+    public byte[] formatString() {
+        return attribute.readAttribute(exchange).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void logToBatchingReceiver() {
+        receiver.logExchange(exchange, attribute);
+        if (++logged == BATCH) {
+            logged = 0;
+            final Runnable write = pendingWrite;
+            if (write != null) {
+                pendingWrite = null;
+                write.run();
+            }
+        }
+    }
+}
@@ -18,8 +18,15 @@
 
 package io.undertow.benchmarks;
 
+import io.undertow.util.Utf8Encoder;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 
 public class AsciiEncoders {
 
@@ -162,5 +169,52 @@ public class AsciiEncoders {
         }
     }
 
+    /**
+     * Encodes any text, using {@link Utf8Encoder} directly into the buffer.
+     */
+    public enum Utf8FixedBufferEncoder implements AsciiEncoder {
+        Instance;
+
+        @Override
+        public int writeAndFlushAscii(BufferFlusher flusher, ByteBuffer buffer, char[] chars, int start, int end) throws IOException {
+            int i = start;
+            while (i < end) {
+                i = Utf8Encoder.encode(chars, i, end, buffer, true);
+                if (i < end) {
+                    flusher.flushBuffer(buffer);
+                }
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Encodes any text the way the servlet print writer used to, with the batched ascii fast path until the first
+     * non ascii character and a {@link CharsetEncoder} for the remainder.
+     */
+    public static final class BatchThenCharsetEncoder implements AsciiEncoder {
+
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        @Override
+        public int writeAndFlushAscii(BufferFlusher flusher, ByteBuffer buffer, char[] chars, int start, int end) throws IOException {
+            final int i = BatchFixedBufferOffsetAsciiEncoder.Instance.writeAndFlushAscii(flusher, buffer, chars, start, end);
+            if (i == end) {
+                return i;
+            }
+            final CharBuffer cb = CharBuffer.wrap(chars, i, end - i);
+            encoder.reset();
+            while (encoder.encode(cb, buffer, true).isOverflow()) {
+                flusher.flushBuffer(buffer);
+            }
+            while (encoder.flush(buffer) == CoderResult.OVERFLOW) {
+                flusher.flushBuffer(buffer);
+            }
+            return end;
+        }
+    }
+
 
 }
@@ -37,6 +37,12 @@ import java.nio.ByteOrder;
 import java.util.SplittableRandom;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Measures encoding text into a fixed size buffer that is flushed when it is full.
+ * <p>
+ * The ascii encoders stop at the first character that is not ascii, so for multilingual input only the utf8 and
+ * charsetEncoder types encode all of the text. The multilingual input is mostly ascii, as JSON output generally is.
+ */
 @State(Scope.Benchmark)
 @Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
 @Warmup(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
@@ -46,13 +52,19 @@ import java.util.concurrent.TimeUnit;
 public class AsciiEncodingBenchmark implements AsciiEncoders.BufferFlusher {
 
     private static final int ASCII_GEN_SEED = 0;
+    /**
+     * Latin, cyrillic, CJK and a surrogate pair
+     */
+    private static final String[] MULTILINGUAL = {"\u00e9", "\u00fc", "\u0436", "\u4e2d", "\u65e5", "\ud83d\ude00"};
     @Param({"7", "19", "248", "12392", "493727"})
     private int inLength;
     @Param({"8196"})
     private int outCapacity;
 
-    @Param({"batch", "noBatch", "vanilla"})
+    @Param({"batch", "noBatch", "vanilla", "utf8", "charsetEncoder"})
     private String encoderType;
+    @Param({"ascii", "multilingual"})
+    private String inputType;
     private ByteBuffer out;
     private char[] input;
 
@@ -66,6 +78,18 @@ public class AsciiEncodingBenchmark implements AsciiEncoders.BufferFlusher {
         for (int i = 0; i < inLength; i++) {
             input[i] = (char) random.nextInt(0, 128);
         }
+        if (inputType.equals("multilingual")) {
+            for (int i = 0; i < inLength; i++) {
+                //one in ten characters is not ascii
+                if (random.nextInt(10) == 0) {
+                    final String replacement = MULTILINGUAL[random.nextInt(MULTILINGUAL.length)];
+                    if (i + replacement.length() <= inLength) {
+                        replacement.getChars(0, replacement.length(), input, i);
+                        i += replacement.length() - 1;
+                    }
+                }
+            }
+        }
         switch (encoderType) {
             case "batch":
                 encoder = AsciiEncoders.BatchFixedBufferOffsetAsciiEncoder.Instance;
@@ -76,6 +100,12 @@ public class AsciiEncodingBenchmark implements AsciiEncoders.BufferFlusher {
             case "vanilla":
                 encoder = AsciiEncoders.NonBatchMutableBufferOffsetAsciiEncoder.Instance;
                 break;
+            case "utf8":
+                encoder = AsciiEncoders.Utf8FixedBufferEncoder.Instance;
+                break;
+            case "charsetEncoder":
+                encoder = new AsciiEncoders.BatchThenCharsetEncoder();
+                break;
         }
     }
 
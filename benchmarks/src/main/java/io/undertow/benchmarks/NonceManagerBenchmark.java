@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.benchmarks;
+
+import io.undertow.security.impl.ConcurrentNonceManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of the {@link ConcurrentNonceManager} for clients that reuse their nonce, which is the common
+ * case for Digest authentication. Run it with increasing thread counts to see how it scales, e.g. {@code -t 1},
+ * {@code -t 8} and {@code -t 32}.
+ * <p>
+ * The {@link io.undertow.security.impl.SimpleNonceManager} is not included as it needs the IO thread of a real
+ * connection to register a nonce.
+ */
+@State(Scope.Benchmark)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NonceManagerBenchmark {
+
+    private ConcurrentNonceManager manager;
+    private String sharedNonce;
+    private final AtomicInteger sharedNonceCount = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        manager = new ConcurrentNonceManager();
+        sharedNonce = manager.nextNonce(null, null);
+        manager.validateNonce(sharedNonce, sharedNonceCount.incrementAndGet(), null);
+    }
+
+    @State(Scope.Thread)
+    public static class ClientState {
+
+        private String nonce;
+        private int nonceCount;
+
+        @Setup
+        public void setup(NonceManagerBenchmark benchmark) {
+            nonce = benchmark.manager.nextNonce(null, null);
+            benchmark.manager.validateNonce(nonce, ++nonceCount, null);
+        }
+    }
+
+    /**
+     * Each thread is a client with its own nonce
+     */
+    @Benchmark
+    public boolean validateOwnNonce(ClientState client) {
+        return manager.validateNonce(client.nonce, ++client.nonceCount, null);
+    }
+
+    /**
+     * All threads use the same nonce, as concurrent requests from a single client would
+     */
+    @Benchmark
+    public boolean validateSharedNonce() {
+        return manager.validateNonce(sharedNonce, sharedNonceCount.incrementAndGet(), null);
+    }
+
+    @Benchmark
+    public String nextNonce(ClientState client) {
+        return manager.nextNonce(client.nonce, null);
+    }
+}
@@ -19,6 +19,8 @@
 package io.undertow;
 
 import io.undertow.connector.ByteBufferPool;
+import io.undertow.protocols.ssl.SslConduit;
+import io.undertow.protocols.ssl.SslHandshakeStatistics;
 import io.undertow.protocols.ssl.UndertowXnioSsl;
 import io.undertow.server.ConnectorStatistics;
 import io.undertow.server.DefaultByteBufferPool;
@@ -215,8 +217,14 @@ public final class Undertow {
                         }
 
                         UndertowXnioSsl xnioSsl;
+                        OptionMap sslOptions = OptionMap.builder()
+                                .set(Options.USE_DIRECT_BUFFERS, true)
+                                .set(UndertowOptions.SSL_MAX_CONCURRENT_HANDSHAKES, serverOptions.get(UndertowOptions.SSL_MAX_CONCURRENT_HANDSHAKES, -1))
+                                .set(UndertowOptions.SSL_HANDSHAKE_TIMEOUT, serverOptions.get(UndertowOptions.SSL_HANDSHAKE_TIMEOUT, UndertowOptions.DEFAULT_SSL_HANDSHAKE_TIMEOUT))
+                                .set(UndertowOptions.SSL_BATCH_RECORDS, serverOptions.get(UndertowOptions.SSL_BATCH_RECORDS, SslConduit.BATCH_RECORDS))
+                                .getMap();
                         if (listener.sslContext != null) {
-                            xnioSsl = new UndertowXnioSsl(xnio, OptionMap.create(Options.USE_DIRECT_BUFFERS, true), listener.sslContext, sslEngineDelegatedTaskExecutor);
+                            xnioSsl = new UndertowXnioSsl(xnio, sslOptions, listener.sslContext, sslEngineDelegatedTaskExecutor);
                         } else {
                             OptionMap.Builder builder = OptionMap.builder()
                                     .addAll(socketOptionsWithOverrides);
@@ -225,7 +233,7 @@ public final class Undertow {
                             }
                             xnioSsl = new UndertowXnioSsl(
                                     xnio,
-                                    OptionMap.create(Options.USE_DIRECT_BUFFERS, true),
+                                    sslOptions,
                                     JsseSslUtils.createSSLContext(listener.keyManagers, listener.trustManagers, new SecureRandom(), builder.getMap()),
                                     sslEngineDelegatedTaskExecutor);
                         }
@@ -674,6 +682,17 @@ public final class Undertow {
             return openListener.getConnectorStatistics();
         }
 
+        /**
+         *
+         * @return The TLS handshake statistics, or null if this is not a SSL listener
+         */
+        public SslHandshakeStatistics getSslHandshakeStatistics() {
+            if(ssl == null) {
+                return null;
+            }
+            return ssl.getHandshakeStatistics();
+        }
+
         public <T> void setSocketOption(Option<T>option, T value) throws IOException {
             channel.setOption(option, value);
         }
@@ -509,4 +509,36 @@ public interface UndertowLogger extends BasicLogger {
     @LogMessage(level = DEBUG)
     @Message(id = 5112, value = "Interruption in close()")
     void closeInterrupted(@Cause InterruptedException ie);
+
+    @LogMessage(level = WARN)
+    @Message(id = 5113, value = "Failed to write %s session updates to the session store")
+    void failedToWriteSessions(int count, @Cause Throwable cause);
+
+    @LogMessage(level = WARN)
+    @Message(id = 5114, value = "Failed to load session %s from the session store")
+    void failedToLoadSession(String sessionId, @Cause Throwable cause);
+
+    @LogMessage(level = WARN)
+    @Message(id = 5115, value = "Session attribute %s of session %s could not be serialized and will not be stored")
+    void failedToSerializeSessionAttribute(String name, String sessionId, @Cause Throwable cause);
+
+    @LogMessage(level = WARN)
+    @Message(id = 5116, value = "Could not load a content encoding provider, it will not be used")
+    void failedToLoadContentEncodingProvider(@Cause Throwable cause);
+
+    @LogMessage(level = ERROR)
+    @Message(id = 5117, value = "Discarding %s session updates that could not be written to the session store after %s attempts")
+    void discardingSessionUpdates(int count, int attempts);
+
+    @LogMessage(level = WARN)
+    @Message(id = 5118, value = "The AJP packet size %s is not between %s and %s, %s will be used instead")
+    void invalidAjpPacketSize(int size, int min, int max, int used);
+
+    @LogMessage(level = WARN)
+    @Message(id = 5119, value = "The JDBC access log queue is full, records are being dropped")
+    void jdbcLogRecordsDropped();
+
+    @LogMessage(level = WARN)
+    @Message(id = 5120, value = "Access log messages are logged faster than they can be written, messages are being dropped")
+    void accessLogMessagesDropped();
 }
\ No newline at end of file
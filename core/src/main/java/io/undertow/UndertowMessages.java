@@ -681,4 +681,25 @@ public interface UndertowMessages {
 
     @Message(id = 219, value = "Too many path parameters, cannot have more than %s path parameters")
     BadRequestException tooManyPathParameters(int noParams);
+
+    @Message(id = 220, value = "Invalid structured access log field '%s', fields must be of the form name=attribute")
+    IllegalArgumentException invalidStructuredAccessLogField(String field);
+
+    @Message(id = 221, value = "Unknown access log output '%s', supported outputs are 'text' and 'json'")
+    IllegalArgumentException unknownAccessLogOutput(String output);
+
+    @Message(id = 222, value = "Invalid value for access log sampling parameter %s: %s")
+    IllegalArgumentException invalidSamplingParameter(String name, Object value);
+
+    @Message(id = 223, value = "Invalid value for JDBC access log parameter %s: %s")
+    IllegalArgumentException invalidJdbcLogParameter(String name, Object value);
+
+    @Message(id = 224, value = "Invalid buffer size %s")
+    IllegalArgumentException invalidBufferSize(int size);
+
+    @Message(id = 225, value = "Invalid value for credential cache parameter %s: %s")
+    IllegalArgumentException invalidCredentialCacheParameter(String name, Object value);
+
+    @Message(id = 226, value = "Too many TLS handshakes in progress")
+    IOException tooManyConcurrentHandshakes();
 }
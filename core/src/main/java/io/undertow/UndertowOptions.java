@@ -401,9 +401,23 @@ public class UndertowOptions {
 
     /**
      * The maximum AJP packet size, default is 8192.<br>UNIT: Bytes.
+     * <p>
+     * On the server this limits both the response body chunks that are sent and the request body chunks that are
+     * requested, and must match the packet size configured on the web server (e.g. the {@code ProxyIOBufferSize} of
+     * mod_proxy_ajp or the {@code max_packet_size} of mod_jk). Values must be between 1024 and 65536, other values
+     * are logged and replaced by the nearest supported size.
      */
     public static final Option<Integer> MAX_AJP_PACKET_SIZE = Option.simple(UndertowOptions.class, "MAX_AJP_PACKET_SIZE", Integer.class);
 
+    /**
+     * If this is true the AJP connector requests the next request body chunk from the web server as soon as it starts
+     * reading the current one, rather than waiting until the current chunk has been consumed. This removes a round
+     * trip per chunk when reading large request bodies.
+     * <p>
+     * Defaults to false, as it relies on the web server processing packets from the connector in order.
+     */
+    public static final Option<Boolean> AJP_PREFETCH_BODY_CHUNKS = Option.simple(UndertowOptions.class, "AJP_PREFETCH_BODY_CHUNKS", Boolean.class);
+
     /**
      * If this is true then HTTP/1.1 requests will be failed if no host header is present.
      */
@@ -578,6 +592,54 @@ public class UndertowOptions {
     @Deprecated
     public static final boolean DEFAULT_ALLOW_ID_LESS_MATRIX_PARAMETERS = false;
 
+    /**
+     * The maximum number of TLS handshakes that may be in progress at the same time on a single listener. A handshake
+     * is counted from the time its first data is received, and connections that start a handshake while the limit is
+     * reached are closed immediately, so that a reconnect storm cannot monopolize the threads running the
+     * {@link javax.net.ssl.SSLEngine} delegated tasks. Connections that are open but idle are not counted.
+     *
+     * A value of -1 (the default) means there is no limit.
+     */
+    public static final Option<Integer> SSL_MAX_CONCURRENT_HANDSHAKES = Option.simple(UndertowOptions.class, "SSL_MAX_CONCURRENT_HANDSHAKES", Integer.class);
+
+    /**
+     * The time in milliseconds a TLS handshake may take when {@link #SSL_MAX_CONCURRENT_HANDSHAKES} is set. The
+     * connection is closed if its handshake has not completed by then, so slow or stalled clients cannot hold on to
+     * the handshake slots.
+     *
+     * A value of -1 means there is no deadline.
+     */
+    public static final Option<Long> SSL_HANDSHAKE_TIMEOUT = Option.simple(UndertowOptions.class, "SSL_HANDSHAKE_TIMEOUT", Long.class);
+
+    /**
+     * Default value of {@link #SSL_HANDSHAKE_TIMEOUT} - 10 seconds.
+     */
+    public static final long DEFAULT_SSL_HANDSHAKE_TIMEOUT = 10000;
+
+    /**
+     * If this is true several TLS records are processed per engine pass, see {@link io.undertow.protocols.ssl.SslConduit#BATCH_RECORDS}.
+     *
+     * Defaults to the value of the <code>io.undertow.ssl.batch-records</code> system property.
+     */
+    public static final Option<Boolean> SSL_BATCH_RECORDS = Option.simple(UndertowOptions.class, "SSL_BATCH_RECORDS", Boolean.class);
+
+    /**
+     * If this is true the query string is only split into parameters when the request is parsed, and the parameters are
+     * not decoded into {@link io.undertow.server.HttpServerExchange#getQueryParameters()} until that map is first used.
+     * Handlers that use {@link io.undertow.server.HttpServerExchange#getQueryParameterView()} only decode the
+     * parameters they look up.
+     * <p>
+     * Note that if this is enabled an invalid encoding in the query string is only detected when the parameters are
+     * decoded.
+     * <p>
+     * Defaults to false.
+     */
+    public static final Option<Boolean> LAZY_QUERY_PARAMETERS = Option.simple(UndertowOptions.class, "LAZY_QUERY_PARAMETERS", Boolean.class);
+
+    /**
+     * Default value of {@link #LAZY_QUERY_PARAMETERS} option.
+     */
+    public static final boolean DEFAULT_LAZY_QUERY_PARAMETERS = false;
 
     private UndertowOptions() {
 
@@ -47,6 +47,13 @@ public class CompositeExchangeAttribute implements ExchangeAttribute {
         return sb.toString();
     }
 
+    /**
+     * @return The attributes that make up this composite
+     */
+    public ExchangeAttribute[] getAttributes() {
+        return attributes.clone();
+    }
+
     @Override
     public void writeAttribute(HttpServerExchange exchange, String newValue) throws ReadOnlyAttributeException {
         throw new ReadOnlyAttributeException("combined", newValue);
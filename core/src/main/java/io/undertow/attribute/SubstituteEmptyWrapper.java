@@ -40,5 +40,13 @@ public class SubstituteEmptyWrapper implements ExchangeAttributeWrapper {
         public void writeAttribute(HttpServerExchange exchange, String newValue) throws ReadOnlyAttributeException {
             attribute.writeAttribute(exchange, newValue);
         }
+
+        public ExchangeAttribute getAttribute() {
+            return attribute;
+        }
+
+        public String getSubstitute() {
+            return substitute;
+        }
     }
 }
@@ -112,6 +112,18 @@ public class DeflatingStreamSinkConduit implements StreamSinkConduit {
     }
 
 
+    /**
+     * Sets the compression level that will be used for this response. This must be called before any data has been
+     * written.
+     *
+     * @param deflateLevel The compression level
+     */
+    public void setDeflateLevel(int deflateLevel) {
+        if (deflater != null) {
+            deflater.setLevel(deflateLevel);
+        }
+    }
+
     @Override
     public int write(final ByteBuffer src) throws IOException {
         if (anyAreSet(state, SHUTDOWN | CLOSED) || currentBuffer == null) {
@@ -372,6 +384,7 @@ public class DeflatingStreamSinkConduit implements StreamSinkConduit {
                         }
                         if (performFlushIfRequired()) {
                             state |= NEXT_SHUTDOWN;
+                            deflateComplete(deflater.getBytesRead(), deflater.getBytesWritten());
                             freeBuffer();
                             next.terminateWrites();
                             return next.flush();
@@ -414,6 +427,15 @@ public class DeflatingStreamSinkConduit implements StreamSinkConduit {
         }
     }
 
+    /**
+     * Called once all the data has been compressed, before the deflater is returned to the pool.
+     *
+     * @param bytesRead    The number of uncompressed bytes
+     * @param bytesWritten The number of compressed bytes, not including any header or trailer
+     */
+    protected void deflateComplete(long bytesRead, long bytesWritten) {
+    }
+
     /**
      * called before the stream is finally flushed.
      */
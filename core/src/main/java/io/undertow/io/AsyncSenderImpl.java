@@ -24,6 +24,7 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.xnio.Buffers;
 import org.xnio.ChannelExceptionHandler;
@@ -34,9 +35,11 @@ import org.xnio.channels.StreamSinkChannel;
 
 import io.undertow.UndertowLogger;
 import io.undertow.UndertowMessages;
+import io.undertow.connector.ByteBufferPool;
 import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
+import io.undertow.util.Utf8Encoder;
 
 /**
  * @author Stuart Douglas
@@ -326,6 +329,10 @@ public class AsyncSenderImpl implements Sender {
         if(exchange.isResponseComplete()) {
             invokeOnException(callback, new IOException(UndertowMessages.MESSAGES.responseComplete()));
         }
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            sendUtf8(data, callback);
+            return;
+        }
         ByteBuffer bytes = ByteBuffer.wrap(data.getBytes(charset));
         if (bytes.remaining() == 0) {
             callback.onComplete(exchange, this);
@@ -349,6 +356,44 @@ public class AsyncSenderImpl implements Sender {
         }
     }
 
+    /**
+     * Encodes the string directly into pooled buffers, rather than into an array that is then copied into them
+     */
+    private void sendUtf8(final String data, final IoCallback callback) {
+        final int length = data.length();
+        if (length == 0) {
+            callback.onComplete(exchange, this);
+            return;
+        }
+        final ByteBufferPool pool = exchange.getConnection().getByteBufferPool();
+        PooledByteBuffer[] pooled = null;
+        ByteBuffer[] bufs = null;
+        int count = 0;
+        int pos = 0;
+        while (pos < length) {
+            final PooledByteBuffer buffer = pool.allocate();
+            if (bufs == null) {
+                //enough buffers if the string is ascii, multi byte characters may need more
+                final int noBufs = (length + buffer.getBuffer().remaining() - 1) / buffer.getBuffer().remaining();
+                pooled = new PooledByteBuffer[noBufs];
+                bufs = new ByteBuffer[noBufs];
+            } else if (count == bufs.length) {
+                pooled = Arrays.copyOf(pooled, count * 2);
+                bufs = Arrays.copyOf(bufs, count * 2);
+            }
+            pooled[count] = buffer;
+            bufs[count++] = buffer.getBuffer();
+            pos = Utf8Encoder.encode(data, pos, length, buffer.getBuffer(), true);
+            buffer.getBuffer().flip();
+        }
+        if (count < bufs.length) {
+            pooled = Arrays.copyOf(pooled, count);
+            bufs = Arrays.copyOf(bufs, count);
+        }
+        pooledBuffers = pooled;
+        send(bufs, callback);
+    }
+
     @Override
     public void send(final String data) {
         send(data, IoCallback.END_EXCHANGE);
@@ -31,6 +31,7 @@ import io.undertow.UndertowMessages;
 import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
+import io.undertow.util.Utf8Encoder;
 import org.xnio.Buffers;
 import org.xnio.IoUtils;
 
@@ -114,7 +115,16 @@ public class BlockingSenderImpl implements Sender {
 
     @Override
     public void send(final String data, final IoCallback callback) {
-        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        send(data, StandardCharsets.UTF_8, callback);
+    }
+
+    @Override
+    public void send(final String data, final Charset charset, final IoCallback callback) {
+        if (inCall != Thread.currentThread() && charset.equals(StandardCharsets.UTF_8) && outputStream instanceof BufferWritableOutputStream) {
+            sendUtf8(data, callback);
+            return;
+        }
+        byte[] bytes = data.getBytes(charset);
         sendThread = Thread.currentThread();
         if (inCall == Thread.currentThread()) {
             queue(new ByteBuffer[]{ByteBuffer.wrap(bytes)}, callback);
@@ -139,31 +149,40 @@ public class BlockingSenderImpl implements Sender {
         }
     }
 
-    @Override
-    public void send(final String data, final Charset charset, final IoCallback callback) {
-        byte[] bytes = data.getBytes(charset);
+    /**
+     * Encodes the string into a pooled buffer that is written out each time it fills up, rather than into an array
+     * that holds the whole response
+     */
+    private void sendUtf8(final String data, final IoCallback callback) {
         sendThread = Thread.currentThread();
-        if (inCall == Thread.currentThread()) {
-            queue(new ByteBuffer[]{ByteBuffer.wrap(bytes)}, callback);
+        final int length = data.length();
+        final long encodedLength = Utf8Encoder.encodedLength(data, 0, length);
+        long responseContentLength = exchange.getResponseContentLength();
+        if (responseContentLength > 0 && encodedLength > responseContentLength) {
+            callback.onException(exchange, this, UndertowLogger.ROOT_LOGGER.dataLargerThanContentLength(encodedLength, responseContentLength));
             return;
-        }else {
-            long responseContentLength = exchange.getResponseContentLength();
-            if(responseContentLength > 0 && bytes.length > responseContentLength) {
-                callback.onException(exchange, this, UndertowLogger.ROOT_LOGGER.dataLargerThanContentLength(bytes.length, responseContentLength));
-                return;
+        }
+        if (!exchange.isResponseStarted() && callback == IoCallback.END_EXCHANGE) {
+            if (responseContentLength == -1 && !exchange.getResponseHeaders().contains(Headers.TRANSFER_ENCODING)) {
+                exchange.setResponseContentLength(encodedLength);
             }
-            if (!exchange.isResponseStarted() && callback == IoCallback.END_EXCHANGE) {
-                if (responseContentLength == -1 && !exchange.getResponseHeaders().contains(Headers.TRANSFER_ENCODING)) {
-                    exchange.setResponseContentLength(bytes.length);
+        }
+        if (length > 0) {
+            try (PooledByteBuffer pooled = exchange.getConnection().getByteBufferPool().allocate()) {
+                final ByteBuffer buffer = pooled.getBuffer();
+                int pos = 0;
+                while (pos < length) {
+                    buffer.clear();
+                    pos = Utf8Encoder.encode(data, pos, length, buffer, true);
+                    buffer.flip();
+                    ((BufferWritableOutputStream) outputStream).write(buffer);
                 }
+            } catch (IOException e) {
+                callback.onException(exchange, this, e);
+                return;
             }
         }
-        try {
-            outputStream.write(bytes);
-            invokeOnComplete(callback);
-        } catch (IOException e) {
-            callback.onException(exchange, this, e);
-        }
+        invokeOnComplete(callback);
     }
 
     @Override
@@ -69,6 +69,12 @@ public class AjpClientRequestClientStreamSinkChannel extends AbstractAjpClientSt
     private boolean firstFrameWritten = false;
     private long dataSize;
     private int requestedChunkSize = -1;
+    /**
+     * Chunks that were requested while a previous request had not been answered yet, as the server may request the
+     * next chunk before it has received the current one
+     */
+    private int queuedChunkRequests = 0;
+    private int queuedChunkSize;
     private SendFrameHeader header;
     /**
      * When we are the client and the
@@ -259,6 +265,10 @@ public class AjpClientRequestClientStreamSinkChannel extends AbstractAjpClientSt
                 buffer.put((byte) ((remaining >> 8) & 0xFF));
                 buffer.put((byte) (remaining & 0xFF));
                 requestedChunkSize = 0;
+                if (queuedChunkRequests > 0) {
+                    --queuedChunkRequests;
+                    requestedChunkSize = queuedChunkSize;
+                }
                 if (remaining < dataInBuffer) {
                     dataBuffer.limit(getBuffer().position() + remaining);
                     buffer.flip();
@@ -292,6 +302,11 @@ public class AjpClientRequestClientStreamSinkChannel extends AbstractAjpClientSt
     }
 
     void chunkRequested(int size) throws IOException {
+        if (requestedChunkSize > 0) {
+            ++queuedChunkRequests;
+            queuedChunkSize = size;
+            return;
+        }
         requestedChunkSize = size;
         getChannel().recalculateHeldFrames();
     }
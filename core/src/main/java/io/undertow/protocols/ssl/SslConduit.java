@@ -35,14 +35,17 @@ import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLSession;
 
 import io.undertow.UndertowLogger;
+import io.undertow.UndertowMessages;
 import io.undertow.connector.ByteBufferPool;
 import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.DefaultByteBufferPool;
+import io.undertow.util.WorkerUtils;
 import org.xnio.Buffers;
 import org.xnio.ChannelListener;
 import org.xnio.ChannelListeners;
 import org.xnio.IoUtils;
 import org.xnio.StreamConnection;
+import org.xnio.XnioExecutor;
 import org.xnio.XnioIoThread;
 import org.xnio.XnioWorker;
 import org.xnio.channels.StreamSinkChannel;
@@ -71,6 +74,15 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
 
     public static final int MAX_READ_LISTENER_INVOCATIONS = Integer.getInteger("io.undertow.ssl.max-read-listener-invocations", 100);
 
+    /**
+     * If this is set multiple TLS records are processed per engine pass. When unwrapping all complete records that are
+     * available in the read buffer are unwrapped in one go, and when wrapping as many records as will fit are wrapped
+     * into the outgoing buffer, so they are written out with a single write to the underlying channel.
+     *
+     * This is the default for {@link io.undertow.UndertowOptions#SSL_BATCH_RECORDS}.
+     */
+    public static final boolean BATCH_RECORDS = Boolean.getBoolean("io.undertow.ssl.batch-records");
+
     /**
      * If this is set we are in the middle of a handshake, and we cannot
      * read any more data until we have written out our wrap result
@@ -131,6 +143,17 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
      */
     private static volatile ByteBufferPool expandedBufferPool;
 
+    /**
+     * The number of full records that fit into the buffers that are used when records are batched
+     */
+    private static final int BATCH_BUFFER_RECORDS = 4;
+
+    /**
+     * Buffer pool for wrapping several records at once, created when records are batched and more than one
+     * record of user data is written. The normal buffers only hold a single full record.
+     */
+    private static volatile ByteBufferPool batchBufferPool;
+
 
     private final UndertowSslConnection connection;
     private final StreamConnection delegate;
@@ -140,9 +163,33 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
     private final StreamSourceConduit source;
     private final ByteBufferPool bufferPool;
     private final Runnable handshakeCallback;
+    private final SslHandshakeStatisticsImpl handshakeStatistics;
+    private final boolean batchRecords;
 
     private volatile int state = 0;
 
+    /**
+     * If the initial handshake still has to be admitted by the listener statistics. This happens when the first
+     * handshake data arrives, so connections that never start a handshake do not hold a slot.
+     */
+    private boolean handshakeAdmissionPending;
+    /**
+     * The time the initial handshake started, or 0 if it is not being tracked or has ended
+     */
+    private long handshakeStart;
+    /**
+     * Closes the connection if the admitted handshake does not complete in time
+     */
+    private XnioExecutor.Key handshakeTimeoutKey;
+    /**
+     * If the initial handshake has completed
+     */
+    private boolean handshakeComplete;
+    /**
+     * If delegated tasks have already been run for this connection
+     */
+    private boolean delegatedTasksRun;
+
     private volatile int outstandingTasks = 0;
 
     /**
@@ -200,7 +247,19 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
     };
 
     SslConduit(UndertowSslConnection connection, StreamConnection delegate, SSLEngine engine, Executor delegatedTaskExecutor, ByteBufferPool bufferPool, Runnable handshakeCallback) {
+        this(connection, delegate, engine, delegatedTaskExecutor, bufferPool, handshakeCallback, null, BATCH_RECORDS);
+    }
+
+    /**
+     * @param handshakeStatistics The listener statistics, if this is not null the handshake is admitted with
+     *                            {@link SslHandshakeStatisticsImpl#tryStartHandshake()} when its first data is read
+     * @param batchRecords If several TLS records are processed per engine pass, see {@link #BATCH_RECORDS}
+     */
+    SslConduit(UndertowSslConnection connection, StreamConnection delegate, SSLEngine engine, Executor delegatedTaskExecutor, ByteBufferPool bufferPool, Runnable handshakeCallback, SslHandshakeStatisticsImpl handshakeStatistics, boolean batchRecords) {
         this.connection = connection;
+        this.handshakeStatistics = handshakeStatistics;
+        this.batchRecords = batchRecords;
+        this.handshakeAdmissionPending = handshakeStatistics != null;
         this.delegate = delegate;
         this.handshakeCallback = handshakeCallback;
         this.sink = delegate.getSinkChannel().getConduit();
@@ -631,6 +690,7 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
         if(anyAreSet(state, FLAG_READ_CLOSED)) {
             return;
         }
+        handshakeEnded(false);
         boolean runListener = isReadResumed() && anyAreSet(state, FLAG_CLOSED);
         connection.readClosed();
 
@@ -694,6 +754,22 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
             bytesProduced.add(result.bytesProduced() > 0);
         } while (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP
                 && result.getStatus() == SSLEngineResult.Status.OK && src.hasRemaining());
+        if (batchRecords) {
+            //unwrap any other records that have already been read, rather than waiting for another listener invocation
+            while (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                    && result.getStatus() == SSLEngineResult.Status.OK && src.hasRemaining()
+                    && Buffers.hasRemaining(dsts, off, len)) {
+                SSLEngineResult next = engine.unwrap(src, dsts, off, len);
+                bytesProduced.add(next.bytesProduced() > 0);
+                if (next.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW
+                        || (next.getStatus() == SSLEngineResult.Status.CLOSED && bytesProduced.get())) {
+                    //no room for the next record, or the peer has closed the connection, in which case we
+                    //report the data we already have and the close will be seen by the next unwrap
+                    break;
+                }
+                result = next;
+            }
+        }
         return result;
     }
 
@@ -754,6 +830,15 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
                     throw e;
                 }
                 dataToUnwrap.getBuffer().flip();
+                if (res > 0 && handshakeAdmissionPending) {
+                    try {
+                        admitHandshake();
+                    } catch (IOException e) {
+                        dataToUnwrap.close();
+                        dataToUnwrap = null;
+                        throw e;
+                    }
+                }
                 if (res == -1) {
                     dataToUnwrap.close();
                     dataToUnwrap = null;
@@ -812,6 +897,7 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
                 }
                 this.unwrappedData = unwrappedData;
             }
+            checkHandshakeEnded(result);
 
             if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
                 if(dataToUnwrap != null) {
@@ -923,6 +1009,10 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
         if(outstandingTasks > 0) {
             return 0;
         }
+        if (handshakeAdmissionPending && engine.getUseClientMode()) {
+            //in client mode the handshake starts with our first write
+            admitHandshake();
+        }
         if(anyAreSet(state, FLAG_WRITE_REQUIRES_READ)) {
             doUnwrap(null, 0, 0);
             if(allAreClear(state, FLAG_READ_REQUIRES_WRITE)) { //unless a wrap is immediately required we just return
@@ -935,11 +1025,19 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
                 return 0;
             }
             wrappedData.getBuffer().clear();
+            if (batchRecords && isBatchWrite(userBuffers, off, len) && wrappedData.getBuffer().capacity() < batchBufferSize()) {
+                wrappedData.close();
+                wrappedData = null;
+                wrappedData = allocateBatchBuffer();
+            }
+        } else if (batchRecords && isBatchWrite(userBuffers, off, len)) {
+            wrappedData = allocateBatchBuffer();
         } else {
             wrappedData = bufferPool.allocate();
         }
         try {
             SSLEngineResult result = wrapAndFlip(userBuffers, off, len);
+            checkHandshakeEnded(result);
 
             if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
                 throw new IOException("underflow"); // unexpected result
@@ -1004,25 +1102,74 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
         }
     }
 
+    /**
+     * Returns true if there is more user data than fits into a single record, and the handshake is done
+     */
+    private boolean isBatchWrite(ByteBuffer[] userBuffers, int off, int len) {
+        return userBuffers != null
+                && engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                && Buffers.remaining(userBuffers, off, len) > engine.getSession().getApplicationBufferSize();
+    }
+
+    private int batchBufferSize() {
+        return engine.getSession().getPacketBufferSize() * BATCH_BUFFER_RECORDS;
+    }
+
+    private PooledByteBuffer allocateBatchBuffer() {
+        final int bufferSize = batchBufferSize();
+        if (batchBufferPool == null || batchBufferPool.getBufferSize() < bufferSize) {
+            synchronized (SslConduit.class) {
+                if (batchBufferPool == null || batchBufferPool.getBufferSize() < bufferSize) {
+                    batchBufferPool = new DefaultByteBufferPool(false, bufferSize, -1, 12);
+                }
+            }
+        }
+        return batchBufferPool.allocate();
+    }
+
     private SSLEngineResult wrapAndFlip(ByteBuffer[] userBuffers, int off, int len) throws IOException {
+        SSLEngineResult result = wrap(engine, userBuffers, off, len, wrappedData.getBuffer(), batchRecords);
+        wrappedData.getBuffer().flip();
+        return result;
+    }
+
+    /**
+     * Wraps the user data, or performs a handshake wrap if there is none. If batching is enabled this keeps wrapping
+     * records while there is more user data and a full record still fits into the destination buffer, so that the
+     * records can be written out together.
+     *
+     * @return The last result, with the total number of bytes that were consumed
+     */
+    static SSLEngineResult wrap(SSLEngine engine, ByteBuffer[] userBuffers, int off, int len, ByteBuffer dst, boolean batch) throws IOException {
         SSLEngineResult result = null;
         int totalConsumedBytes = 0;
+        int totalProducedBytes = 0;
         while (result == null || (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP
-                && result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW && !engine.isInboundDone())) {
+                && result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW && !engine.isInboundDone())
+                || (batch && canWrapAnotherRecord(engine, result, userBuffers, off, len, dst))) {
             if (userBuffers == null) {
-                result = engine.wrap(EMPTY_BUFFER, wrappedData.getBuffer());
+                result = engine.wrap(EMPTY_BUFFER, dst);
             } else {
-                result = engine.wrap(userBuffers, off, len, wrappedData.getBuffer());
+                result = engine.wrap(userBuffers, off, len, dst);
             }
             totalConsumedBytes += result.bytesConsumed();
+            totalProducedBytes += result.bytesProduced();
         }
-        if (totalConsumedBytes != result.bytesConsumed()) {
-            result = new SSLEngineResult(result.getStatus(), result.getHandshakeStatus(), totalConsumedBytes, result.bytesProduced());
+        if (totalConsumedBytes != result.bytesConsumed() || totalProducedBytes != result.bytesProduced()) {
+            result = new SSLEngineResult(result.getStatus(), result.getHandshakeStatus(), totalConsumedBytes, totalProducedBytes);
         }
-        wrappedData.getBuffer().flip();
         return result;
     }
 
+    private static boolean canWrapAnotherRecord(SSLEngine engine, SSLEngineResult result, ByteBuffer[] userBuffers, int off, int len, ByteBuffer dst) {
+        return userBuffers != null
+                && result.getStatus() == SSLEngineResult.Status.OK
+                && result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                && result.bytesConsumed() > 0
+                && Buffers.hasRemaining(userBuffers, off, len)
+                && dst.remaining() >= engine.getSession().getPacketBufferSize();
+    }
+
     private boolean handleHandshakeResult(SSLEngineResult result) throws IOException {
         switch (result.getHandshakeStatus()) {
             case NEED_TASK: {
@@ -1052,6 +1199,8 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
                 return false;
             }
             case FINISHED: {
+                handshakeComplete = true;
+                handshakeEnded(true);
                 if(anyAreSet(state, FLAG_IN_HANDSHAKE)) {
                     state &= ~FLAG_IN_HANDSHAKE;
                     handshakeCallback.run();
@@ -1063,6 +1212,73 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
         return true;
     }
 
+    /**
+     * Records the end of the initial handshake as soon as the engine reports it, as the result may not reach
+     * {@link #handleHandshakeResult(SSLEngineResult)}, e.g. if the final handshake message could only be partially
+     * written. Once the engine has moved data without handshaking the handshake is over, even if the
+     * {@link SSLEngineResult.HandshakeStatus#FINISHED} result was missed.
+     */
+    private void checkHandshakeEnded(SSLEngineResult result) {
+        if (handshakeStart == 0) {
+            return;
+        }
+        final SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
+        if (status == SSLEngineResult.HandshakeStatus.FINISHED
+                || (status == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && (result.bytesConsumed() > 0 || result.bytesProduced() > 0))) {
+            handshakeComplete = true;
+            handshakeEnded(true);
+        }
+    }
+
+    /**
+     * Admits the initial handshake in the listener statistics, and starts its deadline.
+     *
+     * @throws IOException if too many handshakes are in progress, in which case the connection is closed
+     */
+    private void admitHandshake() throws IOException {
+        handshakeAdmissionPending = false;
+        if (!handshakeStatistics.tryStartHandshake()) {
+            throw UndertowMessages.MESSAGES.tooManyConcurrentHandshakes();
+        }
+        handshakeStart = System.nanoTime();
+        final long timeout = handshakeStatistics.getHandshakeTimeout();
+        if (timeout > 0) {
+            handshakeTimeoutKey = WorkerUtils.executeAfter(delegate.getIoThread(), this::handshakeTimedOut, timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void handshakeTimedOut() {
+        synchronized (this) {
+            handshakeTimeoutKey = null;
+            if (handshakeStart == 0) {
+                return;
+            }
+            handshakeEnded(false);
+        }
+        UndertowLogger.REQUEST_IO_LOGGER.debugf("Closing %s as the TLS handshake did not complete in time", delegate.getPeerAddress());
+        IoUtils.safeClose(connection);
+    }
+
+    /**
+     * Records the end of the initial handshake in the listener statistics
+     */
+    private synchronized void handshakeEnded(boolean success) {
+        handshakeAdmissionPending = false;
+        if (handshakeTimeoutKey != null) {
+            handshakeTimeoutKey.remove();
+            handshakeTimeoutKey = null;
+        }
+        if (handshakeStart == 0) {
+            return;
+        }
+        if (success) {
+            handshakeStatistics.handshakeCompleted(System.nanoTime() - handshakeStart);
+        } else {
+            handshakeStatistics.handshakeFailed();
+        }
+        handshakeStart = 0;
+    }
+
     private void clearReadRequiresWrite() {
         if(anyAreSet(state, FLAG_READ_REQUIRES_WRITE)) {
             state &= ~FLAG_READ_REQUIRES_WRITE;
@@ -1092,6 +1308,7 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
             return;
         }
         synchronized (this) {
+            handshakeEnded(false);
             state |= FLAG_CLOSED | FLAG_DELEGATE_SINK_SHUTDOWN | FLAG_DELEGATE_SOURCE_SHUTDOWN | FLAG_WRITE_SHUTDOWN | FLAG_READ_SHUTDOWN;
             notifyReadClosed();
             notifyWriteClosed();
@@ -1141,10 +1358,17 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
 
         synchronized (this) {
             outstandingTasks += tasks.size();
+            //tasks for handshakes that are already under way are prioritized over new handshakes
+            final boolean priority = delegatedTasksRun || handshakeComplete;
+            delegatedTasksRun = true;
             for (final Runnable task : tasks) {
+                final long submitted = handshakeStatistics == null ? 0 : System.nanoTime();
                 Runnable wrappedTask = new Runnable() {
                     @Override
                     public void run() {
+                        if (handshakeStatistics != null) {
+                            handshakeStatistics.taskStarted(System.nanoTime() - submitted);
+                        }
                         try {
                             task.run();
                         } finally {
@@ -1187,6 +1411,8 @@ public class SslConduit implements StreamSourceConduit, StreamSinkConduit {
                     // execution to the same set of threads we are currently at, just run the handshake task right away to prevent blocking
                     if (delegate.getIoThread().equals(Thread.currentThread()) && delegatedTaskExecutor == null) {
                         wrappedTask.run();
+                    } else if (delegatedTaskExecutor instanceof SslHandshakeExecutor) {
+                        ((SslHandshakeExecutor) delegatedTaskExecutor).execute(wrappedTask, priority);
                     } else {
                         getDelegatedTaskExecutor().execute(wrappedTask);
                     }
@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.protocols.ssl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A dedicated executor for {@link javax.net.ssl.SSLEngine#getDelegatedTask() SSL engine delegated tasks}.
+ * <p>
+ * Delegated tasks are CPU heavy (key exchange, certificate verification), so running them on the XNIO worker means
+ * that a large number of simultaneous handshakes can starve request processing. This executor runs them on its own
+ * fixed set of threads with a bounded queue. If the queue is full the task is rejected, and the connection that
+ * submitted it is closed.
+ * <p>
+ * Tasks that belong to a handshake that is already in progress, or to a renegotiation of an established connection,
+ * are run before the tasks of new handshakes, so that under load the server finishes the handshakes it has started
+ * instead of making progress on all of them at the same time.
+ * <p>
+ * This executor can be set with {@link io.undertow.Undertow.Builder#setSslEngineDelegatedTaskExecutor(Executor)}.
+ * Its lifecycle is managed by the user, and {@link #shutdown()} must be called once it is no longer in use.
+ */
+public class SslHandshakeExecutor implements Executor {
+
+    private final ThreadPoolExecutor executor;
+    private final int maxQueueSize;
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong rejectedTasks = new AtomicLong();
+
+    /**
+     *
+     * @param threads      The number of threads used to run delegated tasks
+     * @param maxQueueSize The maximum number of tasks that can be waiting for a thread
+     */
+    public SslHandshakeExecutor(int threads, int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), new HandshakeThreadFactory());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        execute(command, false);
+    }
+
+    /**
+     * Executes a delegated task.
+     *
+     * @param command  The task
+     * @param priority If the task should be run before tasks that have been submitted without priority
+     * @throws RejectedExecutionException if the queue is full or the executor has been shut down
+     */
+    public void execute(Runnable command, boolean priority) {
+        if (queueSize.incrementAndGet() > maxQueueSize) {
+            queueSize.decrementAndGet();
+            rejectedTasks.incrementAndGet();
+            throw new RejectedExecutionException();
+        }
+        try {
+            executor.execute(new QueuedTask(command, priority, sequence.incrementAndGet()));
+        } catch (RejectedExecutionException e) {
+            queueSize.decrementAndGet();
+            rejectedTasks.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     *
+     * @return The number of tasks waiting for a thread
+     */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    /**
+     *
+     * @return The number of tasks that have been rejected because the queue was full
+     */
+    public long getRejectedTasks() {
+        return rejectedTasks.get();
+    }
+
+    /**
+     * Shuts down the executor. Tasks that have already been submitted are still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private final class QueuedTask implements Runnable, Comparable<QueuedTask> {
+
+        private final Runnable task;
+        private final boolean priority;
+        private final long sequence;
+
+        private QueuedTask(Runnable task, boolean priority, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            queueSize.decrementAndGet();
+            task.run();
+        }
+
+        @Override
+        public int compareTo(QueuedTask o) {
+            if (priority != o.priority) {
+                return priority ? -1 : 1;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+
+    private static final class HandshakeThreadFactory implements ThreadFactory {
+        private final AtomicLong count = new AtomicLong();
+        private final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = threadFactory.newThread(r);
+            thread.setName("undertow-ssl-handshake-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.protocols.ssl;
+
+/**
+ * TLS handshake statistics for a single listener.
+ *
+ * Handshake times are measured from the creation of the connection until the engine reports that the initial
+ * handshake has finished. Task times only cover {@link javax.net.ssl.SSLEngine#getDelegatedTask() delegated tasks}.
+ */
+public interface SslHandshakeStatistics {
+
+    /**
+     * The upper bounds (in milliseconds) of the buckets returned by {@link #getHandshakeTimeHistogram()}. The histogram
+     * has one more bucket than this array, which holds all the handshakes that took longer than the last bound.
+     */
+    long[] HANDSHAKE_TIME_BUCKETS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 5000};
+
+    /**
+     *
+     * @return The number of handshakes currently in progress
+     */
+    long getActiveHandshakes();
+
+    /**
+     *
+     * @return The maximum number of handshakes that have been in progress at the same time
+     */
+    long getMaxActiveHandshakes();
+
+    /**
+     *
+     * @return The number of handshakes that have completed successfully
+     */
+    long getCompletedHandshakes();
+
+    /**
+     *
+     * @return The number of connections that were closed before the handshake completed
+     */
+    long getFailedHandshakes();
+
+    /**
+     *
+     * @return The number of connections that were refused because the concurrent handshake limit had been reached
+     */
+    long getRejectedHandshakes();
+
+    /**
+     *
+     * @return The total amount of time spent in completed handshakes (nanoseconds)
+     */
+    long getHandshakeTime();
+
+    /**
+     *
+     * @return The time taken by the slowest handshake (nanoseconds)
+     */
+    long getMaxHandshakeTime();
+
+    /**
+     *
+     * @return The number of completed handshakes per bucket of {@link #HANDSHAKE_TIME_BUCKETS}
+     */
+    long[] getHandshakeTimeHistogram();
+
+    /**
+     *
+     * @return The number of delegated tasks that have been run
+     */
+    long getTaskCount();
+
+    /**
+     *
+     * @return The total amount of time delegated tasks spent waiting for an executor thread (nanoseconds)
+     */
+    long getTaskQueueTime();
+
+    /**
+     *
+     * @return The longest time a delegated task spent waiting for an executor thread (nanoseconds)
+     */
+    long getMaxTaskQueueTime();
+
+    /**
+     * Resets all values to zero, except for the number of active handshakes
+     */
+    void reset();
+}
@@ -0,0 +1,199 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.protocols.ssl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Handshake statistics and admission control for a single listener.
+ */
+class SslHandshakeStatisticsImpl implements SslHandshakeStatistics {
+
+    private static final AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> activeHandshakesUpdater = AtomicLongFieldUpdater.newUpdater(SslHandshakeStatisticsImpl.class, "activeHandshakes");
+    private static final AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> maxActiveHandshakesUpdater = AtomicLongFieldUpdater.newUpdater(SslHandshakeStatisticsImpl.class, "maxActiveHandshakes");
+    private static final AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> completedHandshakesUpdater = AtomicLongFieldUpdater.newUpdater(SslHandshakeStatisticsImpl.class, "completedHandshakes");
+    private static final AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> failedHandshakesUpdater = AtomicLongFieldUpdater.newUpdater(SslHandshakeStatisticsImpl.class, "failedHandshakes");
+    private static final AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> rejectedHandshakesUpdater = AtomicLongFieldUpdater.newUpdater(SslHandshakeStatisticsImpl.class, "rejectedHandshakes");
+    private static final AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> handshakeTimeUpdater = AtomicLongFieldUpdater.newUpdater(SslHandshakeStatisticsImpl.class, "handshakeTime");
+    private static final AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> maxHandshakeTimeUpdater = AtomicLongFieldUpdater.newUpdater(SslHandshakeStatisticsImpl.class, "maxHandshakeTime");
+    private static final AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> taskCountUpdater = AtomicLongFieldUpdater.newUpdater(SslHandshakeStatisticsImpl.class, "taskCount");
+    private static final AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> taskQueueTimeUpdater = AtomicLongFieldUpdater.newUpdater(SslHandshakeStatisticsImpl.class, "taskQueueTime");
+    private static final AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> maxTaskQueueTimeUpdater = AtomicLongFieldUpdater.newUpdater(SslHandshakeStatisticsImpl.class, "maxTaskQueueTime");
+
+    private final int maxConcurrentHandshakes;
+    private final long handshakeTimeout;
+    private final AtomicLongArray histogram = new AtomicLongArray(HANDSHAKE_TIME_BUCKETS.length + 1);
+
+    private volatile long activeHandshakes;
+    private volatile long maxActiveHandshakes;
+    private volatile long completedHandshakes;
+    private volatile long failedHandshakes;
+    private volatile long rejectedHandshakes;
+    private volatile long handshakeTime;
+    private volatile long maxHandshakeTime;
+    private volatile long taskCount;
+    private volatile long taskQueueTime;
+    private volatile long maxTaskQueueTime;
+
+    /**
+     * @param maxConcurrentHandshakes The maximum number of concurrent handshakes, or -1 for no limit
+     * @param handshakeTimeout        The time in milliseconds an admitted handshake may take when there is a limit,
+     *                                or -1 for no deadline
+     */
+    SslHandshakeStatisticsImpl(int maxConcurrentHandshakes, long handshakeTimeout) {
+        this.maxConcurrentHandshakes = maxConcurrentHandshakes;
+        this.handshakeTimeout = maxConcurrentHandshakes > 0 ? handshakeTimeout : -1;
+    }
+
+    /**
+     * @return The time in milliseconds after which a handshake that has not completed is closed, or -1 for no deadline
+     */
+    long getHandshakeTimeout() {
+        return handshakeTimeout;
+    }
+
+    /**
+     * Attempts to start a new handshake.
+     *
+     * @return false if the handshake limit has been reached, in which case the connection should be closed
+     */
+    boolean tryStartHandshake() {
+        long active;
+        do {
+            active = activeHandshakesUpdater.get(this);
+            if (maxConcurrentHandshakes > 0 && active >= maxConcurrentHandshakes) {
+                rejectedHandshakesUpdater.incrementAndGet(this);
+                return false;
+            }
+        } while (!activeHandshakesUpdater.compareAndSet(this, active, active + 1));
+        updateMax(maxActiveHandshakesUpdater, active + 1);
+        return true;
+    }
+
+    void handshakeCompleted(long duration) {
+        activeHandshakesUpdater.decrementAndGet(this);
+        completedHandshakesUpdater.incrementAndGet(this);
+        handshakeTimeUpdater.addAndGet(this, duration);
+        updateMax(maxHandshakeTimeUpdater, duration);
+        long millis = TimeUnit.NANOSECONDS.toMillis(duration);
+        int bucket = 0;
+        while (bucket < HANDSHAKE_TIME_BUCKETS.length && millis > HANDSHAKE_TIME_BUCKETS[bucket]) {
+            ++bucket;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+    void handshakeFailed() {
+        activeHandshakesUpdater.decrementAndGet(this);
+        failedHandshakesUpdater.incrementAndGet(this);
+    }
+
+    void taskStarted(long queueTime) {
+        taskCountUpdater.incrementAndGet(this);
+        taskQueueTimeUpdater.addAndGet(this, queueTime);
+        updateMax(maxTaskQueueTimeUpdater, queueTime);
+    }
+
+    private void updateMax(AtomicLongFieldUpdater<SslHandshakeStatisticsImpl> updater, long value) {
+        long oldMax;
+        do {
+            oldMax = updater.get(this);
+            if (oldMax >= value) {
+                break;
+            }
+        } while (!updater.compareAndSet(this, oldMax, value));
+    }
+
+    @Override
+    public long getActiveHandshakes() {
+        return activeHandshakes;
+    }
+
+    @Override
+    public long getMaxActiveHandshakes() {
+        return maxActiveHandshakes;
+    }
+
+    @Override
+    public long getCompletedHandshakes() {
+        return completedHandshakes;
+    }
+
+    @Override
+    public long getFailedHandshakes() {
+        return failedHandshakes;
+    }
+
+    @Override
+    public long getRejectedHandshakes() {
+        return rejectedHandshakes;
+    }
+
+    @Override
+    public long getHandshakeTime() {
+        return handshakeTime;
+    }
+
+    @Override
+    public long getMaxHandshakeTime() {
+        return maxHandshakeTime;
+    }
+
+    @Override
+    public long[] getHandshakeTimeHistogram() {
+        long[] result = new long[histogram.length()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    @Override
+    public long getTaskQueueTime() {
+        return taskQueueTime;
+    }
+
+    @Override
+    public long getMaxTaskQueueTime() {
+        return maxTaskQueueTime;
+    }
+
+    @Override
+    public void reset() {
+        maxActiveHandshakesUpdater.set(this, 0);
+        completedHandshakesUpdater.set(this, 0);
+        failedHandshakesUpdater.set(this, 0);
+        rejectedHandshakesUpdater.set(this, 0);
+        handshakeTimeUpdater.set(this, 0);
+        maxHandshakeTimeUpdater.set(this, 0);
+        taskCountUpdater.set(this, 0);
+        taskQueueTimeUpdater.set(this, 0);
+        maxTaskQueueTimeUpdater.set(this, 0);
+        for (int i = 0; i < histogram.length(); ++i) {
+            histogram.set(i, 0);
+        }
+    }
+}
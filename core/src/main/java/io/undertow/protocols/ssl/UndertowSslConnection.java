@@ -52,10 +52,20 @@ class UndertowSslConnection extends SslConnection {
      * @param delegate the underlying connection
      */
     UndertowSslConnection(StreamConnection delegate, SSLEngine engine, ByteBufferPool bufferPool, Executor delegatedTaskExecutor) {
+        this(delegate, engine, bufferPool, delegatedTaskExecutor, null, SslConduit.BATCH_RECORDS);
+    }
+
+    /**
+     * Construct a new instance that records its initial handshake in the given listener statistics.
+     *
+     * @param delegate the underlying connection
+     * @param batchRecords if several TLS records are processed per engine pass
+     */
+    UndertowSslConnection(StreamConnection delegate, SSLEngine engine, ByteBufferPool bufferPool, Executor delegatedTaskExecutor, SslHandshakeStatisticsImpl handshakeStatistics, boolean batchRecords) {
         super(delegate.getIoThread());
         this.delegate = delegate;
         this.engine = engine;
-        sslConduit = new SslConduit(this, delegate, engine, delegatedTaskExecutor, bufferPool, new HandshakeCallback());
+        sslConduit = new SslConduit(this, delegate, engine, delegatedTaskExecutor, bufferPool, new HandshakeCallback(), handshakeStatistics, batchRecords);
         setSourceConduit(sslConduit);
         setSinkConduit(sslConduit);
     }
@@ -79,6 +79,8 @@ public class UndertowXnioSsl extends XnioSsl {
 
     private final ByteBufferPool bufferPool;
     private final Executor delegatedTaskExecutor;
+    private final SslHandshakeStatisticsImpl handshakeStatistics;
+    private final boolean batchRecords;
     private volatile SSLContext sslContext;
 
     /**
@@ -153,6 +155,9 @@ public class UndertowXnioSsl extends XnioSsl {
         this.bufferPool = bufferPool;
         this.sslContext = sslContext;
         this.delegatedTaskExecutor = delegatedTaskExecutor;
+        this.handshakeStatistics = new SslHandshakeStatisticsImpl(optionMap.get(UndertowOptions.SSL_MAX_CONCURRENT_HANDSHAKES, -1),
+                optionMap.get(UndertowOptions.SSL_HANDSHAKE_TIMEOUT, UndertowOptions.DEFAULT_SSL_HANDSHAKE_TIMEOUT));
+        this.batchRecords = optionMap.get(UndertowOptions.SSL_BATCH_RECORDS, SslConduit.BATCH_RECORDS);
     }
 
     /**
@@ -174,6 +179,26 @@ public class UndertowXnioSsl extends XnioSsl {
         return delegatedTaskExecutor;
     }
 
+    /**
+     * Get the handshake statistics of the connections accepted by servers created by this instance.
+     *
+     * @return the handshake statistics
+     */
+    public SslHandshakeStatistics getHandshakeStatistics() {
+        return handshakeStatistics;
+    }
+
+    SslHandshakeStatisticsImpl getHandshakeStatisticsImpl() {
+        return handshakeStatistics;
+    }
+
+    /**
+     * @return <code>true</code> if the connections created by this instance process several TLS records per engine pass
+     */
+    boolean isBatchRecords() {
+        return batchRecords;
+    }
+
     /**
      * Get the SSL engine for a given connection.
      *
@@ -234,11 +259,11 @@ public class UndertowXnioSsl extends XnioSsl {
     }
 
     public SslConnection wrapExistingConnection(StreamConnection connection, OptionMap optionMap) {
-        return new UndertowSslConnection(connection, createSSLEngine(sslContext, optionMap, (InetSocketAddress) connection.getPeerAddress(), true), bufferPool, delegatedTaskExecutor);
+        return new UndertowSslConnection(connection, createSSLEngine(sslContext, optionMap, (InetSocketAddress) connection.getPeerAddress(), true), bufferPool, delegatedTaskExecutor, null, batchRecords);
     }
 
     public SslConnection wrapExistingConnection(StreamConnection connection, OptionMap optionMap, boolean clientMode) {
-        return new UndertowSslConnection(connection, createSSLEngine(sslContext, optionMap, (InetSocketAddress) connection.getPeerAddress(), clientMode), bufferPool, delegatedTaskExecutor);
+        return new UndertowSslConnection(connection, createSSLEngine(sslContext, optionMap, (InetSocketAddress) connection.getPeerAddress(), clientMode), bufferPool, delegatedTaskExecutor, null, batchRecords);
     }
 
     public SslConnection wrapExistingConnection(StreamConnection connection, OptionMap optionMap, URI destinationURI) {
@@ -248,7 +273,7 @@ public class UndertowXnioSsl extends XnioSsl {
             setSNIHostName(connection.getPeerAddress(InetSocketAddress.class), optionMap, sslParameters);
             sslEngine.setSSLParameters(sslParameters);
         }
-        return new UndertowSslConnection(connection, sslEngine, bufferPool, delegatedTaskExecutor);
+        return new UndertowSslConnection(connection, sslEngine, bufferPool, delegatedTaskExecutor, null, batchRecords);
     }
 
     private InetSocketAddress getPeerAddress(URI destinationURI) {
@@ -491,7 +516,7 @@ public class UndertowXnioSsl extends XnioSsl {
 
                 sslEngine.setSSLParameters(params);
 
-                final SslConnection wrappedConnection = new UndertowSslConnection(connection, sslEngine, bufferPool, delegatedTaskExecutor);
+                final SslConnection wrappedConnection = new UndertowSslConnection(connection, sslEngine, bufferPool, delegatedTaskExecutor, null, batchRecords);
                 if (!futureResult.setResult(wrappedConnection)) {
                     IoUtils.safeClose(connection);
                 } else {
@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.security.impl;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.undertow.UndertowMessages;
+import io.undertow.security.idm.Account;
+import io.undertow.security.idm.IdentityManager;
+import io.undertow.server.handlers.cache.LRUCache;
+
+/**
+ * A cache of verified credentials for {@link BasicAuthenticationMechanism}, so that clients that send the same
+ * credentials with every request do not have the password hashed by the identity manager every time.
+ * <p>
+ * Entries are keyed by a HMAC of the raw authorization header with a random key that is generated when the cache is
+ * created, so neither the password nor an unsalted hash of it is retained. Only successful verifications are cached.
+ * On a hit the cached account is checked with {@link IdentityManager#verify(Account)}, which gives the identity
+ * manager the chance to reject accounts that have since been locked, in the same way as for accounts cached in the
+ * session.
+ * <p>
+ * Entries expire after the maximum age, and can be removed early with {@link #invalidate(String)} when a password is
+ * changed or an account is removed.
+ */
+public class BasicAuthenticationCache {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final LRUCache<Key, Account> cache;
+    private final ThreadLocal<Mac> mac;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries The maximum number of cached credentials
+     * @param maxAge     The time in milliseconds after which a credential is verified again, or
+     *                   {@link LRUCache#MAX_AGE_NO_EXPIRY} if it is only verified again once it has been evicted
+     */
+    public BasicAuthenticationCache(final int maxEntries, final int maxAge) {
+        if (maxEntries < 1) {
+            throw UndertowMessages.MESSAGES.invalidCredentialCacheParameter("maxEntries", maxEntries);
+        }
+        if (maxAge < 1 && maxAge != LRUCache.MAX_AGE_NO_EXPIRY) {
+            throw UndertowMessages.MESSAGES.invalidCredentialCacheParameter("maxAge", maxAge);
+        }
+        this.cache = new LRUCache<>(maxEntries, maxAge);
+        final byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        final Mac prototype;
+        try {
+            prototype = Mac.getInstance(ALGORITHM);
+            prototype.init(new SecretKeySpec(secret, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        //Mac instances are not thread safe
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                return (Mac) prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the key for an authorization header. The charset is part of the key as it determines the password that
+     * the header is decoded to.
+     *
+     * @param header  The value of the authorization header
+     * @param charset The charset the credentials are decoded with
+     * @return The key
+     */
+    Object key(final String header, final Charset charset) {
+        final Mac mac = this.mac.get();
+        mac.update(charset.name().getBytes(StandardCharsets.US_ASCII));
+        mac.update((byte) 0);
+        mac.update(header.getBytes(StandardCharsets.ISO_8859_1));
+        return new Key(mac.doFinal());
+    }
+
+    /**
+     * Returns the account that was verified with the credentials, if it is still valid.
+     *
+     * @param key             The key of the credentials
+     * @param identityManager The identity manager that verified the credentials
+     * @return The account, or <code>null</code> if the credentials must be verified
+     */
+    Account get(final Object key, final IdentityManager identityManager) {
+        final Account cached = cache.get((Key) key);
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        final Account account = identityManager.verify(cached);
+        if (account == null) {
+            cache.remove((Key) key);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return account;
+    }
+
+    void add(final Object key, final Account account) {
+        cache.add((Key) key, account);
+    }
+
+    /**
+     * Removes the cached credentials of a user, for example after the password of the user has been changed.
+     *
+     * @param userName The name of the user
+     */
+    public void invalidate(final String userName) {
+        for (Key key : cache.keySet()) {
+            final Account account = cache.peek(key);
+            if (account != null && account.getPrincipal() != null && userName.equals(account.getPrincipal().getName())) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached credentials.
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    /**
+     * @return The number of requests that were authenticated from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of requests that had to be verified by the identity manager
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of cached credentials, including expired credentials that have not been removed yet
+     */
+    public int size() {
+        return cache.keySet().size();
+    }
+
+    private static final class Key {
+
+        private final byte[] hash;
+        private final int hashCode;
+
+        Key(final byte[] hash) {
+            this.hash = hash;
+            this.hashCode = (hash[0] & 0xFF) << 24 | (hash[1] & 0xFF) << 16 | (hash[2] & 0xFF) << 8 | (hash[3] & 0xFF);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Key && MessageDigest.isEqual(hash, ((Key) o).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
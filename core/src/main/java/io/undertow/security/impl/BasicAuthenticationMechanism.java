@@ -70,6 +70,18 @@ public class BasicAuthenticationMechanism implements AuthenticationMechanism {
      * This list must have an even number of elements, as it is interpreted as pattern,charset,pattern,charset,...
      */
     public static final String USER_AGENT_CHARSETS = "user-agent-charsets";
+    /**
+     * The maximum number of verified credentials to cache, if this is not set credentials are not cached.
+     *
+     * @see BasicAuthenticationCache
+     */
+    public static final String CREDENTIAL_CACHE_SIZE = "credential-cache-size";
+    /**
+     * The time in milliseconds that verified credentials are cached for, the default is one minute.
+     */
+    public static final String CREDENTIAL_CACHE_MAX_AGE = "credential-cache-max-age";
+
+    private static final int DEFAULT_CREDENTIAL_CACHE_MAX_AGE = 60000;
 
     private final String name;
     private final String challenge;
@@ -91,6 +103,7 @@ public class BasicAuthenticationMechanism implements AuthenticationMechanism {
 
     private final Charset charset;
     private final Map<Pattern, Charset> userAgentCharsets;
+    private final BasicAuthenticationCache credentialCache;
 
     public BasicAuthenticationMechanism(final String realmName) {
         this(realmName, "BASIC");
@@ -108,12 +121,28 @@ public class BasicAuthenticationMechanism implements AuthenticationMechanism {
     }
 
     public BasicAuthenticationMechanism(final String realmName, final String mechanismName, final boolean silent, final IdentityManager identityManager, Charset charset, Map<Pattern, Charset> userAgentCharsets) {
+        this(realmName, mechanismName, silent, identityManager, charset, userAgentCharsets, null);
+    }
+
+    /**
+     * @param credentialCache The cache of verified credentials, or <code>null</code> to verify the credentials of every
+     *                        request
+     */
+    public BasicAuthenticationMechanism(final String realmName, final String mechanismName, final boolean silent, final IdentityManager identityManager, Charset charset, Map<Pattern, Charset> userAgentCharsets, final BasicAuthenticationCache credentialCache) {
         this.challenge = BASIC_PREFIX + "realm=\"" + realmName + "\"";
         this.name = mechanismName;
         this.silent = silent;
         this.identityManager = identityManager;
         this.charset = charset;
         this.userAgentCharsets = Collections.unmodifiableMap(new LinkedHashMap<>(userAgentCharsets));
+        this.credentialCache = credentialCache;
+    }
+
+    /**
+     * @return The cache of verified credentials, or <code>null</code> if credentials are not cached
+     */
+    public BasicAuthenticationCache getCredentialCache() {
+        return credentialCache;
     }
 
     @SuppressWarnings("deprecation")
@@ -132,24 +161,35 @@ public class BasicAuthenticationMechanism implements AuthenticationMechanism {
             for (String current : authHeaders) {
                 if (current.toLowerCase(Locale.ENGLISH).startsWith(LOWERCASE_BASIC_PREFIX)) {
 
+                    Charset charset = this.charset;
+                    if(!userAgentCharsets.isEmpty()) {
+                        String ua = exchange.getRequestHeaders().getFirst(Headers.USER_AGENT);
+                        if(ua != null) {
+                            for (Map.Entry<Pattern, Charset> entry : userAgentCharsets.entrySet()) {
+                                if(entry.getKey().matcher(ua).find()) {
+                                    charset = entry.getValue();
+                                    break;
+                                }
+                            }
+                        }
+                    }
+
+                    Object cacheKey = null;
+                    if (credentialCache != null) {
+                        cacheKey = credentialCache.key(current, charset);
+                        Account account = credentialCache.get(cacheKey, getIdentityManager(securityContext));
+                        if (account != null) {
+                            UndertowLogger.SECURITY_LOGGER.debugf("Found cached basic auth credentials for %s in %s", account.getPrincipal(), exchange);
+                            securityContext.authenticationComplete(account, name, false);
+                            return AuthenticationMechanismOutcome.AUTHENTICATED;
+                        }
+                    }
+
                     String base64Challenge = current.substring(PREFIX_LENGTH);
                     String plainChallenge = null;
                     try {
                         ByteBuffer decode = FlexBase64.decode(base64Challenge);
 
-                        Charset charset = this.charset;
-                        if(!userAgentCharsets.isEmpty()) {
-                            String ua = exchange.getRequestHeaders().getFirst(Headers.USER_AGENT);
-                            if(ua != null) {
-                                for (Map.Entry<Pattern, Charset> entry : userAgentCharsets.entrySet()) {
-                                    if(entry.getKey().matcher(ua).find()) {
-                                        charset = entry.getValue();
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-
                         plainChallenge = new String(decode.array(), decode.arrayOffset(), decode.limit(), charset);
                         UndertowLogger.SECURITY_LOGGER.debugf("Found basic auth header (decoded using charset %s) in %s", charset, exchange);
                     } catch (IOException e) {
@@ -166,6 +206,9 @@ public class BasicAuthenticationMechanism implements AuthenticationMechanism {
                             final AuthenticationMechanismOutcome result;
                             Account account = idm.verify(userName, credential);
                             if (account != null) {
+                                if (cacheKey != null) {
+                                    credentialCache.add(cacheKey, account);
+                                }
                                 securityContext.authenticationComplete(account, name, false);
                                 result = AuthenticationMechanismOutcome.AUTHENTICATED;
                             } else {
@@ -237,7 +280,14 @@ public class BasicAuthenticationMechanism implements AuthenticationMechanism {
                 }
             }
 
-            return new BasicAuthenticationMechanism(realm, mechanismName, silent != null && silent.equals("true"), identityManager, charset, userAgentCharsets);
+            BasicAuthenticationCache credentialCache = null;
+            String cacheSize = properties.get(CREDENTIAL_CACHE_SIZE);
+            if (cacheSize != null) {
+                String maxAge = properties.get(CREDENTIAL_CACHE_MAX_AGE);
+                credentialCache = new BasicAuthenticationCache(Integer.parseInt(cacheSize), maxAge == null ? DEFAULT_CREDENTIAL_CACHE_MAX_AGE : Integer.parseInt(maxAge));
+            }
+
+            return new BasicAuthenticationMechanism(realm, mechanismName, silent != null && silent.equals("true"), identityManager, charset, userAgentCharsets, credentialCache);
         }
     }
 
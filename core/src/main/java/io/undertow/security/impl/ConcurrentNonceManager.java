@@ -0,0 +1,418 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.security.impl;
+
+import static io.undertow.UndertowMessages.MESSAGES;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import io.undertow.security.api.SessionNonceManager;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.FlexBase64;
+
+/**
+ * A {@link SessionNonceManager} for a single host that does not serialize requests, intended as a replacement for
+ * {@link SimpleNonceManager} when there is a lot of Digest authenticated traffic.
+ * <p>
+ * Nonces have the same format and lifetime as those of the {@link SimpleNonceManager}. The nonces that are in use, the
+ * single use nonces that have been used and the mappings from replaced nonces to their replacements are held in
+ * concurrent maps. Each nonce tracks the nonce counts that have been used with a sliding window of
+ * {@value #NONCE_COUNT_WINDOW} counts, so concurrent requests from the same client may arrive out of order but each
+ * count is only accepted once. The window is updated with a compare and set.
+ * <p>
+ * Nonces are expired in batches by a timer wheel with one slot per second rather than by a task per nonce. The wheel
+ * is advanced by whichever request first notices that a second has passed, so no thread or IO thread is needed.
+ */
+public class ConcurrentNonceManager implements SessionNonceManager {
+
+    private static final String DEFAULT_HASH_ALG = "MD5";
+
+    /**
+     * After a nonce is issued the first authentication response MUST be received within 5 minutes.
+     */
+    private static final long FIRST_USE_TIMEOUT = 5 * 60 * 1000;
+
+    /**
+     * Overall a nonce is valid from 15 minutes from first being issued, if used after this then a new nonce will be issued.
+     */
+    private static final long OVERALL_TIMEOUT = 15 * 60 * 1000;
+
+    /**
+     * A previously used nonce will be allowed to remain in the known nonces for up to 5 minutes, see
+     * {@link SimpleNonceManager}.
+     */
+    private static final long CACHE_TIME_POST_EXPIRY = 5 * 60 * 1000;
+
+    private static final int NONCE_COUNT_WINDOW = 32;
+
+    private static final long TICK = 1000;
+    private static final int SLOTS = (int) ((OVERALL_TIMEOUT + CACHE_TIME_POST_EXPIRY) / TICK) + 2;
+
+    private static final SecureRandom rand = new SecureRandom();
+
+    private static final AtomicLongFieldUpdater<ConcurrentNonceManager> expiredTickUpdater = AtomicLongFieldUpdater.newUpdater(ConcurrentNonceManager.class, "expiredTick");
+
+    /**
+     * The nonces that have been used without a nonce count, these are single use.
+     */
+    private final ConcurrentMap<String, Boolean> invalidNonces = new ConcurrentHashMap<>();
+
+    /**
+     * The nonces that are in use with a nonce count.
+     */
+    private final ConcurrentMap<String, Nonce> knownNonces = new ConcurrentHashMap<>();
+
+    /**
+     * Maps replaced nonces to their replacement, the mapping is removed when the replacement expires.
+     */
+    private final ConcurrentMap<String, String> forwardMapping = new ConcurrentHashMap<>();
+
+    private final ConcurrentLinkedQueue<Expiry>[] wheel;
+
+    /**
+     * The last tick that has been expired
+     */
+    private volatile long expiredTick = System.currentTimeMillis() / TICK;
+
+    private final String secret;
+    private final String hashAlg;
+    private final int hashLength;
+
+    public ConcurrentNonceManager() {
+        this(DEFAULT_HASH_ALG);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentNonceManager(final String hashAlg) {
+        MessageDigest digest = getDigest(hashAlg);
+        this.hashAlg = hashAlg;
+        this.hashLength = digest.getDigestLength();
+
+        byte[] secretBytes = new byte[32];
+        rand.nextBytes(secretBytes);
+        this.secret = FlexBase64.encodeString(digest.digest(secretBytes), false);
+
+        this.wheel = new ConcurrentLinkedQueue[SLOTS];
+        for (int i = 0; i < SLOTS; ++i) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    private static MessageDigest getDigest(final String hashAlg) {
+        try {
+            return MessageDigest.getInstance(hashAlg);
+        } catch (NoSuchAlgorithmException e) {
+            throw MESSAGES.hashAlgorithmNotFound(hashAlg);
+        }
+    }
+
+    @Override
+    public String nextNonce(final String lastNonce, final HttpServerExchange exchange) {
+        final long now = System.currentTimeMillis();
+        expire(now);
+        if (lastNonce == null || invalidNonces.containsKey(lastNonce)) {
+            return createNewNonce(now, null).nonce;
+        }
+
+        String nonce = lastNonce;
+        String next;
+        while ((next = forwardMapping.get(nonce)) != null) {
+            nonce = next;
+        }
+        final Nonce value = knownNonces.get(nonce);
+        if (value == null) {
+            // Most likely the nonce mapped to has also expired so just send a new nonce.
+            return createNewNonce(now, null).nonce;
+        }
+        // The cache time post expiry is not included here as this is our opportunity to inform the client to use a
+        // replacement nonce without a stale round trip.
+        if (value.timeStamp >= now - FIRST_USE_TIMEOUT && value.timeStamp <= now) {
+            return nonce;
+        }
+
+        final Nonce replacement = createNewNonce(now, nonce);
+        replacement.sessionKey = value.sessionKey;
+        // The replacement is known before the forward mapping is visible, so requests that follow the mapping find it
+        knownNonces.put(replacement.nonce, replacement);
+        final String existing = forwardMapping.putIfAbsent(nonce, replacement.nonce);
+        if (existing != null) {
+            // Another request replaced the nonce first
+            knownNonces.remove(replacement.nonce);
+            return existing;
+        }
+        knownNonces.remove(nonce, value);
+        schedule(new Expiry(replacement.timeStamp + OVERALL_TIMEOUT + CACHE_TIME_POST_EXPIRY, replacement.nonce, replacement));
+        return replacement.nonce;
+    }
+
+    @Override
+    public boolean validateNonce(final String nonce, final int nonceCount, final HttpServerExchange exchange) {
+        final long now = System.currentTimeMillis();
+        expire(now);
+        if (nonceCount < 0) {
+            if (invalidNonces.containsKey(nonce)) {
+                // Without a nonce count the nonce is only usable once.
+                return false;
+            }
+        } else {
+            final Nonce value = knownNonces.get(nonce);
+            if (value != null) {
+                return validateNonceWithCount(value, nonceCount, now);
+            } else if (forwardMapping.containsKey(nonce)) {
+                // A replacement nonce has already been issued.
+                return false;
+            }
+        }
+
+        // This is not a nonce currently known to us so start the validation process.
+        final Nonce value = verifyUnknownNonce(nonce);
+        if (value == null) {
+            return false;
+        }
+        // The first use must be within the first use timeout, overall validity is checked in validateNonceWithCount.
+        if (value.timeStamp < now - FIRST_USE_TIMEOUT || value.timeStamp > now) {
+            return false;
+        }
+
+        if (nonceCount < 0) {
+            // Allow a single use but reject all further uses.
+            if (invalidNonces.putIfAbsent(nonce, Boolean.TRUE) != null) {
+                return false;
+            }
+            schedule(new Expiry(value.timeStamp + FIRST_USE_TIMEOUT, nonce, null));
+            return true;
+        }
+        final Nonce existing = knownNonces.putIfAbsent(nonce, value);
+        if (existing != null) {
+            return validateNonceWithCount(existing, nonceCount, now);
+        }
+        schedule(new Expiry(value.timeStamp + OVERALL_TIMEOUT + CACHE_TIME_POST_EXPIRY, nonce, value));
+        return validateNonceWithCount(value, nonceCount, now);
+    }
+
+    private static boolean validateNonceWithCount(final Nonce value, final int nonceCount, final long now) {
+        // The cache time post expiry is included, when nextNonce is subsequently called it will decide if the nonce
+        // should be replaced.
+        if (value.timeStamp < now - (OVERALL_TIMEOUT + CACHE_TIME_POST_EXPIRY) || value.timeStamp > now) {
+            return false;
+        }
+        return value.useNonceCount(nonceCount);
+    }
+
+    @Override
+    public void associateHash(final String nonce, final byte[] hash) {
+        final Nonce value = knownNonces.get(nonce);
+        if (value != null) {
+            value.sessionKey = hash;
+        }
+    }
+
+    @Override
+    public byte[] lookupHash(final String nonce) {
+        final Nonce value = knownNonces.get(nonce);
+        return value == null ? null : value.sessionKey;
+    }
+
+    private Nonce createNewNonce(final long timeStamp, final String previousNonce) {
+        byte[] prefix = new byte[8];
+        // A secure random is not required here as this is used purely to minimise the chance of collisions should two
+        // nonces be generated at exactly the same time.
+        ThreadLocalRandom.current().nextBytes(prefix);
+        byte[] now = Long.toString(timeStamp).getBytes(StandardCharsets.UTF_8);
+        return new Nonce(createNonce(prefix, now), timeStamp, previousNonce);
+    }
+
+    /**
+     * Verifies that a nonce was created by this nonce manager, by recreating it from the embedded prefix and timestamp.
+     * This does not validate that the timestamp is within a valid time period.
+     */
+    private Nonce verifyUnknownNonce(final String nonce) {
+        byte[] complete;
+        int offset;
+        int length;
+        try {
+            ByteBuffer decode = FlexBase64.decode(nonce);
+            complete = decode.array();
+            offset = decode.arrayOffset();
+            length = decode.limit() - offset;
+        } catch (IOException e) {
+            throw MESSAGES.invalidBase64Token(e);
+        }
+
+        int timeStampLength = complete[offset + 8];
+        if (hashLength > 0) {
+            int expectedLength = 9 + timeStampLength + hashLength;
+            if (length != expectedLength || timeStampLength + 1 >= length) {
+                throw MESSAGES.invalidNonceReceived();
+            }
+        }
+
+        byte[] prefix = new byte[8];
+        System.arraycopy(complete, offset, prefix, 0, 8);
+        byte[] timeStampBytes = new byte[timeStampLength];
+        System.arraycopy(complete, offset + 9, timeStampBytes, 0, timeStampBytes.length);
+
+        String expectedNonce = createNonce(prefix, timeStampBytes);
+        if (expectedNonce.equals(nonce)) {
+            try {
+                long timeStamp = Long.parseLong(new String(timeStampBytes, StandardCharsets.UTF_8));
+                return new Nonce(expectedNonce, timeStamp, null);
+            } catch (NumberFormatException dropped) {
+            }
+        }
+        return null;
+    }
+
+    private String createNonce(final byte[] prefix, final byte[] timeStamp) {
+        MessageDigest digest = getDigest(hashAlg);
+        digest.update(prefix);
+        digest.update(timeStamp);
+        byte[] hashedPart = digest.digest(secret.getBytes(StandardCharsets.UTF_8));
+
+        byte[] complete = new byte[9 + timeStamp.length + hashedPart.length];
+        System.arraycopy(prefix, 0, complete, 0, 8);
+        complete[8] = (byte) timeStamp.length;
+        System.arraycopy(timeStamp, 0, complete, 9, timeStamp.length);
+        System.arraycopy(hashedPart, 0, complete, 9 + timeStamp.length, hashedPart.length);
+        return FlexBase64.encodeString(complete, false);
+    }
+
+    private void schedule(final Expiry expiry) {
+        // never schedule into a slot that has already been expired, or the entry would wait a full rotation
+        final long tick = Math.max(expiry.tick, expiredTick + 1);
+        wheel[(int) (tick % SLOTS)].add(expiry);
+    }
+
+    /**
+     * Expires everything up to the current tick, if another thread is not already doing so.
+     */
+    private void expire(final long now) {
+        final long tick = now / TICK;
+        final long last = expiredTick;
+        if (tick <= last || !expiredTickUpdater.compareAndSet(this, last, tick)) {
+            return;
+        }
+        // if nothing has been expired for a full rotation every slot is checked once
+        final long from = Math.max(last + 1, tick - SLOTS + 1);
+        for (long i = from; i <= tick; ++i) {
+            final Iterator<Expiry> it = wheel[(int) (i % SLOTS)].iterator();
+            while (it.hasNext()) {
+                final Expiry expiry = it.next();
+                if (expiry.tick <= tick) {
+                    it.remove();
+                    expire(expiry);
+                }
+            }
+        }
+    }
+
+    private void expire(final Expiry expiry) {
+        if (expiry.known == null) {
+            invalidNonces.remove(expiry.nonce);
+        } else {
+            knownNonces.remove(expiry.nonce, expiry.known);
+            if (expiry.known.previousNonce != null) {
+                forwardMapping.remove(expiry.known.previousNonce, expiry.nonce);
+            }
+        }
+    }
+
+    /**
+     * The state associated with a nonce that is in use.
+     */
+    private static final class Nonce {
+
+        private static final AtomicLongFieldUpdater<Nonce> stateUpdater = AtomicLongFieldUpdater.newUpdater(Nonce.class, "state");
+
+        /**
+         * No nonce count has been used
+         */
+        private static final long NO_COUNT = -1L << 32;
+
+        private final String nonce;
+        private final long timeStamp;
+        private final String previousNonce;
+        private volatile byte[] sessionKey;
+        /**
+         * The highest nonce count that has been used in the upper 32 bits, and in the lower 32 bits a bit for it and
+         * each of the counts before it that has been used, with the highest count as the lowest bit.
+         */
+        private volatile long state = NO_COUNT;
+
+        private Nonce(final String nonce, final long timeStamp, final String previousNonce) {
+            this.nonce = nonce;
+            this.timeStamp = timeStamp;
+            this.previousNonce = previousNonce;
+        }
+
+        /**
+         * @return <code>true</code> if the nonce count has not been used before and is within the window
+         */
+        boolean useNonceCount(final int nonceCount) {
+            for (;;) {
+                final long state = this.state;
+                final int highest = (int) (state >> 32);
+                final int window = (int) state;
+                final long newState;
+                if (nonceCount > highest) {
+                    final long shift = (long) nonceCount - highest;
+                    final int newWindow = shift >= NONCE_COUNT_WINDOW ? 1 : (window << shift) | 1;
+                    newState = ((long) nonceCount << 32) | (newWindow & 0xFFFFFFFFL);
+                } else {
+                    final int offset = highest - nonceCount;
+                    if (offset >= NONCE_COUNT_WINDOW || (window & (1 << offset)) != 0) {
+                        return false;
+                    }
+                    newState = (state & 0xFFFFFFFF00000000L) | ((window | (1 << offset)) & 0xFFFFFFFFL);
+                }
+                if (stateUpdater.compareAndSet(this, state, newState)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static final class Expiry {
+
+        private final long tick;
+        private final String nonce;
+        /**
+         * The known nonce to remove, or <code>null</code> if this is a single use nonce
+         */
+        private final Nonce known;
+
+        private Expiry(final long time, final String nonce, final Nonce known) {
+            // round up so nothing expires early
+            this.tick = (time + TICK - 1) / TICK;
+            this.nonce = nonce;
+            this.known = known;
+        }
+    }
+}
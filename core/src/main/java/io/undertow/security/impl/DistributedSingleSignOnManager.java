@@ -0,0 +1,307 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.security.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import io.undertow.security.idm.Account;
+import io.undertow.server.handlers.cache.LRUCache;
+import io.undertow.server.session.SecureRandomSessionIdGenerator;
+import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionManager;
+import org.jboss.logging.Logger;
+
+/**
+ * A {@link SingleSignOnManager} that keeps single sign on entries in a {@link SingleSignOnStore} shared by all nodes of
+ * a cluster, so requests do not need to be routed to the node where the user logged in.
+ * <p>
+ * Entries that have been read are kept in a near cache on each node, so the store is only read the first time a single
+ * sign on is seen on a node and after it has changed. The store notifies every node when an entry changes, which
+ * removes it from the near cache. Entries also expire from the near cache after a maximum age, which bounds how stale
+ * an entry can be if a notification is lost.
+ * <p>
+ * As session objects are local to a node the sessions of a single sign on are recorded by deployment name and id, and
+ * are looked up in the session managers of this node that have sessions associated with a single sign on. Whether a
+ * single sign on still has sessions is decided by the sessions recorded in the store, so a session that times out on
+ * one node does not end the single sign on while it has sessions on other nodes. When a single sign on is removed, for
+ * example by a logout, every node invalidates its own sessions of it.
+ */
+public class DistributedSingleSignOnManager implements SingleSignOnManager, AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(DistributedSingleSignOnManager.class);
+
+    private static final SecureRandomSessionIdGenerator SECURE_RANDOM_SESSION_ID_GENERATOR = new SecureRandomSessionIdGenerator();
+
+    private static final int DEFAULT_NEAR_CACHE_SIZE = 10000;
+    private static final int DEFAULT_NEAR_CACHE_MAX_AGE = 60000;
+
+    private final SingleSignOnStore store;
+    private final LRUCache<String, SingleSignOnStore.Entry> nearCache;
+    /**
+     * Incremented on every invalidation, so an entry that was read from the store while it was being changed is not
+     * cached
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+    private final SingleSignOnStore.InvalidationListener listener = new SingleSignOnStore.InvalidationListener() {
+        @Override
+        public void invalidated(final String id) {
+            DistributedSingleSignOnManager.this.invalidated(id);
+        }
+
+        @Override
+        public void removed(final String id, final SingleSignOnStore.Entry entry) {
+            DistributedSingleSignOnManager.this.invalidated(id);
+            invalidateSessions(id, entry);
+        }
+    };
+    private final ConcurrentMap<String, Reference<SessionManager>> sessionManagers = new ConcurrentHashMap<>();
+
+    public DistributedSingleSignOnManager(final SingleSignOnStore store) {
+        this(store, DEFAULT_NEAR_CACHE_SIZE, DEFAULT_NEAR_CACHE_MAX_AGE);
+    }
+
+    /**
+     * @param store             The store that is shared by all nodes
+     * @param nearCacheSize     The maximum number of entries that are cached on this node
+     * @param nearCacheMaxAge   The time in milliseconds after which a cached entry is read from the store again
+     */
+    public DistributedSingleSignOnManager(final SingleSignOnStore store, final int nearCacheSize, final int nearCacheMaxAge) {
+        this.store = store;
+        this.nearCache = new LRUCache<>(nearCacheSize, nearCacheMaxAge);
+        store.addInvalidationListener(listener);
+    }
+
+    @Override
+    public SingleSignOn createSingleSignOn(final Account account, final String mechanism) {
+        final SingleSignOnStore.Entry entry = new SingleSignOnStore.Entry(account, mechanism);
+        String id;
+        do {
+            id = SECURE_RANDOM_SESSION_ID_GENERATOR.createSessionId();
+        } while (!store.putIfAbsent(id, entry));
+        if (log.isTraceEnabled()) {
+            log.tracef("Creating SSO ID %s for Principal %s and Roles %s.", id, account.getPrincipal().getName(), account.getRoles().toString());
+        }
+        nearCache.add(id, entry);
+        return new DistributedSingleSignOn(id, entry);
+    }
+
+    @Override
+    public SingleSignOn findSingleSignOn(final String ssoId) {
+        SingleSignOnStore.Entry entry = nearCache.get(ssoId);
+        if (entry == null) {
+            final long invalidations = this.invalidations.get();
+            entry = store.get(ssoId);
+            if (entry == null) {
+                return null;
+            }
+            if (invalidations == this.invalidations.get()) {
+                nearCache.add(ssoId, entry);
+            }
+        }
+        return new DistributedSingleSignOn(ssoId, entry);
+    }
+
+    @Override
+    public void removeSingleSignOn(final SingleSignOn sso) {
+        if (log.isTraceEnabled()) {
+            log.tracef("Removing SSO ID %s.", sso.getId());
+        }
+        store.remove(sso.getId());
+        nearCache.remove(sso.getId());
+    }
+
+    /**
+     * Stops listening for invalidations from the store.
+     */
+    @Override
+    public void close() {
+        store.removeInvalidationListener(listener);
+        nearCache.clear();
+    }
+
+    private void invalidated(final String id) {
+        invalidations.incrementAndGet();
+        nearCache.remove(id);
+    }
+
+    /**
+     * Invalidates the sessions of this node that belong to a single sign on that has been removed.
+     */
+    private void invalidateSessions(final String id, final SingleSignOnStore.Entry entry) {
+        for (Map.Entry<String, Set<String>> sessions : entry.getSessions().entrySet()) {
+            final SessionManager manager = getSessionManager(sessions.getKey());
+            if (manager == null) {
+                continue;
+            }
+            for (String sessionId : sessions.getValue()) {
+                final Session session = manager.getSession(sessionId);
+                if (session != null) {
+                    if (log.isTraceEnabled()) {
+                        log.tracef("Invalidating session %s of removed SSO ID %s.", sessionId, id);
+                    }
+                    try {
+                        session.invalidate(null);
+                    } catch (IllegalStateException e) {
+                        // already invalidated by another request
+                    }
+                }
+            }
+        }
+    }
+
+    private SessionManager getSessionManager(final String deploymentName) {
+        final Reference<SessionManager> ref = sessionManagers.get(deploymentName);
+        return ref == null ? null : ref.get();
+    }
+
+    private final class DistributedSingleSignOn implements SingleSignOn {
+
+        private final String id;
+        private SingleSignOnStore.Entry entry;
+
+        DistributedSingleSignOn(final String id, final SingleSignOnStore.Entry entry) {
+            this.id = id;
+            this.entry = entry;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public Account getAccount() {
+            return entry.getAccount();
+        }
+
+        @Override
+        public String getMechanismName() {
+            return entry.getMechanismName();
+        }
+
+        /**
+         * @return The sessions of the single sign on that are on this node
+         */
+        @Override
+        public Iterator<Session> iterator() {
+            final List<Session> sessions = new ArrayList<>();
+            for (Map.Entry<String, Set<String>> ids : entry.getSessions().entrySet()) {
+                final SessionManager manager = getSessionManager(ids.getKey());
+                if (manager != null) {
+                    for (String sessionId : ids.getValue()) {
+                        final Session result = manager.getSession(sessionId);
+                        if (result != null) {
+                            sessions.add(result);
+                        }
+                    }
+                }
+            }
+            return sessions.iterator();
+        }
+
+        /**
+         * @return <code>true</code> if the single sign on has no sessions on any node
+         */
+        @Override
+        public boolean isEmpty() {
+            return entry.isEmpty();
+        }
+
+        @Override
+        public boolean contains(final Session session) {
+            return entry.containsSession(session.getSessionManager().getDeploymentName(), session.getId());
+        }
+
+        @Override
+        public void add(final Session session) {
+            final SessionManager manager = session.getSessionManager();
+            final String deploymentName = manager.getDeploymentName();
+            if (getSessionManager(deploymentName) != manager) {
+                sessionManagers.put(deploymentName, new WeakReference<>(manager));
+            }
+            final String sessionId = session.getId();
+            update(entry -> entry.withSession(deploymentName, sessionId));
+        }
+
+        @Override
+        public void remove(final Session session) {
+            final String deploymentName = session.getSessionManager().getDeploymentName();
+            final String sessionId = session.getId();
+            update(entry -> entry.withoutSession(deploymentName, sessionId));
+        }
+
+        @Override
+        public Session getSession(final SessionManager manager) {
+            final Set<String> ids = entry.getSessions().get(manager.getDeploymentName());
+            if (ids != null) {
+                for (String sessionId : ids) {
+                    final Session session = manager.getSession(sessionId);
+                    if (session != null) {
+                        return session;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void update(final UnaryOperator<SingleSignOnStore.Entry> change) {
+            SingleSignOnStore.Entry current = entry;
+            for (;;) {
+                final SingleSignOnStore.Entry replacement = change.apply(current);
+                if (replacement == current) {
+                    // nothing to change, unless the entry was out of date
+                    final SingleSignOnStore.Entry latest = store.get(id);
+                    if (latest == null || latest.getVersion() == current.getVersion()) {
+                        return;
+                    }
+                    current = latest;
+                    entry = latest;
+                    continue;
+                }
+                if (store.replace(id, current, replacement)) {
+                    entry = replacement;
+                    break;
+                }
+                // changed by another request or node
+                current = store.get(id);
+                if (current == null) {
+                    break;
+                }
+                entry = current;
+            }
+            // the next lookup on this node reads the new version from the store
+            nearCache.remove(id);
+        }
+
+        @Override
+        public void close() {
+            // Do nothing
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.security.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link SingleSignOnStore} that is shared in process, for testing and for several servers running in the same JVM.
+ * Invalidation listeners are notified synchronously.
+ */
+public class LoopbackSingleSignOnStore implements SingleSignOnStore {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public Entry get(final String id) {
+        return entries.get(id);
+    }
+
+    @Override
+    public boolean putIfAbsent(final String id, final Entry entry) {
+        return entries.putIfAbsent(id, entry) == null;
+    }
+
+    @Override
+    public boolean replace(final String id, final Entry expected, final Entry replacement) {
+        final Entry current = entries.get(id);
+        if (current == null || current.getVersion() != expected.getVersion() || !entries.replace(id, current, replacement)) {
+            return false;
+        }
+        invalidate(id);
+        return true;
+    }
+
+    @Override
+    public void remove(final String id) {
+        final Entry removed = entries.remove(id);
+        if (removed != null) {
+            for (InvalidationListener listener : listeners) {
+                listener.removed(id, removed);
+            }
+        }
+    }
+
+    @Override
+    public void addInvalidationListener(final InvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeInvalidationListener(final InvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void invalidate(final String id) {
+        for (InvalidationListener listener : listeners) {
+            listener.invalidated(id);
+        }
+    }
+}
@@ -65,6 +65,15 @@ public interface SingleSignOn extends Iterable<Session>, AutoCloseable {
      */
     void remove(Session session);
 
+    /**
+     * Indicates whether the user is authenticated to any session. Implementations that share the single sign on between
+     * several servers must take the sessions of every server into account, not only those that can be iterated.
+     * @return true, if there are no sessions
+     */
+    default boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
     /**
      * Returns the session associated with the deployment of the specified session manager
      * @param manager a session manager
@@ -209,7 +209,7 @@ public class SingleSignOnAuthenticationMechanism implements AuthenticationMechan
                             }
                         }
                         // If there are no more associated sessions, remove the SSO altogether
-                        if (!sso.iterator().hasNext()) {
+                        if (reason == SessionDestroyedReason.INVALIDATED || sso.isEmpty()) {
                             singleSignOnManager.removeSingleSignOn(sso);
                         }
                     }
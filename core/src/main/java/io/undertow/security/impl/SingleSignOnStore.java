@@ -0,0 +1,175 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.security.impl;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.undertow.security.idm.Account;
+
+/**
+ * The store behind a {@link DistributedSingleSignOnManager}, which makes single sign on entries available to every node
+ * of a cluster.
+ * <p>
+ * Entries are immutable and versioned, updates are made with {@link #replace(String, Entry, Entry)} so that concurrent
+ * updates from different nodes are not lost. A store must notify its invalidation listeners on every node, including
+ * the one that made the change, whenever an entry is replaced or removed. Notifications may be delivered
+ * asynchronously.
+ */
+public interface SingleSignOnStore {
+
+    /**
+     * @param id The id of the single sign on
+     * @return The entry, or <code>null</code> if there is no entry with the given id
+     */
+    Entry get(String id);
+
+    /**
+     * Adds a new entry.
+     *
+     * @return <code>true</code> if the entry was added, <code>false</code> if there already was an entry with the id
+     */
+    boolean putIfAbsent(String id, Entry entry);
+
+    /**
+     * Replaces an entry if its version has not changed.
+     *
+     * @return <code>true</code> if the entry was replaced
+     */
+    boolean replace(String id, Entry expected, Entry replacement);
+
+    void remove(String id);
+
+    void addInvalidationListener(InvalidationListener listener);
+
+    void removeInvalidationListener(InvalidationListener listener);
+
+    interface InvalidationListener {
+
+        /**
+         * Called when the entry with the given id has been replaced or removed.
+         */
+        void invalidated(String id);
+
+        /**
+         * Called instead of {@link #invalidated(String)} when the entry with the given id has been removed, so that
+         * every node can invalidate its own sessions of the single sign on.
+         *
+         * @param entry The entry that was removed
+         */
+        default void removed(String id, Entry entry) {
+            invalidated(id);
+        }
+    }
+
+    /**
+     * The replicated state of a single sign on. Sessions are recorded by the deployment name of their session
+     * manager and their id, as session objects cannot be shared between nodes. A deployment can have several sessions
+     * of the same single sign on, one on each node it was used on.
+     */
+    final class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Account account;
+        private final String mechanismName;
+        private final Map<String, Set<String>> sessions;
+        private final long version;
+
+        public Entry(final Account account, final String mechanismName) {
+            this(account, mechanismName, Collections.emptyMap(), 0);
+        }
+
+        private Entry(final Account account, final String mechanismName, final Map<String, Set<String>> sessions, final long version) {
+            this.account = account;
+            this.mechanismName = mechanismName;
+            this.sessions = sessions;
+            this.version = version;
+        }
+
+        public Account getAccount() {
+            return account;
+        }
+
+        public String getMechanismName() {
+            return mechanismName;
+        }
+
+        /**
+         * @return The ids of the sessions of the single sign on, keyed by deployment name
+         */
+        public Map<String, Set<String>> getSessions() {
+            return sessions;
+        }
+
+        /**
+         * @return <code>true</code> if the single sign on has no sessions on any node
+         */
+        public boolean isEmpty() {
+            return sessions.isEmpty();
+        }
+
+        public boolean containsSession(final String deploymentName, final String sessionId) {
+            final Set<String> ids = sessions.get(deploymentName);
+            return ids != null && ids.contains(sessionId);
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return A new version of this entry with the given session, or this entry if it already has the session
+         */
+        public Entry withSession(final String deploymentName, final String sessionId) {
+            if (containsSession(deploymentName, sessionId)) {
+                return this;
+            }
+            final Map<String, Set<String>> sessions = new HashMap<>(this.sessions);
+            final Set<String> ids = new HashSet<>(sessions.getOrDefault(deploymentName, Collections.emptySet()));
+            ids.add(sessionId);
+            sessions.put(deploymentName, Collections.unmodifiableSet(ids));
+            return new Entry(account, mechanismName, Collections.unmodifiableMap(sessions), version + 1);
+        }
+
+        /**
+         * Sessions of the same deployment on other nodes are kept.
+         *
+         * @return A new version of this entry without the given session, or this entry if it does not have the session
+         */
+        public Entry withoutSession(final String deploymentName, final String sessionId) {
+            if (!containsSession(deploymentName, sessionId)) {
+                return this;
+            }
+            final Map<String, Set<String>> sessions = new HashMap<>(this.sessions);
+            final Set<String> ids = new HashSet<>(sessions.get(deploymentName));
+            ids.remove(sessionId);
+            if (ids.isEmpty()) {
+                sessions.remove(deploymentName);
+            } else {
+                sessions.put(deploymentName, Collections.unmodifiableSet(ids));
+            }
+            return new Entry(account, mechanismName, Collections.unmodifiableMap(sessions), version + 1);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import io.undertow.UndertowOptions;
 import io.undertow.server.handlers.Cookie;
 import io.undertow.util.BadRequestException;
 import io.undertow.util.DateUtils;
+import io.undertow.util.EncodedParameters;
 import io.undertow.util.HeaderMap;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
@@ -527,7 +528,11 @@ public class Connectors {
                 }
                 exchange.setQueryString(qs);
 
-                URLUtils.parseQueryString(qs, exchange, charset, decodeQueryString, maxParameters);
+                if (options.get(UndertowOptions.LAZY_QUERY_PARAMETERS, UndertowOptions.DEFAULT_LAZY_QUERY_PARAMETERS)) {
+                    exchange.setLazyQueryParameters(EncodedParameters.parse(qs, charset, decodeQueryString, maxParameters));
+                } else {
+                    URLUtils.parseQueryString(qs, exchange, charset, decodeQueryString, maxParameters);
+                }
                 return;
             } else if(c == ';') {
                 String part;
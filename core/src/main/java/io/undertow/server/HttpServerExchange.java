@@ -39,12 +39,14 @@ import io.undertow.util.AbstractAttachable;
 import io.undertow.util.AttachmentKey;
 import io.undertow.util.ConduitFactory;
 import io.undertow.util.Cookies;
+import io.undertow.util.EncodedParameters;
 import io.undertow.util.HeaderMap;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import io.undertow.util.Methods;
 import io.undertow.util.NetworkUtils;
+import io.undertow.util.ParameterLimitException;
 import io.undertow.util.Protocols;
 import io.undertow.util.Rfc6265CookieSupport;
 import io.undertow.util.StatusCodes;
@@ -54,6 +56,7 @@ import org.xnio.ChannelExceptionHandler;
 import org.xnio.ChannelListener;
 import org.xnio.ChannelListeners;
 import org.xnio.IoUtils;
+import org.xnio.OptionMap;
 import org.xnio.XnioIoThread;
 import org.xnio.channels.Channels;
 import org.xnio.channels.Configurable;
@@ -138,6 +141,11 @@ public final class HttpServerExchange extends AbstractAttachable {
     private DefaultResponseListener[] defaultResponseListeners;
 
     private Map<String, Deque<String>> queryParameters;
+    private EncodedParameters queryParameterView;
+    /**
+     * If the query parameters have been parsed into {@link #queryParameterView} but not yet decoded into {@link #queryParameters}
+     */
+    private boolean queryParametersPending;
     private Map<String, Deque<String>> pathParameters;
 
     private CookieStore requestCookieStore;
@@ -599,6 +607,11 @@ public final class HttpServerExchange extends AbstractAttachable {
      * @return this http server exchange
      */
     public HttpServerExchange setQueryString(final String queryString) {
+        if (queryParametersPending) {
+            //the parameters must still reflect the original query string
+            getQueryParameters();
+        }
+        this.queryParameterView = null;
         this.queryString = cleanQueryString(queryString);
         if (this.queryString == null) {
             this.queryString = "";
@@ -1200,16 +1213,18 @@ public final class HttpServerExchange extends AbstractAttachable {
      */
     public Map<String, Deque<String>> getQueryParameters() {
         if (queryParameters == null) {
-            queryParameters = new TreeMap<>();
+            if (queryParametersPending) {
+                queryParametersPending = false;
+                queryParameters = queryParameterView.toMap();
+            } else {
+                queryParameters = new TreeMap<>();
+            }
         }
         return queryParameters;
     }
 
     public HttpServerExchange addQueryParam(final String name, final String param) {
-        if (queryParameters == null) {
-            queryParameters = new TreeMap<>();
-        }
-        Deque<String> list = queryParameters.get(name);
+        Deque<String> list = getQueryParameters().get(name);
         if (list == null) {
             queryParameters.put(name, list = new ArrayDeque<>(2));
         }
@@ -1218,6 +1233,50 @@ public final class HttpServerExchange extends AbstractAttachable {
     }
 
 
+    /**
+     * Returns a read only view of the parameters in the query string, that only decodes the parameters that are
+     * looked up. This is cheaper than {@link #getQueryParameters()} for handlers that only read a few parameters from
+     * a long query string.
+     * <p>
+     * The view always reflects the current query string, and does not include any parameters that were added with
+     * {@link #addQueryParam(String, String)}.
+     *
+     * @return The query parameters
+     */
+    public EncodedParameters getQueryParameterView() {
+        if (queryParameterView == null) {
+            final OptionMap options = connection.getUndertowOptions();
+            try {
+                //the parameter limit has already been enforced when the request was parsed
+                queryParameterView = EncodedParameters.parse(queryString,
+                        options.get(UndertowOptions.URL_CHARSET, UndertowOptions.DEFAULT_URL_CHARSET),
+                        options.get(UndertowOptions.DECODE_URL, UndertowOptions.DEFAULT_DECODE_URL),
+                        Integer.MAX_VALUE);
+            } catch (ParameterLimitException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return queryParameterView;
+    }
+
+    /**
+     * Sets the query parameters from a view of the query string. The parameters will only be decoded into the map
+     * returned by {@link #getQueryParameters()} if it is actually used.
+     */
+    void setLazyQueryParameters(final EncodedParameters queryParameterView) {
+        if (queryParameters == null && !queryParametersPending) {
+            this.queryParameterView = queryParameterView;
+            this.queryParametersPending = true;
+        } else {
+            //there are existing parameters, so they have to be merged now
+            getQueryParameters();
+            this.queryParameterView = queryParameterView;
+            for (int i = 0; i < queryParameterView.size(); ++i) {
+                addQueryParam(queryParameterView.getName(i), queryParameterView.getValue(i));
+            }
+        }
+    }
+
     /**
      * Returns a mutable map of path parameters
      *
@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+import io.undertow.UndertowMessages;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.util.ImmediatePooledByteBuffer;
+
+/**
+ * A pool of buffers of different sizes, for buffers whose size is only known at runtime, such as a servlet response
+ * buffer with a size set by the application.
+ * <p>
+ * Requested sizes are rounded up to the next power of two, and each of these size classes is backed by its own
+ * {@link DefaultByteBufferPool}, so most allocations are served from the thread local cache of the allocating thread.
+ * The returned buffer is a view of exactly the requested size. Buffers larger than the maximum size are not pooled.
+ */
+public class SizeClassByteBufferPool implements Closeable {
+
+    public static final int DEFAULT_MIN_SIZE = 1024;
+    public static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+    /**
+     * The default number of bytes that may be held in the shared queue of each size class
+     */
+    public static final int DEFAULT_MAX_POOLED_BYTES = 4 * 1024 * 1024;
+
+    private static final int THREAD_LOCAL_CACHE_SIZE = 2;
+
+    private final boolean direct;
+    private final int minSizeShift;
+    private final int maxSize;
+    private final DefaultByteBufferPool[] sizeClasses;
+
+    public SizeClassByteBufferPool(boolean direct) {
+        this(direct, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    /**
+     * @param direct         If this pool should use direct buffers
+     * @param minSize        The size of the smallest size class, rounded up to a power of two
+     * @param maxSize        The size of the largest size class, rounded up to a power of two
+     * @param maxPooledBytes The maximum number of bytes held in the shared queue of each size class, this does not
+     *                       include buffers in thread local caches
+     */
+    public SizeClassByteBufferPool(boolean direct, int minSize, int maxSize, int maxPooledBytes) {
+        if (minSize < 1) {
+            throw UndertowMessages.MESSAGES.invalidBufferSize(minSize);
+        }
+        if (maxSize < minSize || maxSize > 1 << 30) {
+            throw UndertowMessages.MESSAGES.invalidBufferSize(maxSize);
+        }
+        this.direct = direct;
+        this.minSizeShift = log2(minSize);
+        final int maxSizeShift = log2(maxSize);
+        this.maxSize = 1 << maxSizeShift;
+        this.sizeClasses = new DefaultByteBufferPool[maxSizeShift - minSizeShift + 1];
+        for (int i = 0; i < sizeClasses.length; ++i) {
+            final int size = 1 << (minSizeShift + i);
+            sizeClasses[i] = new DefaultByteBufferPool(direct, size, Math.max(1, maxPooledBytes / size), THREAD_LOCAL_CACHE_SIZE);
+        }
+    }
+
+    /**
+     * Allocates a buffer with exactly the given capacity. The buffer must be released by closing the returned
+     * pooled buffer.
+     *
+     * @param size The required size
+     * @return The buffer
+     */
+    public PooledByteBuffer allocate(int size) {
+        if (size < 0) {
+            throw UndertowMessages.MESSAGES.invalidBufferSize(size);
+        }
+        if (size > maxSize) {
+            return new ImmediatePooledByteBuffer(direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size));
+        }
+        final PooledByteBuffer pooled = sizeClasses[sizeClass(size)].allocate();
+        final ByteBuffer buffer = pooled.getBuffer();
+        buffer.limit(size);
+        return new SizedPooledBuffer(pooled, buffer.slice());
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    int sizeClass(int size) {
+        if (size <= 1 << minSizeShift) {
+            return 0;
+        }
+        return log2(size) - minSizeShift;
+    }
+
+    /**
+     * @return The exponent of the smallest power of two that is at least the given value
+     */
+    private static int log2(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value - 1);
+    }
+
+    @Override
+    public void close() {
+        for (DefaultByteBufferPool pool : sizeClasses) {
+            pool.close();
+        }
+    }
+
+    /**
+     * A view of part of a pooled buffer, the view stays at the requested size even if it is cleared
+     */
+    private static final class SizedPooledBuffer implements PooledByteBuffer {
+
+        private final PooledByteBuffer delegate;
+        private final ByteBuffer view;
+
+        private SizedPooledBuffer(PooledByteBuffer delegate, ByteBuffer view) {
+            this.delegate = delegate;
+            this.view = view;
+        }
+
+        @Override
+        public ByteBuffer getBuffer() {
+            return view;
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+    }
+}
@@ -26,6 +26,7 @@ import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.builder.HandlerBuilder;
 import io.undertow.util.Headers;
+import io.undertow.util.WorkerUtils;
 
 import java.net.InetSocketAddress;
 import java.sql.Connection;
@@ -41,33 +42,94 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
+/**
+ * Handler that logs requests to a database.
+ * <p>
+ * Log records are added to a queue and written by a single task that runs on the worker. Each run takes up to
+ * {@link #setBatchSize(int) batch size} records from the queue and inserts them with a single JDBC batch, committed as
+ * one transaction. The connection and prepared statement are reused between batches, and are only reopened after an
+ * error. If a {@link #setLingerTime(int) linger time} is set the writer waits that long before writing a batch that is
+ * not yet full, so that under light load records are still written in batches rather than one at a time.
+ * <p>
+ * The queue is not bounded by default. If a {@link #setMaxQueueSize(int) maximum queue size} is set and the database
+ * can not keep up, the {@link OverflowPolicy} decides what happens to new records once the queue is full, and a
+ * warning is logged the first time a record is dropped. The number of records that were written, dropped or that
+ * failed to be written is available from the corresponding getters.
+ */
 public class JDBCLogHandler implements HttpHandler, Runnable {
 
+    /**
+     * What to do with a log record if the queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * The record is discarded
+         */
+        DROP,
+        /**
+         * The thread that completes the exchange waits until there is space in the queue, for at most the maximum
+         * block time, after which the record is dropped. As this is often an IO thread this should only be used if
+         * records should not be lost.
+         */
+        BLOCK,
+    }
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    /**
+     * The queue is not bounded by default
+     */
+    public static final int DEFAULT_MAX_QUEUE_SIZE = -1;
+    public static final int DEFAULT_MAX_BLOCK_TIME = 5000;
+
     private final HttpHandler next;
     private final String formatString;
     private final ExchangeCompletionListener exchangeCompletionListener = new JDBCLogCompletionListener();
 
     private final Deque<JDBCLogAttribute> pendingMessages;
+    private final Object queueLock = new Object();
 
     //0 = not running
-    //1 = queued
+    //1 = queued, possibly waiting for the linger time
     //2 = running
+    //3 = queued, submitted to the executor to run straight away
     @SuppressWarnings("unused")
     private volatile int state = 0;
     @SuppressWarnings("unused")
+    private volatile int queued = 0;
+    @SuppressWarnings("unused")
     private volatile Executor executor;
 
     private static final AtomicIntegerFieldUpdater<JDBCLogHandler> stateUpdater = AtomicIntegerFieldUpdater.newUpdater(JDBCLogHandler.class, "state");
+    private static final AtomicIntegerFieldUpdater<JDBCLogHandler> queuedUpdater = AtomicIntegerFieldUpdater.newUpdater(JDBCLogHandler.class, "queued");
 
     protected boolean useLongContentLength = false;
 
     private final DataSource dataSource;
 
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile int lingerTime = 0;
+    private volatile int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    private volatile int maxBlockTime = DEFAULT_MAX_BLOCK_TIME;
+
+    private final LongAdder writtenCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile boolean dropLogged;
+    private final LongAdder failedCount = new LongAdder();
+
+    /**
+     * Only accessed by the writer, which never runs concurrently with itself
+     */
+    private Connection connection;
+    private PreparedStatement statement;
+
     private String tableName;
     private String remoteHostField;
     private String userField;
@@ -123,6 +185,14 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
     }
 
     public void logMessage(String pattern, HttpServerExchange exchange) {
+        if (!reserveSpace(exchange)) {
+            droppedCount.increment();
+            if (!dropLogged) {
+                dropLogged = true;
+                UndertowLogger.REQUEST_LOGGER.jdbcLogRecordsDropped();
+            }
+            return;
+        }
         JDBCLogAttribute jdbcLogAttribute = new JDBCLogAttribute();
 
         if (pattern.equals("combined")) {
@@ -156,7 +226,90 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
         if (state == 0) {
             if (stateUpdater.compareAndSet(this, 0, 1)) {
                 this.executor = exchange.getConnection().getWorker();
-                this.executor.execute(this);
+                final int lingerTime = this.lingerTime;
+                if (lingerTime > 0 && queued < flushThreshold()) {
+                    WorkerUtils.executeAfter(exchange.getIoThread(), new Runnable() {
+                        @Override
+                        public void run() {
+                            executor.execute(JDBCLogHandler.this);
+                        }
+                    }, lingerTime, TimeUnit.MILLISECONDS);
+                } else {
+                    this.executor.execute(this);
+                }
+            }
+        } else if (state == 1 && queued >= flushThreshold()) {
+            //the batch filled up while lingering, write it straight away
+            submitWriter(this.executor);
+        }
+    }
+
+    /**
+     * The number of queued records at which the writer does not wait for the linger time
+     */
+    private int flushThreshold() {
+        final int maxQueueSize = this.maxQueueSize;
+        return maxQueueSize < 0 ? batchSize : Math.min(batchSize, maxQueueSize);
+    }
+
+    /**
+     * Makes sure the writer will run without waiting for the linger time, unless it is already running. If the
+     * linger timer fires later the writer will not run twice.
+     */
+    private void submitWriter(final Executor executor) {
+        for (;;) {
+            final int state = this.state;
+            if (state == 0 || state == 1) {
+                if (state == 0) {
+                    this.executor = executor;
+                }
+                if (stateUpdater.compareAndSet(this, state, 3)) {
+                    this.executor.execute(this);
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Claims a slot in the queue for a new record, waiting for one to become available if the overflow policy is
+     * {@link OverflowPolicy#BLOCK}.
+     *
+     * @return <code>false</code> if the record should be dropped
+     */
+    private boolean reserveSpace(final HttpServerExchange exchange) {
+        long deadline = 0;
+        for (;;) {
+            final int current = queued;
+            final int maxQueueSize = this.maxQueueSize;
+            if (maxQueueSize < 0 || current < maxQueueSize) {
+                if (queuedUpdater.compareAndSet(this, current, current + 1)) {
+                    return true;
+                }
+            } else if (overflowPolicy == OverflowPolicy.DROP) {
+                return false;
+            } else {
+                final long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + TimeUnit.MILLISECONDS.toNanos(maxBlockTime);
+                    //space is only freed by the writer, which may be waiting for the linger time that is run
+                    //by the timer of this thread
+                    submitWriter(exchange.getConnection().getWorker());
+                } else if (now - deadline >= 0) {
+                    return false;
+                }
+                synchronized (queueLock) {
+                    if (queued >= maxQueueSize) {
+                        try {
+                            queueLock.wait(Math.max(1, Math.min(100, TimeUnit.NANOSECONDS.toMillis(deadline - now))));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return false;
+                        }
+                    }
+                }
             }
         }
     }
@@ -166,21 +319,29 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
      */
     @Override
     public void run() {
-        if (!stateUpdater.compareAndSet(this, 1, 2)) {
+        if (!stateUpdater.compareAndSet(this, 1, 2) && !stateUpdater.compareAndSet(this, 3, 2)) {
             return;
         }
 
-        List<JDBCLogAttribute> messages = new ArrayList<>();
+        final int batchSize = this.batchSize;
+        List<JDBCLogAttribute> messages = new ArrayList<>(Math.min(batchSize, queued));
         JDBCLogAttribute msg = null;
 
-        //only grab at most 1000 messages at a time
-        for (int i = 0; i < 1000; ++i) {
+        for (int i = 0; i < batchSize; ++i) {
             msg = pendingMessages.poll();
             if (msg == null) {
                 break;
             }
             messages.add(msg);
         }
+        if (!messages.isEmpty()) {
+            queuedUpdater.addAndGet(this, -messages.size());
+            if (overflowPolicy == OverflowPolicy.BLOCK) {
+                synchronized (queueLock) {
+                    queueLock.notifyAll();
+                }
+            }
+        }
         try {
             if (!messages.isEmpty()) {
                 writeMessage(messages);
@@ -199,60 +360,119 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
     }
 
     private void writeMessage(List<JDBCLogAttribute> messages) {
-        PreparedStatement ps = null;
-        Connection conn = null;
+        int numberOfTries = 2;
+        while (numberOfTries > 0) {
+            try {
+                writeBatch(messages);
+                writtenCount.add(messages.size());
+                return;
+            } catch (SQLException e) {
+                //the connection may have gone stale, retry once with a new one
+                closeConnection();
+                if (--numberOfTries == 0) {
+                    UndertowLogger.ROOT_LOGGER.errorWritingJDBCLog(e);
+                } else {
+                    UndertowLogger.ROOT_LOGGER.failedToWriteJdbcAccessLog(e);
+                }
+            }
+        }
+        failedCount.add(messages.size());
+    }
+
+    private void writeBatch(List<JDBCLogAttribute> messages) throws SQLException {
+        if (connection == null) {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            statement = prepareStatement(connection);
+        }
+        final PreparedStatement ps = statement;
         try {
-            conn = dataSource.getConnection();
-            conn.setAutoCommit(true);
-            ps = prepareStatement(conn);
             for (JDBCLogAttribute jdbcLogAttribute : messages) {
-                int numberOfTries = 2;
-                while (numberOfTries > 0) {
-                    try {
-                        ps.clearParameters();
-                        ps.setString(1, jdbcLogAttribute.remoteHost);
-                        ps.setString(2, jdbcLogAttribute.user);
-                        ps.setTimestamp(3, jdbcLogAttribute.timestamp);
-                        ps.setString(4, jdbcLogAttribute.query);
-                        ps.setInt(5, jdbcLogAttribute.status);
-                        if (useLongContentLength) {
-                            ps.setLong(6, jdbcLogAttribute.bytes);
-                        } else {
-                            if (jdbcLogAttribute.bytes > Integer.MAX_VALUE) {
-                                jdbcLogAttribute.bytes = -1;
-                            }
-                            ps.setInt(6, (int) jdbcLogAttribute.bytes);
-                        }
-                        ps.setString(7, jdbcLogAttribute.virtualHost);
-                        ps.setString(8, jdbcLogAttribute.method);
-                        ps.setString(9, jdbcLogAttribute.referer);
-                        ps.setString(10, jdbcLogAttribute.userAgent);
-
-                        ps.executeUpdate();
-                        numberOfTries = 0;
-                    } catch (SQLException e) {
-                        UndertowLogger.ROOT_LOGGER.failedToWriteJdbcAccessLog(e);
-                    }
-                    numberOfTries--;
+                ps.setString(1, jdbcLogAttribute.remoteHost);
+                ps.setString(2, jdbcLogAttribute.user);
+                ps.setTimestamp(3, jdbcLogAttribute.timestamp);
+                ps.setString(4, jdbcLogAttribute.query);
+                ps.setInt(5, jdbcLogAttribute.status);
+                if (useLongContentLength) {
+                    ps.setLong(6, jdbcLogAttribute.bytes);
+                } else {
+                    ps.setInt(6, jdbcLogAttribute.bytes > Integer.MAX_VALUE ? -1 : (int) jdbcLogAttribute.bytes);
                 }
+                ps.setString(7, jdbcLogAttribute.virtualHost);
+                ps.setString(8, jdbcLogAttribute.method);
+                ps.setString(9, jdbcLogAttribute.referer);
+                ps.setString(10, jdbcLogAttribute.userAgent);
+                ps.addBatch();
             }
-            ps.close();
+            ps.executeBatch();
+            connection.commit();
         } catch (SQLException e) {
-            UndertowLogger.ROOT_LOGGER.errorWritingJDBCLog(e);
-        } finally {
-            if (ps != null) {
-                try {
-                    ps.close();
-                } catch (SQLException e) {
-                    UndertowLogger.ROOT_LOGGER.debug("Exception closing prepared statement", e);
-                }
+            try {
+                ps.clearBatch();
+                connection.rollback();
+            } catch (SQLException ignore) {
+                UndertowLogger.ROOT_LOGGER.debug("Exception rolling back JDBC log batch", ignore);
+            }
+            throw e;
+        }
+    }
+
+    private void closeConnection() {
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                UndertowLogger.ROOT_LOGGER.debug("Exception closing prepared statement", e);
+            }
+            statement = null;
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                UndertowLogger.ROOT_LOGGER.debug("Exception closing connection", e);
             }
-            if (conn != null) {
+            connection = null;
+        }
+    }
+
+    /**
+     * Writes all queued records and releases the database connection. Records logged after this has been called
+     * are still written, but the connection is then held again until the next call.
+     */
+    public void close() {
+        for (;;) {
+            //a writer that is queued or lingering is taken over, it will not run when it is executed
+            if (stateUpdater.compareAndSet(this, 0, 2) || stateUpdater.compareAndSet(this, 1, 2) || stateUpdater.compareAndSet(this, 3, 2)) {
                 try {
-                    conn.close();
-                } catch (SQLException e) {
-                    UndertowLogger.ROOT_LOGGER.debug("Exception closing connection", e);
+                    List<JDBCLogAttribute> messages = new ArrayList<>();
+                    JDBCLogAttribute msg;
+                    while ((msg = pendingMessages.poll()) != null) {
+                        messages.add(msg);
+                        if (messages.size() == batchSize) {
+                            queuedUpdater.addAndGet(this, -messages.size());
+                            writeMessage(messages);
+                            messages.clear();
+                        }
+                    }
+                    if (!messages.isEmpty()) {
+                        queuedUpdater.addAndGet(this, -messages.size());
+                        writeMessage(messages);
+                    }
+                    synchronized (queueLock) {
+                        queueLock.notifyAll();
+                    }
+                    closeConnection();
+                } finally {
+                    stateUpdater.set(this, 0);
                 }
+                return;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
     }
@@ -304,6 +524,98 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
         this.useLongContentLength = useLongContentLength;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize The maximum number of records that are inserted with a single JDBC batch
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw UndertowMessages.MESSAGES.invalidJdbcLogParameter("batchSize", batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getLingerTime() {
+        return lingerTime;
+    }
+
+    /**
+     * @param lingerTime The number of milliseconds to wait for a batch to fill up before it is written, 0 to write
+     *                   records as soon as possible
+     */
+    public void setLingerTime(int lingerTime) {
+        if (lingerTime < 0) {
+            throw UndertowMessages.MESSAGES.invalidJdbcLogParameter("lingerTime", lingerTime);
+        }
+        this.lingerTime = lingerTime;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * @param maxQueueSize The maximum number of records that are waiting to be written, or -1 for no limit. If there
+     *                     is a limit the {@link #setOverflowPolicy(OverflowPolicy) overflow policy} decides what happens
+     *                     once it is reached.
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+        if (maxQueueSize < 1 && maxQueueSize != -1) {
+            throw UndertowMessages.MESSAGES.invalidJdbcLogParameter("maxQueueSize", maxQueueSize);
+        }
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public int getMaxBlockTime() {
+        return maxBlockTime;
+    }
+
+    /**
+     * @param maxBlockTime The maximum number of milliseconds to wait for space in the queue if the overflow policy is
+     *                     {@link OverflowPolicy#BLOCK}
+     */
+    public void setMaxBlockTime(int maxBlockTime) {
+        if (maxBlockTime < 0) {
+            throw UndertowMessages.MESSAGES.invalidJdbcLogParameter("maxBlockTime", maxBlockTime);
+        }
+        this.maxBlockTime = maxBlockTime;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw UndertowMessages.MESSAGES.argumentCannotBeNull("overflowPolicy");
+        }
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return The number of records that have been written to the database
+     */
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    /**
+     * @return The number of records that were discarded because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return The number of records that could not be written to the database
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
     public String getTableName() {
         return tableName;
     }
@@ -422,6 +734,10 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
             params.put("bytesField", String.class);
             params.put("refererField", String.class);
             params.put("userAgentField", String.class);
+            params.put("batchSize", Integer.class);
+            params.put("lingerTime", Integer.class);
+            params.put("maxQueueSize", Integer.class);
+            params.put("overflowPolicy", String.class);
             return params;
         }
 
@@ -441,7 +757,8 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
             try {
                 DataSource ds = (DataSource) new InitialContext().lookup((String) config.get("datasource"));
                 String format = (String) config.get("format");
-                return new Wrapper(format, ds, (String)config.get("tableName"), (String)config.get("remoteHostField"), (String)config.get("userField"), (String)config.get("timestampField"), (String)config.get("virtualHostField"), (String)config.get("methodField"), (String)config.get("queryField"), (String)config.get("statusField"), (String)config.get("bytesField"), (String)config.get("refererField"), (String)config.get("userAgentField"));
+                return new Wrapper(format, ds, (String)config.get("tableName"), (String)config.get("remoteHostField"), (String)config.get("userField"), (String)config.get("timestampField"), (String)config.get("virtualHostField"), (String)config.get("methodField"), (String)config.get("queryField"), (String)config.get("statusField"), (String)config.get("bytesField"), (String)config.get("refererField"), (String)config.get("userAgentField"),
+                        (Integer) config.get("batchSize"), (Integer) config.get("lingerTime"), (Integer) config.get("maxQueueSize"), overflowPolicy((String) config.get("overflowPolicy")));
             } catch (NamingException ex) {
                 throw UndertowMessages.MESSAGES.datasourceNotFound(datasourceName);
             }
@@ -452,6 +769,17 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
             return 0;
         }
 
+        private static OverflowPolicy overflowPolicy(String policy) {
+            if (policy == null) {
+                return null;
+            }
+            for (OverflowPolicy value : OverflowPolicy.values()) {
+                if (value.name().equalsIgnoreCase(policy)) {
+                    return value;
+                }
+            }
+            throw UndertowMessages.MESSAGES.invalidJdbcLogParameter("overflowPolicy", policy);
+        }
     }
 
     private static class Wrapper implements HandlerWrapper {
@@ -470,8 +798,13 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
         private final String bytesField;
         private final String refererField;
         private final String userAgentField;
+        private final Integer batchSize;
+        private final Integer lingerTime;
+        private final Integer maxQueueSize;
+        private final OverflowPolicy overflowPolicy;
 
-        private Wrapper(String format, DataSource datasource, String tableName, String remoteHostField, String userField, String timestampField, String virtualHostField, String methodField, String queryField, String statusField, String bytesField, String refererField, String userAgentField) {
+        private Wrapper(String format, DataSource datasource, String tableName, String remoteHostField, String userField, String timestampField, String virtualHostField, String methodField, String queryField, String statusField, String bytesField, String refererField, String userAgentField,
+                        Integer batchSize, Integer lingerTime, Integer maxQueueSize, OverflowPolicy overflowPolicy) {
             this.datasource = datasource;
             this.tableName = tableName;
             this.remoteHostField = remoteHostField;
@@ -484,6 +817,10 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
             this.bytesField = bytesField;
             this.refererField = refererField;
             this.userAgentField = userAgentField;
+            this.batchSize = batchSize;
+            this.lingerTime = lingerTime;
+            this.maxQueueSize = maxQueueSize;
+            this.overflowPolicy = overflowPolicy;
             this.format = "combined".equals(format) ? "combined" : "common";
         }
 
@@ -523,6 +860,18 @@ public class JDBCLogHandler implements HttpHandler, Runnable {
             if(userAgentField != null) {
                 jdbc.setUserAgentField(userAgentField);
             }
+            if(batchSize != null) {
+                jdbc.setBatchSize(batchSize);
+            }
+            if(lingerTime != null) {
+                jdbc.setLingerTime(lingerTime);
+            }
+            if(maxQueueSize != null) {
+                jdbc.setMaxQueueSize(maxQueueSize);
+            }
+            if(overflowPolicy != null) {
+                jdbc.setOverflowPolicy(overflowPolicy);
+            }
 
             return jdbc;
         }
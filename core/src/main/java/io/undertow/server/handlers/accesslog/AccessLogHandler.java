@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import io.undertow.UndertowMessages;
 import io.undertow.attribute.ExchangeAttribute;
 import io.undertow.attribute.ExchangeAttributes;
 import io.undertow.attribute.SubstituteEmptyWrapper;
@@ -89,6 +90,14 @@ import io.undertow.server.handlers.builder.HandlerBuilder;
  * <li><code>%{r,xxx}</code> xxx is an attribute in the ServletRequest
  * <li><code>%{s,xxx}</code> xxx is an attribute in the HttpSession
  * </ul>
+ * <p>
+ * To log each request as a JSON object pass a {@link StructuredAccessLogFormat} as the attribute, or use
+ * <code>output='json'</code> with the <code>access-log</code> handler builder.
+ * <p>
+ * The predicate is evaluated when the exchange completes, so it can be used to sample the log, see
+ * {@link ProbabilisticSamplingPredicate}, {@link TokenBucketSamplingPredicate} and {@link TailSamplingPredicate}. The
+ * handler builder accepts the <code>sample-rate</code>, <code>route-rate</code> and <code>tail-percentile</code>
+ * parameters to configure them.
  *
  * @author Stuart Douglas
  */
@@ -154,7 +163,7 @@ public class AccessLogHandler implements HttpHandler {
         public void exchangeEvent(final HttpServerExchange exchange, final NextListener nextListener) {
             try {
                 if(predicate == null || predicate.resolve(exchange)) {
-                    accessLogReceiver.logMessage(tokens.readAttribute(exchange));
+                    accessLogReceiver.logExchange(exchange, tokens);
                 }
             } finally {
                 nextListener.proceed();
@@ -181,6 +190,10 @@ public class AccessLogHandler implements HttpHandler {
             Map<String, Class<?>> params = new HashMap<>();
             params.put("format", String.class);
             params.put("category", String.class);
+            params.put("output", String.class);
+            params.put("sample-rate", Double.class);
+            params.put("route-rate", Double.class);
+            params.put("tail-percentile", Double.class);
             return params;
         }
 
@@ -196,7 +209,8 @@ public class AccessLogHandler implements HttpHandler {
 
         @Override
         public HandlerWrapper build(Map<String, Object> config) {
-            return new Wrapper((String) config.get("format"), (String) config.get("category"));
+            return new Wrapper((String) config.get("format"), (String) config.get("category"), (String) config.get("output"),
+                    createSampler((Double) config.get("sample-rate"), (Double) config.get("route-rate"), (Double) config.get("tail-percentile")));
         }
 
         @Override
@@ -204,25 +218,54 @@ public class AccessLogHandler implements HttpHandler {
             return 0;
         }
 
+        /**
+         * Requests are first sampled at the sample rate and then limited per route, if a tail percentile is given
+         * failed and slow requests bypass both
+         */
+        private static Predicate createSampler(Double sampleRate, Double routeRate, Double tailPercentile) {
+            Predicate sampler = Predicates.truePredicate();
+            if (sampleRate != null) {
+                sampler = new ProbabilisticSamplingPredicate(sampleRate);
+            }
+            if (routeRate != null) {
+                final Predicate tokenBucket = new TokenBucketSamplingPredicate(routeRate);
+                sampler = sampleRate == null ? tokenBucket : Predicates.and(sampler, tokenBucket);
+            }
+            if (tailPercentile != null) {
+                sampler = new TailSamplingPredicate(tailPercentile, sampler);
+            }
+            return sampler;
+        }
     }
 
     private static class Wrapper implements HandlerWrapper {
 
         private final String format;
         private final String category;
+        private final String output;
+        private final Predicate sampler;
 
-        private Wrapper(String format, String category) {
+        private Wrapper(String format, String category, String output, Predicate sampler) {
             this.format = format;
             this.category = category;
+            this.output = output;
+            this.sampler = sampler;
         }
 
         @Override
         public HttpHandler wrap(HttpHandler handler) {
+            final AccessLogReceiver receiver;
             if (category == null || category.trim().isEmpty()) {
-                return new AccessLogHandler(handler, new JBossLoggingAccessLogReceiver(), format, Wrapper.class.getClassLoader());
+                receiver = new JBossLoggingAccessLogReceiver();
             } else {
-                return new AccessLogHandler(handler, new JBossLoggingAccessLogReceiver(category), format, Wrapper.class.getClassLoader());
+                receiver = new JBossLoggingAccessLogReceiver(category);
+            }
+            if (output == null || output.equals("text")) {
+                return new AccessLogHandler(handler, receiver, format, Wrapper.class.getClassLoader(), sampler);
+            } else if (output.equals("json")) {
+                return new AccessLogHandler(handler, receiver, format, StructuredAccessLogFormat.json(format, Wrapper.class.getClassLoader()), sampler);
             }
+            throw UndertowMessages.MESSAGES.unknownAccessLogOutput(output);
         }
     }
 }
@@ -18,6 +18,9 @@
 
 package io.undertow.server.handlers.accesslog;
 
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.server.HttpServerExchange;
+
 /**
  * Interface that is used by the access log handler to send data to the log file manager.
  *
@@ -29,4 +32,15 @@ public interface AccessLogReceiver {
 
     void logMessage(String message);
 
+    /**
+     * Logs the given attribute of a completed exchange. Receivers that can write the attribute directly to their
+     * output may override this to avoid creating the message string.
+     *
+     * @param exchange  The exchange
+     * @param attribute The attribute to log
+     */
+    default void logExchange(HttpServerExchange exchange, ExchangeAttribute attribute) {
+        logMessage(attribute.readAttribute(exchange));
+    }
+
 }
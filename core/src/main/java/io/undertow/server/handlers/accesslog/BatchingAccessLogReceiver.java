@@ -0,0 +1,810 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.accesslog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.undertow.UndertowLogger;
+import io.undertow.UndertowMessages;
+import io.undertow.attribute.CompositeExchangeAttribute;
+import io.undertow.attribute.ConstantExchangeAttribute;
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.attribute.ResponseCodeAttribute;
+import io.undertow.attribute.SubstituteEmptyWrapper;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Log receiver that writes log messages as bytes, without creating a message string per request.
+ * <p>
+ * Each thread that logs a message encodes it into its own off heap ring buffer, so web threads never contend with each
+ * other or with the writer. A single worker thread drains all ring buffers in batches and writes each batch with one
+ * write (group commit), either appending to the log file with a {@link FileChannel} or copying into a memory mapped
+ * region of the file. If a thread produces messages faster than they can be written the messages that do not fit into
+ * its ring buffer are queued on the heap, and are still written in the order the thread logged them. Once the heap
+ * queues reach their {@link Builder#setMaxOverflowSize(long) maximum size} further messages that do not fit are
+ * dropped, which is logged the first time it happens and counted by {@link #getDroppedCount()}.
+ * <p>
+ * When used with {@link AccessLogHandler} the format is compiled once into a list of segments: constant text is
+ * pre-encoded, the response code is written without creating a string and a {@link StructuredAccessLogFormat} is
+ * escaped directly into the buffer. The log files are rotated after midnight in the same way as
+ * {@link DefaultAccessLogReceiver}. Messages logged by different threads are not necessarily written in the order they
+ * were logged.
+ */
+public class BatchingAccessLogReceiver implements AccessLogReceiver, Runnable, Closeable {
+
+    private static final String DEFAULT_LOG_SUFFIX = "log";
+    private static final int DEFAULT_THREAD_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_BATCH_SIZE = 256 * 1024;
+    private static final int DEFAULT_MAPPED_REGION_SIZE = 4 * 1024 * 1024;
+    private static final long DEFAULT_MAX_OVERFLOW_SIZE = 16 * 1024 * 1024;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final Executor logWriteExecutor;
+    private final Path outputDirectory;
+    private final Path defaultLogFile;
+    private final String logBaseName;
+    private final String logNameSuffix;
+    private final boolean rotate;
+    private final boolean memoryMapped;
+    private final boolean syncOnCommit;
+    private final LogFileHeaderGenerator fileHeaderGenerator;
+    private final int threadBufferSize;
+    private final int mappedRegionSize;
+    private final long maxOverflowSize;
+
+    private final ThreadLocal<ThreadBuffer> threadBuffer = new ThreadLocal<>();
+    private final Queue<ThreadBuffer> threadBuffers = new ConcurrentLinkedQueue<>();
+    /**
+     * The number of bytes in the overflow queues of all threads
+     */
+    private final AtomicLong overflowSize = new AtomicLong();
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile boolean dropLogged;
+    private final ConcurrentMap<ExchangeAttribute, Segment[]> compiledAttributes = new ConcurrentHashMap<>();
+
+    //0 = not running, 1 = queued, 2 = running
+    private volatile int state = 0;
+    private static final AtomicIntegerFieldUpdater<BatchingAccessLogReceiver> stateUpdater = AtomicIntegerFieldUpdater.newUpdater(BatchingAccessLogReceiver.class, "state");
+
+    private volatile boolean closed = false;
+    private volatile boolean forceLogRotation;
+
+    //the following fields are only accessed while holding the lock on this receiver
+    private final ByteBuffer batch;
+    private long changeOverPoint;
+    private String currentDateString;
+    private boolean initialRun = true;
+    private FileChannel channel;
+    private MappedByteBuffer mappedRegion;
+    private long mappedRegionStart;
+
+    private BatchingAccessLogReceiver(final Builder builder) {
+        if (builder.logWriteExecutor == null) {
+            throw UndertowMessages.MESSAGES.argumentCannotBeNull("logWriteExecutor");
+        }
+        if (builder.outputDirectory == null) {
+            throw UndertowMessages.MESSAGES.argumentCannotBeNull("outputDirectory");
+        }
+        if (builder.logBaseName == null) {
+            throw UndertowMessages.MESSAGES.argumentCannotBeNull("logBaseName");
+        }
+        this.logWriteExecutor = builder.logWriteExecutor;
+        this.outputDirectory = builder.outputDirectory;
+        this.logBaseName = builder.logBaseName;
+        this.logNameSuffix = builder.logNameSuffix != null ? builder.logNameSuffix : DEFAULT_LOG_SUFFIX;
+        this.rotate = builder.rotate;
+        this.memoryMapped = builder.memoryMapped;
+        this.syncOnCommit = builder.syncOnCommit;
+        this.fileHeaderGenerator = builder.logFileHeaderGenerator;
+        this.threadBufferSize = Integer.highestOneBit(Math.max(builder.threadBufferSize, 1024) - 1) << 1;
+        this.mappedRegionSize = Math.max(builder.mappedRegionSize, builder.batchSize);
+        this.maxOverflowSize = builder.maxOverflowSize;
+        this.batch = ByteBuffer.allocateDirect(Math.max(builder.batchSize, 1024));
+        this.defaultLogFile = outputDirectory.resolve(logBaseName + this.logNameSuffix);
+        calculateChangeOverPoint();
+    }
+
+    @Override
+    public void logMessage(final String message) {
+        final ThreadBuffer buffer = prepare();
+        buffer.writeString(message);
+        buffer.writeBytes(LINE_SEPARATOR);
+        publish(buffer);
+    }
+
+    @Override
+    public void logExchange(final HttpServerExchange exchange, final ExchangeAttribute attribute) {
+        Segment[] segments = compiledAttributes.get(attribute);
+        if (segments == null) {
+            segments = compile(attribute);
+            compiledAttributes.putIfAbsent(attribute, segments);
+        }
+        final ThreadBuffer buffer = prepare();
+        for (Segment segment : segments) {
+            segment.write(exchange, buffer);
+        }
+        buffer.writeBytes(LINE_SEPARATOR);
+        publish(buffer);
+    }
+
+    private ThreadBuffer prepare() {
+        if (closed) {
+            throw UndertowMessages.MESSAGES.failedToLogAccessOnClose();
+        }
+        ThreadBuffer buffer = threadBuffer.get();
+        if (buffer == null) {
+            buffer = new ThreadBuffer(Thread.currentThread(), threadBufferSize);
+            threadBuffer.set(buffer);
+            threadBuffers.add(buffer);
+        }
+        buffer.length = 0;
+        return buffer;
+    }
+
+    private void publish(final ThreadBuffer buffer) {
+        if (!buffer.publish() && !overflow(buffer)) {
+            droppedCount.increment();
+            if (!dropLogged) {
+                dropLogged = true;
+                UndertowLogger.ROOT_LOGGER.accessLogMessagesDropped();
+            }
+            return;
+        }
+        if (state == 0 && stateUpdater.compareAndSet(this, 0, 1)) {
+            logWriteExecutor.execute(this);
+        }
+    }
+
+    /**
+     * Queues a message that does not fit into the ring buffer of the thread on the heap.
+     *
+     * @return <code>false</code> if the overflow queues are full
+     */
+    private boolean overflow(final ThreadBuffer buffer) {
+        final int length = buffer.length;
+        for (;;) {
+            final long size = overflowSize.get();
+            if (size + length > maxOverflowSize) {
+                return false;
+            }
+            if (overflowSize.compareAndSet(size, size + length)) {
+                break;
+            }
+        }
+        buffer.overflow.add(new Overflow(buffer.head, Arrays.copyOf(buffer.scratch, length)));
+        return true;
+    }
+
+    /**
+     * @return The number of messages that were dropped because the overflow queues were full
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Breaks the attribute up into segments that can be written directly to a thread buffer
+     */
+    private static Segment[] compile(final ExchangeAttribute attribute) {
+        final List<Segment> segments = new ArrayList<>();
+        compile(attribute, segments);
+        return segments.toArray(new Segment[segments.size()]);
+    }
+
+    private static void compile(final ExchangeAttribute attribute, final List<Segment> segments) {
+        if (attribute instanceof CompositeExchangeAttribute) {
+            for (ExchangeAttribute part : ((CompositeExchangeAttribute) attribute).getAttributes()) {
+                compile(part, segments);
+            }
+            return;
+        }
+        if (attribute instanceof StructuredAccessLogFormat) {
+            segments.add(new Segment() {
+                @Override
+                public void write(final HttpServerExchange exchange, final LogRecordBuffer buffer) {
+                    ((StructuredAccessLogFormat) attribute).write(exchange, buffer);
+                }
+            });
+            return;
+        }
+        ExchangeAttribute inner = attribute;
+        String substitute = null;
+        if (attribute instanceof SubstituteEmptyWrapper.SubstituteEmptyAttribute) {
+            inner = ((SubstituteEmptyWrapper.SubstituteEmptyAttribute) attribute).getAttribute();
+            substitute = ((SubstituteEmptyWrapper.SubstituteEmptyAttribute) attribute).getSubstitute();
+        }
+        if (inner instanceof ConstantExchangeAttribute) {
+            //constant attributes do not use the exchange
+            String value = inner.readAttribute(null);
+            if (value == null || value.isEmpty()) {
+                value = substitute;
+            }
+            if (value != null && !value.isEmpty()) {
+                segments.add(new ConstantSegment(value.getBytes(StandardCharsets.UTF_8)));
+            }
+        } else if (inner == ResponseCodeAttribute.INSTANCE) {
+            segments.add(new Segment() {
+                @Override
+                public void write(final HttpServerExchange exchange, final LogRecordBuffer buffer) {
+                    buffer.writeLong(exchange.getStatusCode());
+                }
+            });
+        } else {
+            segments.add(new Segment() {
+                @Override
+                public void write(final HttpServerExchange exchange, final LogRecordBuffer buffer) {
+                    final String value = attribute.readAttribute(exchange);
+                    if (value != null) {
+                        buffer.writeString(value);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes all pending messages
+     */
+    @Override
+    public void run() {
+        if (!stateUpdater.compareAndSet(this, 1, 2)) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                if (!closed) {
+                    if (forceLogRotation || System.currentTimeMillis() > changeOverPoint) {
+                        performFileRotation();
+                    } else if (initialRun && Files.exists(defaultLogFile)) {
+                        checkAndRotateOnInitialRun();
+                    }
+                    writePending();
+                }
+            }
+        } finally {
+            stateUpdater.set(this, 0);
+            //messages may have been published after we stopped draining, but before the state was reset
+            if (!closed && (hasPending() || forceLogRotation) && stateUpdater.compareAndSet(this, 0, 1)) {
+                logWriteExecutor.execute(this);
+            }
+        }
+    }
+
+    private boolean hasPending() {
+        for (ThreadBuffer buffer : threadBuffers) {
+            if (buffer.available() > 0 || !buffer.overflow.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drains all thread buffers and their overflow queues into the batch buffer, writing the batch whenever it is
+     * full. Must be called while holding the lock on this receiver.
+     */
+    private void writePending() {
+        try {
+            if (!initOutput()) {
+                return;
+            }
+            final Iterator<ThreadBuffer> it = threadBuffers.iterator();
+            while (it.hasNext()) {
+                final ThreadBuffer buffer = it.next();
+                if (buffer.available() == 0 && buffer.overflow.isEmpty()) {
+                    if (!buffer.owner.isAlive()) {
+                        it.remove();
+                    }
+                    continue;
+                }
+                for (;;) {
+                    //messages in the ring that were logged before the next overflowed message are written first. The
+                    //head is read before the queue, so a message that overflows after the check is never overtaken
+                    final long head = buffer.head;
+                    final Overflow next = buffer.overflow.peek();
+                    long available = (next == null ? head : next.position) - buffer.tail;
+                    //the whole of the available data is drained before moving on, so a message that spans two
+                    //batches is still written contiguously
+                    while (available > 0) {
+                        if (!batch.hasRemaining()) {
+                            commit();
+                        }
+                        final int count = buffer.drainTo(batch, (int) Math.min(available, batch.remaining()));
+                        available -= count;
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    buffer.overflow.poll();
+                    overflowSize.addAndGet(-next.data.length);
+                    int offset = 0;
+                    while (offset < next.data.length) {
+                        if (!batch.hasRemaining()) {
+                            commit();
+                        }
+                        final int count = Math.min(next.data.length - offset, batch.remaining());
+                        batch.put(next.data, offset, count);
+                        offset += count;
+                    }
+                }
+            }
+            commit();
+        } catch (IOException e) {
+            UndertowLogger.ROOT_LOGGER.errorWritingAccessLog(e);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes the current batch to the log file
+     */
+    private void commit() throws IOException {
+        batch.flip();
+        if (!batch.hasRemaining()) {
+            batch.clear();
+            return;
+        }
+        if (memoryMapped) {
+            while (batch.hasRemaining()) {
+                if (mappedRegion == null || !mappedRegion.hasRemaining()) {
+                    mapNextRegion();
+                }
+                final int count = Math.min(batch.remaining(), mappedRegion.remaining());
+                final int limit = batch.limit();
+                batch.limit(batch.position() + count);
+                mappedRegion.put(batch);
+                batch.limit(limit);
+            }
+            if (syncOnCommit) {
+                mappedRegion.force();
+            }
+        } else {
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            if (syncOnCommit) {
+                channel.force(false);
+            }
+        }
+        batch.clear();
+    }
+
+    private void mapNextRegion() throws IOException {
+        final long position = mappedRegion == null ? mappedRegionStart : mappedRegionStart + mappedRegion.position();
+        mappedRegion = channel.map(FileChannel.MapMode.READ_WRITE, position, mappedRegionSize);
+        mappedRegionStart = position;
+    }
+
+    private boolean initOutput() {
+        if (channel != null) {
+            return true;
+        }
+        try {
+            if (memoryMapped) {
+                channel = FileChannel.open(defaultLogFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                mappedRegionStart = channel.size();
+                mappedRegion = null;
+            } else {
+                channel = FileChannel.open(defaultLogFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            if (channel.size() == 0 && fileHeaderGenerator != null) {
+                final String header = fileHeaderGenerator.generateHeader();
+                if (header != null) {
+                    batch.put((header + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            UndertowLogger.ROOT_LOGGER.errorWritingAccessLog(e);
+            return false;
+        }
+    }
+
+    /**
+     * Closes the log file. A memory mapped file is truncated to the end of the last message, as the mapping extends
+     * past the end of the data.
+     */
+    private void closeOutput() throws IOException {
+        final FileChannel channel = this.channel;
+        if (channel == null) {
+            return;
+        }
+        this.channel = null;
+        try {
+            if (memoryMapped && mappedRegion != null) {
+                mappedRegion.force();
+                channel.truncate(mappedRegionStart + mappedRegion.position());
+            }
+        } finally {
+            mappedRegion = null;
+            channel.close();
+        }
+    }
+
+    private void calculateChangeOverPoint() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.add(Calendar.DATE, 1);
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        currentDateString = df.format(new Date());
+        // if there is an existing default log file, use the date last modified instead of the current date
+        if (Files.exists(defaultLogFile)) {
+            try {
+                currentDateString = df.format(new Date(Files.getLastModifiedTime(defaultLogFile).toMillis()));
+            } catch (IOException e) {
+                // ignore. use the current date if exception happens.
+            }
+        }
+        changeOverPoint = calendar.getTimeInMillis();
+    }
+
+    private void checkAndRotateOnInitialRun() {
+        //if there is an existing log file check if it should be rotated
+        long lm = 0;
+        try {
+            lm = Files.getLastModifiedTime(defaultLogFile).toMillis();
+        } catch (IOException e) {
+            UndertowLogger.ROOT_LOGGER.errorRotatingAccessLog(e);
+        }
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(changeOverPoint);
+        c.add(Calendar.DATE, -1);
+        if (lm <= c.getTimeInMillis()) {
+            performFileRotation();
+        }
+        initialRun = false;
+    }
+
+    private void performFileRotation() {
+        forceLogRotation = false;
+        if (!rotate) {
+            return;
+        }
+        try {
+            closeOutput();
+            if (!Files.exists(defaultLogFile)) {
+                return;
+            }
+            Path newFile = outputDirectory.resolve(logBaseName + currentDateString + "." + logNameSuffix);
+            int count = 0;
+            while (Files.exists(newFile)) {
+                ++count;
+                newFile = outputDirectory.resolve(logBaseName + currentDateString + "-" + count + "." + logNameSuffix);
+            }
+            Files.move(defaultLogFile, newFile);
+        } catch (IOException e) {
+            UndertowLogger.ROOT_LOGGER.errorRotatingAccessLog(e);
+        } finally {
+            calculateChangeOverPoint();
+        }
+    }
+
+    /**
+     * forces a log rotation. This rotation is performed in an async manner, you cannot rely on the rotation
+     * being performed immediately after this method returns.
+     */
+    public void rotate() {
+        forceLogRotation = true;
+        if (stateUpdater.compareAndSet(this, 0, 1)) {
+            logWriteExecutor.execute(this);
+        }
+    }
+
+    /**
+     * For tests only. Blocks the current thread until all messages are written
+     * Just does a busy wait.
+     * <p>
+     * DO NOT USE THIS OUTSIDE OF A TEST
+     */
+    void awaitWrittenForTest() throws InterruptedException {
+        while (hasPending() || forceLogRotation) {
+            Thread.sleep(10);
+        }
+        while (state != 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writePending();
+            closeOutput();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private interface Segment {
+        void write(HttpServerExchange exchange, LogRecordBuffer buffer);
+    }
+
+    private static final class ConstantSegment implements Segment {
+        private final byte[] value;
+
+        private ConstantSegment(final byte[] value) {
+            this.value = value;
+        }
+
+        @Override
+        public void write(final HttpServerExchange exchange, final LogRecordBuffer buffer) {
+            buffer.writeBytes(value);
+        }
+    }
+
+    /**
+     * A message that did not fit into the ring buffer of the thread that logged it
+     */
+    private static final class Overflow {
+
+        /**
+         * The number of bytes the thread had published to its ring when the message was logged, the message must be
+         * written after them
+         */
+        private final long position;
+        private final byte[] data;
+
+        private Overflow(final long position, final byte[] data) {
+            this.position = position;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A single producer, single consumer ring buffer owned by a logging thread. Messages are first encoded into the
+     * record buffer, and then copied into the ring in one piece, so the writer only ever sees complete messages.
+     */
+    private static final class ThreadBuffer extends LogRecordBuffer {
+
+        private final Thread owner;
+        private final ByteBuffer ring;
+        private final int mask;
+        private final Queue<Overflow> overflow = new ConcurrentLinkedQueue<>();
+        /**
+         * The total number of bytes published by the owner
+         */
+        private volatile long head;
+        /**
+         * The total number of bytes consumed by the writer
+         */
+        private volatile long tail;
+
+        private ThreadBuffer(final Thread owner, final int capacity) {
+            this.owner = owner;
+            this.ring = ByteBuffer.allocateDirect(capacity);
+            this.mask = capacity - 1;
+        }
+
+        long available() {
+            return head - tail;
+        }
+
+        boolean publish() {
+            final long head = this.head;
+            if (length > ring.capacity() - (head - tail)) {
+                return false;
+            }
+            final int position = (int) (head & mask);
+            final int first = Math.min(length, ring.capacity() - position);
+            ring.put(position, scratch, 0, first);
+            if (first < length) {
+                ring.put(0, scratch, first, length - first);
+            }
+            this.head = head + length;
+            return true;
+        }
+
+        /**
+         * Called by the writer to copy up to the given number of available bytes into the target buffer
+         */
+        int drainTo(final ByteBuffer target, final int count) {
+            final long tail = this.tail;
+            final int position = (int) (tail & mask);
+            final int first = Math.min(count, ring.capacity() - position);
+            target.put(target.position(), ring, position, first);
+            target.position(target.position() + first);
+            if (first < count) {
+                target.put(target.position(), ring, 0, count - first);
+                target.position(target.position() + count - first);
+            }
+            this.tail = tail + count;
+            return count;
+        }
+    }
+
+    public static class Builder {
+        private Executor logWriteExecutor;
+        private Path outputDirectory;
+        private String logBaseName;
+        private String logNameSuffix;
+        private boolean rotate = true;
+        private boolean memoryMapped;
+        private boolean syncOnCommit;
+        private LogFileHeaderGenerator logFileHeaderGenerator;
+        private int threadBufferSize = DEFAULT_THREAD_BUFFER_SIZE;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private int mappedRegionSize = DEFAULT_MAPPED_REGION_SIZE;
+        private long maxOverflowSize = DEFAULT_MAX_OVERFLOW_SIZE;
+
+        public Executor getLogWriteExecutor() {
+            return logWriteExecutor;
+        }
+
+        public Builder setLogWriteExecutor(Executor logWriteExecutor) {
+            this.logWriteExecutor = logWriteExecutor;
+            return this;
+        }
+
+        public Path getOutputDirectory() {
+            return outputDirectory;
+        }
+
+        public Builder setOutputDirectory(Path outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            return this;
+        }
+
+        public String getLogBaseName() {
+            return logBaseName;
+        }
+
+        public Builder setLogBaseName(String logBaseName) {
+            this.logBaseName = logBaseName;
+            return this;
+        }
+
+        public String getLogNameSuffix() {
+            return logNameSuffix;
+        }
+
+        public Builder setLogNameSuffix(String logNameSuffix) {
+            this.logNameSuffix = logNameSuffix;
+            return this;
+        }
+
+        public boolean isRotate() {
+            return rotate;
+        }
+
+        public Builder setRotate(boolean rotate) {
+            this.rotate = rotate;
+            return this;
+        }
+
+        public boolean isMemoryMapped() {
+            return memoryMapped;
+        }
+
+        /**
+         * If this is true batches are copied into a memory mapped region of the log file instead of being appended
+         * with a write call. The file is truncated to the end of the data when it is closed or rotated, if the process
+         * crashes the file may end with a run of zero bytes.
+         */
+        public Builder setMemoryMapped(boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+            return this;
+        }
+
+        public boolean isSyncOnCommit() {
+            return syncOnCommit;
+        }
+
+        /**
+         * If this is true the log file is synced to disk after each batch is written.
+         */
+        public Builder setSyncOnCommit(boolean syncOnCommit) {
+            this.syncOnCommit = syncOnCommit;
+            return this;
+        }
+
+        public LogFileHeaderGenerator getLogFileHeaderGenerator() {
+            return logFileHeaderGenerator;
+        }
+
+        public Builder setLogFileHeaderGenerator(LogFileHeaderGenerator logFileHeaderGenerator) {
+            this.logFileHeaderGenerator = logFileHeaderGenerator;
+            return this;
+        }
+
+        public int getThreadBufferSize() {
+            return threadBufferSize;
+        }
+
+        /**
+         * Sets the size of the ring buffer of each logging thread, this is rounded up to a power of two.
+         */
+        public Builder setThreadBufferSize(int threadBufferSize) {
+            this.threadBufferSize = threadBufferSize;
+            return this;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Sets the maximum number of bytes that are written to the log file at once.
+         */
+        public Builder setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public int getMappedRegionSize() {
+            return mappedRegionSize;
+        }
+
+        /**
+         * Sets the size of the regions of the log file that are mapped at once in memory mapped mode.
+         */
+        public Builder setMappedRegionSize(int mappedRegionSize) {
+            this.mappedRegionSize = mappedRegionSize;
+            return this;
+        }
+
+        public long getMaxOverflowSize() {
+            return maxOverflowSize;
+        }
+
+        /**
+         * Sets the maximum number of bytes of messages that did not fit into the ring buffer of their thread that are
+         * queued on the heap. Messages that do not fit into either are dropped.
+         */
+        public Builder setMaxOverflowSize(long maxOverflowSize) {
+            this.maxOverflowSize = maxOverflowSize;
+            return this;
+        }
+
+        public BatchingAccessLogReceiver build() {
+            return new BatchingAccessLogReceiver(this);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.accesslog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte array that a single log record is encoded into. Strings are encoded as UTF-8, unpaired surrogates
+ * are replaced with '?'.
+ */
+class LogRecordBuffer {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    byte[] scratch = new byte[512];
+    int length;
+
+    private void ensureCapacity(final int required) {
+        if (length + required > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, length + required));
+        }
+    }
+
+    void writeByte(final int b) {
+        ensureCapacity(1);
+        scratch[length++] = (byte) b;
+    }
+
+    void writeBytes(final byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, scratch, length, bytes.length);
+        length += bytes.length;
+    }
+
+    void writeLong(long value) {
+        ensureCapacity(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                writeString(Long.toString(value));
+                return;
+            }
+            scratch[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            ++digits;
+        }
+        for (int i = length + digits - 1; i >= length; --i) {
+            scratch[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    void writeString(final String value) {
+        final int len = value.length();
+        ensureCapacity(len);
+        final byte[] scratch = this.scratch;
+        int pos = length;
+        int i = 0;
+        //fast path for ASCII
+        for (; i < len; ++i) {
+            final char c = value.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            scratch[pos++] = (byte) c;
+        }
+        length = pos;
+        for (; i < len; ++i) {
+            i = writeChar(value, i);
+        }
+    }
+
+    /**
+     * Writes the string as a quoted JSON string
+     */
+    void writeJsonString(final String value) {
+        final int len = value.length();
+        ensureCapacity(len + 2);
+        final byte[] scratch = this.scratch;
+        int pos = length;
+        scratch[pos++] = '"';
+        int i = 0;
+        //fast path for ASCII that does not need escaping
+        for (; i < len; ++i) {
+            final char c = value.charAt(i);
+            if (c >= 0x80 || c < 0x20 || c == '"' || c == '\\') {
+                break;
+            }
+            scratch[pos++] = (byte) c;
+        }
+        length = pos;
+        for (; i < len; ++i) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writeByte('\\');
+                writeByte(c);
+            } else if (c < 0x20) {
+                switch (c) {
+                    case '\n':
+                        writeByte('\\');
+                        writeByte('n');
+                        break;
+                    case '\r':
+                        writeByte('\\');
+                        writeByte('r');
+                        break;
+                    case '\t':
+                        writeByte('\\');
+                        writeByte('t');
+                        break;
+                    default:
+                        ensureCapacity(6);
+                        this.scratch[length++] = '\\';
+                        this.scratch[length++] = 'u';
+                        this.scratch[length++] = '0';
+                        this.scratch[length++] = '0';
+                        this.scratch[length++] = HEX[c >> 4];
+                        this.scratch[length++] = HEX[c & 0xF];
+                }
+            } else {
+                i = writeChar(value, i);
+            }
+        }
+        writeByte('"');
+    }
+
+    /**
+     * Writes the character at the given index, and returns the index of the last character that was consumed
+     */
+    private int writeChar(final String value, int i) {
+        ensureCapacity(4);
+        final byte[] scratch = this.scratch;
+        int pos = length;
+        final char c = value.charAt(i);
+        if (c < 0x80) {
+            scratch[pos++] = (byte) c;
+        } else if (c < 0x800) {
+            scratch[pos++] = (byte) (0xC0 | (c >> 6));
+            scratch[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+            final int cp = Character.toCodePoint(c, value.charAt(++i));
+            scratch[pos++] = (byte) (0xF0 | (cp >> 18));
+            scratch[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            scratch[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            scratch[pos++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            scratch[pos++] = '?';
+        } else {
+            scratch[pos++] = (byte) (0xE0 | (c >> 12));
+            scratch[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            scratch[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+        length = pos;
+        return i;
+    }
+
+    @Override
+    public String toString() {
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.accesslog;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.undertow.UndertowMessages;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Access log sampling policy that logs a fixed fraction of requests, chosen at random.
+ */
+public class ProbabilisticSamplingPredicate implements Predicate {
+
+    private final double rate;
+
+    /**
+     * @param rate The fraction of requests to log, between 0 and 1
+     */
+    public ProbabilisticSamplingPredicate(final double rate) {
+        if (rate < 0 || rate > 1) {
+            throw UndertowMessages.MESSAGES.invalidSamplingParameter("rate", rate);
+        }
+        this.rate = rate;
+    }
+
+    @Override
+    public boolean resolve(final HttpServerExchange value) {
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    @Override
+    public String toString() {
+        return "sample( " + rate + " )";
+    }
+}
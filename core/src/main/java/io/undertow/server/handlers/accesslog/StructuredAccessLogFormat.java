@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.accesslog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.undertow.UndertowMessages;
+import io.undertow.attribute.BytesReadAttribute;
+import io.undertow.attribute.BytesSentAttribute;
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.attribute.ExchangeAttributes;
+import io.undertow.attribute.LocalPortAttribute;
+import io.undertow.attribute.ReadOnlyAttributeException;
+import io.undertow.attribute.ResponseCodeAttribute;
+import io.undertow.attribute.ResponseTimeAttribute;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * An access log format that writes each request as a single line JSON object.
+ * <p>
+ * The format is a whitespace separated list of <code>name=attribute</code> fields, for example
+ * <code>status=%s path=%U agent=%{i,User-Agent}</code>. The aliases <code>common</code> and <code>combined</code> select
+ * the fields of the corresponding text formats. The field list is compiled once into an array of field writers with
+ * pre-encoded field names, and values are escaped directly into bytes when used with a
+ * {@link BatchingAccessLogReceiver}. Other receivers are passed the JSON object as a string.
+ * <p>
+ * The status code, bytes sent and received, local port and response time are written as JSON numbers, all other
+ * attributes are written as strings. Attributes that are not available are written as <code>null</code>.
+ */
+public final class StructuredAccessLogFormat implements ExchangeAttribute {
+
+    private static final String COMMON = "remoteHost=%h remoteUser=%u time=%t request=%r status=%s bytes=%B";
+    private static final String COMBINED = COMMON + " referer=%{i,Referer} userAgent=%{i,User-Agent}";
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+    private final String format;
+    private final FieldWriter[] fields;
+
+    private StructuredAccessLogFormat(final String format, final FieldWriter[] fields) {
+        this.format = format;
+        this.fields = fields;
+    }
+
+    /**
+     * Compiles a JSON access log format
+     *
+     * @param format      The field list, or one of the aliases <code>common</code> and <code>combined</code>
+     * @param classLoader The class loader used to load exchange attribute builders
+     * @return The format
+     */
+    public static StructuredAccessLogFormat json(final String format, final ClassLoader classLoader) {
+        final String fieldList;
+        if (format.equals("common")) {
+            fieldList = COMMON;
+        } else if (format.equals("combined")) {
+            fieldList = COMBINED;
+        } else {
+            fieldList = format;
+        }
+        final List<FieldWriter> fields = new ArrayList<>();
+        for (String field : fieldList.trim().split("\\s+")) {
+            final int index = field.indexOf('=');
+            if (index <= 0 || index == field.length() - 1) {
+                throw UndertowMessages.MESSAGES.invalidStructuredAccessLogField(field);
+            }
+            final String name = field.substring(0, index);
+            final ExchangeAttribute attribute = ExchangeAttributes.parser(classLoader).parse(field.substring(index + 1));
+            //the first field opens the object, the others are preceded by a separator
+            final LogRecordBuffer prefix = new LogRecordBuffer();
+            prefix.writeByte(fields.isEmpty() ? '{' : ',');
+            prefix.writeJsonString(name);
+            prefix.writeByte(':');
+            fields.add(createFieldWriter(Arrays.copyOf(prefix.scratch, prefix.length), attribute));
+        }
+        return new StructuredAccessLogFormat(format, fields.toArray(new FieldWriter[fields.size()]));
+    }
+
+    private static FieldWriter createFieldWriter(final byte[] prefix, final ExchangeAttribute attribute) {
+        if (attribute == ResponseCodeAttribute.INSTANCE) {
+            return new FieldWriter(prefix, attribute) {
+                @Override
+                void writeValue(final HttpServerExchange exchange, final LogRecordBuffer buffer) {
+                    buffer.writeLong(exchange.getStatusCode());
+                }
+            };
+        }
+        if (attribute instanceof BytesSentAttribute || attribute instanceof BytesReadAttribute
+                || attribute instanceof LocalPortAttribute || attribute instanceof ResponseTimeAttribute) {
+            return new FieldWriter(prefix, attribute) {
+                @Override
+                void writeValue(final HttpServerExchange exchange, final LogRecordBuffer buffer) {
+                    final String value = attribute.readAttribute(exchange);
+                    if (isNumber(value)) {
+                        buffer.writeString(value);
+                    } else {
+                        buffer.writeBytes(NULL);
+                    }
+                }
+            };
+        }
+        return new FieldWriter(prefix, attribute) {
+            @Override
+            void writeValue(final HttpServerExchange exchange, final LogRecordBuffer buffer) {
+                final String value = attribute.readAttribute(exchange);
+                if (value == null || value.isEmpty()) {
+                    buffer.writeBytes(NULL);
+                } else {
+                    buffer.writeJsonString(value);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return <code>true</code> if the value is a plain decimal number, which is a valid JSON number
+     */
+    private static boolean isNumber(final String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        final int start = value.charAt(0) == '-' ? 1 : 0;
+        if (start == value.length() || (value.charAt(start) == '0' && start + 1 < value.length() && value.charAt(start + 1) != '.')) {
+            return false;
+        }
+        boolean dot = false;
+        for (int i = start; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            if (c == '.' && !dot && i > start && i < value.length() - 1) {
+                dot = true;
+            } else if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the JSON object for the exchange into the buffer, without a trailing line separator
+     */
+    void write(final HttpServerExchange exchange, final LogRecordBuffer buffer) {
+        final FieldWriter[] fields = this.fields;
+        for (int i = 0; i < fields.length; ++i) {
+            buffer.writeBytes(fields[i].prefix);
+            fields[i].writeValue(exchange, buffer);
+        }
+        buffer.writeByte('}');
+    }
+
+    @Override
+    public String readAttribute(final HttpServerExchange exchange) {
+        final LogRecordBuffer buffer = new LogRecordBuffer();
+        write(exchange, buffer);
+        return buffer.toString();
+    }
+
+    @Override
+    public void writeAttribute(final HttpServerExchange exchange, final String newValue) throws ReadOnlyAttributeException {
+        throw new ReadOnlyAttributeException("structured access log", newValue);
+    }
+
+    @Override
+    public String toString() {
+        return "json:" + format;
+    }
+
+    private abstract static class FieldWriter {
+        final byte[] prefix;
+        final ExchangeAttribute attribute;
+
+        FieldWriter(final byte[] prefix, final ExchangeAttribute attribute) {
+            this.prefix = prefix;
+            this.attribute = attribute;
+        }
+
+        abstract void writeValue(HttpServerExchange exchange, LogRecordBuffer buffer);
+    }
+}
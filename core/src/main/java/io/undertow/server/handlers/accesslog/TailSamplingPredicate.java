@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.accesslog;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.undertow.UndertowMessages;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Tail based access log sampling policy. Failed requests and requests that took longer than a given percentile of
+ * recent response times are always logged, all other requests are logged if the sampler accepts them.
+ * <p>
+ * This is evaluated when the exchange completes, so it must be used as the predicate of an {@link AccessLogHandler}
+ * rather than to conditionally install the handler. Response times are recorded in a histogram with logarithmic
+ * buckets that is updated with atomic operations, the percentile is recalculated and older samples are decayed every
+ * {@value #RECALCULATE_INTERVAL} requests. Until the first percentile estimate is available every request is
+ * considered slow.
+ * <p>
+ * The response time is only known if the request start time is recorded, see
+ * {@link io.undertow.UndertowOptions#RECORD_REQUEST_START_TIME}. Without it only failed requests are always logged.
+ */
+public class TailSamplingPredicate implements Predicate {
+
+    private static final int RECALCULATE_INTERVAL = 1024;
+    /**
+     * Each power of two is split into 4 sub buckets, so the estimate is within 25% of the real percentile
+     */
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int BUCKETS = 64 << SUB_BUCKET_BITS;
+
+    private final double percentile;
+    private final int minErrorStatus;
+    private final Predicate sampler;
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final AtomicLong recorded = new AtomicLong();
+    /**
+     * Requests that took at least this many microseconds are logged
+     */
+    private volatile long thresholdMicros = 0;
+
+    /**
+     * @param percentile The percentile above which requests are always logged, between 0 and 1, e.g. 0.99
+     * @param sampler    The sampler for requests that did not fail and were not slow
+     */
+    public TailSamplingPredicate(final double percentile, final Predicate sampler) {
+        this(percentile, 500, sampler);
+    }
+
+    /**
+     * @param percentile     The percentile above which requests are always logged, between 0 and 1, e.g. 0.99
+     * @param minErrorStatus Requests with a status code of at least this value are always logged
+     * @param sampler        The sampler for requests that did not fail and were not slow
+     */
+    public TailSamplingPredicate(final double percentile, final int minErrorStatus, final Predicate sampler) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw UndertowMessages.MESSAGES.invalidSamplingParameter("percentile", percentile);
+        }
+        if (sampler == null) {
+            throw UndertowMessages.MESSAGES.argumentCannotBeNull("sampler");
+        }
+        this.percentile = percentile;
+        this.minErrorStatus = minErrorStatus;
+        this.sampler = sampler;
+    }
+
+    @Override
+    public boolean resolve(final HttpServerExchange value) {
+        final long start = value.getRequestStartTime();
+        final long latencyMicros = start == -1 ? -1 : TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        return shouldLog(value, value.getStatusCode(), latencyMicros);
+    }
+
+    boolean shouldLog(final HttpServerExchange exchange, final int status, final long latencyMicros) {
+        boolean log = status >= minErrorStatus;
+        if (latencyMicros >= 0) {
+            record(latencyMicros);
+            log |= latencyMicros >= thresholdMicros;
+        }
+        return log || sampler.resolve(exchange);
+    }
+
+    /**
+     * @return The current response time threshold in microseconds
+     */
+    public long getThresholdMicros() {
+        return thresholdMicros;
+    }
+
+    private void record(final long latencyMicros) {
+        histogram.incrementAndGet(bucket(latencyMicros));
+        if ((recorded.incrementAndGet() & (RECALCULATE_INTERVAL - 1)) == 0) {
+            recalculate();
+        }
+    }
+
+    /**
+     * Calculates the threshold from the histogram and then halves all buckets, so that recent response times have
+     * more weight. Concurrent updates may be lost or halved early, which does not matter for an estimate.
+     */
+    private void recalculate() {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        final long target = (long) Math.ceil(total * percentile);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                //requests in the bucket above the percentile are logged
+                thresholdMicros = i + 1 < BUCKETS ? lowerBound(i + 1) : Long.MAX_VALUE;
+                break;
+            }
+        }
+        for (int i = 0; i < BUCKETS; ++i) {
+            if (counts[i] != 0) {
+                histogram.addAndGet(i, -(counts[i] - (counts[i] >> 1)));
+            }
+        }
+    }
+
+    static int bucket(final long value) {
+        if (value < (1 << SUB_BUCKET_BITS)) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | sub;
+    }
+
+    static long lowerBound(final int bucket) {
+        if (bucket < (1 << SUB_BUCKET_BITS)) {
+            return bucket;
+        }
+        final int exponent = (bucket >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        final long sub = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        return (1L << exponent) | (sub << (exponent - SUB_BUCKET_BITS));
+    }
+
+    @Override
+    public String toString() {
+        return "tail-sample( " + percentile + ", " + sampler + " )";
+    }
+}
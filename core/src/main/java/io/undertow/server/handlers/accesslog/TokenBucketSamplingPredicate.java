@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.accesslog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import io.undertow.UndertowMessages;
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Access log sampling policy that logs at most a fixed number of requests per second for each route, with bursts of up
+ * to a given size.
+ * <p>
+ * Each route has its own token bucket, implemented as a single timestamp that is updated with a compare and set (the
+ * generic cell rate algorithm), so deciding whether to log a request never blocks. The route of a request is the
+ * request path by default, if paths contain identifiers a coarser key should be provided. Once the maximum number of
+ * routes is being tracked the buckets of idle routes, which are full and so behave exactly like a new bucket, are
+ * evicted. If every tracked route is busy, new routes share a single bucket until one becomes idle.
+ */
+public class TokenBucketSamplingPredicate implements Predicate {
+
+    private static final int DEFAULT_MAX_ROUTES = 1000;
+
+    private static final AtomicLongFieldUpdater<TokenBucketSamplingPredicate> nextSweepUpdater = AtomicLongFieldUpdater.newUpdater(TokenBucketSamplingPredicate.class, "nextSweep");
+
+    private final ExchangeAttribute routeKey;
+    private final double permitsPerSecond;
+    private final int burst;
+    private final int maxRoutes;
+    private final long interval;
+    private final long tolerance;
+
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket overflow = new Bucket();
+
+    /**
+     * The earliest time at which the buckets are scanned for idle routes again. A bucket that was in use during a scan
+     * is full again one tolerance later, so scanning more often than that cannot free much.
+     */
+    private volatile long nextSweep = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond The number of requests per second that are logged for each request path
+     */
+    public TokenBucketSamplingPredicate(final double permitsPerSecond) {
+        this(null, permitsPerSecond, Math.max(1, (int) permitsPerSecond), DEFAULT_MAX_ROUTES);
+    }
+
+    /**
+     * @param routeKey         The attribute that identifies the route of a request, or <code>null</code> to use the
+     *                         request path
+     * @param permitsPerSecond The number of requests per second that are logged for each route
+     * @param burst            The number of requests that can be logged at once after a route has been idle
+     * @param maxRoutes        The maximum number of routes that have their own bucket
+     */
+    public TokenBucketSamplingPredicate(final ExchangeAttribute routeKey, final double permitsPerSecond, final int burst, final int maxRoutes) {
+        if (permitsPerSecond <= 0) {
+            throw UndertowMessages.MESSAGES.invalidSamplingParameter("permitsPerSecond", permitsPerSecond);
+        }
+        if (burst < 1) {
+            throw UndertowMessages.MESSAGES.invalidSamplingParameter("burst", burst);
+        }
+        this.routeKey = routeKey;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.maxRoutes = maxRoutes;
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.tolerance = interval * burst;
+    }
+
+    @Override
+    public boolean resolve(final HttpServerExchange value) {
+        final String key = routeKey == null ? value.getRequestPath() : routeKey.readAttribute(value);
+        final long now = System.nanoTime();
+        return bucket(key, now).tryAcquire(now, interval, tolerance);
+    }
+
+    private Bucket bucket(final String key, final long now) {
+        if (key == null) {
+            return overflow;
+        }
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxRoutes && !evictIdle(now)) {
+                return overflow;
+            }
+            bucket = new Bucket();
+            final Bucket existing = buckets.putIfAbsent(key, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Removes the buckets of routes that have been idle long enough for their bucket to be full.
+     *
+     * @return true if a bucket was removed
+     */
+    private boolean evictIdle(final long now) {
+        final long next = nextSweep;
+        if (next - now > 0 || !nextSweepUpdater.compareAndSet(this, next, now + tolerance)) {
+            return false;
+        }
+        boolean removed = false;
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            //a request that raced with the removal may still take a token from the removed bucket, which at worst
+            //logs one extra request for the route
+            if (entry.getValue().isFull(now) && buckets.remove(entry.getKey(), entry.getValue())) {
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return "token-bucket( " + permitsPerSecond + ", " + burst + " )";
+    }
+
+    private static final class Bucket {
+
+        private static final AtomicLongFieldUpdater<Bucket> tatUpdater = AtomicLongFieldUpdater.newUpdater(Bucket.class, "theoreticalArrivalTime");
+
+        /**
+         * The time at which the bucket will be full again
+         */
+        private volatile long theoreticalArrivalTime = System.nanoTime();
+
+        boolean isFull(final long now) {
+            return theoreticalArrivalTime - now <= 0;
+        }
+
+        boolean tryAcquire(final long now, final long interval, final long tolerance) {
+            for (;;) {
+                final long tat = theoreticalArrivalTime;
+                final long newTat = (tat - now > 0 ? tat : now) + interval;
+                if (newTat - now > tolerance) {
+                    return false;
+                }
+                if (tatUpdater.compareAndSet(this, tat, newTat)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -142,6 +142,17 @@ public class DirectBufferCache {
         return cacheEntry;
     }
 
+    /**
+     * Returns the entry for the given key without recording a hit, or allocating
+     * space for the entry.
+     *
+     * @param key The key
+     * @return The entry, or <code>null</code> if there is no entry for the key
+     */
+    public CacheEntry peek(Object key) {
+        return cache.get(key);
+    }
+
     /**
      * Returns a set of all the keys in the cache. This is a copy of the
      * key set at the time of method invocation.
@@ -233,6 +244,13 @@ public class DirectBufferCache {
             }
         }
 
+        /**
+         * @return The number of times this entry has been requested
+         */
+        public int hits() {
+            return hits;
+        }
+
         public Object key() {
             return key;
         }
@@ -130,6 +130,24 @@ public class LRUCache<K, V> {
         return cacheEntry.getValue();
     }
 
+    /**
+     * Returns the value for the given key without recording a hit.
+     *
+     * @param key The key
+     * @return The value, or <code>null</code> if there is no value or it has expired
+     */
+    public V peek(K key) {
+        CacheEntry<K, V> cacheEntry = cache.get(key);
+        if (cacheEntry == null) {
+            return null;
+        }
+        long expires = cacheEntry.getExpires();
+        if (expires != MAX_AGE_NO_EXPIRY && System.currentTimeMillis() > expires) {
+            return null;
+        }
+        return cacheEntry.getValue();
+    }
+
     public Set<K> keySet(){
         return Collections.unmodifiableSet(this.cache.keySet());
     }
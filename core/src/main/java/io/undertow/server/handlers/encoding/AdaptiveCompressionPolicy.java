@@ -0,0 +1,387 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.encoding;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import io.undertow.UndertowLogger;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.Headers;
+import org.xnio.XnioWorker;
+import org.xnio.management.XnioWorkerMXBean;
+
+/**
+ * A policy that picks the compression level for each response, or decides that the response should not be compressed
+ * at all.
+ * <p>
+ * The decision is based on the content type of the response, the content length if it is known, the compression ratio
+ * that has been achieved for previous responses of the same content type, and the current utilisation of the server.
+ * When the server is saturated responses are sent uncompressed, as sending more bytes is preferable to queueing requests
+ * behind compression work.
+ * <p>
+ * This policy is a {@link Predicate}, it should be used as the 'allowed' predicate of the encodings that it applies to,
+ * and passed to the encoding provider so the selected level is used:
+ * <pre>
+ * AdaptiveCompressionPolicy policy = AdaptiveCompressionPolicy.builder().build();
+ * new ContentEncodingRepository().addEncodingHandler("gzip", new GzipEncodingProvider(policy), 50, policy);
+ * </pre>
+ */
+public class AdaptiveCompressionPolicy implements Predicate {
+
+    /**
+     * Level returned by {@link #getCompressionLevel(HttpServerExchange)} if the response should not be compressed
+     */
+    public static final int NO_COMPRESSION = Integer.MIN_VALUE;
+
+    /**
+     * The maximum number of content types that compression ratios are tracked for
+     */
+    private static final int MAX_TRACKED_CONTENT_TYPES = 256;
+
+    private static final double RATIO_WEIGHT = 0.05;
+
+    /**
+     * One in this many responses of a content type that does not compress well is still compressed to keep the ratio
+     * history up to date
+     */
+    private static final int PROBE_INTERVAL = 100;
+
+    private static final Set<String> DEFAULT_INCOMPRESSIBLE_CONTENT_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "image/png", "image/jpeg", "image/gif", "image/webp", "image/avif",
+            "video/", "audio/",
+            "application/zip", "application/gzip", "application/x-gzip", "application/zstd", "application/x-7z-compressed",
+            "font/woff", "font/woff2")));
+
+    private final int defaultLevel;
+    private final int minimumLevel;
+    private final long minimumSize;
+    private final long largeResponseSize;
+    private final double highUtilisation;
+    private final double saturatedUtilisation;
+    private final double maximumCompressionRatio;
+    private final int minimumSamples;
+    private final long sampleIntervalNanos;
+    private final Set<String> incompressibleContentTypes;
+
+    /**
+     * The level that was chosen for the current response, so the predicate and the encoding provider see the same
+     * decision
+     */
+    private final AttachmentKey<Integer> compressionLevel = AttachmentKey.create(Integer.class);
+    private final ConcurrentMap<String, RatioHistory> ratios = new ConcurrentHashMap<>();
+    private final OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+
+    private volatile long lastSample;
+    private volatile double utilisation;
+
+    protected AdaptiveCompressionPolicy(final Builder builder) {
+        this.defaultLevel = builder.defaultLevel;
+        this.minimumLevel = builder.minimumLevel;
+        this.minimumSize = builder.minimumSize;
+        this.largeResponseSize = builder.largeResponseSize;
+        this.highUtilisation = builder.highUtilisation;
+        this.saturatedUtilisation = builder.saturatedUtilisation;
+        this.maximumCompressionRatio = builder.maximumCompressionRatio;
+        this.minimumSamples = builder.minimumSamples;
+        this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.sampleInterval);
+        this.incompressibleContentTypes = Collections.unmodifiableSet(new HashSet<>(builder.incompressibleContentTypes));
+        this.lastSample = System.nanoTime() - sampleIntervalNanos;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public boolean resolve(final HttpServerExchange exchange) {
+        return getCompressionLevel(exchange) != NO_COMPRESSION;
+    }
+
+    /**
+     * Returns the compression level for the current response. This should be called once the response headers have
+     * been set. The level is only chosen once per response, later calls return the same result.
+     *
+     * @param exchange The exchange
+     * @return The compression level, or {@link #NO_COMPRESSION} if the response should not be compressed
+     */
+    public int getCompressionLevel(final HttpServerExchange exchange) {
+        final Integer existing = exchange.getAttachment(compressionLevel);
+        if (existing != null) {
+            return existing;
+        }
+        final int level = chooseCompressionLevel(exchange);
+        exchange.putAttachment(compressionLevel, level);
+        return level;
+    }
+
+    private int chooseCompressionLevel(final HttpServerExchange exchange) {
+        final String contentType = contentType(exchange);
+        if (contentType != null && isIncompressible(contentType)) {
+            return NO_COMPRESSION;
+        }
+        final long contentLength = exchange.getResponseContentLength();
+        if (contentLength >= 0 && contentLength < minimumSize) {
+            return NO_COMPRESSION;
+        }
+        if (contentType != null) {
+            RatioHistory history = ratios.get(contentType);
+            if (history != null && history.samples >= minimumSamples && history.ratio > maximumCompressionRatio
+                    && history.skipped.getAndIncrement() % PROBE_INTERVAL != 0) {
+                //every so often we still compress a response, in case the content has changed
+                return NO_COMPRESSION;
+            }
+        }
+        final double utilisation = getUtilisation(exchange);
+        if (utilisation >= saturatedUtilisation) {
+            UndertowLogger.REQUEST_LOGGER.tracef("Not compressing response for %s as the server is saturated", exchange);
+            return NO_COMPRESSION;
+        }
+        if (utilisation >= highUtilisation || (largeResponseSize > 0 && contentLength > largeResponseSize)) {
+            return minimumLevel;
+        }
+        return defaultLevel;
+    }
+
+    /**
+     * Records the result of compressing a response, this is used to stop compressing content types that do not
+     * compress well.
+     */
+    public void compressionComplete(final HttpServerExchange exchange, final long bytesRead, final long bytesWritten) {
+        if (bytesRead <= 0) {
+            return;
+        }
+        final String contentType = contentType(exchange);
+        if (contentType == null) {
+            return;
+        }
+        RatioHistory history = ratios.get(contentType);
+        if (history == null) {
+            if (ratios.size() >= MAX_TRACKED_CONTENT_TYPES) {
+                return;
+            }
+            history = new RatioHistory();
+            RatioHistory existing = ratios.putIfAbsent(contentType, history);
+            if (existing != null) {
+                history = existing;
+            }
+        }
+        history.update((double) bytesWritten / bytesRead);
+    }
+
+    /**
+     * @return The average compressed size as a fraction of the original size for the given content type, or -1 if
+     * not enough responses have been compressed
+     */
+    public double getCompressionRatio(final String contentType) {
+        RatioHistory history = ratios.get(contentType.toLowerCase(Locale.ENGLISH));
+        if (history == null || history.samples < minimumSamples) {
+            return -1;
+        }
+        return history.ratio;
+    }
+
+    /**
+     * Returns the current utilisation of the server, between 0 and 1. This is the greater of the worker thread pool
+     * utilisation (including queued tasks) and the system load average relative to the number of processors. The value
+     * is sampled at most once per sample interval.
+     */
+    protected double getUtilisation(final HttpServerExchange exchange) {
+        final long now = System.nanoTime();
+        if (now - lastSample < sampleIntervalNanos) {
+            return utilisation;
+        }
+        lastSample = now;
+        double result = 0;
+        XnioWorker worker = exchange.getConnection().getWorker();
+        if (worker != null) {
+            XnioWorkerMXBean mxBean = worker.getMXBean();
+            if (mxBean != null && mxBean.getMaxWorkerPoolSize() > 0) {
+                result = (double) (mxBean.getBusyWorkerThreadCount() + mxBean.getWorkerQueueSize()) / mxBean.getMaxWorkerPoolSize();
+            }
+        }
+        double load = operatingSystem.getSystemLoadAverage();
+        if (load >= 0) {
+            result = Math.max(result, load / operatingSystem.getAvailableProcessors());
+        }
+        return utilisation = Math.min(1, result);
+    }
+
+    private boolean isIncompressible(final String contentType) {
+        if (incompressibleContentTypes.contains(contentType)) {
+            return true;
+        }
+        int index = contentType.indexOf('/');
+        return index > 0 && incompressibleContentTypes.contains(contentType.substring(0, index + 1));
+    }
+
+    private static String contentType(final HttpServerExchange exchange) {
+        String contentType = exchange.getResponseHeaders().getFirst(Headers.CONTENT_TYPE);
+        if (contentType == null) {
+            return null;
+        }
+        int index = contentType.indexOf(';');
+        if (index != -1) {
+            contentType = contentType.substring(0, index);
+        }
+        return contentType.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Exponentially weighted moving average of the compression ratio. Updates are not synchronized, as the history is
+     * only a heuristic an occasional lost update does not matter.
+     */
+    private static final class RatioHistory {
+        private volatile double ratio;
+        private volatile int samples;
+        private final AtomicInteger skipped = new AtomicInteger(1);
+
+        void update(final double sample) {
+            int samples = this.samples;
+            if (samples == 0) {
+                ratio = sample;
+            } else {
+                ratio = ratio + (sample - ratio) * Math.max(RATIO_WEIGHT, 1.0 / (samples + 1));
+            }
+            if (samples < Integer.MAX_VALUE) {
+                this.samples = samples + 1;
+            }
+        }
+    }
+
+    public static final class Builder {
+
+        private int defaultLevel = Deflater.DEFAULT_COMPRESSION;
+        private int minimumLevel = Deflater.BEST_SPEED;
+        private long minimumSize = 256;
+        private long largeResponseSize = 1024 * 1024;
+        private double highUtilisation = 0.75;
+        private double saturatedUtilisation = 0.95;
+        private double maximumCompressionRatio = 0.9;
+        private int minimumSamples = 20;
+        private long sampleInterval = 100;
+        private final Set<String> incompressibleContentTypes = new HashSet<>(DEFAULT_INCOMPRESSIBLE_CONTENT_TYPES);
+
+        Builder() {
+        }
+
+        /**
+         * @param defaultLevel The compression level that is used when the server is not under load
+         */
+        public Builder setDefaultLevel(int defaultLevel) {
+            this.defaultLevel = defaultLevel;
+            return this;
+        }
+
+        /**
+         * @param minimumLevel The compression level that is used under high load, and for large responses
+         */
+        public Builder setMinimumLevel(int minimumLevel) {
+            this.minimumLevel = minimumLevel;
+            return this;
+        }
+
+        /**
+         * @param minimumSize Responses with a known content length below this size are not compressed
+         */
+        public Builder setMinimumSize(long minimumSize) {
+            this.minimumSize = minimumSize;
+            return this;
+        }
+
+        /**
+         * @param largeResponseSize Responses with a known content length above this size use the minimum level
+         */
+        public Builder setLargeResponseSize(long largeResponseSize) {
+            this.largeResponseSize = largeResponseSize;
+            return this;
+        }
+
+        /**
+         * @param highUtilisation The utilisation (between 0 and 1) above which the minimum level is used
+         */
+        public Builder setHighUtilisation(double highUtilisation) {
+            this.highUtilisation = highUtilisation;
+            return this;
+        }
+
+        /**
+         * @param saturatedUtilisation The utilisation (between 0 and 1) above which responses are not compressed
+         */
+        public Builder setSaturatedUtilisation(double saturatedUtilisation) {
+            this.saturatedUtilisation = saturatedUtilisation;
+            return this;
+        }
+
+        /**
+         * @param maximumCompressionRatio Content types whose average compressed size is a larger fraction of the original
+         *                                size than this are no longer compressed
+         */
+        public Builder setMaximumCompressionRatio(double maximumCompressionRatio) {
+            this.maximumCompressionRatio = maximumCompressionRatio;
+            return this;
+        }
+
+        /**
+         * @param minimumSamples The number of responses of a content type that must be compressed before the ratio
+         *                       history is used
+         */
+        public Builder setMinimumSamples(int minimumSamples) {
+            this.minimumSamples = minimumSamples;
+            return this;
+        }
+
+        /**
+         * @param sampleInterval The interval in milliseconds at which the server utilisation is sampled
+         */
+        public Builder setSampleInterval(long sampleInterval) {
+            this.sampleInterval = sampleInterval;
+            return this;
+        }
+
+        /**
+         * Adds a content type that is never compressed. A type ending in '/' matches all subtypes.
+         */
+        public Builder addIncompressibleContentType(String contentType) {
+            this.incompressibleContentTypes.add(contentType.toLowerCase(Locale.ENGLISH));
+            return this;
+        }
+
+        public Builder clearIncompressibleContentTypes() {
+            this.incompressibleContentTypes.clear();
+            return this;
+        }
+
+        public AdaptiveCompressionPolicy build() {
+            return new AdaptiveCompressionPolicy(this);
+        }
+    }
+}
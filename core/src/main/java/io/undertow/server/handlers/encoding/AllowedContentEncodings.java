@@ -40,7 +40,7 @@ public class AllowedContentEncodings implements ConduitWrapper<StreamSinkConduit
 
     private final HttpServerExchange exchange;
     private final List<EncodingMapping> encodings;
-
+    private EncodedResponseCache responseCache;
 
     public AllowedContentEncodings(final HttpServerExchange exchange, final List<EncodingMapping> encodings) {
         this.exchange = exchange;
@@ -72,6 +72,17 @@ public class AllowedContentEncodings implements ConduitWrapper<StreamSinkConduit
         return getCurrentContentEncoding().equals(Headers.IDENTITY.toString());
     }
 
+    /**
+     * @return The cache that is used to serve previously encoded responses, or null if there is no cache
+     */
+    public EncodedResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    void setResponseCache(final EncodedResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
     /**
      * If the list of allowed encodings was empty then it means that no encodings were allowed, and
      * identity was explicitly prohibited with a q value of 0.
@@ -96,6 +107,8 @@ public class AllowedContentEncodings implements ConduitWrapper<StreamSinkConduit
                 if (exchange.getRequestMethod().equals(Methods.HEAD)) {
                     //we don't create an actual encoder for HEAD requests, but we set the header
                     return factory.create();
+                } else if (responseCache != null) {
+                    return responseCache.wrap(encoding, factory, exchange);
                 } else {
                     return encoding.getEncoding().getResponseWrapper().wrap(factory, exchange);
                 }
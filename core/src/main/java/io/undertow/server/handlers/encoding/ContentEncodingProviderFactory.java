@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.encoding;
+
+/**
+ * Service interface that allows additional content encodings, such as {@code br} or {@code zstd}, to be provided
+ * by libraries that are not a dependency of Undertow.
+ * <p>
+ * Implementations are loaded with {@link java.util.ServiceLoader} by
+ * {@link ContentEncodingRepository#addServiceLoadedEncodingHandlers(ClassLoader)}. Codecs that rely on native code
+ * should return false from {@link #isAvailable()} if it cannot be loaded on the current platform, in which case the
+ * encoding is simply not offered and clients fall back to one of the other encodings.
+ *
+ * @see EncodingHandler
+ */
+public interface ContentEncodingProviderFactory {
+
+    /**
+     *
+     * @return The content coding name, as used in the {@code Accept-Encoding} and {@code Content-Encoding} headers
+     */
+    String getEncoding();
+
+    /**
+     *
+     * @return The server side priority of the encoding, used when the client does not express a preference. The
+     * built in {@code gzip} and {@code deflate} encodings have priorities of 100 and 10.
+     */
+    int getPriority();
+
+    /**
+     *
+     * @return true if the codec can be used
+     */
+    boolean isAvailable();
+
+    /**
+     *
+     * @return The encoding provider
+     */
+    ContentEncodingProvider createProvider();
+
+}
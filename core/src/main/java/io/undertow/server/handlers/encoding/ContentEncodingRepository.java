@@ -18,6 +18,7 @@
 
 package io.undertow.server.handlers.encoding;
 
+import io.undertow.UndertowLogger;
 import io.undertow.predicate.Predicate;
 import io.undertow.predicate.Predicates;
 import io.undertow.server.HttpServerExchange;
@@ -27,8 +28,14 @@ import io.undertow.util.QValueParser;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
 
 /**
  *
@@ -50,11 +57,14 @@ public class ContentEncodingRepository {
         }
         final List<EncodingMapping> resultingMappings = new ArrayList<>();
         final List<List<QValueParser.QValueResult>> found = QValueParser.parse(res);
+        //encodings that are explicitly listed are not matched by the '*' wildcard, even if they have a q value of 0
+        Set<String> listed = null;
         //noinspection ForLoopReplaceableByForEach - using induction for loop for iteration to avoid allocation
         for (int i = 0; i < found.size(); i++) {
             final List<QValueParser.QValueResult> result = found.get(i);
             List<EncodingMapping> available = new ArrayList<>();
             boolean includesIdentity = false;
+            boolean includesWildcard = false;
             boolean isQValue0 = false;
 
             //noinspection ForLoopReplaceableByForEach - using induction for loop for iteration to avoid allocation
@@ -63,10 +73,11 @@ public class ContentEncodingRepository {
                 EncodingMapping encoding;
                 if (value.getValue().equals("*")) {
                     includesIdentity = true;
+                    includesWildcard = true;
                     encoding = IDENTITY_ENCODING;
                 } else {
-                    encoding = encodingMap.get(value.getValue());
-                    if(encoding == null && IDENTITY.equals(value.getValue())) {
+                    encoding = getEncodingMapping(value.getValue());
+                    if(encoding == null && IDENTITY.equalsIgnoreCase(value.getValue())) {
                         encoding = IDENTITY_ENCODING;
                     }
                 }
@@ -86,6 +97,16 @@ public class ContentEncodingRepository {
                     }
                 }
             } else if (!available.isEmpty()) {
+                if (includesWildcard) {
+                    if (listed == null) {
+                        listed = listedEncodings(found);
+                    }
+                    for (EncodingMapping mapping : encodingMap.values()) {
+                        if (!listed.contains(mapping.getName().toLowerCase(Locale.ENGLISH))) {
+                            available.add(mapping);
+                        }
+                    }
+                }
                 Collections.sort(available, Collections.reverseOrder());
                 resultingMappings.addAll(available);
             }
@@ -96,18 +117,72 @@ public class ContentEncodingRepository {
         return null;
     }
 
+    private EncodingMapping getEncodingMapping(final String name) {
+        EncodingMapping encoding = encodingMap.get(name);
+        if (encoding == null) {
+            //content codings are case insensitive
+            encoding = encodingMap.get(name.toLowerCase(Locale.ENGLISH));
+        }
+        return encoding;
+    }
+
+    private static Set<String> listedEncodings(final List<List<QValueParser.QValueResult>> found) {
+        final Set<String> listed = new HashSet<>();
+        for (List<QValueParser.QValueResult> result : found) {
+            for (QValueParser.QValueResult value : result) {
+                listed.add(value.getValue().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        return listed;
+    }
+
     public synchronized ContentEncodingRepository addEncodingHandler(final String encoding, final ContentEncodingProvider encoder, int priority) {
         addEncodingHandler(encoding, encoder, priority, Predicates.truePredicate());
         return this;
     }
 
     public synchronized ContentEncodingRepository addEncodingHandler(final String encoding, final ContentEncodingProvider encoder, int priority, final Predicate enabledPredicate) {
-        this.encodingMap.put(encoding, new EncodingMapping(encoding, encoder, priority, enabledPredicate));
+        this.encodingMap.put(encoding.toLowerCase(Locale.ENGLISH), new EncodingMapping(encoding, encoder, priority, enabledPredicate));
         return this;
     }
 
+    /**
+     * Adds the encodings of all the available {@link ContentEncodingProviderFactory} services that can be loaded from
+     * the given class loader. Encodings that have already been added to this repository are not replaced. Providers
+     * that cannot be loaded or created, for example because a native library is missing, are logged and skipped.
+     *
+     * @param classLoader The class loader
+     * @return this repository
+     */
+    public synchronized ContentEncodingRepository addServiceLoadedEncodingHandlers(final ClassLoader classLoader) {
+        final Iterator<ContentEncodingProviderFactory> it = ServiceLoader.load(ContentEncodingProviderFactory.class, classLoader).iterator();
+        for (;;) {
+            try {
+                if (!it.hasNext()) {
+                    break;
+                }
+                addServiceLoadedEncodingHandler(it.next());
+            } catch (ServiceConfigurationError | LinkageError e) {
+                UndertowLogger.REQUEST_LOGGER.failedToLoadContentEncodingProvider(e);
+            }
+        }
+        return this;
+    }
+
+    private void addServiceLoadedEncodingHandler(final ContentEncodingProviderFactory factory) {
+        String encoding = factory.getEncoding().toLowerCase(Locale.ENGLISH);
+        if (encodingMap.containsKey(encoding)) {
+            return;
+        }
+        if (!factory.isAvailable()) {
+            UndertowLogger.REQUEST_LOGGER.debugf("Content encoding %s is not available and will not be used", encoding);
+            return;
+        }
+        addEncodingHandler(factory.getEncoding(), factory.createProvider(), factory.getPriority());
+    }
+
     public synchronized ContentEncodingRepository removeEncodingHandler(final String encoding) {
-        encodingMap.remove(encoding);
+        encodingMap.remove(encoding.toLowerCase(Locale.ENGLISH));
         return this;
     }
 
@@ -36,6 +36,7 @@ import java.util.zip.Deflater;
 public class DeflateEncodingProvider implements ContentEncodingProvider {
 
     private final ObjectPool<Deflater> deflaterPool;
+    private final AdaptiveCompressionPolicy compressionPolicy;
 
     public DeflateEncodingProvider() {
         this(Deflater.DEFLATED);
@@ -47,7 +48,21 @@ public class DeflateEncodingProvider implements ContentEncodingProvider {
 
 
     public DeflateEncodingProvider(ObjectPool<Deflater> deflaterPool) {
+        this(deflaterPool, null);
+    }
+
+    /**
+     * Creates a provider that uses the compression level selected by the given policy for each response.
+     *
+     * @param compressionPolicy The policy
+     */
+    public DeflateEncodingProvider(AdaptiveCompressionPolicy compressionPolicy) {
+        this(DeflatingStreamSinkConduit.newInstanceDeflaterPool(Deflater.DEFLATED), compressionPolicy);
+    }
+
+    public DeflateEncodingProvider(ObjectPool<Deflater> deflaterPool, AdaptiveCompressionPolicy compressionPolicy) {
         this.deflaterPool = deflaterPool;
+        this.compressionPolicy = compressionPolicy;
     }
 
     @Override
@@ -56,7 +71,20 @@ public class DeflateEncodingProvider implements ContentEncodingProvider {
             @Override
             public StreamSinkConduit wrap(final ConduitFactory<StreamSinkConduit> factory, final HttpServerExchange exchange) {
                 UndertowLogger.REQUEST_LOGGER.tracef("Created DEFLATE response conduit for %s", exchange);
-                return new DeflatingStreamSinkConduit(factory, exchange, deflaterPool);
+                if (compressionPolicy == null) {
+                    return new DeflatingStreamSinkConduit(factory, exchange, deflaterPool);
+                }
+                final DeflatingStreamSinkConduit conduit = new DeflatingStreamSinkConduit(factory, exchange, deflaterPool) {
+                    @Override
+                    protected void deflateComplete(long bytesRead, long bytesWritten) {
+                        compressionPolicy.compressionComplete(exchange, bytesRead, bytesWritten);
+                    }
+                };
+                int level = compressionPolicy.getCompressionLevel(exchange);
+                //the decision made by the predicate is reused, this is only NO_COMPRESSION if the policy was not the predicate
+                //for this encoding, as it has already been selected the fastest level is used
+                conduit.setDeflateLevel(level == AdaptiveCompressionPolicy.NO_COMPRESSION ? Deflater.BEST_SPEED : level);
+                return conduit;
             }
         };
     }
@@ -0,0 +1,259 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.encoding;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import io.undertow.predicate.Predicate;
+import io.undertow.predicate.Predicates;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.cache.DirectBufferCache;
+import io.undertow.server.handlers.cache.LimitedBufferSlicePool;
+import io.undertow.util.ConduitFactory;
+import io.undertow.util.ETag;
+import io.undertow.util.ETagUtils;
+import io.undertow.util.Methods;
+import io.undertow.util.StatusCodes;
+import org.xnio.Buffers;
+import org.xnio.conduits.StreamSinkConduit;
+
+/**
+ * A cache of content encoded dynamic responses.
+ * <p>
+ * Responses that are byte for byte identical to a previous response (for example configuration documents or API
+ * descriptions) do not need to be compressed again. If this cache is installed on an {@link EncodingHandler} then
+ * the uncompressed body of eligible responses is buffered, and the compressed representation is stored in a
+ * {@link DirectBufferCache}. On a cache hit the stored bytes are written directly and the encoder is bypassed.
+ * <p>
+ * Responses are looked up by their strong {@code ETag} (scoped to the request URI) if one is present when the
+ * response channel is created, in which case the body produced by the handler is discarded on a hit. Otherwise
+ * they are looked up by a SHA-256 digest of the complete uncompressed body.
+ * <p>
+ * Only successful GET responses that match the cache predicate and whose body is between the minimum and maximum
+ * size are cached. Responses that are larger than the maximum size, or that are explicitly flushed before they
+ * are complete, are compressed as normal.
+ * <p>
+ * NOTE: Like {@link io.undertow.server.handlers.cache.ResponseCache} this cache has no concept of authentication,
+ * a strong ETag is assumed to identify the same representation for every user.
+ */
+public class EncodedResponseCache {
+
+    private static final AtomicLongFieldUpdater<EncodedResponseCache> hitsUpdater = AtomicLongFieldUpdater.newUpdater(EncodedResponseCache.class, "hits");
+    private static final AtomicLongFieldUpdater<EncodedResponseCache> missesUpdater = AtomicLongFieldUpdater.newUpdater(EncodedResponseCache.class, "misses");
+
+    private final DirectBufferCache cache;
+    private final int minSize;
+    private final int maxSize;
+    private final Predicate cachePredicate;
+
+    private volatile long hits;
+    private volatile long misses;
+
+    /**
+     * @param cache   The buffer cache that holds the encoded responses
+     * @param maxSize The maximum size of an uncompressed response body that will be buffered and cached
+     */
+    public EncodedResponseCache(final DirectBufferCache cache, final int maxSize) {
+        this(cache, 0, maxSize, Predicates.truePredicate());
+    }
+
+    /**
+     * @param cache          The buffer cache that holds the encoded responses
+     * @param minSize        The minimum size of an uncompressed response body that will be cached
+     * @param maxSize        The maximum size of an uncompressed response body that will be buffered and cached
+     * @param cachePredicate The predicate that determines if a response is eligible for caching
+     */
+    public EncodedResponseCache(final DirectBufferCache cache, final int minSize, final int maxSize, final Predicate cachePredicate) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.cache = cache;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.cachePredicate = cachePredicate == null ? Predicates.truePredicate() : cachePredicate;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Predicate getCachePredicate() {
+        return cachePredicate;
+    }
+
+    /**
+     * @return The number of responses that were served from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of eligible responses that had to be encoded
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Wraps the response with the given encoding, using the cache if the response is eligible.
+     */
+    StreamSinkConduit wrap(final EncodingMapping encoding, final ConduitFactory<StreamSinkConduit> factory, final HttpServerExchange exchange) {
+        if (!isCacheable(exchange)) {
+            return encoding.getEncoding().getResponseWrapper().wrap(factory, exchange);
+        }
+        Key etagKey = null;
+        DirectBufferCache.CacheEntry existing = null;
+        final ETag etag = ETagUtils.getETag(exchange);
+        if (etag != null && !etag.isWeak()) {
+            etagKey = new Key(encoding.getName(), exchange.getRequestURI() + '?' + exchange.getQueryString(), etag.getTag());
+            existing = lookup(etagKey);
+        }
+        return new EncodedResponseCachingStreamSinkConduit(factory, exchange, encoding, this, etagKey, existing);
+    }
+
+    private boolean isCacheable(final HttpServerExchange exchange) {
+        if (!exchange.getRequestMethod().equals(Methods.GET) || exchange.getStatusCode() != StatusCodes.OK) {
+            return false;
+        }
+        final long contentLength = exchange.getResponseContentLength();
+        if (contentLength > maxSize || (contentLength >= 0 && contentLength < minSize)) {
+            return false;
+        }
+        return cachePredicate.resolve(exchange);
+    }
+
+    /**
+     * Creates a key from the digest of the complete uncompressed body
+     */
+    Key createBodyKey(final EncodingMapping encoding, final byte[] body, final int length) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(body, 0, length);
+            return new Key(encoding.getName(), length, md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Should never happen
+            throw new InternalError("SHA-256 not supported on this platform");
+        }
+    }
+
+    /**
+     * Looks up an entry. If an entry is returned it has been referenced, and must be dereferenced by the caller
+     * once it has been written.
+     */
+    DirectBufferCache.CacheEntry lookup(final Key key) {
+        final DirectBufferCache.CacheEntry entry = cache.get(key);
+        if (entry != null && entry.enabled() && entry.reference()) {
+            hitsUpdater.incrementAndGet(this);
+            return entry;
+        }
+        missesUpdater.incrementAndGet(this);
+        return null;
+    }
+
+    /**
+     * Stores the encoded representation. The buffer cache only allocates space for entries that are requested
+     * repeatedly, so the data may not be retained until the same response has been seen a number of times.
+     */
+    void store(final Key key, final byte[] data, final int length) {
+        final DirectBufferCache.CacheEntry entry = cache.add(key, length);
+        if (entry == null || entry.size() != length || entry.buffers().length == 0 || !entry.claimEnable()) {
+            return;
+        }
+        if (!entry.reference()) {
+            entry.disable();
+            return;
+        }
+        boolean ok = false;
+        try {
+            LimitedBufferSlicePool.PooledByteBuffer[] pooled = entry.buffers();
+            ByteBuffer[] buffers = new ByteBuffer[pooled.length];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = pooled[i].getBuffer();
+                buffers[i].clear();
+            }
+            Buffers.copy(buffers, 0, buffers.length, ByteBuffer.wrap(data, 0, length));
+            for (ByteBuffer buffer : buffers) {
+                //prepare buffers for reading
+                buffer.flip();
+            }
+            entry.enable();
+            ok = true;
+        } finally {
+            if (!ok) {
+                entry.disable();
+            }
+            entry.dereference();
+        }
+    }
+
+    static final class Key {
+        private final String encoding;
+        private final String resource;
+        private final String etag;
+        private final long length;
+        private final byte[] digest;
+        private final int hashCode;
+
+        Key(final String encoding, final String resource, final String etag) {
+            this.encoding = encoding;
+            this.resource = resource;
+            this.etag = etag;
+            this.length = -1;
+            this.digest = null;
+            this.hashCode = 31 * (31 * encoding.hashCode() + resource.hashCode()) + etag.hashCode();
+        }
+
+        Key(final String encoding, final long length, final byte[] digest) {
+            this.encoding = encoding;
+            this.resource = null;
+            this.etag = null;
+            this.length = length;
+            this.digest = digest;
+            this.hashCode = 31 * (31 * encoding.hashCode() + Long.hashCode(length)) + Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            if (length != key.length) return false;
+            if (!encoding.equals(key.encoding)) return false;
+            if (resource != null ? !resource.equals(key.resource) : key.resource != null) return false;
+            if (etag != null ? !etag.equals(key.etag) : key.etag != null) return false;
+            return Arrays.equals(digest, key.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
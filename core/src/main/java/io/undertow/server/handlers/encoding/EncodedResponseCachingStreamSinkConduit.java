@@ -0,0 +1,531 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.encoding;
+
+import static org.xnio.Bits.allAreClear;
+import static org.xnio.Bits.anyAreSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.UndertowLogger;
+import io.undertow.server.Connectors;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.cache.DirectBufferCache;
+import io.undertow.server.handlers.cache.LimitedBufferSlicePool;
+import io.undertow.util.ConduitFactory;
+import io.undertow.util.Headers;
+import io.undertow.util.ImmediateConduitFactory;
+import org.xnio.Buffers;
+import org.xnio.IoUtils;
+import org.xnio.XnioIoThread;
+import org.xnio.XnioWorker;
+import org.xnio.channels.Channels;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+import org.xnio.conduits.ConduitWritableByteChannel;
+import org.xnio.conduits.Conduits;
+import org.xnio.conduits.StreamSinkConduit;
+import org.xnio.conduits.WriteReadyHandler;
+
+/**
+ * Conduit that buffers an uncompressed response so the encoded representation can be served from, or stored in,
+ * an {@link EncodedResponseCache}.
+ * <p>
+ * If the response grows beyond the maximum cacheable size, or is flushed before it is complete, then the buffered
+ * data is handed to the normal encoding conduit and the response is streamed as usual.
+ */
+final class EncodedResponseCachingStreamSinkConduit implements StreamSinkConduit {
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private final ConduitFactory<StreamSinkConduit> conduitFactory;
+    private final HttpServerExchange exchange;
+    private final EncodingMapping encoding;
+    private final EncodedResponseCache responseCache;
+    private final EncodedResponseCache.Key etagKey;
+
+    /**
+     * The cached entry that is being served, if any. This is dereferenced once it has been written.
+     */
+    private DirectBufferCache.CacheEntry entry;
+    private WriteReadyHandler writeReadyHandler;
+    /**
+     * The next conduit, this is either the encoding conduit if we are streaming, or the underlying conduit once the
+     * encoded response is ready.
+     */
+    private StreamSinkConduit next;
+    private ByteBuffer[] pending;
+
+    private byte[] body;
+    private int bodyLength;
+    private long received;
+
+    private int state;
+
+    private static final int SHUTDOWN = 1;
+    private static final int NEXT_SHUTDOWN = 1 << 1;
+    private static final int PASS_THROUGH = 1 << 2;
+    private static final int RESPONSE_READY = 1 << 3;
+    private static final int WRITES_RESUMED = 1 << 4;
+    private static final int CLOSED = 1 << 5;
+
+    EncodedResponseCachingStreamSinkConduit(final ConduitFactory<StreamSinkConduit> conduitFactory, final HttpServerExchange exchange, final EncodingMapping encoding,
+                                            final EncodedResponseCache responseCache, final EncodedResponseCache.Key etagKey, final DirectBufferCache.CacheEntry entry) {
+        this.conduitFactory = conduitFactory;
+        this.exchange = exchange;
+        this.encoding = encoding;
+        this.responseCache = responseCache;
+        this.etagKey = etagKey;
+        this.entry = entry;
+        if (entry == null) {
+            body = new byte[Math.min(INITIAL_BUFFER_SIZE, responseCache.getMaxSize())];
+        }
+        setWriteReadyHandler(new WriteReadyHandler.ChannelListenerHandler<>(Connectors.getConduitSinkChannel(exchange)));
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        if (anyAreSet(state, SHUTDOWN | CLOSED)) {
+            throw new ClosedChannelException();
+        }
+        if (anyAreSet(state, PASS_THROUGH)) {
+            if (!flushPending()) {
+                return 0;
+            }
+            return next.write(src);
+        }
+        final int remaining = src.remaining();
+        if (entry != null) {
+            //we already have the encoded response, the data the handler writes is not needed
+            src.position(src.limit());
+            received += remaining;
+            return remaining;
+        }
+        if (bodyLength + (long) remaining > responseCache.getMaxSize()) {
+            startPassThrough();
+            if (!flushPending()) {
+                return 0;
+            }
+            return next.write(src);
+        }
+        if (bodyLength + remaining > body.length) {
+            body = Arrays.copyOf(body, (int) Math.min(responseCache.getMaxSize(), Math.max(body.length * 2L, bodyLength + remaining)));
+        }
+        src.get(body, bodyLength, remaining);
+        bodyLength += remaining;
+        received += remaining;
+        return remaining;
+    }
+
+    @Override
+    public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+        if (anyAreSet(state, PASS_THROUGH) && pending == null) {
+            return next.write(srcs, offset, length);
+        }
+        long total = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            ByteBuffer buf = srcs[i];
+            if (buf.hasRemaining()) {
+                int ret = write(buf);
+                total += ret;
+                if (ret == 0 || buf.hasRemaining()) {
+                    return total;
+                }
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int writeFinal(final ByteBuffer src) throws IOException {
+        return Conduits.writeFinalBasic(this, src);
+    }
+
+    @Override
+    public long writeFinal(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+        return Conduits.writeFinalBasic(this, srcs, offset, length);
+    }
+
+    @Override
+    public long transferFrom(final FileChannel src, final long position, final long count) throws IOException {
+        if (anyAreSet(state, SHUTDOWN | CLOSED)) {
+            throw new ClosedChannelException();
+        }
+        return src.transferTo(position, count, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public long transferFrom(final StreamSourceChannel source, final long count, final ByteBuffer throughBuffer) throws IOException {
+        if (anyAreSet(state, SHUTDOWN | CLOSED)) {
+            throw new ClosedChannelException();
+        }
+        return IoUtils.transfer(source, count, throughBuffer, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public boolean flush() throws IOException {
+        if (anyAreSet(state, CLOSED)) {
+            return true;
+        }
+        if (allAreClear(state, SHUTDOWN | PASS_THROUGH)) {
+            if (entry != null) {
+                //the whole response is already available
+                return true;
+            }
+            //an explicit flush, don't hold the data back
+            startPassThrough();
+        } else if (allAreClear(state, PASS_THROUGH | RESPONSE_READY)) {
+            prepareResponse();
+        }
+        try {
+            if (!flushPending()) {
+                return false;
+            }
+            if (anyAreSet(state, SHUTDOWN) && allAreClear(state, NEXT_SHUTDOWN)) {
+                state |= NEXT_SHUTDOWN;
+                releaseEntry();
+                next.terminateWrites();
+            }
+            return next.flush();
+        } catch (IOException | RuntimeException | Error e) {
+            releaseEntry();
+            throw e;
+        }
+    }
+
+    /**
+     * Hands the buffered data to the encoding conduit, and streams the rest of the response as normal.
+     */
+    private void startPassThrough() {
+        if (bodyLength > 0) {
+            pending = new ByteBuffer[]{ByteBuffer.wrap(body, 0, bodyLength)};
+        }
+        body = null;
+        state |= PASS_THROUGH;
+        next = encoding.getEncoding().getResponseWrapper().wrap(conduitFactory, exchange);
+        if (anyAreSet(state, WRITES_RESUMED)) {
+            next.resumeWrites();
+        }
+    }
+
+    /**
+     * Called once the complete response has been written, this either finds the encoded response in the cache, or
+     * encodes the buffered data and attempts to store it.
+     */
+    private void prepareResponse() throws IOException {
+        EncodedResponseCache.Key key = etagKey;
+        if (entry == null && key == null && bodyLength >= responseCache.getMinSize()) {
+            key = responseCache.createBodyKey(encoding, body, bodyLength);
+            entry = responseCache.lookup(key);
+        }
+        final long length;
+        if (entry != null) {
+            boolean ok = false;
+            try {
+                LimitedBufferSlicePool.PooledByteBuffer[] pooled = entry.buffers();
+                pending = new ByteBuffer[pooled.length];
+                for (int i = 0; i < pending.length; i++) {
+                    // Keep position from mutating
+                    pending[i] = pooled[i].getBuffer().duplicate();
+                }
+                ok = true;
+            } finally {
+                if (!ok) {
+                    releaseEntry();
+                }
+            }
+            length = entry.size();
+            //the encoder was not used, so we need to adjust the number of bytes sent ourselves
+            Connectors.updateResponseBytesSent(exchange, length - received);
+            UndertowLogger.REQUEST_LOGGER.tracef("Serving %s encoded response from the cache to %s", encoding.getName(), exchange);
+        } else {
+            final MemorySinkConduit target = new MemorySinkConduit(exchange, Math.max(64, bodyLength / 2));
+            final ConduitStreamSinkChannel channel = new ConduitStreamSinkChannel(null, encoding.getEncoding().getResponseWrapper().wrap(new ImmediateConduitFactory<StreamSinkConduit>(target), exchange));
+            Channels.writeBlocking(channel, ByteBuffer.wrap(body, 0, bodyLength));
+            channel.shutdownWrites();
+            Channels.flushBlocking(channel);
+            if (key != null && bodyLength >= responseCache.getMinSize()) {
+                responseCache.store(key, target.data, target.length);
+            }
+            pending = new ByteBuffer[]{ByteBuffer.wrap(target.data, 0, target.length)};
+            length = target.length;
+        }
+        body = null;
+        if (!exchange.getResponseHeaders().contains(Headers.TRANSFER_ENCODING)) {
+            exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, Long.toString(length));
+        } else {
+            exchange.getResponseHeaders().remove(Headers.CONTENT_LENGTH);
+        }
+        state |= RESPONSE_READY;
+        next = conduitFactory.create();
+        if (anyAreSet(state, WRITES_RESUMED)) {
+            next.resumeWrites();
+        }
+    }
+
+    private boolean flushPending() throws IOException {
+        if (pending == null) {
+            return true;
+        }
+        long remaining = Buffers.remaining(pending);
+        while (remaining > 0) {
+            long res = next.write(pending, 0, pending.length);
+            if (res == 0) {
+                return false;
+            }
+            remaining -= res;
+        }
+        pending = null;
+        return true;
+    }
+
+    private void releaseEntry() {
+        if (entry != null) {
+            pending = null;
+            entry.dereference();
+            entry = null;
+        }
+    }
+
+    @Override
+    public void terminateWrites() throws IOException {
+        state |= SHUTDOWN;
+    }
+
+    @Override
+    public boolean isWriteShutdown() {
+        return anyAreSet(state, SHUTDOWN);
+    }
+
+    @Override
+    public void truncateWrites() throws IOException {
+        state |= CLOSED;
+        releaseEntry();
+        body = null;
+        pending = null;
+        if (next != null) {
+            next.truncateWrites();
+        } else {
+            conduitFactory.create().truncateWrites();
+        }
+    }
+
+    @Override
+    public void suspendWrites() {
+        if (next == null) {
+            state = state & ~WRITES_RESUMED;
+        } else {
+            next.suspendWrites();
+        }
+    }
+
+    @Override
+    public boolean isWriteResumed() {
+        if (next == null) {
+            return anyAreSet(state, WRITES_RESUMED);
+        } else {
+            return next.isWriteResumed();
+        }
+    }
+
+    @Override
+    public void wakeupWrites() {
+        if (next == null) {
+            resumeWrites();
+        } else {
+            next.wakeupWrites();
+        }
+    }
+
+    @Override
+    public void resumeWrites() {
+        if (next == null) {
+            state |= WRITES_RESUMED;
+            queueWriteListener();
+        } else {
+            next.resumeWrites();
+        }
+    }
+
+    private void queueWriteListener() {
+        exchange.getConnection().getIoThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (writeReadyHandler != null) {
+                    try {
+                        writeReadyHandler.writeReady();
+                    } finally {
+                        //if writes are still resumed queue up another one
+                        if (next == null && isWriteResumed()) {
+                            queueWriteListener();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void awaitWritable() throws IOException {
+        if (next != null) {
+            next.awaitWritable();
+        }
+    }
+
+    @Override
+    public void awaitWritable(final long time, final TimeUnit timeUnit) throws IOException {
+        if (next != null) {
+            next.awaitWritable(time, timeUnit);
+        }
+    }
+
+    @Override
+    public XnioIoThread getWriteThread() {
+        return exchange.getConnection().getIoThread();
+    }
+
+    @Override
+    public void setWriteReadyHandler(final WriteReadyHandler handler) {
+        this.writeReadyHandler = handler;
+    }
+
+    @Override
+    public XnioWorker getWorker() {
+        return exchange.getConnection().getWorker();
+    }
+
+    /**
+     * Target for the encoder when a buffered response is encoded in memory.
+     */
+    private static final class MemorySinkConduit implements StreamSinkConduit {
+        private final HttpServerExchange exchange;
+        private byte[] data;
+        private int length;
+        private boolean shutdown;
+
+        private MemorySinkConduit(final HttpServerExchange exchange, final int initialSize) {
+            this.exchange = exchange;
+            this.data = new byte[initialSize];
+        }
+
+        @Override
+        public long transferFrom(final FileChannel src, final long position, final long count) throws IOException {
+            return src.transferTo(position, count, new ConduitWritableByteChannel(this));
+        }
+
+        @Override
+        public long transferFrom(final StreamSourceChannel source, final long count, final ByteBuffer throughBuffer) throws IOException {
+            return IoUtils.transfer(source, count, throughBuffer, new ConduitWritableByteChannel(this));
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            final int remaining = src.remaining();
+            if (length + remaining > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + remaining));
+            }
+            src.get(data, length, remaining);
+            length += remaining;
+            return remaining;
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offset, final int len) throws IOException {
+            long total = 0;
+            for (int i = offset; i < offset + len; ++i) {
+                total += write(srcs[i]);
+            }
+            return total;
+        }
+
+        @Override
+        public int writeFinal(final ByteBuffer src) throws IOException {
+            return Conduits.writeFinalBasic(this, src);
+        }
+
+        @Override
+        public long writeFinal(final ByteBuffer[] srcs, final int offset, final int len) throws IOException {
+            return Conduits.writeFinalBasic(this, srcs, offset, len);
+        }
+
+        @Override
+        public void terminateWrites() throws IOException {
+            shutdown = true;
+        }
+
+        @Override
+        public boolean isWriteShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public void resumeWrites() {
+        }
+
+        @Override
+        public void suspendWrites() {
+        }
+
+        @Override
+        public void wakeupWrites() {
+        }
+
+        @Override
+        public boolean isWriteResumed() {
+            return false;
+        }
+
+        @Override
+        public void awaitWritable() throws IOException {
+        }
+
+        @Override
+        public void awaitWritable(final long time, final TimeUnit timeUnit) throws IOException {
+        }
+
+        @Override
+        public XnioIoThread getWriteThread() {
+            return exchange.getConnection().getIoThread();
+        }
+
+        @Override
+        public void setWriteReadyHandler(final WriteReadyHandler handler) {
+        }
+
+        @Override
+        public void truncateWrites() throws IOException {
+            shutdown = true;
+        }
+
+        @Override
+        public boolean flush() throws IOException {
+            return true;
+        }
+
+        @Override
+        public XnioWorker getWorker() {
+            return exchange.getConnection().getWorker();
+        }
+    }
+}
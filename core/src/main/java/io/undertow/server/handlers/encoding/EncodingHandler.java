@@ -48,6 +48,8 @@ public class EncodingHandler implements HttpHandler {
     private volatile HttpHandler next = ResponseCodeHandler.HANDLE_404;
     private volatile HttpHandler noEncodingHandler = ResponseCodeHandler.HANDLE_406;
 
+    private volatile EncodedResponseCache responseCache;
+
     private final ContentEncodingRepository contentEncodingRepository;
 
     public EncodingHandler(final HttpHandler next, ContentEncodingRepository contentEncodingRepository) {
@@ -67,6 +69,7 @@ public class EncodingHandler implements HttpHandler {
         } else if (encodings.isNoEncodingsAllowed()) {
             noEncodingHandler.handleRequest(exchange);
         } else {
+            encodings.setResponseCache(responseCache);
             exchange.addResponseWrapper(encodings);
             exchange.putAttachment(AllowedContentEncodings.ATTACHMENT_KEY, encodings);
             next.handleRequest(exchange);
@@ -95,6 +98,21 @@ public class EncodingHandler implements HttpHandler {
         return this;
     }
 
+    public EncodedResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Sets a cache that is used to avoid encoding dynamic responses that are identical to a previous response.
+     *
+     * @param responseCache The cache, or null to always encode responses
+     * @return this handler
+     */
+    public EncodingHandler setResponseCache(final EncodedResponseCache responseCache) {
+        this.responseCache = responseCache;
+        return this;
+    }
+
     @Override
     public String toString() {
         return "compress()";
@@ -109,7 +127,7 @@ public class EncodingHandler implements HttpHandler {
 
         @Override
         public Map<String, Class<?>> parameters() {
-            return Collections.emptyMap();
+            return Collections.<String, Class<?>>singletonMap("adaptive", Boolean.class);
         }
 
         @Override
@@ -124,12 +142,21 @@ public class EncodingHandler implements HttpHandler {
 
         @Override
         public HandlerWrapper build(Map<String, Object> config) {
+            final Boolean adaptive = (Boolean) config.get("adaptive");
             return new HandlerWrapper() {
                 @Override
                 public HttpHandler wrap(HttpHandler handler) {
-                    return new EncodingHandler(handler, new ContentEncodingRepository()
-                            .addEncodingHandler("gzip", new GzipEncodingProvider(), 100)
-                            .addEncodingHandler("deflate", new DeflateEncodingProvider(), 10));
+                    final ContentEncodingRepository repository = new ContentEncodingRepository();
+                    if (adaptive != null && adaptive) {
+                        AdaptiveCompressionPolicy policy = AdaptiveCompressionPolicy.builder().build();
+                        repository.addEncodingHandler("gzip", new GzipEncodingProvider(policy), 100, policy)
+                                .addEncodingHandler("deflate", new DeflateEncodingProvider(policy), 10, policy);
+                    } else {
+                        repository.addEncodingHandler("gzip", new GzipEncodingProvider(), 100)
+                                .addEncodingHandler("deflate", new DeflateEncodingProvider(), 10);
+                    }
+                    return new EncodingHandler(handler, repository
+                            .addServiceLoadedEncodingHandlers(EncodingHandler.class.getClassLoader()));
                 }
             };
         }
@@ -37,6 +37,7 @@ import java.util.zip.Deflater;
 public class GzipEncodingProvider implements ContentEncodingProvider {
 
     private final ObjectPool<Deflater> deflaterPool;
+    private final AdaptiveCompressionPolicy compressionPolicy;
 
     public GzipEncodingProvider() {
         this(Deflater.DEFAULT_COMPRESSION);
@@ -47,7 +48,21 @@ public class GzipEncodingProvider implements ContentEncodingProvider {
     }
 
     public GzipEncodingProvider(ObjectPool<Deflater> deflaterPool) {
+        this(deflaterPool, null);
+    }
+
+    /**
+     * Creates a provider that uses the compression level selected by the given policy for each response.
+     *
+     * @param compressionPolicy The policy
+     */
+    public GzipEncodingProvider(AdaptiveCompressionPolicy compressionPolicy) {
+        this(DeflatingStreamSinkConduit.newInstanceDeflaterPool(Deflater.DEFAULT_COMPRESSION), compressionPolicy);
+    }
+
+    public GzipEncodingProvider(ObjectPool<Deflater> deflaterPool, AdaptiveCompressionPolicy compressionPolicy) {
         this.deflaterPool = deflaterPool;
+        this.compressionPolicy = compressionPolicy;
     }
 
     @Override
@@ -56,7 +71,20 @@ public class GzipEncodingProvider implements ContentEncodingProvider {
             @Override
             public StreamSinkConduit wrap(final ConduitFactory<StreamSinkConduit> factory, final HttpServerExchange exchange) {
                 UndertowLogger.REQUEST_LOGGER.tracef("Created GZIP response conduit for %s", exchange);
-                return new GzipStreamSinkConduit(factory, exchange, deflaterPool);
+                if (compressionPolicy == null) {
+                    return new GzipStreamSinkConduit(factory, exchange, deflaterPool);
+                }
+                final GzipStreamSinkConduit conduit = new GzipStreamSinkConduit(factory, exchange, deflaterPool) {
+                    @Override
+                    protected void deflateComplete(long bytesRead, long bytesWritten) {
+                        compressionPolicy.compressionComplete(exchange, bytesRead, bytesWritten);
+                    }
+                };
+                int level = compressionPolicy.getCompressionLevel(exchange);
+                //the decision made by the predicate is reused, this is only NO_COMPRESSION if the policy was not the predicate
+                //for this encoding, as it has already been selected the fastest level is used
+                conduit.setDeflateLevel(level == AdaptiveCompressionPolicy.NO_COMPRESSION ? Deflater.BEST_SPEED : level);
+                return conduit;
             }
         };
     }
@@ -33,9 +33,12 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import io.undertow.UndertowLogger;
 import io.undertow.UndertowMessages;
+import io.undertow.util.EncodedParameters;
 import io.undertow.util.FileUtils;
 import io.undertow.util.HeaderMap;
+import io.undertow.util.UrlDecodeException;
 
 /**
  * Representation of form data.
@@ -49,30 +52,78 @@ public final class FormData implements Iterable<String> {
     private final int maxValues;
     private int valueCount = 0;
 
+    /**
+     * Form encoded data that has not been decoded yet
+     */
+    private EncodedParameters encoded;
+
     public FormData(final int maxValues) {
         this.maxValues = maxValues;
     }
 
+    /**
+     * Creates form data that is backed by form encoded data. Single values are decoded when they are looked up, all
+     * values are decoded as soon as the form data is iterated or modified.
+     */
+    FormData(final int maxValues, final EncodedParameters encoded) {
+        this.maxValues = maxValues;
+        this.encoded = encoded;
+    }
 
     public Iterator<String> iterator() {
+        decodeAll();
         return values.keySet().iterator();
     }
 
     public FormValue getFirst(String name) {
+        if (encoded != null) {
+            try {
+                final String value = encoded.getFirst(name);
+                return value == null ? null : new FormValueImpl(value, null);
+            } catch (UrlDecodeException e) {
+                decodeAll();
+            }
+        }
         final Deque<FormValue> deque = values.get(name);
         return deque == null ? null : deque.peekFirst();
     }
 
     public FormValue getLast(String name) {
+        if (encoded != null) {
+            try {
+                final String value = encoded.getLast(name);
+                return value == null ? null : new FormValueImpl(value, null);
+            } catch (UrlDecodeException e) {
+                decodeAll();
+            }
+        }
         final Deque<FormValue> deque = values.get(name);
         return deque == null ? null : deque.peekLast();
     }
 
     public Deque<FormValue> get(String name) {
+        decodeAll();
         return values.get(name);
     }
 
+    private void decodeAll() {
+        final EncodedParameters encoded = this.encoded;
+        if (encoded == null) {
+            return;
+        }
+        this.encoded = null;
+        for (int i = 0; i < encoded.size(); ++i) {
+            try {
+                add(encoded.getName(i), encoded.getValue(i));
+            } catch (UrlDecodeException e) {
+                //if there was exception during decoding ignore the parameter [UNDERTOW-1554]
+                UndertowLogger.REQUEST_LOGGER.debugf(e, "Failed to decode form parameter");
+            }
+        }
+    }
+
     public void add(String name, byte[] value, String fileName, HeaderMap headers) {
+        decodeAll();
         Deque<FormValue> values = this.values.get(name);
         if (values == null) {
             this.values.put(name, values = new ArrayDeque<>(1));
@@ -92,6 +143,7 @@ public final class FormData implements Iterable<String> {
     }
 
     public void add(String name, String value, String charset, final HeaderMap headers) {
+        decodeAll();
         Deque<FormValue> values = this.values.get(name);
         if (values == null) {
             this.values.put(name, values = new ArrayDeque<>(1));
@@ -107,6 +159,7 @@ public final class FormData implements Iterable<String> {
     }
 
     public void add(String name, Path value, String fileName, final HeaderMap headers, boolean bigField, String charset) {
+        decodeAll();
         Deque<FormValue> values = this.values.get(name);
         if (values == null) {
             this.values.put(name, values = new ArrayDeque<>(1));
@@ -121,6 +174,7 @@ public final class FormData implements Iterable<String> {
     }
 
     public void put(String name, String value, final HeaderMap headers) {
+        decodeAll();
         Deque<FormValue> values = new ArrayDeque<>(1);
         Deque<FormValue> old = this.values.put(name, values);
         if (old != null) {
@@ -134,6 +188,7 @@ public final class FormData implements Iterable<String> {
     }
 
     public Deque<FormValue> remove(String name) {
+        decodeAll();
         Deque<FormValue> old =  values.remove(name);
         if (old != null) {
             valueCount -= old.size();
@@ -142,6 +197,13 @@ public final class FormData implements Iterable<String> {
     }
 
     public boolean contains(String name) {
+        if (encoded != null) {
+            try {
+                return encoded.contains(name);
+            } catch (UrlDecodeException e) {
+                decodeAll();
+            }
+        }
         final Deque<FormValue> value = values.get(name);
         return value != null && !value.isEmpty();
     }
@@ -152,6 +214,8 @@ public final class FormData implements Iterable<String> {
         if (o == null || getClass() != o.getClass()) return false;
 
         final FormData strings = (FormData) o;
+        decodeAll();
+        strings.decodeAll();
 
         if (values != null ? !values.equals(strings.values) : strings.values != null) return false;
 
@@ -160,11 +224,13 @@ public final class FormData implements Iterable<String> {
 
     @Override
     public int hashCode() {
+        decodeAll();
         return values != null ? values.hashCode() : 0;
     }
 
     @Override
     public String toString() {
+        decodeAll();
         return "FormData{" +
                 "values=" + values +
                 '}';
@@ -24,6 +24,8 @@ import io.undertow.UndertowOptions;
 import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.EncodedParameters;
+import io.undertow.util.ParameterLimitException;
 import io.undertow.util.UrlDecodeException;
 import io.undertow.util.Headers;
 import io.undertow.util.SameThreadExecutor;
@@ -48,6 +50,7 @@ public class FormEncodedDataDefinition implements FormParserFactory.ParserDefini
     private static boolean parseExceptionLogAsDebug = false;
     private String defaultEncoding = "ISO-8859-1";
     private boolean forceCreation = false; //if the parser should be created even if the correct headers are missing
+    private boolean lazyDecoding = false;
 
     public FormEncodedDataDefinition() {
     }
@@ -66,7 +69,7 @@ public class FormEncodedDataDefinition implements FormParserFactory.ParserDefini
                 }
             }
             UndertowLogger.REQUEST_LOGGER.tracef("Created form encoded parser for %s", exchange);
-            return new FormEncodedDataParser(charset, exchange);
+            return new FormEncodedDataParser(charset, exchange, lazyDecoding);
         }
         return null;
     }
@@ -89,10 +92,25 @@ public class FormEncodedDataDefinition implements FormParserFactory.ParserDefini
         return this;
     }
 
+    public boolean isLazyDecoding() {
+        return lazyDecoding;
+    }
+
+    /**
+     * If this is true the form data is only split into parameters when it is read, and each value is decoded when it
+     * is first looked up with {@link FormData#getFirst(String)} or {@link FormData#getLast(String)}. This avoids
+     * decoding every value of a large form when only a few of them are used.
+     */
+    public FormEncodedDataDefinition setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+        return this;
+    }
+
     private static final class FormEncodedDataParser implements ChannelListener<StreamSourceChannel>, FormDataParser {
 
         private final HttpServerExchange exchange;
-        private final FormData data;
+        private final boolean lazyDecoding;
+        private FormData data;
         private final StringBuilder builder = new StringBuilder();
         private String name = null;
         private String charset;
@@ -105,10 +123,17 @@ public class FormEncodedDataDefinition implements FormParserFactory.ParserDefini
         //4=finished
         private int state = 0;
 
-        private FormEncodedDataParser(final String charset, final HttpServerExchange exchange) {
+        private FormEncodedDataParser(final String charset, final HttpServerExchange exchange, final boolean lazyDecoding) {
             this.exchange = exchange;
             this.charset = charset;
-            this.data = new FormData(exchange.getConnection().getUndertowOptions().get(UndertowOptions.MAX_PARAMETERS, UndertowOptions.DEFAULT_MAX_PARAMETERS));
+            this.lazyDecoding = lazyDecoding;
+            if (!lazyDecoding) {
+                this.data = new FormData(getMaxParameters());
+            }
+        }
+
+        private int getMaxParameters() {
+            return exchange.getConnection().getUndertowOptions().get(UndertowOptions.MAX_PARAMETERS, UndertowOptions.DEFAULT_MAX_PARAMETERS);
         }
 
         @Override
@@ -134,7 +159,13 @@ public class FormEncodedDataDefinition implements FormParserFactory.ParserDefini
                 do {
                     buffer.clear();
                     c = channel.read(buffer);
-                    if (c > 0) {
+                    if (c > 0 && lazyDecoding) {
+                        //just collect the raw data, it is split into parameters once it has all been read
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            builder.append((char) (buffer.get() & 0xFF));
+                        }
+                    } else if (c > 0) {
                         buffer.flip();
                         while (buffer.hasRemaining()) {
                             byte n = buffer.get();
@@ -197,7 +228,16 @@ public class FormEncodedDataDefinition implements FormParserFactory.ParserDefini
                         }
                     }
                 } while (c > 0);
-                if (c == -1) {
+                if (c == -1 && lazyDecoding) {
+                    try {
+                        data = new FormData(getMaxParameters(), EncodedParameters.parse(builder.toString(), charset, true, getMaxParameters()));
+                    } catch (ParameterLimitException e) {
+                        throw new RuntimeException(e);
+                    }
+                    builder.setLength(0);
+                    state = 4;
+                    exchange.putAttachment(FORM_DATA, data);
+                } else if (c == -1) {
                     if (state == 2) {
                         addPair(name, builder.toString());
                     } else if (state == 3) {
@@ -42,6 +42,7 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
@@ -81,6 +82,8 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
 
     private long fileSizeThreshold;
 
+    private PartSinkFactory partSinkFactory;
+
     /**
      * The threshold of form field size to persist to disk.
      * It takes effect only for the form fields which do not have <i>filename</i> specified.
@@ -171,6 +174,53 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
         this.fileSizeThreshold = fileSizeThreshold;
     }
 
+    public PartSinkFactory getPartSinkFactory() {
+        return partSinkFactory;
+    }
+
+    /**
+     * Sets a factory that can stream parts directly to their final destination, instead of buffering them in memory
+     * or in a temporary file.
+     */
+    public MultiPartParserDefinition setPartSinkFactory(final PartSinkFactory partSinkFactory) {
+        this.partSinkFactory = partSinkFactory;
+        return this;
+    }
+
+    /**
+     * A factory for sinks that the contents of a part are written to as they are parsed.
+     * <p>
+     * The contents are written directly from the buffer the request was read into, so a large upload can be written to
+     * its final location (e.g. a {@link FileChannel}) without being copied through memory or a temporary file. The
+     * parser performs blocking writes, so the returned channel must be in blocking mode.
+     */
+    public interface PartSinkFactory {
+
+        /**
+         * Called when the first data for a part is received.
+         *
+         * @param exchange The exchange
+         * @param name     The name of the form field
+         * @param fileName The file name, or <code>null</code> if this is not a file upload
+         * @param headers  The headers of the part
+         * @return The channel to write the part to, or <code>null</code> if the part should be handled normally
+         */
+        WritableByteChannel createSink(HttpServerExchange exchange, String name, String fileName, HeaderMap headers) throws IOException;
+
+        /**
+         * Called when the part is complete. The sink is closed after this method returns.
+         *
+         * @param exchange The exchange
+         * @param name     The name of the form field
+         * @param fileName The file name, or <code>null</code> if this is not a file upload
+         * @param headers  The headers of the part
+         * @param sink     The sink returned from {@link #createSink(HttpServerExchange, String, String, HeaderMap)}
+         * @return The file the part was written to, which will be added to the form data, or <code>null</code> if the
+         * part should not be added to the form data
+         */
+        Path sinkComplete(HttpServerExchange exchange, String name, String fileName, HeaderMap headers, WritableByteChannel sink) throws IOException;
+    }
+
     private final class MultiPartUploadHandler implements FormDataParser, MultipartParser.PartHandler {
 
         private final HttpServerExchange exchange;
@@ -185,6 +235,8 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
         private String fileName;
         private Path file;
         private FileChannel fileChannel;
+        private WritableByteChannel sink;
+        private boolean sinkCreated;
         private HeaderMap headers;
         private HttpHandler handler;
         private long currentFileSize;
@@ -270,6 +322,7 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
         @Override
         public void beginPart(final HeaderMap headers) {
             this.currentFileSize = 0;
+            this.sinkCreated = false;
             this.headers = headers;
             final String disposition = headers.getFirst(Headers.CONTENT_DISPOSITION);
             if (disposition != null) {
@@ -330,6 +383,16 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
             if (this.maxIndividualFileSize > 0 && this.currentFileSize > this.maxIndividualFileSize) {
                 throw UndertowMessages.MESSAGES.maxFileSizeExceeded(this.maxIndividualFileSize);
             }
+            if (!sinkCreated && partSinkFactory != null) {
+                sinkCreated = true;
+                sink = partSinkFactory.createSink(exchange, currentName, fileName, headers);
+            }
+            if (sink != null) {
+                while (buffer.hasRemaining()) {
+                    sink.write(buffer);
+                }
+                return;
+            }
             if (file == null && fileSizeThreshold < this.currentFileSize && (fileName != null || this.currentFileSize > fieldSizeThreshold)) {
                 createdFiles.add(createFile());
 
@@ -355,7 +418,19 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
 
         @Override
         public void endPart() {
-            if (file != null) {
+            if (sink != null) {
+                try {
+                    Path result = partSinkFactory.sinkComplete(exchange, currentName, fileName, headers, sink);
+                    if (result != null) {
+                        data.add(currentName, result, fileName, headers);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    IoUtils.safeClose(sink);
+                    sink = null;
+                }
+            } else if (file != null) {
                  if (fileName != null) {
                      data.add(currentName, file, fileName, headers);
                  } else {
@@ -402,6 +477,7 @@ public class MultiPartParserDefinition implements FormParserFactory.ParserDefini
         @Override
         public void close() throws IOException {
             IoUtils.safeClose(fileChannel);
+            IoUtils.safeClose(sink);
             //we have to dispatch this, as it may result in file IO
             final List<Path> files = new ArrayList<>(getCreatedFiles());
             exchange.getConnection().getWorker().execute(new Runnable() {
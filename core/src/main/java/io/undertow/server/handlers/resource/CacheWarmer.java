@@ -0,0 +1,282 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.resource;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.UndertowLogger;
+import io.undertow.UndertowMessages;
+
+/**
+ * Warms up a {@link CachingResourceManager} after a restart.
+ * <p>
+ * The paths of the cached resources and the number of times they have been requested are periodically written to a
+ * snapshot file. When the warmer is started the resources in the snapshot are loaded into the metadata and data caches
+ * in the background, most requested first, until the IO budget is exhausted or the data cache is full.
+ */
+public class CacheWarmer implements Closeable {
+
+    private final CachingResourceManager resourceManager;
+    private final Path snapshotFile;
+    private final ScheduledExecutorService executor;
+    private final long snapshotInterval;
+    private final int maxEntries;
+    private final long maxWarmUpBytes;
+    private final long maxBytesPerSecond;
+
+    private volatile ScheduledFuture<?> snapshotTask;
+    private volatile boolean closed;
+
+    private CacheWarmer(final Builder builder) {
+        if (builder.resourceManager == null) {
+            throw UndertowMessages.MESSAGES.argumentCannotBeNull("resourceManager");
+        }
+        if (builder.snapshotFile == null) {
+            throw UndertowMessages.MESSAGES.argumentCannotBeNull("snapshotFile");
+        }
+        if (builder.executor == null) {
+            throw UndertowMessages.MESSAGES.argumentCannotBeNull("executor");
+        }
+        this.resourceManager = builder.resourceManager;
+        this.snapshotFile = builder.snapshotFile;
+        this.executor = builder.executor;
+        this.snapshotInterval = builder.snapshotInterval;
+        this.maxEntries = builder.maxEntries;
+        this.maxWarmUpBytes = builder.maxWarmUpBytes;
+        this.maxBytesPerSecond = builder.maxBytesPerSecond;
+    }
+
+    /**
+     * Starts warming up the cache in the background, and schedules the periodic snapshots.
+     */
+    public void start() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                warmUp();
+            }
+        });
+        if (snapshotInterval > 0) {
+            snapshotTask = executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        snapshot();
+                    } catch (IOException e) {
+                        UndertowLogger.ROOT_LOGGER.debugf(e, "Failed to write cache snapshot %s", snapshotFile);
+                    }
+                }
+            }, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the current hot set of the cache to the snapshot file, most requested first.
+     */
+    public void snapshot() throws IOException {
+        final List<Map.Entry<String, Integer>> entries = new ArrayList<>(resourceManager.getHotSet().entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+                return Integer.compare(o2.getValue(), o1.getValue());
+            }
+        });
+        final Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            int count = 0;
+            for (Map.Entry<String, Integer> entry : entries) {
+                final String path = entry.getKey();
+                if (path.indexOf('\n') != -1 || path.indexOf('\r') != -1) {
+                    continue;
+                }
+                writer.write(Integer.toString(entry.getValue()));
+                writer.write(' ');
+                writer.write(path);
+                writer.newLine();
+                if (++count == maxEntries) {
+                    break;
+                }
+            }
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads the resources in the snapshot file into the cache. This blocks until the warm up is complete.
+     *
+     * @return The number of bytes that were loaded into the data cache
+     */
+    public long warmUp() {
+        if (!Files.exists(snapshotFile)) {
+            return 0;
+        }
+        final long start = System.nanoTime();
+        long loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && !closed) {
+                int index = line.indexOf(' ');
+                if (index == -1) {
+                    continue;
+                }
+                final String path = line.substring(index + 1);
+                final CachedResource resource;
+                try {
+                    resource = resourceManager.getResource(path);
+                } catch (IOException e) {
+                    UndertowLogger.ROOT_LOGGER.debugf(e, "Failed to warm up %s", path);
+                    continue;
+                }
+                if (resource == null || resource.isDirectory()) {
+                    continue;
+                }
+                final Long length = resource.getContentLength();
+                if (length == null || loaded + length > maxWarmUpBytes) {
+                    //it may still be possible to load smaller resources
+                    continue;
+                }
+                final long res;
+                try {
+                    res = resource.preload();
+                } catch (IOException e) {
+                    UndertowLogger.ROOT_LOGGER.debugf(e, "Failed to warm up %s", path);
+                    continue;
+                }
+                if (res == -1) {
+                    //the data cache is full, only the metadata cache can still be warmed up
+                    continue;
+                }
+                loaded += res;
+                if (maxBytesPerSecond > 0 && res > 0) {
+                    long wait = (loaded * 1000 / maxBytesPerSecond) - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            UndertowLogger.ROOT_LOGGER.debugf(e, "Failed to read cache snapshot %s", snapshotFile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        UndertowLogger.ROOT_LOGGER.debugf("Warmed up cache with %s bytes from %s in %sms", loaded, snapshotFile, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return loaded;
+    }
+
+    /**
+     * Stops the periodic snapshots and any warm up that is in progress, and writes a final snapshot.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        final ScheduledFuture<?> snapshotTask = this.snapshotTask;
+        if (snapshotTask != null) {
+            snapshotTask.cancel(false);
+        }
+        snapshot();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+
+        private CachingResourceManager resourceManager;
+        private Path snapshotFile;
+        private ScheduledExecutorService executor;
+        private long snapshotInterval = TimeUnit.MINUTES.toMillis(5);
+        private int maxEntries = 10000;
+        private long maxWarmUpBytes = Long.MAX_VALUE;
+        private long maxBytesPerSecond;
+
+        private Builder() {
+        }
+
+        public Builder setResourceManager(CachingResourceManager resourceManager) {
+            this.resourceManager = resourceManager;
+            return this;
+        }
+
+        public Builder setSnapshotFile(Path snapshotFile) {
+            this.snapshotFile = snapshotFile;
+            return this;
+        }
+
+        /**
+         * Sets the executor that is used for the warm up and the periodic snapshots. The warm up performs blocking IO.
+         */
+        public Builder setExecutor(ScheduledExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the interval between snapshots in milliseconds, or 0 to only write a snapshot when the warmer is closed.
+         */
+        public Builder setSnapshotInterval(long snapshotInterval) {
+            this.snapshotInterval = snapshotInterval;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of resources that are recorded in a snapshot.
+         */
+        public Builder setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of bytes that are read during the warm up.
+         */
+        public Builder setMaxWarmUpBytes(long maxWarmUpBytes) {
+            this.maxWarmUpBytes = maxWarmUpBytes;
+            return this;
+        }
+
+        /**
+         * Limits the rate the warm up reads data at, so it does not compete with requests for disk bandwidth. A value
+         * of 0 means the rate is not limited.
+         */
+        public Builder setMaxBytesPerSecond(long maxBytesPerSecond) {
+            this.maxBytesPerSecond = maxBytesPerSecond;
+            return this;
+        }
+
+        public CacheWarmer build() {
+            return new CacheWarmer(this);
+        }
+    }
+}
@@ -22,7 +22,11 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
 import java.util.List;
 
@@ -125,6 +129,102 @@ public class CachedResource implements Resource, RangeAwareResource {
         }
     }
 
+    /**
+     * @return The number of times the data for this resource has been requested from the data cache
+     */
+    int getHits() {
+        final DirectBufferCache dataCache = cachingResourceManager.getDataCache();
+        if (dataCache == null) {
+            return 0;
+        }
+        final DirectBufferCache.CacheEntry entry = dataCache.peek(cacheKey);
+        return entry == null ? 0 : entry.hits();
+    }
+
+    /**
+     * Loads the contents of this resource into the data cache. This performs blocking IO.
+     *
+     * @return The number of bytes that were loaded, or <code>-1</code> if there was no space in the cache
+     */
+    long preload() throws IOException {
+        final DirectBufferCache dataCache = cachingResourceManager.getDataCache();
+        if (dataCache == null || directory) {
+            return 0;
+        }
+        final Long length = underlyingResource.getContentLength();
+        if (length == null || length > cachingResourceManager.getMaxFileSize()) {
+            return 0;
+        }
+        final DirectBufferCache.CacheEntry entry = dataCache.add(cacheKey, length.intValue(), cachingResourceManager.getMaxAge());
+        if (entry.enabled()) {
+            return 0;
+        }
+        //unlike a request we never evict other entries to make space
+        if (!entry.allocate()) {
+            return -1;
+        }
+        if (entry.buffers().length == 0 || !entry.claimEnable()) {
+            //being allocated or loaded by a request
+            return 0;
+        }
+        if (!entry.reference()) {
+            entry.disable();
+            return 0;
+        }
+        final LimitedBufferSlicePool.PooledByteBuffer[] pooled = entry.buffers();
+        final ByteBuffer[] buffers = new ByteBuffer[pooled.length];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pooled[i].getBuffer();
+        }
+        boolean ok = false;
+        try (ReadableByteChannel channel = openChannel()) {
+            if (channel == null) {
+                return 0;
+            }
+            long read = 0;
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    int res = channel.read(buffer);
+                    if (res == -1) {
+                        break;
+                    }
+                    read += res;
+                }
+            }
+            if (read != entry.size()) {
+                UndertowLogger.ROOT_LOGGER.cacheEntryMismatchContent(entry.key(), entry.size(), read);
+                return 0;
+            }
+            for (ByteBuffer buffer : buffers) {
+                //prepare buffers for reading
+                buffer.flip();
+            }
+            entry.enable();
+            ok = true;
+            return read;
+        } finally {
+            if (!ok) {
+                for (ByteBuffer buffer : buffers) {
+                    buffer.clear();
+                }
+                entry.disable();
+            }
+            entry.dereference();
+        }
+    }
+
+    private ReadableByteChannel openChannel() throws IOException {
+        final Path file = underlyingResource.getFilePath();
+        if (file != null) {
+            return Files.newByteChannel(file, StandardOpenOption.READ);
+        }
+        final URL url = underlyingResource.getUrl();
+        if (url != null) {
+            return Channels.newChannel(url.openStream());
+        }
+        return null;
+    }
+
     public boolean checkStillValid() {
         if (nextMaxAgeCheck > 0) {
             long time = System.currentTimeMillis();
@@ -20,6 +20,8 @@ package io.undertow.server.handlers.resource;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -246,6 +248,22 @@ public class CachingResourceManager implements ResourceManager {
         }
     }
 
+    /**
+     * Returns the paths of all cached resources, and the number of times their data has been requested. Resources
+     * that are not in the data cache have a hit count of zero.
+     */
+    Map<String, Integer> getHotSet() {
+        final LRUCache<String, Object> cache = this.cache;
+        final Map<String, Integer> result = new HashMap<>();
+        for (String path : cache.keySet()) {
+            Object res = cache.peek(path);
+            if (res instanceof CachedResource) {
+                result.put(path, ((CachedResource) res).getHits());
+            }
+        }
+        return result;
+    }
+
     DirectBufferCache getDataCache() {
         return dataCache;
     }
@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.resource;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import io.undertow.UndertowLogger;
+import io.undertow.util.ETag;
+import io.undertow.util.FlexBase64;
+
+/**
+ * An {@link PathResourceManager.ETagFunction} that generates strong ETags from a SHA-256 digest of the file contents.
+ * <p>
+ * Digests are computed on a background executor, so files are never hashed on the request thread. Until the digest
+ * of a file is available a weak ETag based on the modification time and size of the file is returned. As the strong
+ * ETag only depends on the file contents it is the same on every server that serves the same content, which allows
+ * caches in front of a group of servers to revalidate against any of them.
+ * <p>
+ * If an index file is provided the digests are persisted to it, keyed by the file, its modification time and its size,
+ * so that files do not need to be hashed again after a restart.
+ */
+public class ContentHashETagFunction implements PathResourceManager.ETagFunction {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Executor executor;
+    private final Path indexFile;
+
+    private final ConcurrentMap<String, Digest> digests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> pending = new ConcurrentHashMap<>();
+    private final Object indexLock = new Object();
+
+    /**
+     * @param executor The executor that digests are computed on
+     */
+    public ContentHashETagFunction(final Executor executor) {
+        this(executor, null);
+    }
+
+    /**
+     * @param executor  The executor that digests are computed on
+     * @param indexFile The file that digests are persisted to, or null if digests should only be held in memory
+     */
+    public ContentHashETagFunction(final Executor executor, final Path indexFile) {
+        this.executor = executor;
+        this.indexFile = indexFile;
+        if (indexFile != null) {
+            loadIndex();
+        }
+    }
+
+    @Override
+    public ETag generate(final Path path) {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        final long size = attributes.size();
+        final String key = key(path);
+        final Digest digest = digests.get(key);
+        if (digest != null && digest.lastModified == lastModified && digest.size == size) {
+            return new ETag(false, digest.value);
+        }
+        if (pending.putIfAbsent(key, Boolean.TRUE) == null) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            computeDigest(path, key, lastModified, size);
+                        } finally {
+                            pending.remove(key);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.remove(key);
+                UndertowLogger.REQUEST_LOGGER.debugf(e, "Failed to schedule digest computation for %s", path);
+            }
+        }
+        return new ETag(true, Long.toHexString(lastModified) + "-" + Long.toHexString(size));
+    }
+
+    /**
+     * @return The number of digests that are currently known
+     */
+    public int getDigestCount() {
+        return digests.size();
+    }
+
+    private void computeDigest(final Path path, final String key, final long lastModified, final long size) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
+            }
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.lastModifiedTime().toMillis() != lastModified || attributes.size() != size) {
+                //the file was modified while we were reading it, the next request will try again
+                return;
+            }
+            final Digest digest = new Digest(lastModified, size, FlexBase64.encodeStringURL(md.digest(), false));
+            digests.put(key, digest);
+            appendToIndex(key, digest);
+        } catch (NoSuchFileException e) {
+            digests.remove(key);
+        } catch (IOException e) {
+            UndertowLogger.REQUEST_LOGGER.debugf(e, "Failed to compute digest of %s", path);
+        } catch (NoSuchAlgorithmException e) {
+            // Should never happen
+            throw new InternalError("SHA-256 not supported on this platform");
+        }
+    }
+
+    private static String key(final Path path) {
+        //the URI form is unambiguous and contains no whitespace, so it can be stored in the index
+        return path.toAbsolutePath().normalize().toUri().toString();
+    }
+
+    private void appendToIndex(final String key, final Digest digest) {
+        if (indexFile == null) {
+            return;
+        }
+        synchronized (indexLock) {
+            try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+                writeEntry(writer, key, digest);
+            } catch (IOException e) {
+                UndertowLogger.REQUEST_LOGGER.debugf(e, "Failed to write digest index %s", indexFile);
+            }
+        }
+    }
+
+    /**
+     * Loads the index. Later entries replace earlier ones, if the index contains a lot of replaced entries it is
+     * rewritten.
+     */
+    private void loadIndex() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length != 4) {
+                    continue;
+                }
+                ++lines;
+                try {
+                    digests.put(parts[3], new Digest(Long.parseUnsignedLong(parts[0], 16), Long.parseUnsignedLong(parts[1], 16), parts[2]));
+                } catch (NumberFormatException e) {
+                    //ignore corrupt entries
+                }
+            }
+        } catch (IOException e) {
+            UndertowLogger.REQUEST_LOGGER.debugf(e, "Failed to read digest index %s", indexFile);
+            return;
+        }
+        if (lines > digests.size() * 2) {
+            rewriteIndex();
+        }
+    }
+
+    private void rewriteIndex() {
+        synchronized (indexLock) {
+            try {
+                Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+                try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    for (Map.Entry<String, Digest> entry : digests.entrySet()) {
+                        writeEntry(writer, entry.getKey(), entry.getValue());
+                    }
+                }
+                Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                UndertowLogger.REQUEST_LOGGER.debugf(e, "Failed to write digest index %s", indexFile);
+            }
+        }
+    }
+
+    private static void writeEntry(final BufferedWriter writer, final String key, final Digest digest) throws IOException {
+        writer.write(Long.toHexString(digest.lastModified));
+        writer.write(' ');
+        writer.write(Long.toHexString(digest.size));
+        writer.write(' ');
+        writer.write(digest.value);
+        writer.write(' ');
+        writer.write(key);
+        writer.newLine();
+    }
+
+    private static final class Digest {
+        private final long lastModified;
+        private final long size;
+        private final String value;
+
+        private Digest(final long lastModified, final long size, final String value) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.undertow.UndertowLogger;
+
+/**
+ * A cache of memory mapped files.
+ * <p>
+ * Files between the minimum and maximum size are mapped once they have been requested a number of times, and the
+ * mapping is shared between all requests (including range requests) for the file. This avoids a read system call per
+ * buffer when serving large files over connections that cannot use {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)}, such as TLS connections.
+ * <p>
+ * Mappings are invalidated when the file size or modification time changes, or when the owning
+ * {@link PathResourceManager} reports a change event for the file. Mappings are never explicitly unmapped, the mapping
+ * is released by the garbage collector once no request is using it.
+ * <p>
+ * NOTE: If a mapped file is truncated in place while it is being served the JVM may report an error when the missing
+ * pages are accessed. This tier should only be used for content that is replaced by creating a new file (e.g. by
+ * renaming it into place), which is what most deployment tools do.
+ */
+public class MappedFileCache {
+
+    /**
+     * Smaller files are cheaper to serve from the buffer cache or with a single read
+     */
+    public static final long DEFAULT_MIN_FILE_SIZE = 128 * 1024;
+
+    private static final int DEFAULT_REQUESTS_BEFORE_MAPPING = 2;
+
+    /**
+     * The maximum number of files that request counts are tracked for before they are mapped
+     */
+    private static final int MAX_TRACKED_FILES = 4096;
+
+    private final long minFileSize;
+    private final long maxFileSize;
+    private final long maxMemory;
+    private final int requestsBeforeMapping;
+
+    private final ConcurrentMap<Path, MappedFile> files = new ConcurrentHashMap<>();
+    private final AtomicLong mappedMemory = new AtomicLong();
+
+    /**
+     * @param maxMemory The maximum total size of all mapped files
+     */
+    public MappedFileCache(final long maxMemory) {
+        this(DEFAULT_MIN_FILE_SIZE, maxMemory, maxMemory);
+    }
+
+    /**
+     * @param minFileSize The minimum size of a file that will be mapped
+     * @param maxFileSize The maximum size of a file that will be mapped
+     * @param maxMemory   The maximum total size of all mapped files
+     */
+    public MappedFileCache(final long minFileSize, final long maxFileSize, final long maxMemory) {
+        this(minFileSize, maxFileSize, maxMemory, DEFAULT_REQUESTS_BEFORE_MAPPING);
+    }
+
+    /**
+     * @param minFileSize           The minimum size of a file that will be mapped
+     * @param maxFileSize           The maximum size of a file that will be mapped, this cannot exceed {@link Integer#MAX_VALUE}
+     * @param maxMemory             The maximum total size of all mapped files
+     * @param requestsBeforeMapping The number of times a file must be requested before it is mapped
+     */
+    public MappedFileCache(final long minFileSize, final long maxFileSize, final long maxMemory, final int requestsBeforeMapping) {
+        this.minFileSize = minFileSize;
+        this.maxFileSize = Math.min(maxFileSize, Integer.MAX_VALUE);
+        this.maxMemory = maxMemory;
+        this.requestsBeforeMapping = Math.max(1, requestsBeforeMapping);
+    }
+
+    public long getMinFileSize() {
+        return minFileSize;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * @return The total size of all files that are currently mapped
+     */
+    public long getMappedMemory() {
+        return mappedMemory.get();
+    }
+
+    /**
+     * @param size The size of a file
+     * @return <code>true</code> if a file of this size is eligible for mapping
+     */
+    public boolean isEligible(final long size) {
+        return size >= minFileSize && size <= maxFileSize && size <= maxMemory;
+    }
+
+    /**
+     * Returns a buffer containing the contents of the file. The buffer is a read only view of a shared mapping, the
+     * caller may freely change its position and limit.
+     * <p>
+     * This may block while the file is mapped and should not be called from an IO thread.
+     *
+     * @param path The file
+     * @return A buffer containing the file, or <code>null</code> if the file is not (yet) mapped
+     */
+    public ByteBuffer get(final Path path) throws IOException {
+        final Path file = path.normalize();
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final long size = attributes.size();
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        if (!isEligible(size)) {
+            invalidate(file);
+            return null;
+        }
+        MappedFile mappedFile = files.get(file);
+        if (mappedFile != null && (mappedFile.size != size || mappedFile.lastModified != lastModified)) {
+            //the file has changed
+            remove(file, mappedFile);
+            mappedFile = null;
+        }
+        if (mappedFile == null) {
+            if (files.size() >= MAX_TRACKED_FILES) {
+                pruneUnmapped();
+            }
+            mappedFile = new MappedFile(size, lastModified);
+            MappedFile existing = files.putIfAbsent(file, mappedFile);
+            if (existing != null) {
+                mappedFile = existing;
+            }
+        }
+        mappedFile.lastAccess = System.nanoTime();
+        ByteBuffer buffer = mappedFile.buffer;
+        if (buffer != null) {
+            return buffer.duplicate();
+        }
+        if (mappedFile.requests() < requestsBeforeMapping || !mappedFile.claimMapping()) {
+            return null;
+        }
+        if (!reserve(size)) {
+            mappedFile.mappingFailed();
+            return null;
+        }
+        boolean ok = false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.load();
+            mappedFile.buffer = mapped.asReadOnlyBuffer();
+            mappedFile.reserved = 1;
+            ok = true;
+            UndertowLogger.REQUEST_LOGGER.tracef("Mapped file %s of size %s", file, size);
+        } finally {
+            if (!ok) {
+                mappedMemory.addAndGet(-size);
+                mappedFile.mappingFailed();
+            }
+        }
+        if (files.get(file) != mappedFile) {
+            //invalidated while we were mapping it
+            release(mappedFile);
+            return null;
+        }
+        return mappedFile.buffer.duplicate();
+    }
+
+    /**
+     * Removes the mapping for the given file. Requests that are currently using the mapping are not affected.
+     *
+     * @param path The file
+     */
+    public void invalidate(final Path path) {
+        final Path file = path.normalize();
+        MappedFile mappedFile = files.get(file);
+        if (mappedFile != null) {
+            remove(file, mappedFile);
+        }
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    public void invalidateAll() {
+        for (Path file : files.keySet()) {
+            invalidate(file);
+        }
+    }
+
+    private void remove(final Path file, final MappedFile mappedFile) {
+        if (files.remove(file, mappedFile)) {
+            release(mappedFile);
+        }
+    }
+
+    private void release(final MappedFile mappedFile) {
+        if (mappedFile.release()) {
+            mappedMemory.addAndGet(-mappedFile.size);
+        }
+    }
+
+    /**
+     * Stops tracking files that have not been mapped, so that the number of tracked files stays bounded
+     */
+    private void pruneUnmapped() {
+        for (Map.Entry<Path, MappedFile> entry : files.entrySet()) {
+            if (entry.getValue().buffer == null) {
+                files.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reserves space for a new mapping, evicting the least recently used mappings if required.
+     */
+    private boolean reserve(final long size) {
+        for (;;) {
+            long current = mappedMemory.get();
+            if (current + size <= maxMemory) {
+                if (mappedMemory.compareAndSet(current, current + size)) {
+                    return true;
+                }
+                continue;
+            }
+            Path oldestFile = null;
+            MappedFile oldest = null;
+            for (Map.Entry<Path, MappedFile> entry : files.entrySet()) {
+                MappedFile candidate = entry.getValue();
+                if (candidate.buffer != null && (oldest == null || candidate.lastAccess - oldest.lastAccess < 0)) {
+                    oldest = candidate;
+                    oldestFile = entry.getKey();
+                }
+            }
+            if (oldest == null) {
+                return false;
+            }
+            remove(oldestFile, oldest);
+        }
+    }
+
+    private static final class MappedFile {
+
+        private static final AtomicIntegerFieldUpdater<MappedFile> requestsUpdater = AtomicIntegerFieldUpdater.newUpdater(MappedFile.class, "requests");
+        private static final AtomicIntegerFieldUpdater<MappedFile> mappingUpdater = AtomicIntegerFieldUpdater.newUpdater(MappedFile.class, "mapping");
+        private static final AtomicIntegerFieldUpdater<MappedFile> reservedUpdater = AtomicIntegerFieldUpdater.newUpdater(MappedFile.class, "reserved");
+
+        private final long size;
+        private final long lastModified;
+        private volatile ByteBuffer buffer;
+        private volatile long lastAccess;
+        private volatile int requests;
+        private volatile int mapping;
+        /**
+         * 1 if the size of this mapping is included in the mapped memory total
+         */
+        private volatile int reserved;
+
+        private MappedFile(final long size, final long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        int requests() {
+            for (;;) {
+                int current = requests;
+                if (current == Integer.MAX_VALUE || requestsUpdater.compareAndSet(this, current, current + 1)) {
+                    return current + 1;
+                }
+            }
+        }
+
+        boolean claimMapping() {
+            return mappingUpdater.compareAndSet(this, 0, 1);
+        }
+
+        void mappingFailed() {
+            mapping = 0;
+        }
+
+        boolean release() {
+            return reservedUpdater.compareAndSet(this, 1, 0);
+        }
+    }
+}
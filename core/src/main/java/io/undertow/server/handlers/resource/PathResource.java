@@ -253,9 +253,58 @@ public class PathResource implements RangeAwareResource {
                 });
             }
         }
+        class MappedTask extends BaseFileTask {
+
+            private final MappedFileCache mappedFileCache;
+            private final BaseFileTask fallback;
+
+            MappedTask(MappedFileCache mappedFileCache, BaseFileTask fallback) {
+                this.mappedFileCache = mappedFileCache;
+                this.fallback = fallback;
+            }
+
+            @Override
+            public void run() {
+                ByteBuffer buffer;
+                try {
+                    buffer = mappedFileCache.get(file);
+                } catch (NoSuchFileException e) {
+                    exchange.setStatusCode(StatusCodes.NOT_FOUND);
+                    callback.onException(exchange, sender, e);
+                    return;
+                } catch (IOException e) {
+                    exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+                    callback.onException(exchange, sender, e);
+                    return;
+                }
+                if (buffer != null && range) {
+                    if (start < 0 || end >= buffer.limit() || start > end) {
+                        //the file has changed since the range was calculated
+                        buffer = null;
+                    } else {
+                        buffer.limit((int) end + 1);
+                        buffer.position((int) start);
+                    }
+                }
+                if (buffer == null) {
+                    fallback.run();
+                } else {
+                    sender.send(buffer, callback);
+                }
+            }
+        }
         BaseFileTask task;
         try {
-            task = manager.getTransferMinSize() > Files.size(file) || range ? new ServerTask() : new TransferTask();
+            final long size = Files.size(file);
+            final boolean read = manager.getTransferMinSize() > size || range;
+            task = read ? new ServerTask() : new TransferTask();
+            final MappedFileCache mappedFileCache = manager.getMappedFileCache();
+            //the mapped tier is used when we would otherwise read the file, or when a direct transfer is not
+            //possible as the data has to pass through the TLS engine
+            if (mappedFileCache != null && mappedFileCache.isEligible(size)
+                    && (read || exchange.getConnection().getSslSessionInfo() != null)) {
+                task = new MappedTask(mappedFileCache, task);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -74,6 +74,11 @@ public class PathResourceManager implements ResourceManager  {
 
     private final boolean allowResourceChangeListeners;
 
+    /**
+     * Optional cache of memory mapped files, used to serve medium and large files without a read per buffer
+     */
+    private final MappedFileCache mappedFileCache;
+
     public PathResourceManager(final Path base) {
         this(base, DEFAULT_TRANSFER_MIN_SIZE, true, false, null);
     }
@@ -112,6 +117,7 @@ public class PathResourceManager implements ResourceManager  {
             this.safePaths.addAll(Arrays.asList(safePaths));
         }
         this.eTagFunction = NULL_ETAG_FUNCTION;
+        this.mappedFileCache = null;
     }
 
     public PathResourceManager(final Path base, long transferMinSize, boolean caseSensitive, boolean followLinks, final String... safePaths) {
@@ -163,6 +169,17 @@ public class PathResourceManager implements ResourceManager  {
             this.safePaths.addAll(Arrays.asList(builder.safePaths));
         }
         this.eTagFunction = builder.eTagFunction;
+        this.mappedFileCache = builder.mappedFileCache;
+        if (mappedFileCache != null && allowResourceChangeListeners && fileSystem.equals(FileSystems.getDefault())) {
+            registerResourceChangeListener(new ResourceChangeListener() {
+                @Override
+                public void handleChanges(Collection<ResourceChangeEvent> changes) {
+                    for (ResourceChangeEvent change : changes) {
+                        mappedFileCache.invalidate(fileSystem.getPath(base, change.getResource()));
+                    }
+                }
+            });
+        }
     }
 
     public Path getBasePath() {
@@ -309,11 +326,21 @@ public class PathResourceManager implements ResourceManager  {
         return transferMinSize;
     }
 
+    /**
+     * @return The cache of memory mapped files, or null if files are not mapped
+     */
+    public MappedFileCache getMappedFileCache() {
+        return mappedFileCache;
+    }
+
     @Override
     public synchronized void close() throws IOException {
         if (fileSystemWatcher != null) {
             fileSystemWatcher.close();
         }
+        if (mappedFileCache != null) {
+            mappedFileCache.invalidateAll();
+        }
     }
 
     /**
@@ -458,6 +485,7 @@ public class PathResourceManager implements ResourceManager  {
         private boolean allowResourceChangeListeners = DEFAULT_CHANGE_LISTENERS_ALLOWED;
         private ETagFunction eTagFunction = NULL_ETAG_FUNCTION;
         private String[] safePaths;
+        private MappedFileCache mappedFileCache;
 
         private Builder() {
         }
@@ -497,6 +525,15 @@ public class PathResourceManager implements ResourceManager  {
             return this;
         }
 
+        /**
+         * Sets a cache that is used to serve medium and large files from memory mapped buffers. If resource change
+         * listeners are allowed the mappings are invalidated when files change.
+         */
+        public Builder setMappedFileCache(MappedFileCache mappedFileCache) {
+            this.mappedFileCache = mappedFileCache;
+            return this;
+        }
+
         public ResourceManager build() {
             return new PathResourceManager(this);
         }
@@ -23,14 +23,19 @@ import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Path;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import io.undertow.io.IoCallback;
 import io.undertow.io.Sender;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.CopyOnWriteMap;
 import io.undertow.util.ETag;
+import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import io.undertow.util.MimeMappings;
 import io.undertow.util.QValueParser;
@@ -39,7 +44,10 @@ import io.undertow.util.QValueParser;
  * A resource supplier that allows pre-compressed resources to be served if the client accepts the request.
  * <p>
  * This is done by checking for the existence of a pre-compressed file, and if it exists and the
- * client supports the encoding then the resource is returned for the pre compressed file
+ * client supports the encoding then the resource is returned for the pre compressed file.
+ * <p>
+ * If the client accepts several of the registered encodings with the same q value, the encoding that was
+ * registered first is preferred. Encodings with a q value of 0 are never used.
  *
  * @author Stuart Douglas
  */
@@ -47,6 +55,10 @@ public class PreCompressedResourceSupplier implements ResourceSupplier {
 
     private final ResourceManager resourceManager;
     private final Map<String, String> encodingMap = new CopyOnWriteMap<>();
+    /**
+     * The registered encodings, in order of server preference
+     */
+    private final List<String> encodings = new CopyOnWriteArrayList<>();
 
     public PreCompressedResourceSupplier(ResourceManager resourceManager) {
         this.resourceManager = resourceManager;
@@ -58,6 +70,9 @@ public class PreCompressedResourceSupplier implements ResourceSupplier {
             //we don't use serve pre compressed resources for range requests
             return resourceManager.getResource(path);
         }
+        if (!encodings.isEmpty() && !varyContainsAcceptEncoding(exchange)) {
+            exchange.getResponseHeaders().add(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+        }
         Resource resource = getEncodedResource(exchange, path);
         if(resource == null) {
             return resourceManager.getResource(path);
@@ -65,6 +80,22 @@ public class PreCompressedResourceSupplier implements ResourceSupplier {
         return resource;
     }
 
+    /**
+     * The resource may be looked up more than once for a request, e.g. when resolving welcome files
+     */
+    private static boolean varyContainsAcceptEncoding(final HttpServerExchange exchange) {
+        final HeaderValues vary = exchange.getResponseHeaders().get(Headers.VARY);
+        if (vary != null) {
+            for (String value : vary) {
+                for (String token : value.split(",")) {
+                    if (token.trim().equalsIgnoreCase(Headers.ACCEPT_ENCODING_STRING)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
 
     private Resource getEncodedResource(final HttpServerExchange exchange, String path) throws IOException {
         final List<String> res = exchange.getRequestHeaders().get(Headers.ACCEPT_ENCODING);
@@ -72,9 +103,32 @@ public class PreCompressedResourceSupplier implements ResourceSupplier {
             return null;
         }
         final List<List<QValueParser.QValueResult>> found = QValueParser.parse(res);
+        //encodings that are explicitly listed are not matched by the '*' wildcard
+        final Set<String> listed = new HashSet<>();
         for (List<QValueParser.QValueResult> result : found) {
-            for (final QValueParser.QValueResult value : result) {
-                String extension = encodingMap.get(value.getValue());
+            for (QValueParser.QValueResult value : result) {
+                listed.add(value.getValue().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        for (List<QValueParser.QValueResult> result : found) {
+            if (result.get(0).isQValueZero()) {
+                //all the values in a group have the same q value, and this is the last group
+                break;
+            }
+            boolean wildcard = false;
+            final Set<String> accepted = new HashSet<>();
+            for (QValueParser.QValueResult value : result) {
+                if (value.getValue().equals("*")) {
+                    wildcard = true;
+                } else {
+                    accepted.add(value.getValue().toLowerCase(Locale.ENGLISH));
+                }
+            }
+            for (final String encoding : encodings) {
+                if (!accepted.contains(encoding) && !(wildcard && !listed.contains(encoding))) {
+                    continue;
+                }
+                final String extension = encodingMap.get(encoding);
                 if(extension != null) {
                     String newPath = path + extension;
                     Resource resource = resourceManager.getResource(newPath);
@@ -128,7 +182,7 @@ public class PreCompressedResourceSupplier implements ResourceSupplier {
 
                             @Override
                             public void serve(Sender sender, HttpServerExchange exchange, IoCallback completionCallback) {
-                                exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, value.getValue());
+                                exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, encoding);
                                 resource.serve(sender, exchange, completionCallback);
                             }
 
@@ -175,13 +229,37 @@ public class PreCompressedResourceSupplier implements ResourceSupplier {
     }
 
 
+    /**
+     * Adds an encoding. Encodings that are added first are preferred if the client accepts more than one of them.
+     *
+     * @param encoding  The content coding name
+     * @param extension The extension of the pre-compressed files, including the leading dot
+     * @return this supplier
+     */
     public PreCompressedResourceSupplier addEncoding(String encoding, String extension) {
-        encodingMap.put(encoding, extension);
+        encoding = encoding.toLowerCase(Locale.ENGLISH);
+        if (encodingMap.put(encoding, extension) == null) {
+            encodings.add(encoding);
+        }
         return this;
     }
 
+    /**
+     * Adds the {@code br}, {@code zstd} and {@code gzip} encodings, using the {@code .br}, {@code .zst}
+     * and {@code .gz} extensions, in that order of preference.
+     *
+     * @return this supplier
+     */
+    public PreCompressedResourceSupplier addDefaultEncodings() {
+        return addEncoding("br", ".br")
+                .addEncoding("zstd", ".zst")
+                .addEncoding("gzip", ".gz");
+    }
+
     public PreCompressedResourceSupplier removeEncoding(String encoding) {
+        encoding = encoding.toLowerCase(Locale.ENGLISH);
         encodingMap.remove(encoding);
+        encodings.remove(encoding);
         return this;
     }
 
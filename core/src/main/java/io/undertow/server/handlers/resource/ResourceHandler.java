@@ -486,6 +486,8 @@ public class ResourceHandler implements HttpHandler {
             Map<String, Class<?>> params = new HashMap<>();
             params.put("location", String.class);
             params.put("allow-listing", boolean.class);
+            params.put("pre-compressed", boolean.class);
+            params.put("mapped-memory", Long.class);
             return params;
         }
 
@@ -501,7 +503,9 @@ public class ResourceHandler implements HttpHandler {
 
         @Override
         public HandlerWrapper build(Map<String, Object> config) {
-            return new Wrapper((String)config.get("location"), (Boolean) config.get("allow-listing"));
+            Boolean preCompressed = (Boolean) config.get("pre-compressed");
+            Long mappedMemory = (Long) config.get("mapped-memory");
+            return new Wrapper((String)config.get("location"), (Boolean) config.get("allow-listing"), preCompressed != null && preCompressed, mappedMemory == null ? 0 : mappedMemory);
         }
 
         @Override
@@ -515,16 +519,35 @@ public class ResourceHandler implements HttpHandler {
 
         private final String location;
         private final boolean allowDirectoryListing;
+        private final boolean preCompressed;
+        private final long mappedMemory;
 
-        private Wrapper(String location, boolean allowDirectoryListing) {
+        private Wrapper(String location, boolean allowDirectoryListing, boolean preCompressed, long mappedMemory) {
             this.location = location;
             this.allowDirectoryListing = allowDirectoryListing;
+            this.preCompressed = preCompressed;
+            this.mappedMemory = mappedMemory;
         }
 
         @Override
         public HttpHandler wrap(HttpHandler handler) {
-            ResourceManager rm = new PathResourceManager(Paths.get(location), 1024);
-            ResourceHandler resourceHandler = new ResourceHandler(rm);
+            ResourceManager rm;
+            if (mappedMemory > 0) {
+                rm = PathResourceManager.builder()
+                        .setBase(Paths.get(location))
+                        .setTransferMinSize(1024)
+                        .setMappedFileCache(new MappedFileCache(mappedMemory))
+                        .build();
+            } else {
+                rm = new PathResourceManager(Paths.get(location), 1024);
+            }
+            ResourceHandler resourceHandler;
+            if (preCompressed) {
+                //serve .br, .zst or .gz siblings of the requested file if the client accepts them
+                resourceHandler = new ResourceHandler(new PreCompressedResourceSupplier(rm).addDefaultEncodings());
+            } else {
+                resourceHandler = new ResourceHandler(rm);
+            }
             resourceHandler.setDirectoryListingEnabled(allowDirectoryListing);
             return resourceHandler;
         }
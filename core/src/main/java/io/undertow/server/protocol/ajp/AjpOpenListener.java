@@ -72,6 +72,8 @@ public class AjpOpenListener implements OpenListener {
 
     private volatile AjpRequestParser parser;
 
+    private volatile int maxPacketSize;
+
     private volatile boolean statisticsEnabled;
     private final ConnectorStatisticsImpl connectorStatistics;
 
@@ -101,6 +103,7 @@ public class AjpOpenListener implements OpenListener {
         this.bufferSize = buf.getBuffer().remaining();
         buf.close();
         parser = createAjpRequestParser(undertowOptions);
+        maxPacketSize = maxPacketSize(undertowOptions);
         connectorStatistics = new ConnectorStatisticsImpl();
         statisticsEnabled = undertowOptions.get(UndertowOptions.ENABLE_CONNECTOR_STATISTICS, false);
     }
@@ -138,7 +141,7 @@ public class AjpOpenListener implements OpenListener {
         }
 
         AjpServerConnection connection = new AjpServerConnection(channel, bufferPool, rootHandler, undertowOptions, bufferSize);
-        AjpReadListener readListener = new AjpReadListener(connection, scheme, parser, statisticsEnabled ? connectorStatistics : null);
+        AjpReadListener readListener = new AjpReadListener(connection, scheme, parser, statisticsEnabled ? connectorStatistics : null, maxPacketSize);
         if(statisticsEnabled) {
             connection.addCloseListener(closeListener);
         }
@@ -181,6 +184,21 @@ public class AjpOpenListener implements OpenListener {
         this.undertowOptions = undertowOptions;
         statisticsEnabled = undertowOptions.get(UndertowOptions.ENABLE_CONNECTOR_STATISTICS, false);
         parser = createAjpRequestParser(undertowOptions);
+        maxPacketSize = maxPacketSize(undertowOptions);
+    }
+
+    /**
+     * Returns the configured {@link UndertowOptions#MAX_AJP_PACKET_SIZE}, values that cannot be used are logged and
+     * replaced by the nearest supported size.
+     */
+    private static int maxPacketSize(final OptionMap undertowOptions) {
+        final int configured = undertowOptions.get(UndertowOptions.MAX_AJP_PACKET_SIZE, AjpServerRequestConduit.DEFAULT_MAX_PACKET_SIZE);
+        //the packet length is an unsigned short
+        final int used = Math.max(AjpServerRequestConduit.MIN_PACKET_SIZE, Math.min(configured, AjpServerRequestConduit.MAX_PACKET_SIZE));
+        if (used != configured) {
+            UndertowLogger.ROOT_LOGGER.invalidAjpPacketSize(configured, AjpServerRequestConduit.MIN_PACKET_SIZE, AjpServerRequestConduit.MAX_PACKET_SIZE, used);
+        }
+        return used;
     }
 
     /**
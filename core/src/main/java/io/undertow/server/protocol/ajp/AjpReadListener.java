@@ -70,19 +70,28 @@ final class AjpReadListener implements ChannelListener<StreamSourceChannel> {
     private volatile int read = 0;
     private final int maxRequestSize;
     private final long maxEntitySize;
+    private final int maxPacketSize;
+    private final boolean prefetchBodyChunks;
+    private final ByteBuffer readBodyChunk;
     private final AjpRequestParser parser;
     private final ConnectorStatisticsImpl connectorStatistics;
     private WriteReadyHandler.ChannelListenerHandler<ConduitStreamSinkChannel> writeReadyHandler;
 
     private ParseTimeoutUpdater parseTimeoutUpdater;
 
-    AjpReadListener(final AjpServerConnection connection, final String scheme, AjpRequestParser parser, ConnectorStatisticsImpl connectorStatistics) {
+    /**
+     * @param maxPacketSize The validated {@link UndertowOptions#MAX_AJP_PACKET_SIZE}
+     */
+    AjpReadListener(final AjpServerConnection connection, final String scheme, AjpRequestParser parser, ConnectorStatisticsImpl connectorStatistics, final int maxPacketSize) {
         this.connection = connection;
         this.scheme = scheme;
         this.parser = parser;
         this.connectorStatistics = connectorStatistics;
         this.maxRequestSize = connection.getUndertowOptions().get(UndertowOptions.MAX_HEADER_SIZE, UndertowOptions.DEFAULT_MAX_HEADER_SIZE);
         this.maxEntitySize = connection.getUndertowOptions().get(UndertowOptions.MAX_ENTITY_SIZE, UndertowOptions.DEFAULT_MAX_ENTITY_SIZE);
+        this.maxPacketSize = maxPacketSize;
+        this.prefetchBodyChunks = connection.getUndertowOptions().get(UndertowOptions.AJP_PREFETCH_BODY_CHUNKS, false);
+        this.readBodyChunk = AjpServerRequestConduit.createReadBodyChunk(this.maxPacketSize);
         this.writeReadyHandler = new WriteReadyHandler.ChannelListenerHandler<>(connection.getChannel().getSinkChannel());
         this.recordRequestStartTime = connection.getUndertowOptions().get(UndertowOptions.RECORD_REQUEST_START_TIME, false);
         int requestParseTimeout = connection.getUndertowOptions().get(UndertowOptions.REQUEST_PARSE_TIMEOUT, -1);
@@ -200,7 +209,7 @@ final class AjpReadListener implements ChannelListener<StreamSourceChannel> {
                 public void handleEvent(AjpServerResponseConduit channel) {
                     Connectors.terminateResponse(httpServerExchange);
                 }
-            }, httpServerExchange.getRequestMethod().equals(Methods.HEAD));
+            }, httpServerExchange.getRequestMethod().equals(Methods.HEAD), maxPacketSize);
             connection.getChannel().getSinkChannel().setConduit(responseConduit);
             connection.getChannel().getSourceChannel().setConduit(createSourceConduit(connection.getChannel().getSourceChannel().getConduit(), responseConduit, httpServerExchange));
             //we need to set the write ready handler. This allows the response conduit to wrap it
@@ -373,7 +382,7 @@ final class AjpReadListener implements ChannelListener<StreamSourceChannel> {
             public void handleEvent(AjpServerRequestConduit channel) {
                 Connectors.terminateRequest(exchange);
             }
-        });
+        }, readBodyChunk, prefetchBodyChunks);
     }
 
 }
@@ -64,6 +64,17 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
 
     private static final int HEADER_LENGTH = 6;
 
+    /**
+     * The default AJP packet size, which is also the size of the packets that {@link #READ_BODY_CHUNK} asks for
+     */
+    static final int DEFAULT_MAX_PACKET_SIZE = 8192;
+
+    /**
+     * The range of supported values of {@link io.undertow.UndertowOptions#MAX_AJP_PACKET_SIZE}
+     */
+    static final int MIN_PACKET_SIZE = 1024;
+    static final int MAX_PACKET_SIZE = 65536;
+
     /**
      * There is a packet coming from apache.
      */
@@ -76,11 +87,16 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
      * read is done
      */
     private static final long STATE_FINISHED = 1L << 61L;
+    /**
+     * The next chunk has already been requested, so there is no need to send a GET_BODY_CHUNK message once the
+     * current chunk has been read
+     */
+    private static final long STATE_NEXT_CHUNK_REQUESTED = 1L << 60L;
 
     /**
      * The remaining bits are used to store the remaining chunk size.
      */
-    private static final long STATE_MASK = longBitMask(0, 60);
+    private static final long STATE_MASK = longBitMask(0, 59);
 
 
     private final HttpServerExchange exchange;
@@ -95,6 +111,15 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
     private final ConduitListener<? super AjpServerRequestConduit> finishListener;
 
     /**
+     * The GET_BODY_CHUNK message, which asks for chunks of up to the maximum packet size
+     */
+    private final ByteBuffer readBodyChunk;
+
+    /**
+     * If the next chunk should be requested as soon as the current one starts being read
+     */
+    private final boolean prefetch;
+
     /**
      * The total amount of remaining data. If this is unknown it is -1.
      */
@@ -111,10 +136,16 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
     private long totalRead;
 
     public AjpServerRequestConduit(final StreamSourceConduit delegate, HttpServerExchange exchange, AjpServerResponseConduit ajpResponseConduit, Long size, ConduitListener<? super AjpServerRequestConduit> finishListener) {
+        this(delegate, exchange, ajpResponseConduit, size, finishListener, READ_BODY_CHUNK, false);
+    }
+
+    AjpServerRequestConduit(final StreamSourceConduit delegate, HttpServerExchange exchange, AjpServerResponseConduit ajpResponseConduit, Long size, ConduitListener<? super AjpServerRequestConduit> finishListener, ByteBuffer readBodyChunk, boolean prefetch) {
         super(delegate);
         this.exchange = exchange;
         this.ajpResponseConduit = ajpResponseConduit;
         this.finishListener = finishListener;
+        this.readBodyChunk = readBodyChunk;
+        this.prefetch = prefetch;
         if (size == null) {
             state = STATE_SEND_REQUIRED;
             remaining = -1;
@@ -127,6 +158,27 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
         }
     }
 
+    /**
+     * Creates the GET_BODY_CHUNK message for the given packet size. The requested length leaves room for the packet
+     * header and the chunk length.
+     */
+    static ByteBuffer createReadBodyChunk(final int maxPacketSize) {
+        if (maxPacketSize == DEFAULT_MAX_PACKET_SIZE) {
+            return READ_BODY_CHUNK;
+        }
+        final int requested = maxPacketSize - HEADER_LENGTH;
+        ByteBuffer readBody = ByteBuffer.allocateDirect(7);
+        readBody.put((byte) 'A');
+        readBody.put((byte) 'B');
+        readBody.put((byte) 0);
+        readBody.put((byte) 3);
+        readBody.put((byte) 6);
+        readBody.put((byte) ((requested >> 8) & 0xFF));
+        readBody.put((byte) (requested & 0xFF));
+        readBody.flip();
+        return readBody;
+    }
+
     @Override
     public long transferTo(long position, long count, FileChannel target) throws IOException {
         try {
@@ -193,7 +245,7 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
                     }
                     return -1;
                 }
-                if (!ajpResponseConduit.doGetRequestBodyChunk(READ_BODY_CHUNK.duplicate(), this)) {
+                if (!ajpResponseConduit.doGetRequestBodyChunk(readBodyChunk.duplicate(), this)) {
                     return 0;
                 }
             }
@@ -299,6 +351,14 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
                     }
                     return -1;
                 }
+                if (prefetch && (remaining == -1 || remaining > chunkRemaining) && !ajpResponseConduit.isWriteShutdown()) {
+                    //ask for the next chunk now, so it is on its way while this one is consumed. If the message
+                    //can't be written straight away it is queued, and written when the connection is writable
+                    ajpResponseConduit.doGetRequestBodyChunk(readBodyChunk.duplicate(), this);
+                    state |= STATE_NEXT_CHUNK_REQUESTED;
+                } else {
+                    state &= ~STATE_NEXT_CHUNK_REQUESTED;
+                }
             }
         } else {
             chunkRemaining = this.state & STATE_MASK;
@@ -320,7 +380,7 @@ public class AjpServerRequestConduit extends AbstractStreamSourceConduit<StreamS
             if (remaining != 0) {
                 if (chunkRemaining == 0) {
                     headerBuffer.clear();
-                    this.state = STATE_SEND_REQUIRED;
+                    this.state = anyAreSet(state, STATE_NEXT_CHUNK_REQUESTED) ? STATE_READING : STATE_SEND_REQUIRED;
                 } else {
                     this.state = (state & ~STATE_MASK) | chunkRemaining;
                 }
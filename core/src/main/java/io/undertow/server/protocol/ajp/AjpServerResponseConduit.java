@@ -19,7 +19,6 @@
 package io.undertow.server.protocol.ajp;
 
 import io.undertow.UndertowMessages;
-import io.undertow.UndertowOptions;
 import io.undertow.conduits.AbstractFramedStreamSinkConduit;
 import io.undertow.conduits.ConduitListener;
 import io.undertow.server.Connectors;
@@ -54,6 +53,12 @@ import static org.xnio.Bits.anyAreSet;
 /**
  * AJP response channel. For now we are going to assume that the buffers are sized to
  * fit complete packets. As AJP packets are limited to 8k this is a reasonable assumption.
+ * <p>
+ * Small writes made from the IO thread are copied into a single SEND_BODY_CHUNK packet, which is queued once it is
+ * full, when the channel is flushed or closed, or at the latest when the current IO thread task has finished. This
+ * means that a response written in small pieces is sent in as few packets and writes to the socket as possible,
+ * rather than one packet per write, without holding back data the application has written. Writes from other threads
+ * are sent as packets of their own, as the IO thread cannot safely send them on their behalf.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  * @author Stuart Douglas
@@ -62,7 +67,14 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
 
     private static final Logger log = Logger.getLogger("io.undertow.server.channel.ajp.response");
 
-    private static final int DEFAULT_MAX_DATA_SIZE = 8192;
+    /**
+     * The SEND_BODY_CHUNK header, the magic number, packet length, prefix code and chunk length
+     */
+    private static final int SEND_BODY_CHUNK_HEADER_LENGTH = 7;
+    /**
+     * The header and the null terminator after the data
+     */
+    private static final int SEND_BODY_CHUNK_OVERHEAD = SEND_BODY_CHUNK_HEADER_LENGTH + 1;
 
     private static final Map<HttpString, Integer> HEADER_MAP;
 
@@ -100,6 +112,8 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
     private static final int FLAG_WRITE_SHUTDOWN = 1 << 4;
     private static final int FLAG_READS_DONE = 1 << 5;
     private static final int FLAG_FLUSH_QUEUED = 1 << 6;
+    private static final int FLAG_SEND_PENDING_SCHEDULED = 1 << 7;
+    private static final int FLAG_SEND_FROM_LISTENER = 1 << 8;
 
     private static final ByteBuffer CLOSE_FRAME_PERSISTENT;
     private static final ByteBuffer CLOSE_FRAME_NON_PERSISTENT;
@@ -135,12 +149,25 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
 
     private final boolean headRequest;
 
-    AjpServerResponseConduit(final StreamSinkConduit next, final ByteBufferPool pool, final HttpServerExchange exchange, ConduitListener<? super AjpServerResponseConduit> finishListener, boolean headRequest) {
+    /**
+     * The maximum amount of data in a single SEND_BODY_CHUNK packet
+     */
+    private final int maxDataSize;
+
+    /**
+     * The packet that small writes are copied into, with space reserved for the header. This has not been queued yet.
+     */
+    private PooledByteBuffer pendingPacket;
+
+    private final Runnable sendPendingTask = this::sendPendingPacket;
+
+    AjpServerResponseConduit(final StreamSinkConduit next, final ByteBufferPool pool, final HttpServerExchange exchange, ConduitListener<? super AjpServerResponseConduit> finishListener, boolean headRequest, int maxPacketSize) {
         super(next);
         this.pool = pool;
         this.exchange = exchange;
         this.finishListener = finishListener;
         this.headRequest = headRequest;
+        this.maxDataSize = maxPacketSize - SEND_BODY_CHUNK_OVERHEAD;
         state = FLAG_START;
     }
 
@@ -264,6 +291,7 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
     @Override
     protected void queueCloseFrames() {
         processAJPHeader();
+        queuePendingPacket();
         final ByteBuffer buffer = exchange.isPersistent() ? CLOSE_FRAME_PERSISTENT.duplicate() : CLOSE_FRAME_NON_PERSISTENT.duplicate();
         queueFrame(null, buffer);
     }
@@ -318,9 +346,14 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
         }
         int limit = src.limit();
         try {
-            int maxData = exchange.getConnection().getUndertowOptions().get(UndertowOptions.MAX_AJP_PACKET_SIZE, DEFAULT_MAX_DATA_SIZE) - 8;
-            if (src.remaining() > maxData) {
-                src.limit(src.position() + maxData);
+            final int size = src.remaining();
+            if (coalesce(src)) {
+                return size;
+            }
+            //anything that has been buffered must go before this data
+            queuePendingPacket();
+            if (src.remaining() > maxDataSize) {
+                src.limit(src.position() + maxDataSize);
             }
             final int writeSize = src.remaining();
             final ByteBuffer[] buffers = createHeader(src);
@@ -343,6 +376,7 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
             } while (toWrite > 0);
             return originalPayloadSize;
         } catch (IOException | RuntimeException e) {
+            freePendingPacket();
             IoUtils.safeClose(exchange.getConnection());
             throw e;
         } finally {
@@ -350,6 +384,88 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
         }
     }
 
+    /**
+     * Copies the data into the pending packet if it is small enough, starting a new packet if it does not fit.
+     *
+     * @return <code>true</code> if the data was copied, otherwise it should be written as a packet of its own
+     */
+    private boolean coalesce(final ByteBuffer src) {
+        final int size = src.remaining();
+        if (size > maxDataSize / 2 || !exchange.isInIoThread()) {
+            return false;
+        }
+        PooledByteBuffer packet = pendingPacket;
+        if (packet != null && packet.getBuffer().remaining() < size) {
+            queuePendingPacket();
+            packet = null;
+        }
+        if (packet == null) {
+            packet = pool.allocate();
+            final ByteBuffer buffer = packet.getBuffer();
+            if (buffer.remaining() < size + SEND_BODY_CHUNK_OVERHEAD) {
+                packet.close();
+                return false;
+            }
+            //leave space for the header, and for the null terminator at the end
+            buffer.limit(Math.min(buffer.limit(), maxDataSize + SEND_BODY_CHUNK_OVERHEAD) - 1);
+            buffer.position(SEND_BODY_CHUNK_HEADER_LENGTH);
+            pendingPacket = packet;
+            if (allAreClear(state, FLAG_SEND_PENDING_SCHEDULED)) {
+                //send the packet once the code that is writing returns to the event loop
+                state |= FLAG_SEND_PENDING_SCHEDULED;
+                exchange.getIoThread().execute(sendPendingTask);
+            }
+        }
+        packet.getBuffer().put(src);
+        return true;
+    }
+
+    /**
+     * Sends the pending packet if it has not been queued by a flush, a full packet or the end of the response since
+     * it was started. If the socket cannot take all of it the rest is written when it becomes writable.
+     */
+    private void sendPendingPacket() {
+        state &= ~FLAG_SEND_PENDING_SCHEDULED;
+        if (pendingPacket == null || anyAreSet(state, FLAG_WRITE_SHUTDOWN) || isWritesTerminated()) {
+            return;
+        }
+        try {
+            queuePendingPacket();
+            if (!flushQueuedData() && allAreClear(state, FLAG_SEND_FROM_LISTENER)) {
+                state |= FLAG_SEND_FROM_LISTENER;
+                next.resumeWrites();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Error sending coalesced response data", e);
+            IoUtils.safeClose(exchange.getConnection());
+        }
+    }
+
+    /**
+     * Fills in the header of the pending packet, if there is one, and adds it to the frame queue.
+     */
+    private void queuePendingPacket() {
+        final PooledByteBuffer packet = pendingPacket;
+        if (packet == null) {
+            return;
+        }
+        pendingPacket = null;
+        final ByteBuffer buffer = packet.getBuffer();
+        final int dataLength = buffer.position() - SEND_BODY_CHUNK_HEADER_LENGTH;
+        final int chunkSize = dataLength + 4;
+        buffer.limit(buffer.limit() + 1);
+        buffer.put((byte) 0);
+        buffer.put(0, (byte) 'A');
+        buffer.put(1, (byte) 'B');
+        buffer.put(2, (byte) ((chunkSize >> 8) & 0xFF));
+        buffer.put(3, (byte) (chunkSize & 0xFF));
+        buffer.put(4, (byte) 3);
+        buffer.put(5, (byte) ((dataLength >> 8) & 0xFF));
+        buffer.put(6, (byte) (dataLength & 0xFF));
+        buffer.flip();
+        queueFrame(new PooledBufferFrameCallback(packet), buffer);
+    }
+
     private ByteBuffer[] createHeader(final ByteBuffer src) {
         int remaining = src.remaining();
         int chunkSize = remaining + 4;
@@ -413,7 +529,7 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
     public void suspendWrites() {
         log.trace("suspend");
         state &= ~FLAG_WRITE_RESUMED;
-        if (allAreClear(state, FLAG_WRITE_READ_BODY_CHUNK_FROM_LISTENER)) {
+        if (allAreClear(state, FLAG_WRITE_READ_BODY_CHUNK_FROM_LISTENER | FLAG_SEND_FROM_LISTENER)) {
             next.suspendWrites();
         }
     }
@@ -426,6 +542,7 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
 
     public boolean flush() throws IOException {
         processAJPHeader();
+        queuePendingPacket();
         if(allAreClear(state, FLAG_FLUSH_QUEUED) && !isWritesTerminated()) {
             queueFrame(new FrameCallBack() {
                 @Override
@@ -459,12 +576,32 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
                 next.terminateWrites();
             }
             state |= FLAG_WRITE_SHUTDOWN;
+            //the close frames include the pending packet, so this only frees it if they were never queued
+            freePendingPacket();
         } catch (IOException | RuntimeException e) {
+            freePendingPacket();
             IoUtils.safeClose(exchange.getConnection());
             throw e;
         }
     }
 
+    @Override
+    public void truncateWrites() throws IOException {
+        freePendingPacket();
+        super.truncateWrites();
+    }
+
+    /**
+     * Discards any data that has been coalesced but not queued, returning the buffer to the pool
+     */
+    private void freePendingPacket() {
+        final PooledByteBuffer packet = pendingPacket;
+        if (packet != null) {
+            pendingPacket = null;
+            packet.close();
+        }
+    }
+
     @Override
     public boolean isWriteShutdown() {
         return super.isWriteShutdown() || anyAreSet(state, FLAG_WRITE_SHUTDOWN);
@@ -485,7 +622,7 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
                 @Override
                 public void done() {
                     state &= ~FLAG_WRITE_READ_BODY_CHUNK_FROM_LISTENER;
-                    if (allAreClear(state, FLAG_WRITE_RESUMED)) {
+                    if (allAreClear(state, FLAG_WRITE_RESUMED | FLAG_SEND_FROM_LISTENER)) {
                         next.suspendWrites();
                     }
                 }
@@ -518,6 +655,20 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
                     log.debug("Error flushing when doing async READ_BODY_CHUNK flush", e);
                 }
             }
+            if (anyAreSet(state, FLAG_SEND_FROM_LISTENER)) {
+                try {
+                    if (flushQueuedData()) {
+                        state &= ~FLAG_SEND_FROM_LISTENER;
+                        if (allAreClear(state, FLAG_WRITE_RESUMED | FLAG_WRITE_READ_BODY_CHUNK_FROM_LISTENER)) {
+                            next.suspendWrites();
+                        }
+                    }
+                } catch (IOException e) {
+                    log.debug("Error flushing coalesced response data", e);
+                    state &= ~FLAG_SEND_FROM_LISTENER;
+                    IoUtils.safeClose(exchange.getConnection());
+                }
+            }
             if (anyAreSet(state, FLAG_WRITE_RESUMED)) {
                 delegate.writeReady();
             }
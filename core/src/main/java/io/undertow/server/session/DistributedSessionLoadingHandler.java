@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import io.undertow.Handlers;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Dispatches a request to a worker thread if its session is not in the near cache of the
+ * {@link DistributedSessionManager}, as loading the session from the store blocks. Requests for a cached session, and
+ * requests without a session, stay on the IO thread.
+ * <p>
+ * This handler must come after the {@link SessionAttachmentHandler}, as it uses the session manager and session config
+ * that are attached to the exchange.
+ */
+public class DistributedSessionLoadingHandler implements HttpHandler {
+
+    private volatile HttpHandler next;
+
+    public DistributedSessionLoadingHandler(final HttpHandler next) {
+        Handlers.handlerNotNull(next);
+        this.next = next;
+    }
+
+    @Override
+    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+        if (exchange.isInIoThread()) {
+            final SessionManager sessionManager = exchange.getAttachment(SessionManager.ATTACHMENT_KEY);
+            final SessionConfig sessionConfig = exchange.getAttachment(SessionConfig.ATTACHMENT_KEY);
+            if (sessionManager instanceof DistributedSessionManager && sessionConfig != null) {
+                final String sessionId = sessionConfig.findSessionId(exchange);
+                if (sessionId != null && !((DistributedSessionManager) sessionManager).isCached(sessionId)) {
+                    exchange.dispatch(this);
+                    return;
+                }
+            }
+        }
+        next.handleRequest(exchange);
+    }
+
+    public HttpHandler getNext() {
+        return next;
+    }
+
+    public DistributedSessionLoadingHandler setNext(final HttpHandler next) {
+        Handlers.handlerNotNull(next);
+        this.next = next;
+        return this;
+    }
+}
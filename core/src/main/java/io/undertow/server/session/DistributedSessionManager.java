@@ -0,0 +1,933 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.undertow.UndertowLogger;
+import io.undertow.UndertowMessages;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+
+/**
+ * A session manager that keeps sessions in a {@link SessionStore} shared by all nodes of a cluster, so a session is not
+ * lost when its requests move to another node, for example when a node is stopped or the load is rebalanced.
+ * <p>
+ * Sessions that are in use are kept in a near cache on each node, with the attribute values deserialized lazily the
+ * first time they are read. Changes are tracked per attribute and are written behind: when a request completes the
+ * attributes it changed are serialized and queued, and a single writer thread sends everything that has been queued
+ * to the store in one batch. Attributes are considered changed if they were set or removed, or if a mutable value was
+ * read, as the application may have modified it in place. Strings, boxed primitives and enums are immutable. A batch
+ * that cannot be written is retried a few times with an increasing delay, the sessions it contains stay in the near
+ * cache until it has been written.
+ * <p>
+ * The store notifies the other nodes when a session changes, which removes it from their near caches. As writes are
+ * asynchronous there is no read-your-writes guarantee between nodes: a request that reaches another node before the
+ * changes of the previous request have been written sees the previous state of the session. Requests for a session
+ * should therefore be routed to the same node while it is available, with the store providing fail over; a node that
+ * is stopped writes all pending changes first. Load balancers that do not route requests for a session to the same
+ * node can be used if requests for a session are not sent concurrently with, or immediately after, a request that
+ * changes it on another node.
+ * <p>
+ * A session that is not in the near cache is loaded from the store, which blocks the calling thread. A
+ * {@link DistributedSessionLoadingHandler} dispatches such requests to a worker thread before they reach the handlers
+ * that use the session.
+ * <p>
+ * Each node expires the sessions in its near cache, other sessions must be expired by the store. Statistics are not
+ * supported.
+ */
+public class DistributedSessionManager implements SessionManager {
+
+    private static final int DEFAULT_NEAR_CACHE_SIZE = 10000;
+    private static final int EXPIRATION_INTERVAL = 30;
+    /**
+     * The number of cached sessions that are looked at to find one to evict
+     */
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+    /**
+     * The number of times an update is sent to the store before it is discarded
+     */
+    private static final int MAX_WRITE_ATTEMPTS = 8;
+    /**
+     * The delay before a failed batch is retried for the first time, in milliseconds. It doubles with every attempt.
+     */
+    private static final long WRITE_RETRY_DELAY = 100;
+
+    private final AttachmentKey<SessionImpl> NEW_SESSION = AttachmentKey.create(SessionImpl.class);
+    /**
+     * The session that has been counted as in use by the request
+     */
+    private final AttachmentKey<SessionImpl> ACTIVE_SESSION = AttachmentKey.create(SessionImpl.class);
+
+    private final String deploymentName;
+    private final SessionStore store;
+    private final SessionIdGenerator sessionIdGenerator;
+    private final ClassLoader classLoader;
+    private final int nearCacheSize;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, SessionImpl> sessions = new ConcurrentHashMap<>();
+    private final SessionListeners sessionListeners = new SessionListeners();
+    private final SessionStore.InvalidationListener invalidationListener = this::invalidated;
+
+    private final ConcurrentLinkedQueue<PendingUpdate> updates = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private final Runnable writeTask = () -> write(false);
+    /**
+     * Updates that failed to be written, they are retried before the updates in the queue. Guarded by writeLock.
+     */
+    private final List<PendingUpdate> failed = new ArrayList<>();
+    /**
+     * The time before which failed updates are not retried, guarded by writeLock
+     */
+    private long retryTime;
+    private final Object writeLock = new Object();
+    private volatile ScheduledExecutorService executor;
+
+    private volatile int defaultSessionTimeout = 30 * 60;
+
+    public DistributedSessionManager(final String deploymentName, final SessionStore store) {
+        this(new SecureRandomSessionIdGenerator(), deploymentName, store, DEFAULT_NEAR_CACHE_SIZE, null);
+    }
+
+    /**
+     * @param sessionIdGenerator The session id generator
+     * @param deploymentName     The deployment name
+     * @param store              The store that is shared by all nodes
+     * @param nearCacheSize      The maximum number of sessions that are cached on this node
+     * @param classLoader        The class loader that attribute values are deserialized with, or <code>null</code> to
+     *                           use the context class loader of the thread that creates the session manager
+     */
+    public DistributedSessionManager(final SessionIdGenerator sessionIdGenerator, final String deploymentName, final SessionStore store, final int nearCacheSize, final ClassLoader classLoader) {
+        if (store == null) {
+            throw UndertowMessages.MESSAGES.argumentCannotBeNull("store");
+        }
+        this.sessionIdGenerator = sessionIdGenerator;
+        this.deploymentName = deploymentName;
+        this.store = store;
+        this.nearCacheSize = nearCacheSize;
+        this.classLoader = classLoader == null ? Thread.currentThread().getContextClassLoader() : classLoader;
+    }
+
+    @Override
+    public String getDeploymentName() {
+        return deploymentName;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "undertow-session-writer-" + deploymentName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::expireSessions, EXPIRATION_INTERVAL, EXPIRATION_INTERVAL, TimeUnit.SECONDS);
+        store.addInvalidationListener(invalidationListener);
+    }
+
+    @Override
+    public synchronized void stop() {
+        final ScheduledExecutorService executor = this.executor;
+        if (executor == null) {
+            return;
+        }
+        this.executor = null;
+        store.removeInvalidationListener(invalidationListener);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(EXPIRATION_INTERVAL, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //the sessions are still in the store, so they are not destroyed
+        while (write(true)) {
+            //retry until the store accepts the updates or they have been attempted too often
+        }
+        sessions.clear();
+    }
+
+    @Override
+    public Session createSession(final HttpServerExchange serverExchange, final SessionConfig config) {
+        if (config == null) {
+            throw UndertowMessages.MESSAGES.couldNotFindSessionCookieConfig();
+        }
+        String sessionId = config.findSessionId(serverExchange);
+        final SessionImpl session;
+        if (sessionId != null) {
+            session = new SessionImpl(sessionId, config, System.currentTimeMillis(), defaultSessionTimeout);
+            if (sessions.putIfAbsent(sessionId, session) != null || load(sessionId) != null) {
+                sessions.remove(sessionId, session);
+                throw UndertowMessages.MESSAGES.sessionWithIdAlreadyExists(sessionId);
+            }
+        } else {
+            session = createAndSaveSession(config, System.currentTimeMillis(), defaultSessionTimeout);
+            sessionId = session.getId();
+        }
+        session.requestStarted(serverExchange);
+        evictIfFull();
+        UndertowLogger.SESSION_LOGGER.debugf("Created session with id %s for exchange %s", sessionId, serverExchange);
+        config.setSessionId(serverExchange, sessionId);
+        sessionListeners.sessionCreated(session, serverExchange);
+        serverExchange.putAttachment(NEW_SESSION, session);
+        return session;
+    }
+
+    private SessionImpl createAndSaveSession(final SessionConfig config, final long creationTime, final int maxInactiveInterval) {
+        for (int i = 0; i < 100; i++) {
+            final SessionImpl session = new SessionImpl(sessionIdGenerator.createSessionId(), config, creationTime, maxInactiveInterval);
+            if (sessions.putIfAbsent(session.getId(), session) == null) {
+                return session;
+            }
+        }
+        //this should 'never' happen
+        //but we guard against pathological session id generators to prevent an infinite loop
+        throw UndertowMessages.MESSAGES.couldNotGenerateUniqueSessionId();
+    }
+
+    @Override
+    public Session getSession(final HttpServerExchange serverExchange, final SessionConfig config) {
+        if (serverExchange != null) {
+            final SessionImpl newSession = serverExchange.getAttachment(NEW_SESSION);
+            if (newSession != null) {
+                return newSession;
+            }
+        }
+        if (config == null) {
+            throw UndertowMessages.MESSAGES.couldNotFindSessionCookieConfig();
+        }
+        final SessionImpl session = getSession(config.findSessionId(serverExchange), config);
+        if (session != null && serverExchange != null) {
+            session.requestStarted(serverExchange);
+        }
+        return session;
+    }
+
+    @Override
+    public Session getSession(final String sessionId) {
+        return getSession(sessionId, null);
+    }
+
+    /**
+     * @return <code>true</code> if the session is in the near cache of this node, so it can be read without loading it
+     * from the store
+     */
+    public boolean isCached(final String sessionId) {
+        return sessions.containsKey(sessionId);
+    }
+
+    private SessionImpl getSession(final String sessionId, final SessionConfig config) {
+        if (sessionId == null) {
+            return null;
+        }
+        SessionImpl session = sessions.get(sessionId);
+        if (session == null) {
+            final SessionStore.StoredSession stored = load(sessionId);
+            if (stored == null) {
+                return null;
+            }
+            session = new SessionImpl(sessionId, config, stored);
+            final SessionImpl existing = sessions.putIfAbsent(sessionId, session);
+            if (existing != null) {
+                session = existing;
+            } else {
+                evictIfFull();
+            }
+        }
+        if (session.isExpired(System.currentTimeMillis())) {
+            session.invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT);
+            return null;
+        }
+        return session;
+    }
+
+    private SessionStore.StoredSession load(final String sessionId) {
+        try {
+            return store.load(sessionId);
+        } catch (IOException e) {
+            UndertowLogger.SESSION_LOGGER.failedToLoadSession(sessionId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Removes a cached session that has not been used recently if the near cache is full. This looks at a small
+     * sample of the cached sessions rather than keeping them in access order, so reading a session never needs a
+     * lock. Sessions that are in use by a request, or that have changes that have not been written yet, are not
+     * evicted.
+     */
+    private void evictIfFull() {
+        if (sessions.size() <= nearCacheSize) {
+            return;
+        }
+        SessionImpl oldest = null;
+        int sampled = 0;
+        for (Iterator<SessionImpl> it = sessions.values().iterator(); it.hasNext() && sampled < EVICTION_SAMPLE_SIZE; ) {
+            final SessionImpl session = it.next();
+            if (session.isEvictable()) {
+                ++sampled;
+                if (oldest == null || session.lastAccessed < oldest.lastAccessed) {
+                    oldest = session;
+                }
+            }
+        }
+        if (oldest != null) {
+            UndertowLogger.SESSION_LOGGER.debugf("Evicting session %s from the near cache", oldest.sessionId);
+            sessions.remove(oldest.sessionId, oldest);
+        }
+    }
+
+    private void invalidated(final String sessionId, final String origin) {
+        if (!nodeId.equals(origin)) {
+            final SessionImpl session = sessions.get(sessionId);
+            if (session != null) {
+                session.changedOnOtherNode();
+            }
+        }
+    }
+
+    private void enqueue(final SessionImpl session, final SessionStore.SessionUpdate update) {
+        session.pendingUpdates.incrementAndGet();
+        updates.add(new PendingUpdate(session, update));
+        if (writeScheduled.compareAndSet(false, true)) {
+            final ScheduledExecutorService executor = this.executor;
+            try {
+                if (executor != null) {
+                    executor.execute(writeTask);
+                    return;
+                }
+            } catch (RejectedExecutionException e) {
+                //stopping, fall through
+            }
+            write(true);
+        }
+    }
+
+    /**
+     * Writes all queued updates to the store in a single batch. While a failed batch is waiting to be retried the
+     * queued updates are added to it, so they are written in order once the store is available again.
+     *
+     * @param retryNow if failed updates should be retried without waiting for the retry delay
+     * @return <code>true</code> if the batch failed and will be retried
+     */
+    private boolean write(final boolean retryNow) {
+        synchronized (writeLock) {
+            writeScheduled.set(false);
+            final boolean waiting = !failed.isEmpty() && !retryNow && retryTime - System.nanoTime() > 0;
+            final List<PendingUpdate> pending = new ArrayList<>(failed);
+            failed.clear();
+            PendingUpdate update;
+            while ((update = updates.poll()) != null) {
+                pending.add(update);
+            }
+            if (waiting) {
+                failed.addAll(pending);
+                return true;
+            }
+            if (pending.isEmpty()) {
+                return false;
+            }
+            if (write(pending)) {
+                return false;
+            }
+            int attempts = 0;
+            int discarded = 0;
+            for (PendingUpdate p : pending) {
+                if (++p.attempts < MAX_WRITE_ATTEMPTS) {
+                    failed.add(p);
+                    attempts = Math.max(attempts, p.attempts);
+                } else {
+                    ++discarded;
+                    p.session.pendingUpdates.decrementAndGet();
+                }
+            }
+            if (discarded > 0) {
+                UndertowLogger.SESSION_LOGGER.discardingSessionUpdates(discarded, MAX_WRITE_ATTEMPTS);
+            }
+            if (failed.isEmpty()) {
+                return false;
+            }
+            final long delay = WRITE_RETRY_DELAY << (attempts - 1);
+            retryTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            final ScheduledExecutorService executor = this.executor;
+            if (executor != null) {
+                try {
+                    executor.schedule(writeTask, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    //stopping, the updates are retried by stop()
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the store failed, in which case the updates are still pending
+     */
+    private boolean write(final List<PendingUpdate> pending) {
+        final List<SessionStore.SessionUpdate> batch = new ArrayList<>(pending.size());
+        //an update that only changes the access time is superseded by any later update to the same session
+        final Set<String> updated = new HashSet<>();
+        for (int i = pending.size() - 1; i >= 0; --i) {
+            final SessionStore.SessionUpdate u = pending.get(i).update;
+            if (updated.add(u.getSessionId()) || u.isCreated() || u.isRemoved()
+                    || !u.getAttributes().isEmpty() || !u.getRemovedAttributes().isEmpty()) {
+                batch.add(u);
+            }
+        }
+        Collections.reverse(batch);
+        try {
+            store.store(batch);
+        } catch (IOException | RuntimeException e) {
+            UndertowLogger.SESSION_LOGGER.failedToWriteSessions(batch.size(), e);
+            return false;
+        }
+        for (PendingUpdate p : pending) {
+            p.session.pendingUpdates.decrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Expires the cached sessions that have not been accessed on this node for longer than their maximum inactive
+     * interval, unless they have been accessed on another node.
+     */
+    private void expireSessions() {
+        final long now = System.currentTimeMillis();
+        for (SessionImpl session : sessions.values()) {
+            if (session.isExpired(now) && session.pendingUpdates.get() == 0) {
+                final SessionStore.StoredSession stored = load(session.sessionId);
+                if (stored != null && stored.getLastAccessedTime() > session.lastAccessed) {
+                    sessions.remove(session.sessionId, session);
+                } else {
+                    session.invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void registerSessionListener(final SessionListener listener) {
+        sessionListeners.addSessionListener(listener);
+    }
+
+    @Override
+    public void removeSessionListener(final SessionListener listener) {
+        sessionListeners.removeSessionListener(listener);
+    }
+
+    @Override
+    public void setDefaultSessionTimeout(final int timeout) {
+        UndertowLogger.SESSION_LOGGER.debugf("Setting default session timeout to %s", timeout);
+        defaultSessionTimeout = timeout;
+    }
+
+    @Override
+    public Set<String> getTransientSessions() {
+        return getActiveSessions();
+    }
+
+    @Override
+    public Set<String> getActiveSessions() {
+        return new HashSet<>(sessions.keySet());
+    }
+
+    @Override
+    public Set<String> getAllSessions() {
+        try {
+            return store.getSessionIds();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public SessionManagerStatistics getStatistics() {
+        return null;
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + " (" + deploymentName + ")";
+    }
+
+    private byte[] serialize(final String sessionId, final String name, final Object value) {
+        if (value instanceof Serialized) {
+            return ((Serialized) value).data;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(out)) {
+            stream.writeObject(value);
+        } catch (IOException e) {
+            UndertowLogger.SESSION_LOGGER.failedToSerializeSessionAttribute(name, sessionId, e);
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    private Object deserialize(final String sessionId, final Serialized value) {
+        try (ObjectInputStream stream = new ClassLoaderObjectInputStream(new ByteArrayInputStream(value.data), classLoader)) {
+            return stream.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            UndertowLogger.SESSION_LOGGER.failedToLoadSession(sessionId, e);
+            return null;
+        }
+    }
+
+    private static boolean isImmutable(final Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum;
+    }
+
+    /**
+     * An attribute value that has not been read since the session was loaded
+     */
+    private static final class Serialized {
+
+        private final byte[] data;
+
+        Serialized(final byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private static final class PendingUpdate {
+
+        private final SessionImpl session;
+        private final SessionStore.SessionUpdate update;
+        /**
+         * The number of times the update failed to be written, guarded by writeLock
+         */
+        private int attempts;
+
+        PendingUpdate(final SessionImpl session, final SessionStore.SessionUpdate update) {
+            this.session = session;
+            this.update = update;
+        }
+    }
+
+    private static final class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        ClassLoaderObjectInputStream(final InputStream in, final ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    //fall back to the default
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+
+    private final class SessionImpl implements Session {
+
+        private final SessionConfig sessionConfig;
+        private final long creationTime;
+        private final ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<>();
+        private final AtomicInteger pendingUpdates = new AtomicInteger();
+        /**
+         * The number of requests that are using the session, guarded by this session
+         */
+        private int activeRequests;
+        /**
+         * If the session was changed by another node while it was in use, guarded by this session
+         */
+        private boolean stale;
+        /**
+         * If the session is being invalidated, guarded by this session
+         */
+        private boolean invalidationStarted;
+        /**
+         * The attributes that have changed since the last request completed, guarded by this session
+         */
+        private final Set<String> dirty = new HashSet<>();
+        private final Set<String> removed = new HashSet<>();
+
+        private volatile String sessionId;
+        private volatile long lastAccessed;
+        private volatile int maxInactiveInterval;
+        private volatile boolean invalid;
+        /**
+         * If the session has not been written to the store yet, guarded by this session
+         */
+        private boolean created;
+
+        SessionImpl(final String sessionId, final SessionConfig sessionConfig, final long creationTime, final int maxInactiveInterval) {
+            this.sessionId = sessionId;
+            this.sessionConfig = sessionConfig;
+            this.creationTime = creationTime;
+            this.lastAccessed = creationTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+            this.created = true;
+        }
+
+        SessionImpl(final String sessionId, final SessionConfig sessionConfig, final SessionStore.StoredSession stored) {
+            this.sessionId = sessionId;
+            this.sessionConfig = sessionConfig;
+            this.creationTime = stored.getCreationTime();
+            this.lastAccessed = stored.getLastAccessedTime();
+            this.maxInactiveInterval = stored.getMaxInactiveInterval();
+            for (Map.Entry<String, byte[]> entry : stored.getAttributes().entrySet()) {
+                attributes.put(entry.getKey(), new Serialized(entry.getValue()));
+            }
+        }
+
+        void requestStarted(final HttpServerExchange exchange) {
+            lastAccessed = System.currentTimeMillis();
+            if (exchange == null) {
+                return;
+            }
+            final SessionImpl previous = exchange.putAttachment(ACTIVE_SESSION, this);
+            if (previous == this) {
+                return;
+            }
+            if (previous != null) {
+                //the request has moved to another session
+                previous.requestEnded();
+            }
+            synchronized (this) {
+                ++activeRequests;
+            }
+        }
+
+        /**
+         * Called when a request that was counted by {@link #requestStarted(HttpServerExchange)} no longer uses the
+         * session. A session that was changed by another node while it was in use is removed from the near cache once
+         * the last request is done, so the next request reads the current state.
+         */
+        private void requestEnded() {
+            synchronized (this) {
+                if (--activeRequests > 0 || !stale) {
+                    return;
+                }
+                stale = false;
+            }
+            sessions.remove(sessionId, this);
+        }
+
+        /**
+         * Removes the session from the near cache, unless a request is using it.
+         */
+        void changedOnOtherNode() {
+            synchronized (this) {
+                if (activeRequests > 0) {
+                    stale = true;
+                    return;
+                }
+            }
+            sessions.remove(sessionId, this);
+        }
+
+        boolean isExpired(final long now) {
+            final int maxInactiveInterval = this.maxInactiveInterval;
+            return maxInactiveInterval > 0 && now - lastAccessed > maxInactiveInterval * 1000L;
+        }
+
+        synchronized boolean isEvictable() {
+            return activeRequests == 0 && !created && dirty.isEmpty() && removed.isEmpty() && pendingUpdates.get() == 0;
+        }
+
+        @Override
+        public String getId() {
+            return sessionId;
+        }
+
+        @Override
+        public void requestDone(final HttpServerExchange serverExchange) {
+            if (!invalid) {
+                writeChanges();
+            }
+            if (serverExchange != null && serverExchange.getAttachment(ACTIVE_SESSION) == this) {
+                serverExchange.removeAttachment(ACTIVE_SESSION);
+                requestEnded();
+            }
+        }
+
+        /**
+         * Queues the changes that have been made since the last write
+         */
+        private void writeChanges() {
+            final String sessionId;
+            final boolean created;
+            final Map<String, Object> changed = new HashMap<>();
+            final Set<String> removed;
+            synchronized (this) {
+                sessionId = this.sessionId;
+                created = this.created;
+                this.created = false;
+                for (String name : created ? attributes.keySet() : dirty) {
+                    final Object value = attributes.get(name);
+                    if (value != null) {
+                        changed.put(name, value);
+                    }
+                }
+                dirty.clear();
+                if (this.removed.isEmpty() || created) {
+                    removed = Collections.emptySet();
+                } else {
+                    removed = new HashSet<>(this.removed);
+                }
+                this.removed.clear();
+            }
+            //serialize outside of the lock, this is the expensive part
+            final Map<String, byte[]> serialized = new HashMap<>();
+            for (Map.Entry<String, Object> entry : changed.entrySet()) {
+                final byte[] data = serialize(sessionId, entry.getKey(), entry.getValue());
+                if (data != null) {
+                    serialized.put(entry.getKey(), data);
+                }
+            }
+            enqueue(this, new SessionStore.SessionUpdate(sessionId, nodeId, created, creationTime, lastAccessed, maxInactiveInterval, serialized, removed));
+        }
+
+        @Override
+        public long getCreationTime() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            return creationTime;
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            return lastAccessed;
+        }
+
+        @Override
+        public void setMaxInactiveInterval(final int interval) {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            UndertowLogger.SESSION_LOGGER.debugf("Setting max inactive interval for %s to %s", sessionId, interval);
+            maxInactiveInterval = interval;
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            return maxInactiveInterval;
+        }
+
+        @Override
+        public Object getAttribute(final String name) {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            Object value = attributes.get(name);
+            if (value instanceof Serialized) {
+                final Object deserialized = deserialize(sessionId, (Serialized) value);
+                if (deserialized == null) {
+                    return null;
+                }
+                if (!attributes.replace(name, value, deserialized)) {
+                    //changed concurrently
+                    return getAttribute(name);
+                }
+                value = deserialized;
+            }
+            if (value != null && !isImmutable(value)) {
+                //the value may be modified in place
+                synchronized (this) {
+                    dirty.add(name);
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            return new HashSet<>(attributes.keySet());
+        }
+
+        @Override
+        public Object setAttribute(final String name, final Object value) {
+            if (value == null) {
+                return removeAttribute(name);
+            }
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            Object existing;
+            synchronized (this) {
+                existing = attributes.put(name, value);
+                dirty.add(name);
+                removed.remove(name);
+            }
+            if (existing instanceof Serialized) {
+                existing = deserialize(sessionId, (Serialized) existing);
+            }
+            if (existing == null) {
+                sessionListeners.attributeAdded(this, name, value);
+            } else {
+                sessionListeners.attributeUpdated(this, name, value, existing);
+            }
+            UndertowLogger.SESSION_LOGGER.tracef("Setting session attribute %s to %s for session %s", name, value, sessionId);
+            return existing;
+        }
+
+        @Override
+        public Object removeAttribute(final String name) {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionIsInvalid(sessionId);
+            }
+            Object existing;
+            synchronized (this) {
+                existing = attributes.remove(name);
+                if (existing != null) {
+                    dirty.remove(name);
+                    removed.add(name);
+                }
+            }
+            if (existing instanceof Serialized) {
+                existing = deserialize(sessionId, (Serialized) existing);
+            }
+            sessionListeners.attributeRemoved(this, name, existing);
+            UndertowLogger.SESSION_LOGGER.tracef("Removing session attribute %s for session %s", name, sessionId);
+            return existing;
+        }
+
+        @Override
+        public void invalidate(final HttpServerExchange exchange) {
+            invalidate(exchange, SessionListener.SessionDestroyedReason.INVALIDATED);
+            if (exchange != null) {
+                exchange.removeAttachment(NEW_SESSION);
+            }
+        }
+
+        void invalidate(final HttpServerExchange exchange, final SessionListener.SessionDestroyedReason reason) {
+            final String sessionId;
+            synchronized (this) {
+                sessionId = this.sessionId;
+                if (invalidationStarted) {
+                    if (reason == SessionListener.SessionDestroyedReason.INVALIDATED) {
+                        throw UndertowMessages.MESSAGES.sessionAlreadyInvalidated();
+                    }
+                    return;
+                }
+                invalidationStarted = true;
+                //the session may no longer be in the near cache, as it could have been evicted or changed by another
+                //node since it was read, but it must still be removed from the store
+                sessions.remove(sessionId);
+            }
+            UndertowLogger.SESSION_LOGGER.debugf("Invalidating session %s for exchange %s", sessionId, exchange);
+            sessionListeners.sessionDestroyed(this, exchange, reason);
+            invalid = true;
+            enqueue(this, SessionStore.SessionUpdate.removal(sessionId, nodeId));
+            if (exchange != null && sessionConfig != null) {
+                sessionConfig.clearSession(exchange, sessionId);
+            }
+        }
+
+        @Override
+        public SessionManager getSessionManager() {
+            return DistributedSessionManager.this;
+        }
+
+        @Override
+        public String changeSessionId(final HttpServerExchange exchange, final SessionConfig config) {
+            final String oldId;
+            final String newId;
+            synchronized (this) {
+                if (invalid) {
+                    return null;
+                }
+                oldId = sessionId;
+                SessionImpl existing = this;
+                String id = null;
+                for (int i = 0; i < 100 && existing != null; i++) {
+                    id = sessionIdGenerator.createSessionId();
+                    existing = sessions.putIfAbsent(id, this);
+                }
+                if (existing != null) {
+                    throw UndertowMessages.MESSAGES.couldNotGenerateUniqueSessionId();
+                }
+                newId = id;
+                sessionId = newId;
+                sessions.remove(oldId, this);
+                //the whole session is written under the new id
+                created = true;
+                dirty.clear();
+                removed.clear();
+            }
+            config.setSessionId(exchange, newId);
+            if (exchange != null) {
+                //the request still has the old id, so it would otherwise load the old session from the store again
+                exchange.putAttachment(NEW_SESSION, this);
+            }
+            writeChanges();
+            enqueue(this, SessionStore.SessionUpdate.removal(oldId, nodeId));
+            sessionListeners.sessionIdChanged(this, oldId);
+            UndertowLogger.SESSION_LOGGER.debugf("Changing session id %s to %s", oldId, newId);
+            return newId;
+        }
+
+        @Override
+        public boolean isInvalid() {
+            return invalid;
+        }
+    }
+}
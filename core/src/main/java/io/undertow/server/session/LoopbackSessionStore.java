@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link SessionStore} that is shared in process, for testing and for several servers running in the same JVM.
+ * Attributes are kept in serialized form, as a remote store would keep them, and invalidation listeners are notified
+ * synchronously. Sessions that have expired are removed when they are loaded.
+ */
+public class LoopbackSessionStore implements SessionStore {
+
+    private final ConcurrentMap<String, StoredSession> sessions = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public StoredSession load(final String sessionId) {
+        final StoredSession session = sessions.get(sessionId);
+        if (session != null && session.getMaxInactiveInterval() > 0
+                && session.getLastAccessedTime() + session.getMaxInactiveInterval() * 1000L < System.currentTimeMillis()) {
+            sessions.remove(sessionId, session);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public void store(final List<SessionUpdate> updates) {
+        for (SessionUpdate update : updates) {
+            if (update.isRemoved()) {
+                sessions.remove(update.getSessionId());
+            } else {
+                sessions.compute(update.getSessionId(), (id, existing) -> {
+                    if (existing == null && !update.isCreated()) {
+                        //removed by another node
+                        return null;
+                    }
+                    final Map<String, byte[]> attributes = new HashMap<>();
+                    if (existing != null && !update.isCreated()) {
+                        attributes.putAll(existing.getAttributes());
+                    }
+                    attributes.keySet().removeAll(update.getRemovedAttributes());
+                    attributes.putAll(update.getAttributes());
+                    return new StoredSession(update.getCreationTime(), update.getLastAccessedTime(), update.getMaxInactiveInterval(), attributes);
+                });
+            }
+            for (InvalidationListener listener : listeners) {
+                listener.invalidated(update.getSessionId(), update.getOrigin());
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getSessionIds() {
+        return new HashSet<>(sessions.keySet());
+    }
+
+    @Override
+    public void addInvalidationListener(final InvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeInvalidationListener(final InvalidationListener listener) {
+        listeners.remove(listener);
+    }
+}
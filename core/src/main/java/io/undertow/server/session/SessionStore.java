@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The remote store behind a {@link DistributedSessionManager}, which makes sessions available to every node of a
+ * cluster.
+ * <p>
+ * Attribute values are passed to and from the store in serialized form. Changes are written in batches, each update
+ * contains only the attributes that were changed by a request. A store must notify the invalidation listeners of every
+ * node whenever a session is updated or removed, the notification carries the origin of the update so a node can
+ * ignore its own updates. Notifications may be delivered asynchronously.
+ * <p>
+ * Stores are expected to remove sessions that have not been accessed for longer than their maximum inactive interval,
+ * as a node only expires the sessions it holds.
+ */
+public interface SessionStore {
+
+    /**
+     * @param sessionId The session id
+     * @return The session, or <code>null</code> if it does not exist
+     */
+    StoredSession load(String sessionId) throws IOException;
+
+    /**
+     * Applies a batch of updates, in order.
+     */
+    void store(List<SessionUpdate> updates) throws IOException;
+
+    /**
+     * @return The ids of all stored sessions
+     */
+    Set<String> getSessionIds() throws IOException;
+
+    void addInvalidationListener(InvalidationListener listener);
+
+    void removeInvalidationListener(InvalidationListener listener);
+
+    interface InvalidationListener {
+
+        /**
+         * Called when a session has been updated or removed.
+         *
+         * @param sessionId The session id
+         * @param origin    The origin of the update
+         */
+        void invalidated(String sessionId, String origin);
+    }
+
+    /**
+     * A session as it is stored.
+     */
+    final class StoredSession {
+
+        private final long creationTime;
+        private final long lastAccessedTime;
+        private final int maxInactiveInterval;
+        private final Map<String, byte[]> attributes;
+
+        public StoredSession(final long creationTime, final long lastAccessedTime, final int maxInactiveInterval, final Map<String, byte[]> attributes) {
+            this.creationTime = creationTime;
+            this.lastAccessedTime = lastAccessedTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+            this.attributes = attributes;
+        }
+
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        public long getLastAccessedTime() {
+            return lastAccessedTime;
+        }
+
+        /**
+         * @return The maximum inactive interval in seconds
+         */
+        public int getMaxInactiveInterval() {
+            return maxInactiveInterval;
+        }
+
+        /**
+         * @return The serialized attribute values
+         */
+        public Map<String, byte[]> getAttributes() {
+            return attributes;
+        }
+    }
+
+    /**
+     * The changes that a request made to a session.
+     */
+    final class SessionUpdate {
+
+        private final String sessionId;
+        private final String origin;
+        private final boolean created;
+        private final boolean removed;
+        private final long creationTime;
+        private final long lastAccessedTime;
+        private final int maxInactiveInterval;
+        private final Map<String, byte[]> attributes;
+        private final Set<String> removedAttributes;
+
+        /**
+         * @param sessionId           The session id
+         * @param origin              The node that made the changes
+         * @param created             If the session is new, in which case any stored session with the id is replaced
+         * @param creationTime        The creation time of the session
+         * @param lastAccessedTime    The last accessed time of the session
+         * @param maxInactiveInterval The maximum inactive interval of the session in seconds
+         * @param attributes          The serialized values of the attributes that have been set
+         * @param removedAttributes   The names of the attributes that have been removed
+         */
+        public SessionUpdate(final String sessionId, final String origin, final boolean created, final long creationTime, final long lastAccessedTime, final int maxInactiveInterval, final Map<String, byte[]> attributes, final Set<String> removedAttributes) {
+            this(sessionId, origin, created, false, creationTime, lastAccessedTime, maxInactiveInterval, attributes, removedAttributes);
+        }
+
+        private SessionUpdate(final String sessionId, final String origin, final boolean created, final boolean removed, final long creationTime, final long lastAccessedTime, final int maxInactiveInterval, final Map<String, byte[]> attributes, final Set<String> removedAttributes) {
+            this.sessionId = sessionId;
+            this.origin = origin;
+            this.created = created;
+            this.removed = removed;
+            this.creationTime = creationTime;
+            this.lastAccessedTime = lastAccessedTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+            this.attributes = attributes;
+            this.removedAttributes = removedAttributes;
+        }
+
+        /**
+         * @return An update that removes the session
+         */
+        public static SessionUpdate removal(final String sessionId, final String origin) {
+            return new SessionUpdate(sessionId, origin, false, true, 0, 0, 0, Collections.emptyMap(), Collections.emptySet());
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public String getOrigin() {
+            return origin;
+        }
+
+        public boolean isCreated() {
+            return created;
+        }
+
+        public boolean isRemoved() {
+            return removed;
+        }
+
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        public long getLastAccessedTime() {
+            return lastAccessedTime;
+        }
+
+        public int getMaxInactiveInterval() {
+            return maxInactiveInterval;
+        }
+
+        public Map<String, byte[]> getAttributes() {
+            return attributes;
+        }
+
+        public Set<String> getRemovedAttributes() {
+            return removedAttributes;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.undertow.UndertowMessages;
+
+/**
+ * A lazily decoded view of <code>application/x-www-form-urlencoded</code> parameters, such as a query string.
+ * <p>
+ * Parsing only records the offsets of the names and values in the encoded string. Names and values are decoded when
+ * they are looked up, and names and values that do not contain any encoded characters are compared and parsed in
+ * place, so looking up a single parameter in a long query string does not require every parameter to be decoded.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class EncodedParameters {
+
+    private static final int NAME_ENCODED = 1;
+    private static final int VALUE_ENCODED = 2;
+
+    private final String encoded;
+    private final String charset;
+    /**
+     * name start, name end, value start and value end of each parameter
+     */
+    private final int[] offsets;
+    private final byte[] flags;
+    private final int count;
+    private String[] decodedNames;
+    private StringBuilder decodeBuffer;
+
+    private EncodedParameters(final String encoded, final String charset, final int[] offsets, final byte[] flags, final int count) {
+        this.encoded = encoded;
+        this.charset = charset;
+        this.offsets = offsets;
+        this.flags = flags;
+        this.count = count;
+    }
+
+    /**
+     * Parses the parameters. This only determines where each parameter starts and ends, no decoding is performed.
+     *
+     * @param encoded       The encoded parameters, without any leading <code>?</code>
+     * @param charset       The charset to decode names and values with
+     * @param doDecode      If the names and values should be decoded
+     * @param maxParameters The maximum number of parameters
+     * @return The parameters
+     * @throws ParameterLimitException If there are more than the maximum number of parameters
+     */
+    public static EncodedParameters parse(final String encoded, final String charset, final boolean doDecode, final int maxParameters) throws ParameterLimitException {
+        int[] offsets = new int[32];
+        byte[] flags = new byte[8];
+        int count = 0;
+        int stringStart = 0;
+        int nameEnd = -1;
+        int currentFlags = 0;
+        final int length = encoded.length();
+        for (int i = 0; i <= length; ++i) {
+            final char c = i == length ? '&' : encoded.charAt(i);
+            if (c == '=' && nameEnd == -1) {
+                nameEnd = i;
+            } else if (c == '&') {
+                //ignore the parameter if both the name and value are empty
+                if (nameEnd != -1 || stringStart != i) {
+                    if (++count > maxParameters) {
+                        throw UndertowMessages.MESSAGES.tooManyParameters(maxParameters);
+                    }
+                    if (count * 4 > offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    if (count > flags.length) {
+                        flags = Arrays.copyOf(flags, flags.length * 2);
+                    }
+                    final int base = (count - 1) * 4;
+                    offsets[base] = stringStart;
+                    if (nameEnd == -1) {
+                        offsets[base + 1] = i;
+                        offsets[base + 2] = i;
+                    } else {
+                        offsets[base + 1] = nameEnd;
+                        offsets[base + 2] = nameEnd + 1;
+                    }
+                    offsets[base + 3] = i;
+                    flags[count - 1] = (byte) currentFlags;
+                }
+                stringStart = i + 1;
+                nameEnd = -1;
+                currentFlags = 0;
+            } else if (doDecode && (c == '%' || c == '+' || c > 127)) {
+                currentFlags |= nameEnd == -1 ? NAME_ENCODED : VALUE_ENCODED;
+            }
+        }
+        return new EncodedParameters(encoded, charset, offsets, flags, count);
+    }
+
+    /**
+     * @return The number of parameters
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param index The index of the parameter
+     * @return The decoded name of the parameter
+     */
+    public String getName(final int index) {
+        checkIndex(index);
+        if ((flags[index] & NAME_ENCODED) == 0) {
+            return encoded.substring(offsets[index * 4], offsets[index * 4 + 1]);
+        }
+        if (decodedNames == null) {
+            decodedNames = new String[count];
+        }
+        String name = decodedNames[index];
+        if (name == null) {
+            decodedNames[index] = name = decode(offsets[index * 4], offsets[index * 4 + 1]);
+        }
+        return name;
+    }
+
+    /**
+     * @param index The index of the parameter
+     * @return The decoded value of the parameter
+     */
+    public String getValue(final int index) {
+        checkIndex(index);
+        final int start = offsets[index * 4 + 2];
+        final int end = offsets[index * 4 + 3];
+        if ((flags[index] & VALUE_ENCODED) == 0) {
+            return encoded.substring(start, end);
+        }
+        return decode(start, end);
+    }
+
+    public boolean contains(final String name) {
+        return indexOf(name, 0) != -1;
+    }
+
+    /**
+     * @param name The parameter name
+     * @return The first value of the parameter, or <code>null</code> if it is not present
+     */
+    public String getFirst(final String name) {
+        final int index = indexOf(name, 0);
+        return index == -1 ? null : getValue(index);
+    }
+
+    /**
+     * @param name The parameter name
+     * @return The last value of the parameter, or <code>null</code> if it is not present
+     */
+    public String getLast(final String name) {
+        int last = -1;
+        int index = indexOf(name, 0);
+        while (index != -1) {
+            last = index;
+            index = indexOf(name, index + 1);
+        }
+        return last == -1 ? null : getValue(last);
+    }
+
+    /**
+     * @param name The parameter name
+     * @return All values of the parameter, or <code>null</code> if it is not present
+     */
+    public Deque<String> get(final String name) {
+        Deque<String> result = null;
+        int index = indexOf(name, 0);
+        while (index != -1) {
+            if (result == null) {
+                result = new ArrayDeque<>(2);
+            }
+            result.add(getValue(index));
+            index = indexOf(name, index + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first value of the parameter as an int. If the value does not contain any encoded characters it is
+     * parsed in place, without creating a string.
+     *
+     * @param name         The parameter name
+     * @param defaultValue The value to return if the parameter is not present
+     * @return The value
+     * @throws NumberFormatException If the value is not a valid int
+     */
+    public int getInt(final String name, final int defaultValue) {
+        final int index = indexOf(name, 0);
+        if (index == -1) {
+            return defaultValue;
+        }
+        if ((flags[index] & VALUE_ENCODED) != 0) {
+            return Integer.parseInt(getValue(index));
+        }
+        final long value = parseLong(offsets[index * 4 + 2], offsets[index * 4 + 3]);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw numberFormatException(offsets[index * 4 + 2], offsets[index * 4 + 3]);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Returns the first value of the parameter as a long. If the value does not contain any encoded characters it is
+     * parsed in place, without creating a string.
+     *
+     * @param name         The parameter name
+     * @param defaultValue The value to return if the parameter is not present
+     * @return The value
+     * @throws NumberFormatException If the value is not a valid long
+     */
+    public long getLong(final String name, final long defaultValue) {
+        final int index = indexOf(name, 0);
+        if (index == -1) {
+            return defaultValue;
+        }
+        if ((flags[index] & VALUE_ENCODED) != 0) {
+            return Long.parseLong(getValue(index));
+        }
+        return parseLong(offsets[index * 4 + 2], offsets[index * 4 + 3]);
+    }
+
+    /**
+     * Decodes all parameters into a map, in the same form as {@link io.undertow.server.HttpServerExchange#getQueryParameters()}.
+     *
+     * @return A new map containing all the parameters
+     */
+    public Map<String, Deque<String>> toMap() {
+        final Map<String, Deque<String>> result = new TreeMap<>();
+        for (int i = 0; i < count; ++i) {
+            final String name = getName(i);
+            Deque<String> values = result.get(name);
+            if (values == null) {
+                result.put(name, values = new ArrayDeque<>(2));
+            }
+            values.add(getValue(i));
+        }
+        return result;
+    }
+
+    private int indexOf(final String name, final int from) {
+        final int length = name.length();
+        for (int i = from; i < count; ++i) {
+            if ((flags[i] & NAME_ENCODED) == 0) {
+                final int start = offsets[i * 4];
+                if (offsets[i * 4 + 1] - start == length && encoded.regionMatches(start, name, 0, length)) {
+                    return i;
+                }
+            } else if (getName(i).equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String decode(final int start, final int end) {
+        if (decodeBuffer == null) {
+            decodeBuffer = new StringBuilder();
+        }
+        return URLUtils.decode(encoded.substring(start, end), charset, true, true, decodeBuffer);
+    }
+
+    private long parseLong(final int start, final int end) {
+        //accumulate negatively, in the same way as Long.parseLong, so that Long.MIN_VALUE can be represented
+        int i = start;
+        boolean negative = false;
+        if (i < end && encoded.charAt(i) == '-') {
+            negative = true;
+            ++i;
+        }
+        if (i == end) {
+            throw numberFormatException(start, end);
+        }
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multmin = limit / 10;
+        long result = 0;
+        for (; i < end; ++i) {
+            final int digit = encoded.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                throw numberFormatException(start, end);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormatException(start, end);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private NumberFormatException numberFormatException(final int start, final int end) {
+        return new NumberFormatException("For input string: \"" + encoded.substring(start, end) + "\"");
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedParameters{" + encoded + '}';
+    }
+}
@@ -22,6 +22,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import io.undertow.connector.ByteBufferPool;
 import io.undertow.connector.PooledByteBuffer;
@@ -92,6 +93,11 @@ public class MultipartParser {
          */
         private final byte[] boundary;
 
+        /**
+         * The Boyer-Moore-Horspool skip table for the boundary
+         */
+        private final int[] skip;
+
         //0=preamble
         private int state = 0;
         private int subState = Integer.MAX_VALUE; // used for preamble parsing
@@ -106,6 +112,11 @@ public class MultipartParser {
             this.partHandler = partHandler;
             this.requestCharset = requestCharset;
             this.boundary = boundary;
+            this.skip = new int[256];
+            Arrays.fill(skip, boundary.length);
+            for (int i = 0; i < boundary.length - 1; ++i) {
+                skip[boundary[i] & 0xFF] = boundary.length - 1 - i;
+            }
         }
 
         public void setCharacterEncoding(String encoding) {
@@ -275,6 +286,27 @@ public class MultipartParser {
             int startingSubState = subState;
             int pos = buffer.position();
             while (buffer.hasRemaining()) {
+                if (subState == 0) {
+                    //we are not part way through a possible boundary, so we can search for it
+                    //rather than examining the data a byte at a time
+                    final int end = buffer.limit();
+                    final int match = indexOfBoundary(buffer, buffer.position(), end);
+                    if (match >= 0) {
+                        ByteBuffer retBuffer = buffer.duplicate();
+                        retBuffer.position(pos);
+                        retBuffer.limit(match);
+                        encodingHandler.handle(partHandler, retBuffer);
+                        partHandler.endPart();
+                        buffer.position(match + boundary.length);
+                        startingSubState = 0;
+                        subState = -1;
+                        continue;
+                    }
+                    //the end of the buffer may be the start of a boundary
+                    subState = partialBoundaryMatch(buffer, buffer.position(), end);
+                    buffer.position(end);
+                    break;
+                }
                 final byte b = buffer.get();
                 if (subState >= 0) {
                     if (b == boundary[subState]) {
@@ -348,6 +380,48 @@ public class MultipartParser {
             }
         }
 
+        /**
+         * Searches for the complete boundary using the Boyer-Moore-Horspool algorithm.
+         *
+         * @return The index of the start of the boundary, or -1 if it was not found
+         */
+        private int indexOfBoundary(final ByteBuffer buffer, final int from, final int to) {
+            final byte[] boundary = this.boundary;
+            final int last = boundary.length - 1;
+            int i = from;
+            while (i + last < to) {
+                int j = last;
+                while (buffer.get(i + j) == boundary[j]) {
+                    if (j == 0) {
+                        return i;
+                    }
+                    --j;
+                }
+                i += skip[buffer.get(i + last) & 0xFF];
+            }
+            return -1;
+        }
+
+        /**
+         * @return The length of the longest suffix of the data that is a prefix of the boundary
+         */
+        private int partialBoundaryMatch(final ByteBuffer buffer, final int from, final int to) {
+            final byte[] boundary = this.boundary;
+            for (int i = Math.max(from, to - boundary.length + 1); i < to; ++i) {
+                if (buffer.get(i) != boundary[0]) {
+                    continue;
+                }
+                int j = 1;
+                while (i + j < to && buffer.get(i + j) == boundary[j]) {
+                    ++j;
+                }
+                if (i + j == to) {
+                    return j;
+                }
+            }
+            return 0;
+        }
+
         public boolean isComplete() {
             return state == -1;
         }
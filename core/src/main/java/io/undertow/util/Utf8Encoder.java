@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UTF-8 encoder that writes directly into a {@link ByteBuffer}, without the intermediate arrays and buffers that
+ * {@link String#getBytes(java.nio.charset.Charset)} and {@link java.nio.charset.CharsetEncoder} require.
+ * <p>
+ * The encoding methods write as many complete characters as fit into the buffer and return the index of the first
+ * character that was not written, so a large string can be encoded across several buffers. The bytes of a character
+ * are never split between buffers. Unpaired surrogates are replaced with <code>'?'</code>, the same as
+ * {@link String#getBytes(java.nio.charset.Charset)}.
+ */
+public final class Utf8Encoder {
+
+    /**
+     * The maximum number of bytes a single character, or surrogate pair, is encoded to
+     */
+    public static final int MAX_CHARACTER_BYTES = 4;
+
+    private static final byte REPLACEMENT = '?';
+
+    private Utf8Encoder() {
+    }
+
+    /**
+     * Encodes characters into the buffer, starting at its position.
+     *
+     * @param s          The string to encode
+     * @param start      The index of the first character to encode
+     * @param end        The index after the last character to encode
+     * @param buffer     The buffer to encode into, its position is advanced past the encoded bytes
+     * @param endOfInput <code>false</code> if more characters will follow, in which case a high surrogate at the end of
+     *                   the input is not encoded, as it may be paired with the first character of the next call
+     * @return The index of the first character that was not encoded. This is only less than <code>end</code> if the
+     * buffer has less than {@link #MAX_CHARACTER_BYTES} remaining, or if the input ends with a high surrogate and
+     * <code>endOfInput</code> is <code>false</code>
+     */
+    public static int encode(final String s, final int start, final int end, final ByteBuffer buffer, final boolean endOfInput) {
+        int i = start;
+        int pos = buffer.position();
+        final int limit = buffer.limit();
+        while (i < end && pos < limit) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                //runs of ascii are the common case, even in text that is not english
+                final int asciiEnd = Math.min(end, i + limit - pos);
+                do {
+                    buffer.put(pos++, (byte) c);
+                    if (++i == asciiEnd) {
+                        break;
+                    }
+                    c = s.charAt(i);
+                } while (c < 0x80);
+                continue;
+            }
+            final int remaining = limit - pos;
+            if (c < 0x800) {
+                if (remaining < 2) {
+                    break;
+                }
+                buffer.put(pos++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(pos++, (byte) (0x80 | (c & 0x3F)));
+            } else if (!Character.isSurrogate(c)) {
+                if (remaining < 3) {
+                    break;
+                }
+                buffer.put(pos++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(pos++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                if (remaining < 4) {
+                    break;
+                }
+                pos = putCodePoint(buffer, pos, Character.toCodePoint(c, s.charAt(++i)));
+            } else if (Character.isHighSurrogate(c) && i + 1 == end && !endOfInput) {
+                break;
+            } else {
+                buffer.put(pos++, REPLACEMENT);
+            }
+            ++i;
+        }
+        buffer.position(pos);
+        return i;
+    }
+
+    /**
+     * Encodes characters into the buffer, starting at its position.
+     *
+     * @see #encode(String, int, int, ByteBuffer, boolean)
+     */
+    public static int encode(final char[] chars, final int start, final int end, final ByteBuffer buffer, final boolean endOfInput) {
+        int i = start;
+        int pos = buffer.position();
+        final int limit = buffer.limit();
+        while (i < end && pos < limit) {
+            char c = chars[i];
+            if (c < 0x80) {
+                final int asciiEnd = Math.min(end, i + limit - pos);
+                do {
+                    buffer.put(pos++, (byte) c);
+                    if (++i == asciiEnd) {
+                        break;
+                    }
+                    c = chars[i];
+                } while (c < 0x80);
+                continue;
+            }
+            final int remaining = limit - pos;
+            if (c < 0x800) {
+                if (remaining < 2) {
+                    break;
+                }
+                buffer.put(pos++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(pos++, (byte) (0x80 | (c & 0x3F)));
+            } else if (!Character.isSurrogate(c)) {
+                if (remaining < 3) {
+                    break;
+                }
+                buffer.put(pos++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(pos++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+                if (remaining < 4) {
+                    break;
+                }
+                pos = putCodePoint(buffer, pos, Character.toCodePoint(c, chars[++i]));
+            } else if (Character.isHighSurrogate(c) && i + 1 == end && !endOfInput) {
+                break;
+            } else {
+                buffer.put(pos++, REPLACEMENT);
+            }
+            ++i;
+        }
+        buffer.position(pos);
+        return i;
+    }
+
+    /**
+     * @return The number of bytes the characters are encoded to
+     */
+    public static long encodedLength(final String s, final int start, final int end) {
+        long length = end - start;
+        for (int i = start; i < end; ++i) {
+            final char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    length += 1;
+                } else if (!Character.isSurrogate(c)) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    //two characters are encoded to four bytes
+                    length += 2;
+                    ++i;
+                }
+            }
+        }
+        return length;
+    }
+
+    private static int putCodePoint(final ByteBuffer buffer, int pos, final int codePoint) {
+        buffer.put(pos++, (byte) (0xF0 | (codePoint >> 18)));
+        buffer.put(pos++, (byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+        buffer.put(pos++, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        buffer.put(pos++, (byte) (0x80 | (codePoint & 0x3F)));
+        return pos;
+    }
+}
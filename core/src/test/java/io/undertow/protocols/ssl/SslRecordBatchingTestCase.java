@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.protocols.ssl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.category.UnitTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests that several TLS records are wrapped into a single buffer, and so written out together, when record
+ * batching is enabled
+ */
+@Category(UnitTest.class)
+public class SslRecordBatchingTestCase {
+
+    private static final int DATA_SIZE = 64 * 1024;
+
+    @Test
+    public void testRecordsAreBatched() throws IOException {
+        SSLEngine server = DefaultServer.getServerSslContext().createSSLEngine();
+        server.setUseClientMode(false);
+        SSLEngine client = DefaultServer.getClientSSLContext().createSSLEngine("localhost", 0);
+        client.setUseClientMode(true);
+        handshake(client, server);
+
+        int packetSize = server.getSession().getPacketBufferSize();
+        ByteBuffer data = ByteBuffer.allocate(DATA_SIZE);
+        for (int i = 0; i < DATA_SIZE; ++i) {
+            data.put((byte) i);
+        }
+        data.flip();
+        ByteBuffer src = data.duplicate();
+
+        //without batching only one record is wrapped, even if there is room for more
+        ByteBuffer unbatched = ByteBuffer.allocate(packetSize * 4);
+        SSLEngineResult result = SslConduit.wrap(server, new ByteBuffer[]{src}, 0, 1, unbatched, false);
+        unbatched.flip();
+        Assert.assertEquals(1, countRecords(unbatched));
+        int unbatchedConsumed = result.bytesConsumed();
+
+        //a buffer that only has room for one record gets a single record
+        ByteBuffer single = ByteBuffer.allocate(packetSize);
+        result = SslConduit.wrap(server, new ByteBuffer[]{src}, 0, 1, single, true);
+        single.flip();
+        Assert.assertEquals(1, countRecords(single));
+        int singleConsumed = result.bytesConsumed();
+
+        ByteBuffer batched = ByteBuffer.allocate(packetSize * 4);
+        result = SslConduit.wrap(server, new ByteBuffer[]{src}, 0, 1, batched, true);
+        batched.flip();
+        Assert.assertTrue(countRecords(batched) > 1);
+        Assert.assertEquals(batched.remaining(), result.bytesProduced());
+        Assert.assertTrue(result.bytesConsumed() > singleConsumed);
+        Assert.assertEquals(unbatchedConsumed + singleConsumed + result.bytesConsumed(), src.position());
+
+        //the peer reads all the data in order
+        ByteBuffer received = ByteBuffer.allocate(DATA_SIZE + client.getSession().getApplicationBufferSize());
+        unwrapAll(client, unbatched, received);
+        unwrapAll(client, single, received);
+        unwrapAll(client, batched, received);
+        received.flip();
+        Assert.assertEquals(src.position(), received.remaining());
+        for (int i = 0; i < received.remaining(); ++i) {
+            Assert.assertEquals(data.get(i), received.get(i));
+        }
+    }
+
+    private static int countRecords(ByteBuffer buffer) {
+        int count = 0;
+        int pos = buffer.position();
+        while (pos + 5 <= buffer.limit()) {
+            pos += 5 + (((buffer.get(pos + 3) & 0xFF) << 8) | (buffer.get(pos + 4) & 0xFF));
+            ++count;
+        }
+        Assert.assertEquals(buffer.limit(), pos);
+        return count;
+    }
+
+    private static void unwrapAll(SSLEngine engine, ByteBuffer src, ByteBuffer dst) throws IOException {
+        while (src.hasRemaining()) {
+            SSLEngineResult result = engine.unwrap(src, dst);
+            Assert.assertEquals(SSLEngineResult.Status.OK, result.getStatus());
+        }
+    }
+
+    private static void handshake(SSLEngine client, SSLEngine server) throws IOException {
+        int packetSize = Math.max(client.getSession().getPacketBufferSize(), server.getSession().getPacketBufferSize());
+        int applicationSize = Math.max(client.getSession().getApplicationBufferSize(), server.getSession().getApplicationBufferSize());
+        ByteBuffer clientToServer = ByteBuffer.allocate(packetSize * 4);
+        ByteBuffer serverToClient = ByteBuffer.allocate(packetSize * 4);
+        ByteBuffer data = ByteBuffer.allocate(applicationSize);
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int i = 0; i < 1000 && !(isDone(client) && isDone(server)); ++i) {
+            step(client, serverToClient, clientToServer, data);
+            step(server, clientToServer, serverToClient, data);
+        }
+        Assert.assertTrue(isDone(client) && isDone(server));
+        //read anything that was sent after the handshake, such as session tickets
+        serverToClient.flip();
+        unwrapAll(client, serverToClient, data);
+        clientToServer.flip();
+        unwrapAll(server, clientToServer, data);
+        data.flip();
+        Assert.assertFalse(data.hasRemaining());
+    }
+
+    private static boolean isDone(SSLEngine engine) {
+        return engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private static void step(SSLEngine engine, ByteBuffer in, ByteBuffer out, ByteBuffer data) throws IOException {
+        switch (engine.getHandshakeStatus()) {
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                break;
+            case NEED_WRAP:
+                engine.wrap(SslConduit.EMPTY_BUFFER, out);
+                break;
+            case NEED_UNWRAP:
+            case NEED_UNWRAP_AGAIN:
+                in.flip();
+                engine.unwrap(in, data);
+                in.compact();
+                break;
+            default:
+                break;
+        }
+    }
+}
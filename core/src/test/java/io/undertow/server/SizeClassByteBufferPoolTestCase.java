@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server;
+
+import java.nio.ByteBuffer;
+
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.testutils.category.UnitTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class SizeClassByteBufferPoolTestCase {
+
+    @Test
+    public void testSizeClasses() {
+        try (SizeClassByteBufferPool pool = new SizeClassByteBufferPool(false, 1024, 64 * 1024, 1024 * 1024)) {
+            Assert.assertEquals(64 * 1024, pool.getMaxSize());
+            Assert.assertEquals(0, pool.sizeClass(0));
+            Assert.assertEquals(0, pool.sizeClass(1024));
+            Assert.assertEquals(1, pool.sizeClass(1025));
+            Assert.assertEquals(1, pool.sizeClass(2048));
+            Assert.assertEquals(6, pool.sizeClass(64 * 1024));
+        }
+    }
+
+    @Test
+    public void testBuffersHaveRequestedSize() {
+        try (SizeClassByteBufferPool pool = new SizeClassByteBufferPool(true, 1024, 64 * 1024, 1024 * 1024)) {
+            for (int size : new int[]{0, 1, 1000, 1024, 3000, 64 * 1024, 100 * 1024}) {
+                PooledByteBuffer pooled = pool.allocate(size);
+                ByteBuffer buffer = pooled.getBuffer();
+                Assert.assertTrue(buffer.isDirect());
+                Assert.assertEquals(size, buffer.capacity());
+                Assert.assertEquals(size, buffer.remaining());
+                buffer.position(buffer.limit());
+                buffer.clear();
+                Assert.assertEquals(size, buffer.remaining());
+                pooled.close();
+            }
+        }
+    }
+
+    @Test
+    public void testBuffersAreReused() {
+        try (SizeClassByteBufferPool pool = new SizeClassByteBufferPool(false, 1024, 64 * 1024, 1024 * 1024)) {
+            PooledByteBuffer first = pool.allocate(3000);
+            first.getBuffer().put(0, (byte) 42);
+            first.close();
+            //same size class, so the buffer is taken from the thread local cache
+            PooledByteBuffer second = pool.allocate(4000);
+            Assert.assertEquals(42, second.getBuffer().get(0));
+            Assert.assertEquals(4000, second.getBuffer().capacity());
+            second.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSize() {
+        try (SizeClassByteBufferPool pool = new SizeClassByteBufferPool(false)) {
+            pool.allocate(-1);
+        }
+    }
+}
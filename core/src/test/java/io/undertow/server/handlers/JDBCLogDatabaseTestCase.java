@@ -34,17 +34,24 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import javax.sql.DataSource;
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests writing the database (in memory)
@@ -231,4 +238,179 @@ public class JDBCLogDatabaseTestCase {
         }
     }
 
+    @Test
+    public void testBatchedWritesWithLingerTime() throws IOException, InterruptedException, SQLException {
+        JDBCLogHandler logHandler = new JDBCLogHandler(HELLO_HANDLER, "common", ds);
+        logHandler.setBatchSize(5);
+        logHandler.setLingerTime(50);
+
+        CompletionLatchHandler latchHandler;
+        DefaultServer.setRootHandler(latchHandler = new CompletionLatchHandler(NUM_REQUESTS, logHandler));
+        TestHttpClient client = new TestHttpClient();
+        try {
+            for (int i = 0; i < NUM_REQUESTS; ++i) {
+                HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                Assert.assertEquals("Hello", HttpClientUtils.readResponse(result));
+            }
+            latchHandler.await();
+            logHandler.awaitWrittenForTest();
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+        logHandler.close();
+        Assert.assertEquals(NUM_REQUESTS, countRows());
+        Assert.assertEquals(NUM_REQUESTS, logHandler.getWrittenCount());
+        Assert.assertEquals(0, logHandler.getDroppedCount());
+        Assert.assertEquals(0, logHandler.getFailedCount());
+    }
+
+    @Test
+    public void testRecordsDroppedWhenQueueIsFull() throws IOException, InterruptedException, SQLException {
+        JDBCLogHandler logHandler = logWithBlockedWriter(1);
+        Assert.assertEquals(2, countRows());
+        Assert.assertEquals(2, logHandler.getWrittenCount());
+        Assert.assertEquals(1, logHandler.getDroppedCount());
+    }
+
+    @Test
+    public void testQueueIsNotBoundedByDefault() throws IOException, InterruptedException, SQLException {
+        JDBCLogHandler logHandler = logWithBlockedWriter(JDBCLogHandler.DEFAULT_MAX_QUEUE_SIZE);
+        Assert.assertEquals(3, countRows());
+        Assert.assertEquals(3, logHandler.getWrittenCount());
+        Assert.assertEquals(0, logHandler.getDroppedCount());
+    }
+
+    /**
+     * Logs three requests while the writer is blocked after it has taken the first record from the queue
+     */
+    private JDBCLogHandler logWithBlockedWriter(int maxQueueSize) throws IOException, InterruptedException {
+        final CountDownLatch writerStarted = new CountDownLatch(1);
+        final CountDownLatch releaseWriter = new CountDownLatch(1);
+        //blocks the writer while it is opening the connection, after it has taken the first record from the queue
+        DataSource blockingDataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getConnection")) {
+                    writerStarted.countDown();
+                    releaseWriter.await();
+                }
+                try {
+                    return method.invoke(ds, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+        JDBCLogHandler logHandler = new JDBCLogHandler(HELLO_HANDLER, "common", blockingDataSource);
+        logHandler.setMaxQueueSize(maxQueueSize);
+
+        CompletionLatchHandler latchHandler;
+        DefaultServer.setRootHandler(latchHandler = new CompletionLatchHandler(3, logHandler));
+        TestHttpClient client = new TestHttpClient();
+        try {
+            for (int i = 0; i < 3; ++i) {
+                HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                HttpClientUtils.readResponse(result);
+                if (i == 0) {
+                    Assert.assertTrue(writerStarted.await(10, TimeUnit.SECONDS));
+                }
+            }
+            latchHandler.await();
+            releaseWriter.countDown();
+            logHandler.awaitWrittenForTest();
+        } finally {
+            releaseWriter.countDown();
+            client.getConnectionManager().shutdown();
+        }
+        logHandler.close();
+        return logHandler;
+    }
+
+    @Test
+    public void testBlockingWithLingerTimeLongerThanQueue() throws IOException, InterruptedException, SQLException {
+        JDBCLogHandler logHandler = new JDBCLogHandler(HELLO_HANDLER, "common", ds);
+        //the queue is smaller than a batch, so it fills up long before the linger time has passed
+        logHandler.setLingerTime(60000);
+        logHandler.setMaxQueueSize(2);
+        logHandler.setOverflowPolicy(JDBCLogHandler.OverflowPolicy.BLOCK);
+
+        CompletionLatchHandler latchHandler;
+        DefaultServer.setRootHandler(latchHandler = new CompletionLatchHandler(NUM_REQUESTS, logHandler));
+        TestHttpClient client = new TestHttpClient();
+        try {
+            for (int i = 0; i < NUM_REQUESTS; ++i) {
+                HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                HttpClientUtils.readResponse(result);
+            }
+            latchHandler.await();
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+        logHandler.close();
+        Assert.assertEquals(NUM_REQUESTS, countRows());
+        Assert.assertEquals(0, logHandler.getDroppedCount());
+    }
+
+    @Test
+    public void testBlockingIsBounded() throws IOException, InterruptedException, SQLException {
+        final CountDownLatch writerStarted = new CountDownLatch(1);
+        final CountDownLatch releaseWriter = new CountDownLatch(1);
+        DataSource blockingDataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getConnection")) {
+                    writerStarted.countDown();
+                    releaseWriter.await();
+                }
+                try {
+                    return method.invoke(ds, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+        JDBCLogHandler logHandler = new JDBCLogHandler(HELLO_HANDLER, "common", blockingDataSource);
+        logHandler.setMaxQueueSize(1);
+        logHandler.setOverflowPolicy(JDBCLogHandler.OverflowPolicy.BLOCK);
+        logHandler.setMaxBlockTime(100);
+
+        CompletionLatchHandler latchHandler;
+        DefaultServer.setRootHandler(latchHandler = new CompletionLatchHandler(3, logHandler));
+        TestHttpClient client = new TestHttpClient();
+        try {
+            for (int i = 0; i < 3; ++i) {
+                HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                HttpClientUtils.readResponse(result);
+                if (i == 0) {
+                    Assert.assertTrue(writerStarted.await(10, TimeUnit.SECONDS));
+                }
+            }
+            //the third record waited for the maximum block time and was then dropped
+            latchHandler.await();
+            releaseWriter.countDown();
+            logHandler.awaitWrittenForTest();
+        } finally {
+            releaseWriter.countDown();
+            client.getConnectionManager().shutdown();
+        }
+        logHandler.close();
+        Assert.assertEquals(2, countRows());
+        Assert.assertEquals(1, logHandler.getDroppedCount());
+    }
+
+    private int countRows() throws SQLException {
+        try (Connection conn = ds.getConnection(); Statement statement = conn.createStatement()) {
+            ResultSet resultDatabase = statement.executeQuery("SELECT COUNT(*) FROM PUBLIC.ACCESS;");
+            resultDatabase.next();
+            return resultDatabase.getInt(1);
+        }
+    }
 }
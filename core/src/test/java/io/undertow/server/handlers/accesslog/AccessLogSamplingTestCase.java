@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.accesslog;
+
+import io.undertow.predicate.Predicates;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.testutils.category.UnitTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests for the access log sampling policies
+ */
+@Category(UnitTest.class)
+public class AccessLogSamplingTestCase {
+
+    @Test
+    public void testProbabilisticSampling() {
+        HttpServerExchange exchange = new HttpServerExchange(null);
+        Assert.assertFalse(new ProbabilisticSamplingPredicate(0).resolve(exchange));
+        Assert.assertTrue(new ProbabilisticSamplingPredicate(1).resolve(exchange));
+        ProbabilisticSamplingPredicate predicate = new ProbabilisticSamplingPredicate(0.5);
+        int logged = 0;
+        for (int i = 0; i < 10000; ++i) {
+            if (predicate.resolve(exchange)) {
+                ++logged;
+            }
+        }
+        Assert.assertTrue(String.valueOf(logged), logged > 4000 && logged < 6000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new ProbabilisticSamplingPredicate(1.5);
+    }
+
+    @Test
+    public void testTokenBucketSampling() {
+        //one request per hour, so no tokens are added while the test runs
+        TokenBucketSamplingPredicate predicate = new TokenBucketSamplingPredicate(null, 1.0 / 3600, 3, 2);
+        HttpServerExchange a = new HttpServerExchange(null).setRequestPath("/a");
+        HttpServerExchange b = new HttpServerExchange(null).setRequestPath("/b");
+        HttpServerExchange c = new HttpServerExchange(null).setRequestPath("/c");
+        HttpServerExchange d = new HttpServerExchange(null).setRequestPath("/d");
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertTrue(predicate.resolve(a));
+        }
+        Assert.assertFalse(predicate.resolve(a));
+        //each route has its own bucket
+        Assert.assertTrue(predicate.resolve(b));
+        //routes past the maximum share a bucket
+        Assert.assertTrue(predicate.resolve(c));
+        Assert.assertTrue(predicate.resolve(d));
+        Assert.assertTrue(predicate.resolve(c));
+        Assert.assertFalse(predicate.resolve(d));
+    }
+
+    @Test
+    public void testIdleRoutesAreEvicted() throws InterruptedException {
+        //one request per second for a single route
+        TokenBucketSamplingPredicate predicate = new TokenBucketSamplingPredicate(null, 1, 1, 1);
+        HttpServerExchange a = new HttpServerExchange(null).setRequestPath("/a");
+        HttpServerExchange b = new HttpServerExchange(null).setRequestPath("/b");
+        HttpServerExchange c = new HttpServerExchange(null).setRequestPath("/c");
+        HttpServerExchange d = new HttpServerExchange(null).setRequestPath("/d");
+        HttpServerExchange e = new HttpServerExchange(null).setRequestPath("/e");
+        Assert.assertTrue(predicate.resolve(a));
+        //a is busy, so b and c share the overflow bucket
+        Assert.assertTrue(predicate.resolve(b));
+        Assert.assertFalse(predicate.resolve(c));
+
+        //once a has been idle long enough for its bucket to refill it is evicted, and d gets its own bucket
+        Thread.sleep(1100);
+        Assert.assertTrue(predicate.resolve(d));
+        Assert.assertTrue(predicate.resolve(e));
+        Assert.assertFalse(predicate.resolve(d));
+        Assert.assertFalse(predicate.resolve(e));
+    }
+
+    @Test
+    public void testTailSampling() {
+        TailSamplingPredicate predicate = new TailSamplingPredicate(0.99, Predicates.falsePredicate());
+        HttpServerExchange exchange = new HttpServerExchange(null);
+        Assert.assertTrue(predicate.shouldLog(exchange, 500, -1));
+        Assert.assertFalse(predicate.shouldLog(exchange, 404, -1));
+        for (int i = 0; i < 4096; ++i) {
+            predicate.shouldLog(exchange, 200, 1000 + (i % 100));
+        }
+        Assert.assertTrue(predicate.getThresholdMicros() > 1000);
+        Assert.assertFalse(predicate.shouldLog(exchange, 200, 1000));
+        Assert.assertTrue(predicate.shouldLog(exchange, 200, 100000));
+        Assert.assertTrue(predicate.shouldLog(exchange, 503, 10));
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        for (long value = 0; value < 100000; ++value) {
+            int bucket = TailSamplingPredicate.bucket(value);
+            Assert.assertTrue(TailSamplingPredicate.lowerBound(bucket) <= value);
+            Assert.assertTrue(TailSamplingPredicate.lowerBound(bucket + 1) > value);
+        }
+        Assert.assertTrue(TailSamplingPredicate.bucket(Long.MAX_VALUE) < 64 * 4);
+    }
+}
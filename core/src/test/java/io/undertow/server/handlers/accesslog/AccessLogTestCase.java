@@ -84,4 +84,26 @@ public class AccessLogTestCase {
         }
     }
 
+    @Test
+    public void testJsonFormat() throws IOException, InterruptedException {
+        latch = new CountDownLatch(1);
+        DefaultServer.setRootHandler(new AccessLogHandler(HELLO_HANDLER, RECEIVER, "json", StructuredAccessLogFormat.json("status=%s bytes=%B path=%U header=%{i,test-header} missing=%{i,non-existent}", AccessLogTestCase.class.getClassLoader())));
+        TestHttpClient client = new TestHttpClient();
+        try {
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+            get.addHeader("test-header", "a \"quoted\" \\value");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("HelloResponse", HttpClientUtils.readResponse(result));
+            latch.await(10, TimeUnit.SECONDS);
+            Assert.assertEquals("{\"status\":200,\"bytes\":13,\"path\":\"/path\",\"header\":\"a \\\"quoted\\\" \\\\value\",\"missing\":null}", message);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidJsonField() {
+        StructuredAccessLogFormat.json("status=%s %U", AccessLogTestCase.class.getClassLoader());
+    }
 }
@@ -0,0 +1,259 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.accesslog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.CompletionLatchHandler;
+import io.undertow.util.FileUtils;
+import io.undertow.util.StatusCodes;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests writing the access log to a file with {@link BatchingAccessLogReceiver}
+ */
+@RunWith(DefaultServer.class)
+public class BatchingAccessLogFileTestCase {
+
+    private static final Path logDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "batching-logs");
+
+    private static final int NUM_THREADS = 10;
+    private static final int NUM_REQUESTS = 12;
+
+    private static final HttpHandler HELLO_HANDLER = new HttpHandler() {
+        @Override
+        public void handleRequest(final HttpServerExchange exchange) throws Exception {
+            exchange.getResponseSender().send("Hello");
+        }
+    };
+
+    @Before
+    public void before() throws IOException {
+        Files.createDirectories(logDirectory);
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteRecursive(logDirectory);
+    }
+
+    @Test
+    public void testSingleLogMessageToFile() throws IOException, InterruptedException {
+        BatchingAccessLogReceiver logReceiver = BatchingAccessLogReceiver.builder()
+                .setLogWriteExecutor(DefaultServer.getWorker())
+                .setOutputDirectory(logDirectory)
+                .setLogBaseName("server1.")
+                .build();
+        try {
+            CompletionLatchHandler latchHandler;
+            DefaultServer.setRootHandler(latchHandler = new CompletionLatchHandler(new AccessLogHandler(HELLO_HANDLER, logReceiver, "Remote address %a Code %s test-header %{i,test-header} %{i,non-existent}", BatchingAccessLogFileTestCase.class.getClassLoader())));
+            TestHttpClient client = new TestHttpClient();
+            try {
+                HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+                get.addHeader("test-header", "single-val");
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                Assert.assertEquals("Hello", HttpClientUtils.readResponse(result));
+                latchHandler.await();
+                logReceiver.awaitWrittenForTest();
+                Assert.assertEquals("Remote address " + DefaultServer.getDefaultServerAddress().getAddress().getHostAddress() + " Code 200 test-header single-val -" + System.lineSeparator(),
+                        new String(Files.readAllBytes(logDirectory.resolve("server1.log")), StandardCharsets.UTF_8));
+            } finally {
+                client.getConnectionManager().shutdown();
+            }
+        } finally {
+            logReceiver.close();
+        }
+    }
+
+    @Test
+    public void testLogLotsOfThreads() throws IOException, InterruptedException, ExecutionException {
+        runLotsOfThreads(false);
+    }
+
+    @Test
+    public void testLogLotsOfThreadsMemoryMapped() throws IOException, InterruptedException, ExecutionException {
+        runLotsOfThreads(true);
+    }
+
+    private void runLotsOfThreads(boolean memoryMapped) throws IOException, InterruptedException, ExecutionException {
+        Path logFileName = logDirectory.resolve("server2.log");
+        //use small buffers so that the ring buffers wrap and the batches are split
+        BatchingAccessLogReceiver logReceiver = BatchingAccessLogReceiver.builder()
+                .setLogWriteExecutor(DefaultServer.getWorker())
+                .setOutputDirectory(logDirectory)
+                .setLogBaseName("server2.")
+                .setThreadBufferSize(1024)
+                .setBatchSize(1024)
+                .setMappedRegionSize(4096)
+                .setMemoryMapped(memoryMapped)
+                .build();
+        CompletionLatchHandler latchHandler;
+        DefaultServer.setRootHandler(latchHandler = new CompletionLatchHandler(NUM_REQUESTS * NUM_THREADS, new AccessLogHandler(HELLO_HANDLER, logReceiver, "REQ %{i,test-header}", BatchingAccessLogFileTestCase.class.getClassLoader())));
+
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < NUM_THREADS; ++i) {
+                final int threadNo = i;
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        TestHttpClient client = new TestHttpClient();
+                        try {
+                            for (int i = 0; i < NUM_REQUESTS; ++i) {
+                                HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+                                get.addHeader("test-header", "thread-" + threadNo + "-request-" + i);
+                                HttpResponse result = client.execute(get);
+                                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                                Assert.assertEquals("Hello", HttpClientUtils.readResponse(result));
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        } finally {
+                            client.getConnectionManager().shutdown();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        latchHandler.await();
+        logReceiver.awaitWrittenForTest();
+        logReceiver.close();
+        List<String> lines = Files.readAllLines(logFileName, StandardCharsets.UTF_8);
+        Assert.assertEquals(NUM_THREADS * NUM_REQUESTS, lines.size());
+        for (int i = 0; i < NUM_THREADS; ++i) {
+            for (int j = 0; j < NUM_REQUESTS; ++j) {
+                Assert.assertTrue(lines.contains("REQ thread-" + i + "-request-" + j));
+            }
+        }
+    }
+
+    @Test
+    public void testOverflowKeepsThreadOrder() throws IOException {
+        Path logFileName = logDirectory.resolve("server3.log");
+        //the writer only runs on close, so the ring fills up and the following messages overflow or use the space
+        //that is left in the ring, depending on their size
+        BatchingAccessLogReceiver logReceiver = BatchingAccessLogReceiver.builder()
+                .setLogWriteExecutor(task -> { })
+                .setOutputDirectory(logDirectory)
+                .setLogBaseName("server3.")
+                .setThreadBufferSize(1024)
+                .build();
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            StringBuilder message = new StringBuilder("message-" + i + "-");
+            for (int j = 0; j < (i * 37) % 300; ++j) {
+                message.append('x');
+            }
+            expected.add(message.toString());
+            logReceiver.logMessage(message.toString());
+        }
+        logReceiver.close();
+        Assert.assertEquals(0, logReceiver.getDroppedCount());
+        Assert.assertEquals(expected, Files.readAllLines(logFileName, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMessagesAreDroppedWhenOverflowIsFull() throws IOException {
+        Path logFileName = logDirectory.resolve("server4.log");
+        BatchingAccessLogReceiver logReceiver = BatchingAccessLogReceiver.builder()
+                .setLogWriteExecutor(task -> { })
+                .setOutputDirectory(logDirectory)
+                .setLogBaseName("server4.")
+                .setThreadBufferSize(1024)
+                .setMaxOverflowSize(1000)
+                .build();
+        final List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            StringBuilder message = new StringBuilder("message-" + i + "-");
+            while (message.length() < 299) {
+                message.append('x');
+            }
+            messages.add(message.toString());
+            logReceiver.logMessage(message.toString());
+        }
+        logReceiver.close();
+        //three messages fit into the ring and three into the overflow queue
+        Assert.assertEquals(4, logReceiver.getDroppedCount());
+        Assert.assertEquals(messages.subList(0, 6), Files.readAllLines(logFileName, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testForcedLogRotation() throws IOException, InterruptedException {
+        Path logFileName = logDirectory.resolve("server.log");
+        BatchingAccessLogReceiver logReceiver = BatchingAccessLogReceiver.builder()
+                .setLogWriteExecutor(DefaultServer.getWorker())
+                .setOutputDirectory(logDirectory)
+                .setLogBaseName("server.")
+                .setMemoryMapped(true)
+                .build();
+        CompletionLatchHandler latchHandler;
+        DefaultServer.setRootHandler(latchHandler = new CompletionLatchHandler(new AccessLogHandler(HELLO_HANDLER, logReceiver, "Code %s test-header %{i,test-header}", BatchingAccessLogFileTestCase.class.getClassLoader())));
+        TestHttpClient client = new TestHttpClient();
+        try {
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+            get.addHeader("test-header", "v1");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("Hello", HttpClientUtils.readResponse(result));
+            latchHandler.await();
+            latchHandler.reset();
+            logReceiver.awaitWrittenForTest();
+            logReceiver.rotate();
+            logReceiver.awaitWrittenForTest();
+            Assert.assertTrue(Files.exists(logFileName));
+            Assert.assertEquals(0, Files.size(logFileName));
+            //the memory mapped file must have been truncated to the end of the data
+            Path firstLogRotate = logDirectory.resolve("server." + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".log");
+            Assert.assertEquals("Code 200 test-header v1" + System.lineSeparator(), new String(Files.readAllBytes(firstLogRotate), StandardCharsets.UTF_8));
+        } finally {
+            client.getConnectionManager().shutdown();
+            logReceiver.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.encoding;
+
+import io.undertow.io.IoCallback;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.DecompressingEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Tests for {@link AdaptiveCompressionPolicy}
+ */
+@RunWith(DefaultServer.class)
+public class AdaptiveCompressionTestCase {
+
+    private static volatile String contentType;
+    private static volatile byte[] message;
+    private static volatile double utilisation;
+    private static volatile AdaptiveCompressionPolicy policy;
+
+    @Before
+    public void setup() {
+        utilisation = 0;
+        policy = new AdaptiveCompressionPolicy(AdaptiveCompressionPolicy.builder()
+                .setMinimumSize(10)
+                .setMinimumSamples(3)) {
+            @Override
+            protected double getUtilisation(HttpServerExchange exchange) {
+                return utilisation;
+            }
+        };
+        final EncodingHandler handler = new EncodingHandler(new ContentEncodingRepository()
+                .addEncodingHandler("gzip", new GzipEncodingProvider(policy), 50, policy))
+                .setNext(new HttpHandler() {
+                    @Override
+                    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, contentType);
+                        exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, message.length);
+                        exchange.getResponseSender().send(ByteBuffer.wrap(message), IoCallback.END_EXCHANGE);
+                    }
+                });
+        DefaultServer.setRootHandler(handler);
+    }
+
+    @Test
+    public void testTextIsCompressed() throws IOException {
+        contentType = "text/plain; charset=UTF-8";
+        Assert.assertTrue(runTest(textMessage()));
+    }
+
+    @Test
+    public void testSaturatedServerDoesNotCompress() throws IOException {
+        contentType = "text/plain";
+        utilisation = 1;
+        Assert.assertFalse(runTest(textMessage()));
+        utilisation = 0.8;
+        Assert.assertTrue(runTest(textMessage()));
+    }
+
+    @Test
+    public void testIncompressibleContentType() throws IOException {
+        contentType = "image/png";
+        Assert.assertFalse(runTest(textMessage()));
+    }
+
+    @Test
+    public void testPoorCompressionRatioDisablesCompression() throws IOException, InterruptedException {
+        contentType = "application/x-random";
+        final Random random = new Random();
+        for (int i = 0; i < 3; ++i) {
+            byte[] data = new byte[4096];
+            random.nextBytes(data);
+            Assert.assertTrue(runTest(data));
+        }
+        //the result is recorded once the response has been written, so it may not be visible immediately
+        long end = System.currentTimeMillis() + 5000;
+        while (policy.getCompressionRatio(contentType) < 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(policy.getCompressionRatio(contentType) > 0.9);
+        byte[] data = new byte[4096];
+        random.nextBytes(data);
+        Assert.assertFalse(runTest(data));
+    }
+
+    @Test
+    public void testDecisionIsMadeOncePerResponse() {
+        final HttpServerExchange first = new HttpServerExchange(null);
+        first.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/x-random");
+        for (int i = 0; i < 3; ++i) {
+            policy.compressionComplete(first, 1000, 1000);
+        }
+        int compressed = 0;
+        for (int i = 0; i < 200; ++i) {
+            final HttpServerExchange exchange = new HttpServerExchange(null);
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/x-random");
+            final int level = policy.getCompressionLevel(exchange);
+            //the predicate and the encoding provider both ask, and must get the same answer
+            Assert.assertEquals(level, policy.getCompressionLevel(exchange));
+            Assert.assertEquals(level != AdaptiveCompressionPolicy.NO_COMPRESSION, policy.resolve(exchange));
+            if (level != AdaptiveCompressionPolicy.NO_COMPRESSION) {
+                ++compressed;
+            }
+        }
+        //one in every 100 responses is still compressed to keep the ratio up to date
+        Assert.assertEquals(2, compressed);
+    }
+
+    private static byte[] textMessage() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; ++i) {
+            sb.append("Hello World ");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return <code>true</code> if the response was compressed
+     */
+    private boolean runTest(final byte[] theMessage) throws IOException {
+        message = theMessage;
+        try (CloseableHttpClient client = HttpClientBuilder.create().build()) {
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "gzip");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            final byte[] body = HttpClientUtils.readRawResponse(result);
+            Assert.assertArrayEquals(theMessage, body);
+            return result.getEntity() instanceof DecompressingEntity;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.undertow.server.handlers.encoding;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.testutils.category.UnitTest;
+import io.undertow.util.FileUtils;
+import io.undertow.util.Headers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests that content encodings provided by a {@link java.util.ServiceLoader} are added, and that providers that
+ * cannot be loaded are skipped.
+ */
+@Category(UnitTest.class)
+public class ContentEncodingRepositoryTestCase {
+
+    @Test
+    public void testProvidersThatCannotBeLoadedAreSkipped() throws IOException {
+        Path dir = Files.createTempDirectory("encoding-providers");
+        try {
+            Path services = dir.resolve("META-INF/services");
+            Files.createDirectories(services);
+            try (Writer writer = Files.newBufferedWriter(services.resolve(ContentEncodingProviderFactory.class.getName()), StandardCharsets.UTF_8)) {
+                writer.write("io.undertow.server.handlers.encoding.DoesNotExistProviderFactory\n");
+                writer.write(UnlinkableProviderFactory.class.getName() + "\n");
+                writer.write(WorkingProviderFactory.class.getName() + "\n");
+            }
+            ContentEncodingRepository repository;
+            try (URLClassLoader classLoader = new URLClassLoader(new URL[]{dir.toUri().toURL()}, getClass().getClassLoader())) {
+                repository = new ContentEncodingRepository().addServiceLoadedEncodingHandlers(classLoader);
+            }
+            Assert.assertEquals("test", encodingFor(repository, "test"));
+            Assert.assertNull(encodingFor(repository, "unlinkable"));
+        } finally {
+            FileUtils.deleteRecursive(dir);
+        }
+    }
+
+    private static String encodingFor(ContentEncodingRepository repository, String encoding) {
+        HttpServerExchange exchange = new HttpServerExchange(null);
+        exchange.getRequestHeaders().put(Headers.ACCEPT_ENCODING, encoding);
+        AllowedContentEncodings encodings = repository.getContentEncodings(exchange);
+        return encodings == null ? null : encodings.getCurrentContentEncoding();
+    }
+
+    public static class UnlinkableProviderFactory implements ContentEncodingProviderFactory {
+
+        @Override
+        public String getEncoding() {
+            return "unlinkable";
+        }
+
+        @Override
+        public int getPriority() {
+            return 50;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            //what a codec sees when its native library or one of its classes is missing
+            throw new NoClassDefFoundError("com/example/MissingCodec");
+        }
+
+        @Override
+        public ContentEncodingProvider createProvider() {
+            throw new NoClassDefFoundError("com/example/MissingCodec");
+        }
+    }
+
+    public static class WorkingProviderFactory implements ContentEncodingProviderFactory {
+
+        @Override
+        public String getEncoding() {
+            return "test";
+        }
+
+        @Override
+        public int getPriority() {
+            return 50;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public ContentEncodingProvider createProvider() {
+            return ContentEncodingProvider.IDENTITY;
+        }
+    }
+}
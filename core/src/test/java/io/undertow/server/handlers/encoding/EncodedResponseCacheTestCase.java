@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.encoding;
+
+import io.undertow.io.IoCallback;
+import io.undertow.predicate.Predicates;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.cache.DirectBufferCache;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.DecompressingEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+/**
+ * Tests that identical dynamic responses are served from the {@link EncodedResponseCache}
+ */
+@RunWith(DefaultServer.class)
+public class EncodedResponseCacheTestCase {
+
+    private static final int MAX_SIZE = 10000;
+
+    private static volatile String message;
+    private static volatile String etag;
+    private static volatile EncodedResponseCache responseCache;
+
+    @Before
+    public void setup() {
+        responseCache = new EncodedResponseCache(new DirectBufferCache(1024, 10, 1024 * 100), 10, MAX_SIZE, Predicates.truePredicate());
+        final EncodingHandler handler = new EncodingHandler(new ContentEncodingRepository()
+                .addEncodingHandler("gzip", new GzipEncodingProvider(), 50))
+                .setResponseCache(responseCache)
+                .setNext(new HttpHandler() {
+                    @Override
+                    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                        if (etag != null) {
+                            exchange.getResponseHeaders().put(Headers.ETAG, etag);
+                        }
+                        exchange.getResponseSender().send(message, IoCallback.END_EXCHANGE);
+                    }
+                });
+        DefaultServer.setRootHandler(handler);
+    }
+
+    @Test
+    public void testIdenticalBodyServedFromCache() throws IOException {
+        etag = null;
+        message = buildMessage("body", 2000);
+        runRequests(message);
+        Assert.assertTrue(responseCache.getHits() > 0);
+
+        //a different body must not be served from the cache
+        long hits = responseCache.getHits();
+        runTest(buildMessage("other", 2000));
+        Assert.assertEquals(hits, responseCache.getHits());
+    }
+
+    @Test
+    public void testStrongETagServedFromCache() throws IOException {
+        etag = "\"v1\"";
+        message = buildMessage("etag", 2000);
+        runRequests(message);
+        Assert.assertTrue(responseCache.getHits() > 0);
+    }
+
+    @Test
+    public void testLargeResponseNotCached() throws IOException {
+        etag = null;
+        message = buildMessage("large", MAX_SIZE * 2);
+        runRequests(message);
+        Assert.assertEquals(0, responseCache.getHits());
+        Assert.assertEquals(0, responseCache.getMisses());
+    }
+
+    private static String buildMessage(final String prefix, final int size) {
+        final StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            sb.append(prefix).append(sb.length()).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private void runRequests(final String theMessage) throws IOException {
+        //the buffer cache only allocates space for entries that are requested repeatedly
+        for (int i = 0; i < 20; ++i) {
+            runTest(theMessage);
+        }
+    }
+
+    private void runTest(final String theMessage) throws IOException {
+        message = theMessage;
+        try (CloseableHttpClient client = HttpClientBuilder.create().build()) {
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "gzip");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            Assert.assertTrue(result.getEntity() instanceof DecompressingEntity);
+            final String body = HttpClientUtils.readResponse(result);
+            Assert.assertEquals(theMessage, body);
+        }
+    }
+}
@@ -265,4 +265,61 @@ public class EncodingSelectionTestCase {
         }
     }
 
+    /**
+     * Tests that the wildcard matches any encoding that is not explicitly listed, and that
+     * encoding names are case insensitive
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testWildcardEncodingSelect() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            final EncodingHandler handler = new EncodingHandler(new ContentEncodingRepository()
+            .addEncodingHandler("compress", ContentEncodingProvider.IDENTITY, 50)
+            .addEncodingHandler("bzip", ContentEncodingProvider.IDENTITY, 100))
+            .setNext(new HttpHandler() {
+                @Override
+                public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                    exchange.getResponseSender().send("hi"); //we need some content to encode
+                }
+            });
+            DefaultServer.setRootHandler(handler);
+
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "*");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            Header[] header = result.getHeaders(HEADER);
+            Assert.assertEquals("bzip", header[0].getValue());
+            HttpClientUtils.readResponse(result);
+
+            get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "bzip;q=0, *");
+            result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            header = result.getHeaders(HEADER);
+            Assert.assertEquals("compress", header[0].getValue());
+            HttpClientUtils.readResponse(result);
+
+            get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "compress;q=0.5, *;q=0.1");
+            result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            header = result.getHeaders(HEADER);
+            Assert.assertEquals("compress", header[0].getValue());
+            HttpClientUtils.readResponse(result);
+
+            get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path");
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "COMPRESS");
+            result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            header = result.getHeaders(HEADER);
+            Assert.assertEquals("compress", header[0].getValue());
+            HttpClientUtils.readResponse(result);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
 }
@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.file;
+
+import io.undertow.server.handlers.cache.DirectBufferCache;
+import io.undertow.server.handlers.resource.CacheWarmer;
+import io.undertow.server.handlers.resource.CachingResourceManager;
+import io.undertow.server.handlers.resource.PathResourceManager;
+import io.undertow.testutils.category.UnitTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Tests for {@link CacheWarmer}
+ */
+@Category(UnitTest.class)
+public class CacheWarmerTestCase {
+
+    private Path rootPath;
+    private Path snapshot;
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setup() throws Exception {
+        rootPath = Paths.get(getClass().getResource("page.html").toURI()).getParent();
+        snapshot = Files.createTempFile("undertow", ".snapshot");
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        executor.shutdownNow();
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Test
+    public void testSnapshotAndWarmUp() throws Exception {
+        final CachingResourceManager original = createResourceManager(new DirectBufferCache(1024, 10, 10240));
+        Assert.assertNotNull(original.getResource("page.html"));
+        Assert.assertNotNull(original.getResource("data1.json"));
+        CacheWarmer.builder()
+                .setResourceManager(original)
+                .setSnapshotFile(snapshot)
+                .setExecutor(executor)
+                .build()
+                .snapshot();
+        final List<String> lines = Files.readAllLines(snapshot, StandardCharsets.UTF_8);
+        Assert.assertEquals(2, lines.size());
+
+        final DirectBufferCache dataCache = new DirectBufferCache(1024, 10, 10240);
+        final CachingResourceManager restarted = createResourceManager(dataCache);
+        final long loaded = CacheWarmer.builder()
+                .setResourceManager(restarted)
+                .setSnapshotFile(snapshot)
+                .setExecutor(executor)
+                .build()
+                .warmUp();
+        Assert.assertEquals(Files.size(rootPath.resolve("page.html")) + Files.size(rootPath.resolve("data1.json")), loaded);
+        Assert.assertEquals(2, dataCache.getAllKeys().size());
+    }
+
+    @Test
+    public void testWarmUpBudget() throws Exception {
+        Files.write(snapshot, "10 page.html\n5 data1.json\n".getBytes(StandardCharsets.UTF_8));
+        final DirectBufferCache dataCache = new DirectBufferCache(1024, 10, 10240);
+        final long loaded = CacheWarmer.builder()
+                .setResourceManager(createResourceManager(dataCache))
+                .setSnapshotFile(snapshot)
+                .setExecutor(executor)
+                .setMaxWarmUpBytes(Files.size(rootPath.resolve("data1.json")))
+                .build()
+                .warmUp();
+        //page.html does not fit in the budget, but the smaller file does
+        Assert.assertEquals(Files.size(rootPath.resolve("data1.json")), loaded);
+        Assert.assertEquals(1, dataCache.getAllKeys().size());
+    }
+
+    private CachingResourceManager createResourceManager(final DirectBufferCache dataCache) {
+        return new CachingResourceManager(100, 10000, dataCache, PathResourceManager.builder()
+                .setBase(rootPath)
+                .setAllowResourceChangeListeners(false)
+                .build(), CachingResourceManager.MAX_AGE_NO_EXPIRY);
+    }
+}
@@ -30,6 +30,7 @@ import io.undertow.Undertow;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.handlers.CanonicalPathHandler;
 import io.undertow.server.handlers.PathHandler;
+import io.undertow.server.handlers.resource.MappedFileCache;
 import io.undertow.server.handlers.resource.PathResourceManager;
 import io.undertow.server.handlers.resource.ResourceHandler;
 import io.undertow.testutils.DefaultServer;
@@ -238,6 +239,52 @@ public class FileHandlerTestCase {
         }
     }
 
+    @Test
+    public void testMappedFileServed() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        Path tmp = Paths.get("target", "testtmp").toAbsolutePath();
+        Files.createDirectories(tmp);
+        String message = "Hello World".repeat(100000);
+        Path large = Files.createTempFile(tmp, null, ".txt");
+        try {
+            Files.write(
+                    large,
+                    message.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+            MappedFileCache mappedFileCache = new MappedFileCache(1, 10 * 1024 * 1024, 10 * 1024 * 1024, 1);
+            DefaultServer.setRootHandler(new CanonicalPathHandler()
+                    .setNext(new PathHandler()
+                            .addPrefixPath("/path", new ResourceHandler(PathResourceManager.builder()
+                                    .setBase(tmp)
+                                    // never transfer, so the file is always mapped
+                                    .setTransferMinSize(Long.MAX_VALUE)
+                                    .setMappedFileCache(mappedFileCache)
+                                    .build()))));
+
+            for (int i = 0; i < 3; ++i) {
+                HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path/" + large.getFileName().toString());
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                final String response = HttpClientUtils.readResponse(result);
+                Assert.assertTrue(response.equals(message));
+            }
+            Assert.assertEquals(message.length(), mappedFileCache.getMappedMemory());
+
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path/" + large.getFileName().toString());
+            get.addHeader("range", "bytes=11-15");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(StatusCodes.PARTIAL_CONTENT, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("Hello", HttpClientUtils.readResponse(result));
+        } finally {
+            client.getConnectionManager().shutdown();
+            try {
+                Files.delete(large);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     @Test
     public void testRangeRequests() throws IOException, URISyntaxException {
         TestHttpClient client = new TestHttpClient();
@@ -1,5 +1,6 @@
 package io.undertow.server.handlers.file;
 
+import io.undertow.server.handlers.resource.ContentHashETagFunction;
 import io.undertow.server.handlers.resource.Resource;
 import io.undertow.testutils.category.UnitTest;
 import io.undertow.server.handlers.resource.PathResourceManager;
@@ -20,6 +21,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -109,6 +111,38 @@ public class PathResourceManagerTestCase {
         Assert.assertEquals(expected, actual);
     }
 
+    @Test
+    public void testContentHashETagFunction() throws Exception {
+        final Path rootPath = Paths.get(getClass().getResource("page.html").toURI()).getParent();
+        final Path index = Files.createTempFile("undertow", ".idx");
+        try {
+            //run the digest computation inline
+            final ContentHashETagFunction eTagFunction = new ContentHashETagFunction(Runnable::run, index);
+            final ResourceManager resourceManager = PathResourceManager.builder()
+                    .setBase(rootPath)
+                    .setETagFunction(eTagFunction)
+                    .build();
+            //a weak ETag is returned until the digest is available
+            ETag first = resourceManager.getResource("page.html").getETag();
+            Assert.assertTrue(first.isWeak());
+            ETag strong = resourceManager.getResource("page.html").getETag();
+            Assert.assertFalse(strong.isWeak());
+            Assert.assertNull(resourceManager.getResource("subdir").getETag());
+
+            //the digest is read from the index, and does not need to be computed again
+            final ContentHashETagFunction reloaded = new ContentHashETagFunction(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    Assert.fail("digest should have been loaded from the index");
+                }
+            }, index);
+            Assert.assertEquals(1, reloaded.getDigestCount());
+            Assert.assertEquals(strong, reloaded.generate(rootPath.resolve("page.html")));
+        } finally {
+            Files.deleteIfExists(index);
+        }
+    }
+
     @Test
     public void testNonDefaultFileSystem() throws Exception {
         Path zipFile = Files.createTempFile("undertow", ".zip");
@@ -67,6 +67,10 @@ public class PreCompressedResourceTestCase {
             Files.delete(rootPath.resolve("page.html.gz"));
         }
 
+        if (Files.exists(rootPath.resolve("page.html.br"))) {
+            Files.delete(rootPath.resolve("page.html.br"));
+        }
+
         if (Files.exists(rootPath.resolve("page.html.gzip"))) {
             Files.delete(rootPath.resolve("page.html.gzip"));
         }
@@ -202,6 +206,56 @@ public class PreCompressedResourceTestCase {
         }
     }
 
+    @Test
+    public void testDefaultEncodingsSelection() throws IOException, URISyntaxException {
+        HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path/page.html");
+        TestHttpClient client = new TestHttpClient();
+        Path rootPath = Paths.get(getClass().getResource("page.html").toURI()).getParent();
+
+        try {
+            DefaultServer.setRootHandler(new CanonicalPathHandler()
+                    .setNext(new PathHandler()
+                            .addPrefixPath("/path", new ResourceHandler(new PreCompressedResourceSupplier(new PathResourceManager(rootPath, 10485760)).addDefaultEncodings()))));
+
+            generatePreCompressedResource("gz");
+            //the content does not matter, we never decode it
+            Files.write(rootPath.resolve("page.html.br"), "brotli".getBytes(StandardCharsets.UTF_8));
+
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "gzip, br");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("br", result.getFirstHeader(Headers.CONTENT_ENCODING_STRING).getValue());
+            Assert.assertEquals(Headers.ACCEPT_ENCODING_STRING, result.getFirstHeader(Headers.VARY_STRING).getValue());
+            Assert.assertEquals("brotli", HttpClientUtils.readResponse(result));
+
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "br;q=0, gzip");
+            result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("gzip", result.getFirstHeader(Headers.CONTENT_ENCODING_STRING).getValue());
+            HttpClientUtils.readResponse(result);
+
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "br;q=0.5, gzip");
+            result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("gzip", result.getFirstHeader(Headers.CONTENT_ENCODING_STRING).getValue());
+            HttpClientUtils.readResponse(result);
+
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "*, br;q=0");
+            result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("gzip", result.getFirstHeader(Headers.CONTENT_ENCODING_STRING).getValue());
+            HttpClientUtils.readResponse(result);
+
+            get.setHeader(Headers.ACCEPT_ENCODING_STRING, "br;q=0, gzip;q=0");
+            result = client.execute(get);
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            Assert.assertNull(result.getFirstHeader(Headers.CONTENT_ENCODING_STRING));
+            HttpClientUtils.readResponse(result);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
     private void generateGZipFile(Path source, Path target) throws IOException {
         byte[] buffer = new byte[1024];
 
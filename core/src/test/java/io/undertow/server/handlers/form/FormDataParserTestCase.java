@@ -131,6 +131,35 @@ public class FormDataParserTestCase {
             }
         });
         ret.add(new Object[]{blocking});
+
+        //form encoded values that are only decoded when they are used
+        final FormParserFactory lazyParserFactory = FormParserFactory.builder(false)
+                .addParsers(new FormEncodedDataDefinition().setLazyDecoding(true), new MultiPartParserDefinition())
+                .withDefaultCharset("UTF-8")
+                .build();
+        ret.add(new Object[]{new HttpHandler() {
+            @Override
+            public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                final FormDataParser parser = lazyParserFactory.createParser(exchange);
+                parser.parse(new HttpHandler() {
+                    @Override
+                    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                        FormData data = exchange.getAttachment(FormDataParser.FORM_DATA);
+                        StringBuilder response = new StringBuilder();
+                        for (String fd : data) {
+                            for (FormData.FormValue val : data.get(fd)) {
+                                if (response.length() > 0) {
+                                    response.append("\n");
+                                }
+                                response.append(fd).append(":").append(val.getValue());
+                            }
+                        }
+                        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain; charset=UTF-8");
+                        exchange.getResponseSender().send(response.toString(), StandardCharsets.UTF_8);
+                    }
+                });
+            }
+        }});
         return ret;
 
     }
@@ -24,8 +24,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -53,6 +57,7 @@ import io.undertow.server.handlers.form.MultiPartParserDefinition.FileTooLargeEx
 import io.undertow.testutils.DefaultServer;
 import io.undertow.testutils.HttpClientUtils;
 import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.HeaderMap;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import io.undertow.util.StatusCodes;
@@ -435,6 +440,68 @@ public class MultipartFormDataParserTestCase {
         }
     }
 
+    @Test
+    public void testFileUploadWithPartSink() throws Exception {
+        final File target = File.createTempFile("undertow", "sink");
+        try {
+            DefaultServer.setRootHandler(new BlockingHandler(new HttpHandler() {
+                @Override
+                public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                    MultiPartParserDefinition multiPartParserDefinition = new MultiPartParserDefinition()
+                            .setPartSinkFactory(new MultiPartParserDefinition.PartSinkFactory() {
+                                @Override
+                                public WritableByteChannel createSink(HttpServerExchange exchange, String name, String fileName, HeaderMap headers) throws IOException {
+                                    if (fileName == null) {
+                                        return null;
+                                    }
+                                    return FileChannel.open(target.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                                }
+
+                                @Override
+                                public Path sinkComplete(HttpServerExchange exchange, String name, String fileName, HeaderMap headers, WritableByteChannel sink) throws IOException {
+                                    ((FileChannel) sink).force(false);
+                                    return target.toPath();
+                                }
+                            });
+                    final FormDataParser parser = FormParserFactory.builder(false)
+                            .addParsers(multiPartParserDefinition)
+                            .build().createParser(exchange);
+                    try {
+                        FormData data = parser.parseBlocking();
+                        exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+                        if (data.getFirst("formValue").getValue().equals("myValue")
+                                && target.toPath().equals(data.getFirst("file").getPath())) {
+                            exchange.setStatusCode(StatusCodes.OK);
+                        }
+                        exchange.endExchange();
+                    } finally {
+                        IoUtils.safeClose(parser);
+                    }
+                }
+            }));
+
+            TestHttpClient client = new TestHttpClient();
+            try {
+                HttpPost post = new HttpPost(DefaultServer.getDefaultServerURL() + "/path");
+                MultipartEntity entity = new MultipartEntity(HttpMultipartMode.BROWSER_COMPATIBLE);
+
+                entity.addPart("formValue", new StringBody("myValue", "text/plain", StandardCharsets.UTF_8));
+                entity.addPart("file", new FileBody(new File(MultipartFormDataParserTestCase.class.getResource("uploadfile.txt").getFile())));
+
+                post.setEntity(entity);
+                HttpResponse result = client.execute(post);
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                HttpClientUtils.readResponse(result);
+            } finally {
+                client.getConnectionManager().shutdown();
+            }
+            //the upload was written to the sink, and not deleted when the request completed
+            Assert.assertArrayEquals(Files.readAllBytes(new File(MultipartFormDataParserTestCase.class.getResource("uploadfile.txt").getFile()).toPath()), Files.readAllBytes(target.toPath()));
+        } finally {
+            target.delete();
+        }
+    }
+
     private void writeLargeFileContent(File file, int size) throws IOException {
         int textLength = "content".getBytes().length;
         FileOutputStream fos = new FileOutputStream(file);
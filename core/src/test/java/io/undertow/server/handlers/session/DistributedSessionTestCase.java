@@ -0,0 +1,575 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.server.handlers.PathHandler;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.server.session.DistributedSessionLoadingHandler;
+import io.undertow.server.session.DistributedSessionManager;
+import io.undertow.server.session.LoopbackSessionStore;
+import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionAttachmentHandler;
+import io.undertow.server.session.SessionCookieConfig;
+import io.undertow.server.session.SecureRandomSessionIdGenerator;
+import io.undertow.server.session.SessionManager;
+import io.undertow.server.session.SessionStore;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.HttpString;
+import io.undertow.util.StatusCodes;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests that sessions are shared between two distributed session managers through a store
+ */
+@RunWith(DefaultServer.class)
+public class DistributedSessionTestCase {
+
+    private static final String COUNT = "count";
+    private static final String NODE = "node";
+
+    @Test
+    public void testSessionSharedBetweenNodes() throws Exception {
+        final RecordingSessionStore store = new RecordingSessionStore();
+        final DistributedSessionManager node1 = new DistributedSessionManager("node1", store);
+        final DistributedSessionManager node2 = new DistributedSessionManager("node2", store);
+        node1.start();
+        node2.start();
+        TestHttpClient client = new TestHttpClient();
+        client.setCookieStore(new BasicCookieStore());
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            DefaultServer.setRootHandler(new PathHandler()
+                    .addPrefixPath("/node1", new SessionAttachmentHandler(handler(sessionConfig, "node1"), node1, sessionConfig))
+                    .addPrefixPath("/node2", new SessionAttachmentHandler(handler(sessionConfig, "node2"), node2, sessionConfig)));
+
+            Assert.assertEquals("0", request(client, "/node1"));
+            final String sessionId = node1.getActiveSessions().iterator().next();
+            awaitCount(store, sessionId, 1);
+
+            Assert.assertEquals("1", request(client, "/node2"));
+            awaitCount(store, sessionId, 2);
+            //the attribute that was not changed is not written again
+            final SessionStore.SessionUpdate update = store.updates.get(store.updates.size() - 1);
+            Assert.assertFalse(update.isCreated());
+            Assert.assertEquals(1, update.getAttributes().size());
+            Assert.assertTrue(update.getAttributes().containsKey(COUNT));
+
+            //the update from node2 removed the session from the near cache of node1
+            Assert.assertEquals("2", request(client, "/node1"));
+            awaitCount(store, sessionId, 3);
+            Assert.assertEquals("node1", deserialize(store.load(sessionId).getAttributes().get(NODE)));
+        } finally {
+            node1.stop();
+            node2.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testInvalidationRemovesSessionFromStore() throws Exception {
+        final RecordingSessionStore store = new RecordingSessionStore();
+        final DistributedSessionManager node1 = new DistributedSessionManager("node1", store);
+        node1.start();
+        TestHttpClient client = new TestHttpClient();
+        client.setCookieStore(new BasicCookieStore());
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            DefaultServer.setRootHandler(new SessionAttachmentHandler(exchange -> {
+                final SessionManager manager = exchange.getAttachment(SessionManager.ATTACHMENT_KEY);
+                if (exchange.getQueryParameters().containsKey("invalidate")) {
+                    manager.getSession(exchange, sessionConfig).invalidate(exchange);
+                } else {
+                    manager.createSession(exchange, sessionConfig).setAttribute(COUNT, 1);
+                }
+            }, node1, sessionConfig));
+
+            request(client, "/create");
+            final String sessionId = node1.getActiveSessions().iterator().next();
+            awaitCount(store, sessionId, 1);
+            request(client, "/invalidate?invalidate=true");
+            final long end = System.currentTimeMillis() + 10000;
+            while (store.load(sessionId) != null && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            Assert.assertNull(store.load(sessionId));
+            Assert.assertTrue(node1.getActiveSessions().isEmpty());
+        } finally {
+            node1.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testSessionInUseIsNotDroppedFromNearCache() throws Exception {
+        final RecordingSessionStore store = new RecordingSessionStore();
+        final DistributedSessionManager node1 = new DistributedSessionManager("node1", store);
+        node1.start();
+        TestHttpClient client = new TestHttpClient();
+        client.setCookieStore(new BasicCookieStore());
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            final HttpHandler counter = handler(sessionConfig, "node1");
+            DefaultServer.setRootHandler(new SessionAttachmentHandler(new BlockingHandler(exchange -> {
+                counter.handleRequest(exchange);
+                if (exchange.getQueryParameters().containsKey("block")) {
+                    entered.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                }
+            }), node1, sessionConfig));
+
+            Assert.assertEquals("0", request(client, "/"));
+            final String sessionId = node1.getActiveSessions().iterator().next();
+            awaitCount(store, sessionId, 1);
+
+            final Thread blocked = new Thread(() -> {
+                try {
+                    request(client, "/?block=true");
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            blocked.start();
+            Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+            //another node changes the session while the request is using it
+            store.store(Collections.singletonList(new SessionStore.SessionUpdate(sessionId, "node2", false, 0,
+                    System.currentTimeMillis(), 1800, Collections.emptyMap(), Collections.emptySet())));
+            Assert.assertTrue(node1.getActiveSessions().contains(sessionId));
+            release.countDown();
+            blocked.join(10000);
+
+            //the session is dropped once the request is done, so the next request reads it from the store
+            awaitCount(store, sessionId, 2);
+            final long end = System.currentTimeMillis() + 10000;
+            while (node1.getActiveSessions().contains(sessionId) && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            Assert.assertFalse(node1.getActiveSessions().contains(sessionId));
+            Assert.assertEquals("2", request(client, "/"));
+        } finally {
+            release.countDown();
+            node1.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testInvalidateSessionChangedOnAnotherNode() throws Exception {
+        final RecordingSessionStore store = new RecordingSessionStore();
+        final DistributedSessionManager node1 = new DistributedSessionManager("node1", store);
+        node1.start();
+        TestHttpClient client = new TestHttpClient();
+        client.setCookieStore(new BasicCookieStore());
+        final AtomicReference<Session> session = new AtomicReference<>();
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            DefaultServer.setRootHandler(new SessionAttachmentHandler(exchange -> {
+                final SessionManager manager = exchange.getAttachment(SessionManager.ATTACHMENT_KEY);
+                final Session created = manager.createSession(exchange, sessionConfig);
+                created.setAttribute(COUNT, 1);
+                session.set(created);
+            }, node1, sessionConfig));
+
+            request(client, "/create");
+            final String sessionId = session.get().getId();
+            awaitCount(store, sessionId, 1);
+            //a change from another node removes the session from the near cache
+            store.store(Collections.singletonList(new SessionStore.SessionUpdate(sessionId, "node2", false, 0,
+                    System.currentTimeMillis(), 1800, Collections.emptyMap(), Collections.emptySet())));
+            Assert.assertFalse(node1.getActiveSessions().contains(sessionId));
+
+            session.get().invalidate(null);
+            final long end = System.currentTimeMillis() + 10000;
+            while (store.load(sessionId) != null && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            Assert.assertNull(store.load(sessionId));
+        } finally {
+            node1.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testNearCacheEviction() throws Exception {
+        final RecordingSessionStore store = new RecordingSessionStore();
+        final DistributedSessionManager node1 = new DistributedSessionManager(new SecureRandomSessionIdGenerator(), "node1", store, 2, null);
+        node1.start();
+        TestHttpClient client = new TestHttpClient();
+        client.setCookieStore(new BasicCookieStore());
+        TestHttpClient other = new TestHttpClient();
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            DefaultServer.setRootHandler(new SessionAttachmentHandler(handler(sessionConfig, "node1"), node1, sessionConfig));
+
+            Assert.assertEquals("0", request(client, "/"));
+            final String sessionId = node1.getActiveSessions().iterator().next();
+            awaitCount(store, sessionId, 1);
+            for (int i = 0; i < 4; ++i) {
+                other.setCookieStore(new BasicCookieStore());
+                Assert.assertEquals("0", request(other, "/"));
+                //sessions are only evicted once their changes have been written
+                for (String id : node1.getActiveSessions()) {
+                    awaitCount(store, id, 1);
+                }
+            }
+            Assert.assertTrue(node1.getActiveSessions().size() <= 2);
+            //the least recently used session was evicted, and is read from the store again
+            Assert.assertFalse(node1.isCached(sessionId));
+            Assert.assertEquals("1", request(client, "/"));
+            Assert.assertTrue(node1.isCached(sessionId));
+        } finally {
+            node1.stop();
+            client.getConnectionManager().shutdown();
+            other.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testOnlyChangedAttributesAreWritten() throws Exception {
+        final RecordingSessionStore store = new RecordingSessionStore();
+        final DistributedSessionManager node1 = new DistributedSessionManager("node1", store);
+        node1.start();
+        TestHttpClient client = new TestHttpClient();
+        client.setCookieStore(new BasicCookieStore());
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            DefaultServer.setRootHandler(new SessionAttachmentHandler(exchange -> {
+                final SessionManager manager = exchange.getAttachment(SessionManager.ATTACHMENT_KEY);
+                Session session = manager.getSession(exchange, sessionConfig);
+                if (session == null) {
+                    session = manager.createSession(exchange, sessionConfig);
+                    session.setAttribute("immutable", "value");
+                    session.setAttribute("mutable", new ArrayList<String>());
+                    session.setAttribute(COUNT, 0);
+                    return;
+                }
+                final String read = exchange.getQueryParameters().get("read").getFirst();
+                if (!read.isEmpty()) {
+                    session.getAttribute(read);
+                }
+            }, node1, sessionConfig));
+
+            request(client, "/");
+            final String sessionId = node1.getActiveSessions().iterator().next();
+            awaitCount(store, sessionId, 0);
+            SessionStore.SessionUpdate update = store.updates.get(store.updates.size() - 1);
+            Assert.assertTrue(update.isCreated());
+            Assert.assertEquals(3, update.getAttributes().size());
+
+            //reading an immutable value does not change the session
+            update = awaitUpdate(store, "/?read=immutable", client);
+            Assert.assertFalse(update.isCreated());
+            Assert.assertTrue(update.getAttributes().isEmpty());
+            Assert.assertTrue(update.getRemovedAttributes().isEmpty());
+
+            //a mutable value may have been modified in place, so it is written
+            update = awaitUpdate(store, "/?read=mutable", client);
+            Assert.assertEquals(Collections.singleton("mutable"), update.getAttributes().keySet());
+
+            update = awaitUpdate(store, "/?read=", client);
+            Assert.assertTrue(update.getAttributes().isEmpty());
+        } finally {
+            node1.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testChangeSessionId() throws Exception {
+        final RecordingSessionStore store = new RecordingSessionStore();
+        final DistributedSessionManager node1 = new DistributedSessionManager("node1", store);
+        final DistributedSessionManager node2 = new DistributedSessionManager("node2", store);
+        node1.start();
+        node2.start();
+        TestHttpClient client = new TestHttpClient();
+        client.setCookieStore(new BasicCookieStore());
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            final HttpHandler node1Handler = handler(sessionConfig, "node1");
+            DefaultServer.setRootHandler(new PathHandler()
+                    .addPrefixPath("/node1", new SessionAttachmentHandler(exchange -> {
+                        node1Handler.handleRequest(exchange);
+                        if (exchange.getQueryParameters().containsKey("change")) {
+                            final SessionManager manager = exchange.getAttachment(SessionManager.ATTACHMENT_KEY);
+                            manager.getSession(exchange, sessionConfig).changeSessionId(exchange, sessionConfig);
+                        }
+                    }, node1, sessionConfig))
+                    .addPrefixPath("/node2", new SessionAttachmentHandler(handler(sessionConfig, "node2"), node2, sessionConfig)));
+
+            Assert.assertEquals("0", request(client, "/node1"));
+            final String oldId = node1.getActiveSessions().iterator().next();
+            awaitCount(store, oldId, 1);
+
+            Assert.assertEquals("1", request(client, "/node1?change=true"));
+            final String newId = node1.getActiveSessions().iterator().next();
+            Assert.assertNotEquals(oldId, newId);
+            //the whole session is written under the new id, and the old id is removed
+            awaitCount(store, newId, 2);
+            Assert.assertEquals("node1", deserialize(store.load(newId).getAttributes().get(NODE)));
+            final long end = System.currentTimeMillis() + 10000;
+            while (store.load(oldId) != null && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            Assert.assertNull(store.load(oldId));
+
+            //the client uses the new id on the other node
+            Assert.assertEquals("2", request(client, "/node2"));
+            Assert.assertTrue(node2.isCached(newId));
+            Assert.assertFalse(node2.isCached(oldId));
+        } finally {
+            node1.stop();
+            node2.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testUpdatesAreBatched() throws Exception {
+        final RecordingSessionStore store = new RecordingSessionStore();
+        final DistributedSessionManager node1 = new DistributedSessionManager("node1", store);
+        node1.start();
+        TestHttpClient client = new TestHttpClient();
+        client.setCookieStore(new BasicCookieStore());
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            DefaultServer.setRootHandler(new PathHandler()
+                    .addPrefixPath("/session", new SessionAttachmentHandler(handler(sessionConfig, "node1"), node1, sessionConfig))
+                    .addPrefixPath("/other", ResponseCodeHandler.HANDLE_200));
+
+            Assert.assertEquals("0", request(client, "/session"));
+            final String sessionId = node1.getActiveSessions().iterator().next();
+            awaitCount(store, sessionId, 1);
+
+            //hold the writer in the store, so the changes of the following requests are queued
+            store.block = new CountDownLatch(1);
+            Assert.assertEquals("1", request(client, "/session"));
+            Assert.assertTrue(store.blocked.await(10, TimeUnit.SECONDS));
+            for (int i = 2; i <= 5; ++i) {
+                Assert.assertEquals(String.valueOf(i), request(client, "/session"));
+            }
+            //the connection only reads the next request once the previous one has completed and queued its changes
+            request(client, "/other");
+            final int batches = store.batches.size();
+            store.block.countDown();
+            awaitCount(store, sessionId, 6);
+            //the blocked batch, and then the four queued updates in one batch
+            Assert.assertEquals(batches + 2, store.batches.size());
+            Assert.assertEquals(4, store.batches.get(batches + 1).size());
+        } finally {
+            if (store.block != null) {
+                store.block.countDown();
+            }
+            node1.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedWritesAreRetried() throws Exception {
+        final RecordingSessionStore store = new RecordingSessionStore();
+        final DistributedSessionManager node1 = new DistributedSessionManager("node1", store);
+        node1.start();
+        TestHttpClient client = new TestHttpClient();
+        client.setCookieStore(new BasicCookieStore());
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            final HttpHandler counter = handler(sessionConfig, "node1");
+            DefaultServer.setRootHandler(new SessionAttachmentHandler(exchange -> {
+                if (exchange.getQueryParameters().containsKey("invalidate")) {
+                    final SessionManager manager = exchange.getAttachment(SessionManager.ATTACHMENT_KEY);
+                    manager.getSession(exchange, sessionConfig).invalidate(exchange);
+                } else {
+                    counter.handleRequest(exchange);
+                }
+            }, node1, sessionConfig));
+
+            Assert.assertEquals("0", request(client, "/"));
+            final String sessionId = node1.getActiveSessions().iterator().next();
+            awaitCount(store, sessionId, 1);
+
+            //the change is written once the store is available again
+            store.failures.set(2);
+            Assert.assertEquals("1", request(client, "/"));
+            awaitCount(store, sessionId, 2);
+            Assert.assertEquals(0, store.failures.get());
+
+            //so is the removal of an invalidated session
+            store.failures.set(2);
+            request(client, "/?invalidate=true");
+            final long end = System.currentTimeMillis() + 10000;
+            while (store.load(sessionId) != null && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            Assert.assertNull(store.load(sessionId));
+            Assert.assertEquals(0, store.failures.get());
+        } finally {
+            node1.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testLoadingIsDispatchedToWorker() throws Exception {
+        final RecordingSessionStore store = new RecordingSessionStore();
+        final DistributedSessionManager node1 = new DistributedSessionManager("node1", store);
+        node1.start();
+        TestHttpClient client = new TestHttpClient();
+        client.setCookieStore(new BasicCookieStore());
+        final List<Boolean> ioThread = new CopyOnWriteArrayList<>();
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            final HttpHandler counter = handler(sessionConfig, "node1");
+            DefaultServer.setRootHandler(new SessionAttachmentHandler(new DistributedSessionLoadingHandler(exchange -> {
+                ioThread.add(exchange.isInIoThread());
+                counter.handleRequest(exchange);
+            }), node1, sessionConfig));
+
+            //no session to load
+            Assert.assertEquals("0", request(client, "/"));
+            final String sessionId = node1.getActiveSessions().iterator().next();
+            awaitCount(store, sessionId, 1);
+            //the session is in the near cache
+            Assert.assertEquals("1", request(client, "/"));
+            awaitCount(store, sessionId, 2);
+            //a change from another node removes it from the near cache, so it must be loaded from the store
+            store.store(Collections.singletonList(new SessionStore.SessionUpdate(sessionId, "node2", false, 0,
+                    System.currentTimeMillis(), 1800, Collections.emptyMap(), Collections.emptySet())));
+            Assert.assertFalse(node1.isCached(sessionId));
+            Assert.assertEquals("2", request(client, "/"));
+            Assert.assertEquals(List.of(true, true, false), ioThread);
+        } finally {
+            node1.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    private static HttpHandler handler(final SessionCookieConfig sessionConfig, final String node) {
+        return exchange -> {
+            final SessionManager manager = exchange.getAttachment(SessionManager.ATTACHMENT_KEY);
+            Session session = manager.getSession(exchange, sessionConfig);
+            if (session == null) {
+                session = manager.createSession(exchange, sessionConfig);
+                session.setAttribute(COUNT, 0);
+                session.setAttribute(NODE, node);
+            }
+            Integer count = (Integer) session.getAttribute(COUNT);
+            exchange.getResponseHeaders().add(new HttpString(COUNT), count.toString());
+            session.setAttribute(COUNT, ++count);
+        };
+    }
+
+    private static String request(final TestHttpClient client, final String path) throws IOException {
+        HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + path);
+        HttpResponse result = client.execute(get);
+        Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+        HttpClientUtils.readResponse(result);
+        return result.getHeaders(COUNT).length == 0 ? null : result.getHeaders(COUNT)[0].getValue();
+    }
+
+    /**
+     * Sends a request and waits for the update it causes to reach the store
+     */
+    private static SessionStore.SessionUpdate awaitUpdate(final RecordingSessionStore store, final String path, final TestHttpClient client) throws Exception {
+        final int updates = store.updates.size();
+        request(client, path);
+        final long end = System.currentTimeMillis() + 10000;
+        while (store.updates.size() == updates && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(updates + 1, store.updates.size());
+        return store.updates.get(updates);
+    }
+
+    /**
+     * Changes are written behind, so wait for them to reach the store
+     */
+    private static void awaitCount(final SessionStore store, final String sessionId, final int expected) throws Exception {
+        final long end = System.currentTimeMillis() + 10000;
+        Object count = null;
+        while (System.currentTimeMillis() < end) {
+            final SessionStore.StoredSession session = store.load(sessionId);
+            if (session != null && session.getAttributes().containsKey(COUNT)) {
+                count = deserialize(session.getAttributes().get(COUNT));
+                if (Integer.valueOf(expected).equals(count)) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, count);
+    }
+
+    private static Object deserialize(final byte[] data) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return in.readObject();
+        }
+    }
+
+    private static final class RecordingSessionStore extends LoopbackSessionStore {
+
+        private final List<SessionStore.SessionUpdate> updates = new CopyOnWriteArrayList<>();
+        private final List<List<SessionStore.SessionUpdate>> batches = new CopyOnWriteArrayList<>();
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile CountDownLatch block;
+
+        @Override
+        public void store(final List<SessionUpdate> updates) {
+            if (failures.getAndUpdate(i -> Math.max(0, i - 1)) > 0) {
+                throw new UncheckedIOException(new IOException("The store is not available"));
+            }
+            final CountDownLatch block = this.block;
+            if (block != null) {
+                blocked.countDown();
+                try {
+                    block.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            this.batches.add(new ArrayList<>(updates));
+            this.updates.addAll(updates);
+            super.store(updates);
+        }
+    }
+}
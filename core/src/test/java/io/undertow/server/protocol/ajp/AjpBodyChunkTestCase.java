@@ -0,0 +1,282 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.protocol.ajp;
+
+import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.proxy.LoadBalancingProxyClient;
+import io.undertow.server.handlers.proxy.ProxyHandler;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpOneOnly;
+import io.undertow.testutils.ProxyIgnore;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.SameThreadExecutor;
+import io.undertow.util.StatusCodes;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.channels.Channels;
+import org.xnio.channels.StreamSinkChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests reading large request bodies with prefetched body chunks and large packets, and writing responses in lots of
+ * small pieces that are coalesced into larger packets. The coalescing tests talk to the AJP listener directly, so
+ * they can count the packets.
+ */
+@RunWith(DefaultServer.class)
+@ProxyIgnore
+@HttpOneOnly
+public class AjpBodyChunkTestCase {
+
+    private static final int PORT = DefaultServer.getHostPort() + 11;
+    private static final int WRITE_SIZE = 100;
+    private static final int WRITE_COUNT = 100;
+    private static final byte SEND_BODY_CHUNK = 3;
+    private static final byte SEND_HEADERS = 4;
+    private static final byte END_RESPONSE = 5;
+    private static Undertow undertow;
+    /**
+     * The exchange of the /unflushed request, which is kept open until the test ends it
+     */
+    private static volatile HttpServerExchange unflushed;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        undertow = Undertow.builder()
+                .setBufferSize(16 * 1024)
+                .setServerOption(UndertowOptions.MAX_AJP_PACKET_SIZE, 65536)
+                .setServerOption(UndertowOptions.AJP_PREFETCH_BODY_CHUNKS, true)
+                .addListener(
+                        new Undertow.ListenerBuilder()
+                                .setType(Undertow.ListenerType.AJP)
+                                .setHost(DefaultServer.getHostAddress())
+                                .setPort(PORT)
+                ).setHandler(new HttpHandler() {
+                    @Override
+                    public void handleRequest(HttpServerExchange exchange) throws Exception {
+                        if (exchange.getRequestPath().equals("/small")) {
+                            //lots of small non-blocking writes from the IO thread
+                            final StreamSinkChannel channel = exchange.getResponseChannel();
+                            for (int i = 0; i < WRITE_COUNT; ++i) {
+                                final ByteBuffer data = ByteBuffer.wrap(data(WRITE_SIZE));
+                                while (data.hasRemaining()) {
+                                    if (channel.write(data) == 0) {
+                                        throw new IOException("The channel is not writable");
+                                    }
+                                }
+                            }
+                            exchange.endExchange();
+                            return;
+                        }
+                        if (exchange.getRequestPath().equals("/unflushed")) {
+                            //write some data without flushing, and keep the exchange open
+                            exchange.dispatch(SameThreadExecutor.INSTANCE, () -> {
+                                try {
+                                    exchange.getResponseChannel().write(ByteBuffer.wrap("hello".getBytes(StandardCharsets.US_ASCII)));
+                                } catch (IOException e) {
+                                    throw new RuntimeException(e);
+                                }
+                                unflushed = exchange;
+                            });
+                            return;
+                        }
+                        if (exchange.isInIoThread()) {
+                            exchange.dispatch(this);
+                            return;
+                        }
+                        exchange.startBlocking();
+                        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                        final InputStream in = exchange.getInputStream();
+                        final byte[] buffer = new byte[1024];
+                        int r;
+                        while ((r = in.read(buffer)) > 0) {
+                            body.write(buffer, 0, r);
+                        }
+                        final byte[] data = body.toByteArray();
+                        final StreamSinkChannel channel = exchange.getResponseChannel();
+                        for (int i = 0; i < data.length; i += WRITE_SIZE) {
+                            Channels.writeBlocking(channel, ByteBuffer.wrap(data, i, Math.min(WRITE_SIZE, data.length - i)));
+                        }
+                        channel.shutdownWrites();
+                        Channels.flushBlocking(channel);
+                    }
+                })
+                .build();
+        undertow.start();
+
+        DefaultServer.setRootHandler(ProxyHandler.builder().setProxyClient(new LoadBalancingProxyClient().addHost(new URI("ajp://" + DefaultServer.getHostAddress() + ":" + PORT))).build());
+    }
+
+    @AfterClass
+    public static void after() {
+        undertow.stop();
+        // sleep 1 s to prevent BindException (Address already in use) when running the CI
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException ignore) {}
+    }
+
+    @Test
+    public void testSmallBody() throws Exception {
+        runTest(10);
+    }
+
+    @Test
+    public void testLargeBody() throws Exception {
+        runTest(200000);
+    }
+
+    @Test
+    public void testBodyOfExactlyOneChunk() throws Exception {
+        runTest(8186);
+    }
+
+    @Test
+    public void testSmallWritesAreCoalesced() throws Exception {
+        try (Socket socket = new Socket(DefaultServer.getHostAddress(), PORT)) {
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write(createAjpRequest("/small"));
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            Assert.assertEquals(SEND_HEADERS, readPacket(in)[0]);
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int chunks = 0;
+            byte[] packet;
+            while ((packet = readPacket(in))[0] != END_RESPONSE) {
+                Assert.assertEquals(SEND_BODY_CHUNK, packet[0]);
+                final int length = ((packet[1] & 0xFF) << 8) | (packet[2] & 0xFF);
+                if (length > 0) {
+                    ++chunks;
+                    body.write(packet, 3, length);
+                }
+            }
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (int i = 0; i < WRITE_COUNT; ++i) {
+                expected.write(data(WRITE_SIZE));
+            }
+            Assert.assertArrayEquals(expected.toByteArray(), body.toByteArray());
+            //the whole response fits in a single packet, rather than one packet per write
+            Assert.assertEquals(1, chunks);
+        }
+    }
+
+    @Test
+    public void testUnflushedSmallWriteIsSent() throws Exception {
+        unflushed = null;
+        try (Socket socket = new Socket(DefaultServer.getHostAddress(), PORT)) {
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write(createAjpRequest("/unflushed"));
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            Assert.assertEquals(SEND_HEADERS, readPacket(in)[0]);
+            //the data arrives while the exchange is still open, without a flush
+            byte[] packet = readPacket(in);
+            Assert.assertEquals(SEND_BODY_CHUNK, packet[0]);
+            Assert.assertEquals("hello", new String(packet, 3, ((packet[1] & 0xFF) << 8) | (packet[2] & 0xFF), StandardCharsets.US_ASCII));
+            final HttpServerExchange exchange = unflushed;
+            Assert.assertNotNull(exchange);
+            Assert.assertFalse(exchange.isComplete());
+            exchange.getIoThread().execute(exchange::endExchange);
+            while ((packet = readPacket(in))[0] != END_RESPONSE) {
+                Assert.assertEquals(SEND_BODY_CHUNK, packet[0]);
+            }
+        }
+    }
+
+    private static byte[] data(int size) {
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) ('a' + (i % 26));
+        }
+        return data;
+    }
+
+    /**
+     * Creates a GET FORWARD_REQUEST packet without headers
+     */
+    private static byte[] createAjpRequest(String path) {
+        final ByteBuffer data = ByteBuffer.allocate(1000);
+        data.put((byte) 0x12);
+        data.put((byte) 0x34);
+        data.put((byte) 0); //size
+        data.put((byte) 0);
+        data.put((byte) 2);
+        data.put((byte) 2); //GET method
+        AjpParsingUnitTestCase.putString(data, "HTTP/1.1");
+        AjpParsingUnitTestCase.putString(data, path);
+        AjpParsingUnitTestCase.putString(data, "127.0.0.1"); //REMOTE_ADDRESS
+        AjpParsingUnitTestCase.putString(data, "localhost"); //REMOTE_HOST
+        AjpParsingUnitTestCase.putString(data, "localhost"); //SERVER_NAME
+        AjpParsingUnitTestCase.putInt(data, PORT); //SERVER_PORT
+        data.put((byte) 0); //IS_SSL
+        AjpParsingUnitTestCase.putInt(data, 0); //number of headers
+        data.put((byte) 0xFF);
+        final int dataLength = data.position() - 4;
+        data.put(2, (byte) ((dataLength >> 8) & 0xFF));
+        data.put(3, (byte) (dataLength & 0xFF));
+        data.flip();
+        final byte[] request = new byte[data.remaining()];
+        data.get(request);
+        return request;
+    }
+
+    /**
+     * Reads a packet sent by the container
+     *
+     * @return The packet data, starting with the prefix code
+     */
+    private static byte[] readPacket(DataInputStream in) throws IOException {
+        Assert.assertEquals('A', in.readUnsignedByte());
+        Assert.assertEquals('B', in.readUnsignedByte());
+        final byte[] packet = new byte[in.readUnsignedShort()];
+        in.readFully(packet);
+        return packet;
+    }
+
+    private void runTest(int size) throws Exception {
+        final byte[] data = data(size);
+        TestHttpClient client = new TestHttpClient();
+        try {
+            for (int i = 0; i < 3; ++i) {
+                HttpPost post = new HttpPost(DefaultServer.getDefaultServerURL() + "/path");
+                post.setEntity(new ByteArrayEntity(data));
+                HttpResponse result = client.execute(post);
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                Assert.assertArrayEquals(data, EntityUtils.toByteArray(result.getEntity()));
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.security;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import io.undertow.security.api.AuthenticationMechanism;
+import io.undertow.security.impl.BasicAuthenticationCache;
+import io.undertow.security.impl.BasicAuthenticationMechanism;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.FlexBase64;
+import io.undertow.util.StatusCodes;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static io.undertow.util.Headers.AUTHORIZATION;
+import static io.undertow.util.Headers.BASIC;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests BASIC authentication with a cache of verified credentials.
+ */
+@RunWith(DefaultServer.class)
+public class BasicAuthenticationCacheTestCase extends AuthenticationTestBase {
+
+    private static final BasicAuthenticationCache cache = new BasicAuthenticationCache(10, 60000);
+
+    @Override
+    protected List<AuthenticationMechanism> getTestMechanisms() {
+        return Collections.singletonList(new BasicAuthenticationMechanism("Test Realm", "BASIC", false, null, StandardCharsets.UTF_8, Collections.emptyMap(), cache));
+    }
+
+    @Test
+    public void testCachedCredentials() throws Exception {
+        cache.invalidateAll();
+        final long hits = cache.getHits();
+        final long misses = cache.getMisses();
+        TestHttpClient client = new TestHttpClient();
+        try {
+            assertStatus(client, "userOne:passwordOne", StatusCodes.OK);
+            assertEquals(hits, cache.getHits());
+            assertEquals(misses + 1, cache.getMisses());
+            assertStatus(client, "userOne:passwordOne", StatusCodes.OK);
+            assertStatus(client, "userOne:passwordOne", StatusCodes.OK);
+            assertEquals(hits + 2, cache.getHits());
+            assertEquals(1, cache.size());
+
+            //failed attempts are not cached
+            assertStatus(client, "userOne:passwordTwo", StatusCodes.UNAUTHORIZED);
+            assertStatus(client, "userOne:passwordTwo", StatusCodes.UNAUTHORIZED);
+            assertEquals(hits + 2, cache.getHits());
+            assertEquals(1, cache.size());
+
+            assertStatus(client, "userTwo:passwordTwo", StatusCodes.OK);
+            assertEquals(2, cache.size());
+            cache.invalidate("userOne");
+            assertEquals(1, cache.size());
+            assertStatus(client, "userOne:passwordOne", StatusCodes.OK);
+            assertEquals(hits + 2, cache.getHits());
+            assertStatus(client, "userTwo:passwordTwo", StatusCodes.OK);
+            assertEquals(hits + 3, cache.getHits());
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    private static void assertStatus(TestHttpClient client, String credentials, int status) throws Exception {
+        HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL());
+        get.addHeader(AUTHORIZATION.toString(), BASIC + " " + FlexBase64.encodeString(credentials.getBytes(), false));
+        HttpResponse result = client.execute(get);
+        assertEquals(status, result.getStatusLine().getStatusCode());
+        HttpClientUtils.readResponse(result);
+    }
+}
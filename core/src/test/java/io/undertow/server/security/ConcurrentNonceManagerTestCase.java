@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.security;
+
+import java.nio.ByteBuffer;
+
+import io.undertow.security.impl.ConcurrentNonceManager;
+import io.undertow.testutils.category.UnitTest;
+import io.undertow.util.FlexBase64;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests for the {@link ConcurrentNonceManager}
+ */
+@Category(UnitTest.class)
+public class ConcurrentNonceManagerTestCase {
+
+    @Test
+    public void testNonceCount() {
+        ConcurrentNonceManager manager = new ConcurrentNonceManager();
+        String nonce = manager.nextNonce(null, null);
+        Assert.assertTrue(manager.validateNonce(nonce, 1, null));
+        Assert.assertFalse(manager.validateNonce(nonce, 1, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 2, null));
+        //counts may arrive out of order, but each is only accepted once
+        Assert.assertTrue(manager.validateNonce(nonce, 5, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 4, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 3, null));
+        Assert.assertFalse(manager.validateNonce(nonce, 3, null));
+        Assert.assertFalse(manager.validateNonce(nonce, 5, null));
+        //counts that fall out of the window are rejected
+        Assert.assertTrue(manager.validateNonce(nonce, 100, null));
+        Assert.assertFalse(manager.validateNonce(nonce, 6, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 99, null));
+        Assert.assertEquals(nonce, manager.nextNonce(nonce, null));
+    }
+
+    @Test
+    public void testSingleUse() {
+        ConcurrentNonceManager manager = new ConcurrentNonceManager();
+        String nonce = manager.nextNonce(null, null);
+        Assert.assertTrue(manager.validateNonce(nonce, -1, null));
+        Assert.assertFalse(manager.validateNonce(nonce, -1, null));
+        Assert.assertNotEquals(nonce, manager.nextNonce(nonce, null));
+    }
+
+    @Test
+    public void testForeignNonce() {
+        String nonce = new ConcurrentNonceManager().nextNonce(null, null);
+        ConcurrentNonceManager manager = new ConcurrentNonceManager();
+        Assert.assertFalse(manager.validateNonce(nonce, 1, null));
+        Assert.assertFalse(manager.validateNonce(nonce, -1, null));
+        Assert.assertNotEquals(nonce, manager.nextNonce(nonce, null));
+    }
+
+    @Test
+    public void testTamperedNonce() throws Exception {
+        ConcurrentNonceManager manager = new ConcurrentNonceManager();
+        String nonce = manager.nextNonce(null, null);
+        ByteBuffer buffer = FlexBase64.decode(nonce);
+        byte[] decoded = new byte[buffer.remaining()];
+        buffer.get(decoded);
+        //the embedded timestamp cannot be changed without the secret, as the hash no longer matches
+        String timeStamp = Long.toString(System.currentTimeMillis() - 60 * 60 * 1000);
+        System.arraycopy(timeStamp.getBytes(), 0, decoded, 9, timeStamp.length());
+        Assert.assertFalse(manager.validateNonce(FlexBase64.encodeString(decoded, false), 1, null));
+    }
+
+    @Test
+    public void testSessionKey() {
+        ConcurrentNonceManager manager = new ConcurrentNonceManager();
+        String nonce = manager.nextNonce(null, null);
+        Assert.assertNull(manager.lookupHash(nonce));
+        Assert.assertTrue(manager.validateNonce(nonce, 1, null));
+        byte[] hash = {1, 2, 3};
+        manager.associateHash(nonce, hash);
+        Assert.assertArrayEquals(hash, manager.lookupHash(nonce));
+    }
+}
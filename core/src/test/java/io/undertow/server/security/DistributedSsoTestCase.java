@@ -0,0 +1,238 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.security;
+
+import io.undertow.security.api.AuthenticationMechanism;
+import io.undertow.security.api.AuthenticationMode;
+import io.undertow.security.api.NotificationReceiver;
+import io.undertow.security.api.SecurityNotification;
+import io.undertow.security.handlers.AuthenticationCallHandler;
+import io.undertow.security.handlers.AuthenticationConstraintHandler;
+import io.undertow.security.handlers.AuthenticationMechanismsHandler;
+import io.undertow.security.handlers.NotificationReceiverHandler;
+import io.undertow.security.handlers.SecurityInitialHandler;
+import io.undertow.security.impl.BasicAuthenticationMechanism;
+import io.undertow.security.impl.DistributedSingleSignOnManager;
+import io.undertow.security.impl.FormAuthenticationMechanism;
+import io.undertow.security.impl.LoopbackSingleSignOnStore;
+import io.undertow.security.impl.SingleSignOnAuthenticationMechanism;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.PathHandler;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.server.session.InMemorySessionManager;
+import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionAttachmentHandler;
+import io.undertow.server.session.SessionCookieConfig;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.FlexBase64;
+import io.undertow.util.StatusCodes;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static io.undertow.util.Headers.AUTHORIZATION;
+import static io.undertow.util.Headers.BASIC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests single sign on between two simulated nodes that share a {@link LoopbackSingleSignOnStore} but have their own
+ * single sign on managers and session managers.
+ */
+@RunWith(DefaultServer.class)
+public class DistributedSsoTestCase extends AuthenticationTestBase {
+
+    private static final InMemorySessionManager node1Sessions = new InMemorySessionManager("");
+    private static final InMemorySessionManager node2Sessions = new InMemorySessionManager("");
+
+    @BeforeClass
+    public static void setup() {
+        final LoopbackSingleSignOnStore store = new LoopbackSingleSignOnStore();
+        final PathHandler path = new PathHandler();
+
+        List<AuthenticationMechanism> mechs = new ArrayList<>();
+        mechs.add(new SingleSignOnAuthenticationMechanism(new DistributedSingleSignOnManager(store)));
+        mechs.add(new BasicAuthenticationMechanism("Test Realm"));
+        path.addPrefixPath("/node1", node(mechs, node1Sessions, "node1"));
+
+        mechs = new ArrayList<>();
+        mechs.add(new SingleSignOnAuthenticationMechanism(new DistributedSingleSignOnManager(store)));
+        mechs.add(new FormAuthenticationMechanism("form", "/login", "/error"));
+        path.addPrefixPath("/node2", node(mechs, node2Sessions, "node2"));
+        path.addPrefixPath("/login", new ResponseCodeHandler(StatusCodes.UNAUTHORIZED));
+
+        DefaultServer.setRootHandler(path);
+    }
+
+    /**
+     * Both nodes run the same deployment, each with its own session cookie so that the client keeps a session on each
+     */
+    private static HttpHandler node(List<AuthenticationMechanism> mechs, InMemorySessionManager sessionManager, String cookieName) {
+        HttpHandler current = new ResponseHandler();
+        current = new AuthenticationCallHandler(current);
+        current = new AuthenticationConstraintHandler(current);
+        current = new AuthenticationMechanismsHandler(current, mechs);
+        current = new NotificationReceiverHandler(current, Collections.<NotificationReceiver>singleton(auditReceiver));
+        current = new SecurityInitialHandler(AuthenticationMode.PRO_ACTIVE, identityManager, current);
+        return new SessionAttachmentHandler(current, sessionManager, new SessionCookieConfig().setCookieName(cookieName));
+    }
+
+    @Override
+    protected List<AuthenticationMechanism> getTestMechanisms() {
+        return null;//not used
+    }
+
+    @Test
+    public void testSsoAcrossNodes() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            client.setCookieStore(new BasicCookieStore());
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/node1");
+            get.addHeader(AUTHORIZATION.toString(), BASIC + " " + FlexBase64.encodeString("userOne:passwordOne".getBytes(), false));
+            HttpResponse result = client.execute(get);
+            assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+            assertSingleNotificationType(SecurityNotification.EventType.AUTHENTICATED);
+
+            //the second node only knows about the single sign on through the store
+            for (int i = 0; i < 2; ++i) {
+                get = new HttpGet(DefaultServer.getDefaultServerURL() + "/node2");
+                result = client.execute(get);
+                assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                HttpClientUtils.readResponse(result);
+                assertSingleNotificationType(SecurityNotification.EventType.AUTHENTICATED);
+            }
+
+            //logging out on the first node removes the single sign on from the near cache of the second node
+            get = new HttpGet(DefaultServer.getDefaultServerURL() + "/node1?logout=true");
+            get.addHeader(AUTHORIZATION.toString(), BASIC + " " + FlexBase64.encodeString("userOne:passwordOne".getBytes(), false));
+            result = client.execute(get);
+            assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+            assertNotifiactions(SecurityNotification.EventType.AUTHENTICATED, SecurityNotification.EventType.LOGGED_OUT);
+
+            get = new HttpGet(DefaultServer.getDefaultServerURL() + "/node2");
+            result = client.execute(get);
+            assertEquals(StatusCodes.UNAUTHORIZED, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testSessionTimeoutOnOneNode() throws Exception {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            client.setCookieStore(new BasicCookieStore());
+            loginOnBothNodes(client);
+
+            final Session session = node1Sessions.getSession(sessionId(client, "node1"));
+            assertNotNull(session);
+            session.setMaxInactiveInterval(1);
+            final long end = System.currentTimeMillis() + 10000;
+            while (node1Sessions.getSession(session.getId()) != null && System.currentTimeMillis() < end) {
+                Thread.sleep(50);
+            }
+            assertNull(node1Sessions.getSession(session.getId()));
+
+            //the single sign on still has the session of the second node
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/node2");
+            HttpResponse result = client.execute(get);
+            assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+            assertSingleNotificationType(SecurityNotification.EventType.AUTHENTICATED);
+
+            //and the first node can use it again without credentials
+            get = new HttpGet(DefaultServer.getDefaultServerURL() + "/node1");
+            result = client.execute(get);
+            assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+            assertSingleNotificationType(SecurityNotification.EventType.AUTHENTICATED);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testLogoutFromAnotherNode() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            client.setCookieStore(new BasicCookieStore());
+            loginOnBothNodes(client);
+            final String node1Session = sessionId(client, "node1");
+            final String node2Session = sessionId(client, "node2");
+            assertNotNull(node1Sessions.getSession(node1Session));
+
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/node2?logout=true");
+            HttpResponse result = client.execute(get);
+            assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+            assertNotifiactions(SecurityNotification.EventType.AUTHENTICATED, SecurityNotification.EventType.LOGGED_OUT);
+
+            //the sessions of the single sign on are invalidated on every node
+            assertNull(node1Sessions.getSession(node1Session));
+            assertNull(node2Sessions.getSession(node2Session));
+
+            get = new HttpGet(DefaultServer.getDefaultServerURL() + "/node1");
+            result = client.execute(get);
+            assertEquals(StatusCodes.UNAUTHORIZED, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    private static void loginOnBothNodes(TestHttpClient client) throws IOException {
+        HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/node1");
+        get.addHeader(AUTHORIZATION.toString(), BASIC + " " + FlexBase64.encodeString("userOne:passwordOne".getBytes(), false));
+        HttpResponse result = client.execute(get);
+        assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+        HttpClientUtils.readResponse(result);
+        assertSingleNotificationType(SecurityNotification.EventType.AUTHENTICATED);
+
+        get = new HttpGet(DefaultServer.getDefaultServerURL() + "/node2");
+        result = client.execute(get);
+        assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+        HttpClientUtils.readResponse(result);
+        assertSingleNotificationType(SecurityNotification.EventType.AUTHENTICATED);
+    }
+
+    private static String sessionId(TestHttpClient client, String cookieName) {
+        for (Cookie cookie : client.getCookieStore().getCookies()) {
+            if (cookie.getName().equals(cookieName)) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+}
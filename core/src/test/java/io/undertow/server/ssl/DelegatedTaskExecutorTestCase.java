@@ -20,19 +20,28 @@ package io.undertow.server.ssl;
 
 
 import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
+import io.undertow.protocols.ssl.SslHandshakeExecutor;
+import io.undertow.protocols.ssl.SslHandshakeStatistics;
 import io.undertow.server.handlers.ResponseCodeHandler;
 import io.undertow.testutils.DefaultServer;
 import io.undertow.testutils.TestHttpClient;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.junit.Test;
+import org.xnio.IoUtils;
 
 import javax.net.ssl.SSLHandshakeException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -79,6 +88,40 @@ public class DelegatedTaskExecutorTestCase {
         }
     }
 
+    @Test
+    public void testSslHandshakeExecutor() throws Exception {
+        SslHandshakeExecutor delegatedTaskExecutor = new SslHandshakeExecutor(1, 10);
+        Undertow undertow = Undertow.builder()
+                .addHttpsListener(0, null, DefaultServer.getServerSslContext())
+                .setSslEngineDelegatedTaskExecutor(delegatedTaskExecutor)
+                .setHandler(ResponseCodeHandler.HANDLE_200)
+                .build();
+
+        TestHttpClient client = new TestHttpClient();
+        client.setSSLContext(DefaultServer.getClientSSLContext());
+        undertow.start();
+        int port = port(undertow);
+        try(CloseableHttpResponse response = client.execute(new HttpGet("https://localhost:" + port))) {
+            assertEquals(200, response.getStatusLine().getStatusCode());
+            SslHandshakeStatistics statistics = undertow.getListenerInfo().get(0).getSslHandshakeStatistics();
+            assertEquals(1, statistics.getCompletedHandshakes());
+            assertEquals(0, statistics.getActiveHandshakes());
+            assertTrue("expected delegated tasks to be run", statistics.getTaskCount() > 0);
+            long histogramTotal = 0;
+            for (long count : statistics.getHandshakeTimeHistogram()) {
+                histogramTotal += count;
+            }
+            assertEquals(1, histogramTotal);
+        } finally {
+            undertow.stop();
+            client.getConnectionManager().shutdown();
+            delegatedTaskExecutor.shutdown();
+            assertTrue(
+                    "Executor did not shut down in time",
+                    delegatedTaskExecutor.awaitTermination(1, TimeUnit.SECONDS));
+        }
+    }
+
     @Test
     public void testRejection() {
         Undertow undertow = Undertow.builder()
@@ -122,6 +165,146 @@ public class DelegatedTaskExecutorTestCase {
         }
     }
 
+    @Test
+    public void testMaxConcurrentHandshakes() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        ExecutorService delegatedTaskExecutor = Executors.newCachedThreadPool();
+        ExecutorService clientExecutor = Executors.newSingleThreadExecutor();
+        Undertow undertow = Undertow.builder()
+                .addHttpsListener(0, null, DefaultServer.getServerSslContext())
+                .setServerOption(UndertowOptions.SSL_MAX_CONCURRENT_HANDSHAKES, 1)
+                //the first handshake does not complete until the latch is released
+                .setSslEngineDelegatedTaskExecutor(task -> delegatedTaskExecutor.execute(() -> {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    task.run();
+                }))
+                .setHandler(ResponseCodeHandler.HANDLE_200)
+                .build();
+
+        TestHttpClient first = new TestHttpClient();
+        first.setSSLContext(DefaultServer.getClientSSLContext());
+        TestHttpClient second = new TestHttpClient();
+        second.setSSLContext(DefaultServer.getClientSSLContext());
+        undertow.start();
+        try {
+            int port = port(undertow);
+            SslHandshakeStatistics statistics = undertow.getListenerInfo().get(0).getSslHandshakeStatistics();
+            Future<Integer> firstResult = clientExecutor.submit(() -> {
+                try (CloseableHttpResponse response = first.execute(new HttpGet("https://localhost:" + port))) {
+                    return response.getStatusLine().getStatusCode();
+                }
+            });
+            long end = System.currentTimeMillis() + 10000;
+            while (statistics.getActiveHandshakes() == 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, statistics.getActiveHandshakes());
+            try (CloseableHttpResponse response = second.execute(new HttpGet("https://localhost:" + port))) {
+                fail("Expected the handshake to be rejected");
+            } catch (IOException expected) {
+            }
+            assertEquals(1, statistics.getRejectedHandshakes());
+
+            latch.countDown();
+            assertEquals(200, (int) firstResult.get(10, TimeUnit.SECONDS));
+            //the slot was released, so a new handshake is accepted
+            try (CloseableHttpResponse response = second.execute(new HttpGet("https://localhost:" + port))) {
+                assertEquals(200, response.getStatusLine().getStatusCode());
+            }
+            assertEquals(2, statistics.getCompletedHandshakes());
+            assertEquals(0, statistics.getActiveHandshakes());
+        } finally {
+            latch.countDown();
+            undertow.stop();
+            first.getConnectionManager().shutdown();
+            second.getConnectionManager().shutdown();
+            clientExecutor.shutdownNow();
+            delegatedTaskExecutor.shutdown();
+            assertTrue(
+                    "Executor did not shut down in time",
+                    delegatedTaskExecutor.awaitTermination(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testIdleConnectionsDoNotTakeHandshakeSlots() throws Exception {
+        Undertow undertow = Undertow.builder()
+                .addHttpsListener(0, null, DefaultServer.getServerSslContext())
+                .setServerOption(UndertowOptions.SSL_MAX_CONCURRENT_HANDSHAKES, 1)
+                .setHandler(ResponseCodeHandler.HANDLE_200)
+                .build();
+
+        TestHttpClient client = new TestHttpClient();
+        client.setSSLContext(DefaultServer.getClientSSLContext());
+        List<Socket> idle = new ArrayList<>();
+        undertow.start();
+        try {
+            int port = port(undertow);
+            for (int i = 0; i < 5; ++i) {
+                idle.add(new Socket("localhost", port));
+            }
+            SslHandshakeStatistics statistics = undertow.getListenerInfo().get(0).getSslHandshakeStatistics();
+            try (CloseableHttpResponse response = client.execute(new HttpGet("https://localhost:" + port))) {
+                assertEquals(200, response.getStatusLine().getStatusCode());
+            }
+            assertEquals(0, statistics.getActiveHandshakes());
+            assertEquals(0, statistics.getRejectedHandshakes());
+        } finally {
+            for (Socket socket : idle) {
+                IoUtils.safeClose(socket);
+            }
+            undertow.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testStalledHandshakeTimesOut() throws Exception {
+        Undertow undertow = Undertow.builder()
+                .addHttpsListener(0, null, DefaultServer.getServerSslContext())
+                .setServerOption(UndertowOptions.SSL_MAX_CONCURRENT_HANDSHAKES, 1)
+                .setServerOption(UndertowOptions.SSL_HANDSHAKE_TIMEOUT, 500L)
+                .setHandler(ResponseCodeHandler.HANDLE_200)
+                .build();
+
+        TestHttpClient client = new TestHttpClient();
+        client.setSSLContext(DefaultServer.getClientSSLContext());
+        undertow.start();
+        try (Socket stalled = new Socket("localhost", port(undertow))) {
+            int port = port(undertow);
+            SslHandshakeStatistics statistics = undertow.getListenerInfo().get(0).getSslHandshakeStatistics();
+            //the first byte of a TLS handshake record, the rest of the ClientHello never arrives
+            stalled.getOutputStream().write(0x16);
+            stalled.getOutputStream().flush();
+            long end = System.currentTimeMillis() + 10000;
+            while (statistics.getActiveHandshakes() == 0 && statistics.getFailedHandshakes() == 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            //the slot is freed once the deadline passes
+            while (statistics.getActiveHandshakes() != 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, statistics.getActiveHandshakes());
+            assertEquals(1, statistics.getFailedHandshakes());
+            stalled.setSoTimeout(5000);
+            try {
+                assertEquals("expected the stalled connection to be closed", -1, stalled.getInputStream().read());
+            } catch (SocketException expected) {
+                //the connection was reset
+            }
+            try (CloseableHttpResponse response = client.execute(new HttpGet("https://localhost:" + port))) {
+                assertEquals(200, response.getStatusLine().getStatusCode());
+            }
+        } finally {
+            undertow.stop();
+            client.getConnectionManager().shutdown();
+        }
+    }
+
     private static int port(Undertow undertow) {
         if (undertow.getListenerInfo().size() != 1) {
             throw new IllegalStateException("Expected exactly one listener");
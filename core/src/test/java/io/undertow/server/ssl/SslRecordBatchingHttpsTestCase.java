@@ -0,0 +1,376 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.ssl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+
+import io.undertow.UndertowOptions;
+import io.undertow.protocols.ssl.UndertowXnioSsl;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.protocol.http.HttpOpenListener;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.ProxyIgnore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.Buffers;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Sequence;
+import org.xnio.StreamConnection;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.StreamSinkConduit;
+
+/**
+ * Tests HTTPS requests and responses with {@link UndertowOptions#SSL_BATCH_RECORDS}. The client sends several
+ * pipelined requests in one write, with a request body that does not fit into the read buffer of the server and with
+ * records that are split across writes, and the server writes the records of large responses to the socket together.
+ */
+@RunWith(DefaultServer.class)
+@ProxyIgnore
+public class SslRecordBatchingHttpsTestCase {
+
+    private static final int SMALL_WRITES = 2000;
+    private static final int LARGE_SIZE = 256 * 1024;
+    private static final int ECHO_SIZE = 100 * 1024;
+
+    private static final HttpHandler HANDLER = new HttpHandler() {
+        @Override
+        public void handleRequest(final HttpServerExchange exchange) throws Exception {
+            switch (exchange.getRelativePath()) {
+                case "/small":
+                    if (exchange.isInIoThread()) {
+                        exchange.dispatch(this);
+                        return;
+                    }
+                    exchange.setResponseContentLength(smallResponse().length);
+                    exchange.startBlocking();
+                    final OutputStream out = exchange.getOutputStream();
+                    for (int i = 0; i < SMALL_WRITES; ++i) {
+                        out.write(smallWrite(i));
+                    }
+                    out.close();
+                    break;
+                case "/large":
+                    exchange.setResponseContentLength(LARGE_SIZE);
+                    exchange.getResponseSender().send(ByteBuffer.wrap(data(LARGE_SIZE)));
+                    break;
+                case "/echo":
+                    exchange.getRequestReceiver().receiveFullBytes((ex, body) -> {
+                        ex.setResponseContentLength(body.length);
+                        ex.getResponseSender().send(ByteBuffer.wrap(body));
+                    });
+                    break;
+                default:
+                    exchange.setStatusCode(404);
+            }
+        }
+    };
+
+    /**
+     * The largest amount of data that the server passed to a single socket write
+     */
+    private final AtomicInteger largestWrite = new AtomicInteger();
+    private AcceptingChannel<StreamConnection> server;
+
+    @After
+    public void stopServer() {
+        IoUtils.safeClose(server);
+    }
+
+    @Test
+    public void testRecordsAreBatched() throws Exception {
+        int packetSize = runRequests(true);
+        Assert.assertTrue("largest write was " + largestWrite.get(), largestWrite.get() > packetSize);
+    }
+
+    @Test
+    public void testRecordsAreNotBatchedByDefault() throws Exception {
+        int packetSize = runRequests(false);
+        Assert.assertTrue("largest write was " + largestWrite.get(), largestWrite.get() <= packetSize);
+    }
+
+    /**
+     * Sends the requests and checks the responses
+     *
+     * @return the packet buffer size of the TLS session
+     */
+    private int runRequests(boolean batchRecords) throws Exception {
+        final int port = startServer(batchRecords);
+        try (TlsClient client = new TlsClient(port)) {
+            final byte[] echo = data(ECHO_SIZE);
+            //every request is wrapped into records of its own, and they are sent together so the server reads several
+            //records at once
+            final ByteArrayOutputStream records = new ByteArrayOutputStream();
+            records.write(client.wrap(request("GET /small", 0)));
+            records.write(client.wrap(request("POST /echo", ECHO_SIZE)));
+            records.write(client.wrap(ByteBuffer.wrap(echo)));
+            records.write(client.wrap(request("GET /large", 0)));
+            final byte[] data = records.toByteArray();
+            //split the records up so that the server has to wait for the rest of a record that it has started to read
+            final int[] splits = {0, data.length / 2, data.length - 10, data.length};
+            for (int i = 1; i < splits.length; ++i) {
+                client.write(data, splits[i - 1], splits[i] - splits[i - 1]);
+                Thread.sleep(100);
+            }
+            final List<byte[]> responses = client.readResponses(3);
+            Assert.assertArrayEquals(smallResponse(), responses.get(0));
+            Assert.assertArrayEquals(echo, responses.get(1));
+            Assert.assertArrayEquals(data(LARGE_SIZE), responses.get(2));
+            return client.engine.getSession().getPacketBufferSize();
+        }
+    }
+
+    private int startServer(boolean batchRecords) throws IOException {
+        final OptionMap options = OptionMap.create(Options.SSL_ENABLED_PROTOCOLS, Sequence.of("TLSv1.2"), UndertowOptions.SSL_BATCH_RECORDS, batchRecords);
+        final UndertowXnioSsl ssl = new UndertowXnioSsl(DefaultServer.getWorker().getXnio(), options, DefaultServer.SSL_BUFFER_POOL, DefaultServer.getServerSslContext());
+        final HttpOpenListener openListener = new HttpOpenListener(DefaultServer.getBufferPool(), OptionMap.EMPTY);
+        openListener.setRootHandler(HANDLER);
+        server = DefaultServer.getWorker().createStreamConnectionServer(new InetSocketAddress(DefaultServer.getHostAddress(), 0), channel -> {
+            try {
+                StreamConnection connection;
+                while ((connection = channel.accept()) != null) {
+                    connection.getSinkChannel().setConduit(new RecordingSinkConduit(connection.getSinkChannel().getConduit(), largestWrite));
+                    openListener.handleEvent(ssl.wrapExistingConnection(connection, options, false));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, OptionMap.EMPTY);
+        server.resumeAccepts();
+        return server.getLocalAddress(InetSocketAddress.class).getPort();
+    }
+
+    private static ByteBuffer request(String requestLine, int contentLength) {
+        return ByteBuffer.wrap((requestLine + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + contentLength + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] smallWrite(int i) {
+        return String.format("%09d\n", i).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] smallResponse() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < SMALL_WRITES; ++i) {
+            out.writeBytes(smallWrite(i));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] data(int size) {
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    /**
+     * Records the largest amount of data that is passed to a single write
+     */
+    private static final class RecordingSinkConduit extends AbstractStreamSinkConduit<StreamSinkConduit> {
+
+        private final AtomicInteger largestWrite;
+
+        RecordingSinkConduit(StreamSinkConduit next, AtomicInteger largestWrite) {
+            super(next);
+            this.largestWrite = largestWrite;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            largestWrite.accumulateAndGet(src.remaining(), Math::max);
+            return next.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offs, int len) throws IOException {
+            largestWrite.accumulateAndGet((int) Buffers.remaining(srcs, offs, len), Math::max);
+            return next.write(srcs, offs, len);
+        }
+    }
+
+    /**
+     * A blocking TLS client that controls how the records it sends are split up into writes to the socket
+     */
+    private static final class TlsClient implements Closeable {
+
+        private final Socket socket;
+        private final SSLEngine engine;
+        private final InputStream in;
+        private final OutputStream out;
+        private final ByteBuffer netIn;
+        private ByteBuffer appIn;
+
+        TlsClient(int port) throws IOException {
+            socket = new Socket(DefaultServer.getHostAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = socket.getInputStream();
+            out = socket.getOutputStream();
+            engine = DefaultServer.getClientSSLContext().createSSLEngine(DefaultServer.getHostAddress(), port);
+            engine.setUseClientMode(true);
+            netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+            handshake();
+        }
+
+        private void handshake() throws IOException {
+            engine.beginHandshake();
+            for (;;) {
+                switch (engine.getHandshakeStatus()) {
+                    case NEED_TASK:
+                        Runnable task;
+                        while ((task = engine.getDelegatedTask()) != null) {
+                            task.run();
+                        }
+                        break;
+                    case NEED_WRAP:
+                        final byte[] records = wrap(ByteBuffer.allocate(0));
+                        write(records, 0, records.length);
+                        break;
+                    case NEED_UNWRAP:
+                    case NEED_UNWRAP_AGAIN:
+                        unwrap();
+                        break;
+                    default:
+                        return;
+                }
+            }
+        }
+
+        /**
+         * Wraps the data into as many records as needed
+         */
+        byte[] wrap(ByteBuffer src) throws IOException {
+            final ByteArrayOutputStream records = new ByteArrayOutputStream();
+            final ByteBuffer dst = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            do {
+                dst.clear();
+                final SSLEngineResult result = engine.wrap(src, dst);
+                Assert.assertEquals(SSLEngineResult.Status.OK, result.getStatus());
+                records.write(dst.array(), 0, dst.position());
+            } while (src.hasRemaining());
+            return records.toByteArray();
+        }
+
+        void write(byte[] data, int off, int len) throws IOException {
+            out.write(data, off, len);
+            out.flush();
+        }
+
+        /**
+         * Reads from the socket until a record has been unwrapped into the application buffer
+         */
+        private void unwrap() throws IOException {
+            for (;;) {
+                netIn.flip();
+                final SSLEngineResult result = engine.unwrap(netIn, appIn);
+                netIn.compact();
+                switch (result.getStatus()) {
+                    case OK:
+                        return;
+                    case BUFFER_UNDERFLOW:
+                        final int read = in.read(netIn.array(), netIn.position(), netIn.remaining());
+                        if (read == -1) {
+                            throw new EOFException();
+                        }
+                        netIn.position(netIn.position() + read);
+                        break;
+                    case BUFFER_OVERFLOW:
+                        final ByteBuffer expanded = ByteBuffer.allocate(appIn.capacity() * 2);
+                        appIn.flip();
+                        expanded.put(appIn);
+                        appIn = expanded;
+                        break;
+                    default:
+                        Assert.fail("Unexpected unwrap result " + result);
+                }
+            }
+        }
+
+        /**
+         * Reads the given number of responses, which must have a content length, and returns their bodies
+         */
+        List<byte[]> readResponses(int count) throws IOException {
+            final List<byte[]> bodies = new ArrayList<>();
+            while (bodies.size() < count) {
+                final byte[] body = parseResponse();
+                if (body == null) {
+                    unwrap();
+                } else {
+                    bodies.add(body);
+                }
+            }
+            return bodies;
+        }
+
+        private byte[] parseResponse() {
+            final String data = new String(appIn.array(), 0, appIn.position(), StandardCharsets.ISO_8859_1);
+            final int end = data.indexOf("\r\n\r\n");
+            if (end == -1) {
+                return null;
+            }
+            final String headers = data.substring(0, end);
+            Assert.assertTrue(headers, headers.startsWith("HTTP/1.1 200"));
+            int length = -1;
+            for (String line : headers.split("\r\n")) {
+                if (line.toLowerCase(Locale.ENGLISH).startsWith("content-length:")) {
+                    length = Integer.parseInt(line.substring("content-length:".length()).trim());
+                }
+            }
+            Assert.assertTrue(headers, length >= 0);
+            final int start = end + 4;
+            if (appIn.position() < start + length) {
+                return null;
+            }
+            final byte[] body = Arrays.copyOfRange(appIn.array(), start, start + length);
+            appIn.flip();
+            appIn.position(start + length);
+            appIn.compact();
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import io.undertow.testutils.category.UnitTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests for {@link EncodedParameters}
+ */
+@Category(UnitTest.class)
+public class EncodedParametersTestCase {
+
+    @Test
+    public void testLookup() throws ParameterLimitException {
+        EncodedParameters parameters = EncodedParameters.parse("a=1&b=x%20y&&c&a=2&n%61me=v+w", "UTF-8", true, 100);
+        Assert.assertEquals(5, parameters.size());
+        Assert.assertEquals("1", parameters.getFirst("a"));
+        Assert.assertEquals("2", parameters.getLast("a"));
+        Assert.assertEquals(2, parameters.get("a").size());
+        Assert.assertEquals("x y", parameters.getFirst("b"));
+        Assert.assertEquals("", parameters.getFirst("c"));
+        Assert.assertEquals("v w", parameters.getFirst("name"));
+        Assert.assertTrue(parameters.contains("name"));
+        Assert.assertFalse(parameters.contains("n%61me"));
+        Assert.assertNull(parameters.getFirst("missing"));
+        Assert.assertEquals("{a=[1, 2], b=[x y], c=[], name=[v w]}", parameters.toMap().toString());
+    }
+
+    @Test
+    public void testNoDecoding() throws ParameterLimitException {
+        EncodedParameters parameters = EncodedParameters.parse("a=b%20c", "UTF-8", false, 100);
+        Assert.assertEquals("b%20c", parameters.getFirst("a"));
+    }
+
+    @Test
+    public void testNumbers() throws ParameterLimitException {
+        EncodedParameters parameters = EncodedParameters.parse("i=42&n=-7&max=9223372036854775807&min=-9223372036854775808&enc=%31%32&bad=1x&big=2147483648&empty=", "UTF-8", true, 100);
+        Assert.assertEquals(42, parameters.getInt("i", 0));
+        Assert.assertEquals(-7, parameters.getInt("n", 0));
+        Assert.assertEquals(12, parameters.getInt("enc", 0));
+        Assert.assertEquals(5, parameters.getInt("missing", 5));
+        Assert.assertEquals(Long.MAX_VALUE, parameters.getLong("max", 0));
+        Assert.assertEquals(Long.MIN_VALUE, parameters.getLong("min", 0));
+        Assert.assertEquals(2147483648L, parameters.getLong("big", 0));
+        for (String name : new String[]{"bad", "big", "empty"}) {
+            try {
+                parameters.getInt(name, 0);
+                Assert.fail(name);
+            } catch (NumberFormatException expected) {
+            }
+        }
+    }
+
+    @Test(expected = ParameterLimitException.class)
+    public void testParameterLimit() throws ParameterLimitException {
+        EncodedParameters.parse("a&b&c", "UTF-8", true, 2);
+    }
+}
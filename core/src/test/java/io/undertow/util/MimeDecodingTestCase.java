@@ -149,6 +149,28 @@ public class MimeDecodingTestCase {
         Assert.assertEquals("text/plain; charset=\"ascii\"", handler.parts.get(0).map.getFirst(Headers.CONTENT_TYPE));
     }
 
+    @Test
+    public void testBoundarySplitAcrossBuffers() throws IOException {
+        //the part data contains sequences that are almost, but not quite, the boundary
+        final String first = "Some data\r\n--unique-boundary-2\r\n--unique\r\r\n-";
+        final String second = "--unique-boundary-1 is only a boundary at the start of a line";
+        final String data = "--unique-boundary-1\r\n\r\n" + first +
+                "\r\n--unique-boundary-1\r\n\r\n" + second +
+                "\r\n--unique-boundary-1--\r\n";
+        final byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+        for (int size = 1; size <= bytes.length; ++size) {
+            TestPartHandler handler = new TestPartHandler();
+            MultipartParser.ParseState parser = MultipartParser.beginParse(DefaultServer.getBufferPool(), handler, "unique-boundary-1".getBytes(), "ISO-8859-1");
+            for (int i = 0; i < bytes.length; i += size) {
+                parser.parse(ByteBuffer.wrap(bytes, i, Math.min(size, bytes.length - i)));
+            }
+            Assert.assertTrue(parser.isComplete());
+            Assert.assertEquals(2, handler.parts.size());
+            Assert.assertEquals("buffer size " + size, first, handler.parts.get(0).data.toString());
+            Assert.assertEquals("buffer size " + size, second, handler.parts.get(1).data.toString());
+        }
+    }
+
     private static class TestPartHandler implements MultipartParser.PartHandler {
 
         private final List<Part> parts = new ArrayList<>();
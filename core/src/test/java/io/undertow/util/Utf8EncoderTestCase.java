@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import io.undertow.testutils.category.UnitTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests that {@link Utf8Encoder} produces the same bytes as the JDK, including when the output is split across buffers
+ */
+@Category(UnitTest.class)
+public class Utf8EncoderTestCase {
+
+    private static final char[] ALPHABET = {'a', 'Z', '0', '{', '"', '\u00e9', '\u00fc', '\u0416', '\u4e2d', '\u65e5', '\uffe5', '\ud83d', '\ude00', '\udc00'};
+
+    @Test
+    public void testMatchesJdkEncoding() {
+        final Random random = new Random(7);
+        for (int run = 0; run < 200; ++run) {
+            final char[] chars = new char[random.nextInt(300)];
+            for (int i = 0; i < chars.length; ++i) {
+                chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            final String s = new String(chars);
+            final byte[] expected = s.getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(expected.length, Utf8Encoder.encodedLength(s, 0, s.length()));
+            for (int size : new int[]{4, 5, 7, 64, 1024}) {
+                Assert.assertArrayEquals(s, expected, encode(s, null, size));
+                Assert.assertArrayEquals(s, expected, encode(null, chars, size));
+            }
+        }
+    }
+
+    @Test
+    public void testHighSurrogateAtEndOfInput() {
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        Assert.assertEquals(1, Utf8Encoder.encode("a\ud83d", 0, 2, buffer, false));
+        Assert.assertEquals(1, buffer.position());
+        Assert.assertEquals(2, Utf8Encoder.encode("a\ud83d", 1, 2, buffer, true));
+        buffer.flip();
+        Assert.assertEquals("a?", StandardCharsets.UTF_8.decode(buffer).toString());
+    }
+
+    @Test
+    public void testCharacterNotSplitAcrossBuffers() {
+        final ByteBuffer buffer = ByteBuffer.allocate(5);
+        final String s = "ab\ud83d\ude00";
+        Assert.assertEquals(2, Utf8Encoder.encode(s, 0, s.length(), buffer, true));
+        Assert.assertEquals(2, buffer.position());
+        buffer.clear();
+        Assert.assertEquals(4, Utf8Encoder.encode(s, 2, s.length(), buffer, true));
+        Assert.assertEquals(4, buffer.position());
+    }
+
+    private static byte[] encode(final String s, final char[] chars, final int bufferSize) {
+        final int length = s != null ? s.length() : chars.length;
+        final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        byte[] result = new byte[0];
+        int i = 0;
+        do {
+            buffer.clear();
+            i = s != null ? Utf8Encoder.encode(s, i, length, buffer, true) : Utf8Encoder.encode(chars, i, length, buffer, true);
+            Assert.assertTrue(i == length || buffer.remaining() < Utf8Encoder.MAX_CHARACTER_BYTES);
+            buffer.flip();
+            final int offset = result.length;
+            result = Arrays.copyOf(result, offset + buffer.remaining());
+            buffer.get(result, offset, buffer.remaining());
+        } while (i < length);
+        return result;
+    }
+}
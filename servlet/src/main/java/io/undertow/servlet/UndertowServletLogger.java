@@ -19,6 +19,7 @@
 package io.undertow.servlet;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Date;
 import java.util.Set;
 import jakarta.servlet.UnavailableException;
@@ -140,4 +141,8 @@ public interface UndertowServletLogger extends BasicLogger {
     @Message(id = 15024, value = "Servlet %s init() method in web application %s threw exception")
     void failedToLoad(String servletName, String appName, @Cause Throwable t);
 
+    @LogMessage(level = WARN)
+    @Message(id = 15025, value = "Session journal %s is truncated or corrupt at offset %s, the remaining records will be discarded")
+    void corruptSessionJournal(Path file, long offset);
+
 }
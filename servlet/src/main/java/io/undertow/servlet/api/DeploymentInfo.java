@@ -107,6 +107,8 @@ public class DeploymentInfo implements Cloneable {
     private MetricsCollector metricsCollector = null;
     private SessionConfigWrapper sessionConfigWrapper = null;
     private boolean eagerFilterInit = false;
+    private boolean parallelStartup = false;
+    private Executor startupExecutor;
     private boolean disableCachingForSecuredPages = true;
     private boolean escapeErrorMessage = true;
     private boolean sendCustomReasonPhraseOnError = false;
@@ -530,6 +532,41 @@ public class DeploymentInfo implements Cloneable {
         return this;
     }
 
+    public boolean isParallelStartup() {
+        return parallelStartup;
+    }
+
+    /**
+     * If this is true then servlets that share the same load on startup value are initialized concurrently, as are
+     * filters when eager filter init is enabled. Servlets with a lower load on startup value are always initialized
+     * before servlets with a higher value.
+     * <p>
+     * Servlet container initializers, extensions and listeners are always run serially in the order the specification
+     * requires.
+     *
+     * @param parallelStartup <code>true</code> to initialize independent components concurrently
+     * @see #setStartupExecutor(Executor)
+     */
+    public DeploymentInfo setParallelStartup(boolean parallelStartup) {
+        this.parallelStartup = parallelStartup;
+        return this;
+    }
+
+    public Executor getStartupExecutor() {
+        return startupExecutor;
+    }
+
+    /**
+     * Sets the executor that is used to initialize components when parallel startup is enabled. If this is null then
+     * the common fork join pool is used.
+     *
+     * @param startupExecutor The executor
+     */
+    public DeploymentInfo setStartupExecutor(final Executor startupExecutor) {
+        this.startupExecutor = startupExecutor;
+        return this;
+    }
+
     public DeploymentInfo addInitParameter(final String name, final String value) {
         initParameters.put(name, value);
         return this;
@@ -1503,6 +1540,8 @@ public class DeploymentInfo implements Cloneable {
         info.metricsCollector = metricsCollector;
         info.sessionConfigWrapper = sessionConfigWrapper;
         info.eagerFilterInit = eagerFilterInit;
+        info.parallelStartup = parallelStartup;
+        info.startupExecutor = startupExecutor;
         info.disableCachingForSecuredPages = disableCachingForSecuredPages;
         info.exceptionHandler = exceptionHandler;
         info.escapeErrorMessage = escapeErrorMessage;
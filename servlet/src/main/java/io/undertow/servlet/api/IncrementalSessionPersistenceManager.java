@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.api;
+
+import java.util.Date;
+
+/**
+ * A {@link SessionPersistenceManager} that is updated as sessions change rather than once when the deployment is
+ * stopped, and that can restore a single session when it is first requested rather than restoring all sessions when
+ * the deployment starts.
+ * <p>
+ * The session restoring handler periodically calls the methods of this interface from a background thread for the
+ * sessions that have changed since the last call, so implementations do not need to be fast, but must be thread
+ * safe as {@link #loadSession(String, String, ClassLoader)} is called from request threads.
+ *
+ * @see io.undertow.servlet.util.FileSessionPersistence
+ */
+public interface IncrementalSessionPersistenceManager extends SessionPersistenceManager {
+
+    /**
+     * Stores the current state of a session, replacing any state previously stored for it.
+     *
+     * @param deploymentName The deployment name
+     * @param sessionId      The session id
+     * @param session        The session attributes and expiration
+     */
+    void persistSession(String deploymentName, String sessionId, PersistentSession session);
+
+    /**
+     * Updates the expiration of a session that has been accessed but not modified.
+     *
+     * @param deploymentName The deployment name
+     * @param sessionId      The session id
+     * @param expiration     The new expiration time
+     */
+    void touchSession(String deploymentName, String sessionId, Date expiration);
+
+    /**
+     * Removes a session that has been invalidated or has expired.
+     *
+     * @param deploymentName The deployment name
+     * @param sessionId      The session id
+     */
+    void removeSession(String deploymentName, String sessionId);
+
+    /**
+     * Loads a single session.
+     *
+     * @param deploymentName The deployment name
+     * @param sessionId      The session id
+     * @param classLoader    The class loader that is used to load the attribute classes
+     * @return The session, or <code>null</code> if it is not stored or has expired
+     */
+    PersistentSession loadSession(String deploymentName, String sessionId, ClassLoader classLoader);
+
+    /**
+     * Makes sure all changes to the sessions of the deployment are durable. This is called when the deployment is
+     * stopped.
+     *
+     * @param deploymentName The deployment name
+     */
+    void flush(String deploymentName);
+
+    /**
+     * @return The time in milliseconds between calls to store the sessions that have changed
+     */
+    default long getFlushInterval() {
+        return 1000;
+    }
+}
@@ -33,6 +33,7 @@ import java.util.concurrent.Executor;
 
 import io.undertow.security.api.AuthenticationMechanism;
 import io.undertow.server.HttpHandler;
+import io.undertow.server.SizeClassByteBufferPool;
 import io.undertow.server.session.SessionManager;
 import io.undertow.servlet.api.Deployment;
 import io.undertow.servlet.api.DeploymentInfo;
@@ -80,6 +81,7 @@ public class DeploymentImpl implements Deployment {
 
     private volatile List<AuthenticationMechanism> authenticationMechanisms;
     private volatile List<ThreadSetupHandler> threadSetupActions;
+    private volatile SizeClassByteBufferPool responseBufferPool;
 
     /**
      * user for {@link #tryAddServletMappings(ServletInfo, String...)}
@@ -287,6 +289,26 @@ public class DeploymentImpl implements Deployment {
         this.defaultResponseCharset = defaultResponseCharset;
     }
 
+    /**
+     * Returns the pool that response buffers are allocated from if the application sets a buffer size. This is
+     * created on first use, with the same type of buffers as the connection pool.
+     *
+     * @param direct If the buffers should be direct
+     * @return The response buffer pool
+     */
+    public SizeClassByteBufferPool getResponseBufferPool(boolean direct) {
+        SizeClassByteBufferPool pool = this.responseBufferPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = this.responseBufferPool;
+                if (pool == null) {
+                    this.responseBufferPool = pool = new SizeClassByteBufferPool(direct);
+                }
+            }
+        }
+        return pool;
+    }
+
     void destroy(){
         getApplicationListeners().contextDestroyed();
         getApplicationListeners().stop();
@@ -294,5 +316,10 @@ public class DeploymentImpl implements Deployment {
             servletContext.destroy();
         }
         servletContext = null;
+        final SizeClassByteBufferPool pool = responseBufferPool;
+        if (pool != null) {
+            responseBufferPool = null;
+            pool.close();
+        }
     }
 }
@@ -98,9 +98,11 @@ import jakarta.servlet.ServletException;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -109,6 +111,11 @@ import java.util.Map.Entry;
 import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import static jakarta.servlet.http.HttpServletRequest.BASIC_AUTH;
 import static jakarta.servlet.http.HttpServletRequest.CLIENT_CERT_AUTH;
@@ -135,6 +142,14 @@ public class DeploymentManagerImpl implements DeploymentManager {
     private volatile DeploymentImpl deployment;
     private volatile State state = State.UNDEPLOYED;
 
+    /**
+     * The time in nanoseconds taken by each phase of the last deploy and start
+     */
+    private volatile Map<String, Long> deployPhaseTimes = Collections.emptyMap();
+    private volatile Map<String, Long> startPhaseTimes = Collections.emptyMap();
+    private Map<String, Long> currentPhaseTimes;
+    private long phaseStart;
+
     public DeploymentManagerImpl(final DeploymentInfo deployment, final ServletContainer servletContainer) {
         this.originalDeployment = deployment;
         this.servletContainer = servletContainer;
@@ -142,6 +157,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
 
     @Override
     public void deploy() {
+        beginPhases();
         final DeploymentInfo deploymentInfo = originalDeployment.clone();
 
         if (deploymentInfo.getServletStackTraces() == ServletStackTraces.ALL) {
@@ -155,6 +171,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
         final ServletContextImpl servletContext = new ServletContextImpl(servletContainer, deployment);
         deployment.setServletContext(servletContext);
         handleExtensions(deploymentInfo, servletContext);
+        endPhase("extensions");
 
         final List<ThreadSetupHandler> setup = new ArrayList<>();
         setup.add(ServletRequestContextThreadSetupAction.INSTANCE);
@@ -182,7 +199,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
 
         deployment.setSessionManager(deploymentInfo.getSessionManagerFactory().createSessionManager(deployment));
         deployment.getSessionManager().setDefaultSessionTimeout(deploymentInfo.getDefaultSessionTimeout());
-
+        endPhase("setup");
 
         try {
             deployment.createThreadSetupAction(new ThreadSetupHandler.Action<Void, Object>() {
@@ -197,6 +214,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
 
                     //first initialize the temp dir
                     initializeTempDir(servletContext, deploymentInfo);
+                    endPhase("registration");
 
                     //then run the SCI's
                     for (final ServletContainerInitializerInfo sci : deploymentInfo.getServletContainerInitializers()) {
@@ -207,8 +225,10 @@ public class DeploymentManagerImpl implements DeploymentManager {
                             instance.release();
                         }
                     }
+                    endPhase("initializers");
 
                     listeners.start();
+                    endPhase("listeners");
 
                     deployment.getSessionManager().registerSessionListener(new SessionListenerBridge(deployment, listeners, servletContext));
                     for(SessionListener listener : deploymentInfo.getSessionListeners()) {
@@ -218,6 +238,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
                     initializeErrorPages(deployment, deploymentInfo);
                     initializeMimeMappings(deployment, deploymentInfo);
                     listeners.contextInitialized();
+                    endPhase("context-initialized");
                     //run
 
                     HttpHandler wrappedHandlers = ServletDispatchingHandler.INSTANCE;
@@ -251,6 +272,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
                     deployment.setServletHandler(servletInitialHandler);
                     deployment.getServletPaths().invalidate(); //make sure we have a fresh set of servlet paths
                     servletContext.initDone();
+                    endPhase("handlers");
                     return null;
                 }
             }).call(null, null);
@@ -263,6 +285,8 @@ public class DeploymentManagerImpl implements DeploymentManager {
         for(ServletContextListener listener : deploymentInfo.getDeploymentCompleteListeners()) {
             listener.contextInitialized(new ServletContextEvent(servletContext));
         }
+        endPhase("deployment-complete");
+        deployPhaseTimes = finishPhases("deploy");
         state = State.DEPLOYED;
     }
 
@@ -560,7 +584,9 @@ public class DeploymentManagerImpl implements DeploymentManager {
             return deployment.createThreadSetupAction(new ThreadSetupHandler.Action<HttpHandler, Object>() {
                 @Override
                 public HttpHandler call(HttpServerExchange exchange, Object ignore) throws ServletException {
+                    beginPhases();
                     deployment.getSessionManager().start();
+                    endPhase("session-manager");
 
                     //we need to copy before iterating
                     //because listeners can add other listeners
@@ -568,6 +594,7 @@ public class DeploymentManagerImpl implements DeploymentManager {
                     for (Lifecycle object : lifecycles) {
                         object.start();
                     }
+                    endPhase("lifecycle");
                     HttpHandler root = deployment.getHandler();
                     final TreeMap<Integer, List<ManagedServlet>> loadOnStartup = new TreeMap<>();
                     for (Map.Entry<String, ServletHandler> entry : deployment.getServlets().getServletHandlers().entrySet()) {
@@ -584,21 +611,38 @@ public class DeploymentManagerImpl implements DeploymentManager {
                             list.add(servlet);
                         }
                     }
+                    final boolean parallel = deployment.getDeploymentInfo().isParallelStartup();
+                    //servlets with the same load on startup value can be initialized in any order, but each value
+                    //must be complete before the next one starts
                     for (Map.Entry<Integer, List<ManagedServlet>> load : loadOnStartup.entrySet()) {
-                        for (ManagedServlet servlet : load.getValue()) {
-                            try {
-                                servlet.createServlet();
-                            } catch (ServletException e) {
-                                UndertowServletLogger.ROOT_LOGGER.failedToLoad(servlet.getServletInfo().getName(), deployment.getDeploymentInfo().getDeploymentName(), e.getCause());
+                        if (parallel && load.getValue().size() > 1) {
+                            runConcurrently(load.getValue(), (e, servlet) -> {
+                                loadServlet(servlet);
+                                return null;
+                            });
+                        } else {
+                            for (ManagedServlet servlet : load.getValue()) {
+                                loadServlet(servlet);
                             }
                         }
                     }
+                    endPhase("load-on-startup");
 
                     if (deployment.getDeploymentInfo().isEagerFilterInit()) {
-                        for (ManagedFilter filter : deployment.getFilters().getFilters().values()) {
-                            filter.createFilter();
+                        final Collection<ManagedFilter> filters = deployment.getFilters().getFilters().values();
+                        if (parallel && filters.size() > 1) {
+                            runConcurrently(new ArrayList<>(filters), (e, filter) -> {
+                                filter.createFilter();
+                                return null;
+                            });
+                        } else {
+                            for (ManagedFilter filter : filters) {
+                                filter.createFilter();
+                            }
                         }
                     }
+                    endPhase("filters");
+                    startPhaseTimes = finishPhases("start");
 
                     state = State.STARTED;
                     return root;
@@ -611,6 +655,101 @@ public class DeploymentManagerImpl implements DeploymentManager {
         }
     }
 
+    private void loadServlet(final ManagedServlet servlet) {
+        try {
+            servlet.createServlet();
+        } catch (ServletException e) {
+            UndertowServletLogger.ROOT_LOGGER.failedToLoad(servlet.getServletInfo().getName(), deployment.getDeploymentInfo().getDeploymentName(), e.getCause());
+        }
+    }
+
+    /**
+     * Runs the task for each of the items on the startup executor, with the deployment's thread setup actions applied,
+     * and waits for all of them to complete. If any of the tasks fail the first failure is rethrown with the others
+     * added as suppressed exceptions.
+     */
+    private <T> void runConcurrently(final Collection<T> items, final ThreadSetupHandler.Action<Void, T> task) throws ServletException {
+        Executor executor = deployment.getDeploymentInfo().getStartupExecutor();
+        if (executor == null) {
+            executor = ForkJoinPool.commonPool();
+        }
+        final ThreadSetupHandler.Action<Void, T> action = deployment.createThreadSetupAction(task);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+        for (final T item : items) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    action.call(null, item);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        Throwable failure = null;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                final Throwable cause = e.getCause() == null ? e : e.getCause();
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure instanceof ServletException) {
+            throw (ServletException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private void beginPhases() {
+        currentPhaseTimes = new LinkedHashMap<>();
+        phaseStart = System.nanoTime();
+    }
+
+    private void endPhase(final String phase) {
+        final long now = System.nanoTime();
+        currentPhaseTimes.put(phase, now - phaseStart);
+        phaseStart = now;
+    }
+
+    private Map<String, Long> finishPhases(final String operation) {
+        final Map<String, Long> phases = Collections.unmodifiableMap(currentPhaseTimes);
+        currentPhaseTimes = null;
+        if (UndertowServletLogger.ROOT_LOGGER.isDebugEnabled()) {
+            final StringBuilder report = new StringBuilder();
+            long total = 0;
+            for (Map.Entry<String, Long> phase : phases.entrySet()) {
+                report.append(phase.getKey()).append('=').append(TimeUnit.NANOSECONDS.toMillis(phase.getValue())).append("ms ");
+                total += phase.getValue();
+            }
+            UndertowServletLogger.ROOT_LOGGER.debugf("%s of %s took %sms: %s", operation, deployment.getDeploymentInfo().getDeploymentName(), TimeUnit.NANOSECONDS.toMillis(total), report.toString().trim());
+        }
+        return phases;
+    }
+
+    /**
+     * @return The time in nanoseconds taken by each phase of the last deployment, in the order they were run
+     */
+    public Map<String, Long> getDeployPhaseTimes() {
+        return deployPhaseTimes;
+    }
+
+    /**
+     * @return The time in nanoseconds taken by each phase of the last start, in the order they were run
+     */
+    public Map<String, Long> getStartPhaseTimes() {
+        return startPhaseTimes;
+    }
+
     @Override
     public void stop() throws ServletException {
         if(deployment.getDeploymentState() == State.STARTED) {
@@ -19,14 +19,18 @@
 package io.undertow.servlet.handlers;
 
 import io.undertow.UndertowMessages;
-import io.undertow.util.SubstringMap;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Class that maintains the complete set of servlet path matches.
- *
+ * <p>
+ * Prefix matches are compiled into an immutable trie keyed by path segment, with the extension matches for each
+ * prefix stored on its node, so a lookup walks the path once from the start and compares path regions in place
+ * rather than creating substrings for each candidate prefix.
  *
  * @author Stuart Douglas
  */
@@ -34,11 +38,11 @@ class ServletPathMatchesData {
 
     private final Map<String, ServletPathMatch> exactPathMatches;
 
-    private final SubstringMap<PathMatch> prefixMatches;
+    private final Node prefixMatches;
 
     private final Map<String, ServletChain> nameMatches;
 
-    ServletPathMatchesData(final Map<String, ServletChain> exactPathMatches, final SubstringMap<PathMatch> prefixMatches, final Map<String, ServletChain> nameMatches) {
+    ServletPathMatchesData(final Map<String, ServletChain> exactPathMatches, final Node prefixMatches, final Map<String, ServletChain> nameMatches) {
         this.prefixMatches = prefixMatches;
         this.nameMatches = nameMatches;
         Map<String, ServletPathMatch> newExactPathMatches = new HashMap<>();
@@ -62,35 +66,50 @@ class ServletPathMatchesData {
         if (exact != null) {
             return exact;
         }
-        SubstringMap.SubstringMatch<PathMatch> match = prefixMatches.get(path, path.length());
-        if (match != null) {
-            return handleMatch(path, match.getValue(), path.lastIndexOf('.'));
-        }
-        int extensionPos = -1;
-        for (int i = path.length() - 1; i >= 0; --i) {
-            final char c = path.charAt(i);
-             if (c == '/') {
-                match = prefixMatches.get(path, i);
-                if (match != null) {
-                    return handleMatch(path, match.getValue(), extensionPos);
-                }
-            } else if (c == '.' && extensionPos == -1) {
-                    extensionPos = i;
+        final int length = path.length();
+        //the root node is the prefix of paths that start with a slash, and of the empty path
+        if (length > 0 && path.charAt(0) != '/') {
+            //this should never happen
+            throw UndertowMessages.MESSAGES.servletPathMatchFailed();
+        }
+        Node node = prefixMatches;
+        PathMatch match = node.match;
+        int matchEnd = 0;
+        int pos = 0;
+        while (pos < length) {
+            final int start = pos + 1;
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = length;
             }
+            node = node.child(path, start, end);
+            if (node == null) {
+                break;
+            }
+            if (node.match != null) {
+                match = node.match;
+                matchEnd = end;
+            }
+            pos = end;
+        }
+        if (match == null) {
+            //this should never happen
+            //as the default servlet is always registered under /*
+            throw UndertowMessages.MESSAGES.servletPathMatchFailed();
         }
-        //this should never happen
-        //as the default servlet is always registered under /*
-        throw UndertowMessages.MESSAGES.servletPathMatchFailed();
+        return handleMatch(path, match, matchEnd);
     }
 
-    private ServletPathMatch handleMatch(final String path, final PathMatch match, final int extensionPos) {
-        if (extensionPos == -1 || match.extensionMatches.isEmpty()) {
-            return new ServletPathMatch(match.defaultHandler, path, match.requireWelcomeFileMatch);
-        }
-        final String ext = path.substring(extensionPos + 1);
-        ServletChain handler = match.extensionMatches.get(ext);
-        if (handler != null) {
-            return new ServletPathMatch(handler, path, handler.getManagedServlet().getServletInfo().isRequireWelcomeFileMapping());
+    private ServletPathMatch handleMatch(final String path, final PathMatch match, final int matchEnd) {
+        if (match.extensions.length != 0) {
+            //if the whole path is the prefix the extension of the last segment still applies
+            final int extensionPos = path.lastIndexOf('.');
+            if (extensionPos != -1 && (extensionPos > matchEnd || matchEnd == path.length())) {
+                final ServletChain handler = match.extensionMatch(path, extensionPos + 1);
+                if (handler != null) {
+                    return new ServletPathMatch(handler, path, handler.getManagedServlet().getServletInfo().isRequireWelcomeFileMapping());
+                }
+            }
         }
         return new ServletPathMatch(match.defaultHandler, path, match.requireWelcomeFileMatch);
     }
@@ -103,7 +122,7 @@ class ServletPathMatchesData {
 
         private final Map<String, ServletChain> exactPathMatches = new HashMap<>();
 
-        private final SubstringMap<PathMatch> prefixMatches = new SubstringMap<>();
+        private final Map<String, PathMatchBuilder> prefixMatches = new HashMap<>();
 
         private final Map<String, ServletChain> nameMatches = new HashMap<>();
 
@@ -112,26 +131,13 @@ class ServletPathMatchesData {
         }
 
         public void addPrefixMatch(final String prefix, final ServletChain match, final boolean requireWelcomeFileMatch) {
-            SubstringMap.SubstringMatch<PathMatch> mt = prefixMatches.get(prefix);
-            PathMatch m;
-            if (mt == null) {
-                prefixMatches.put(prefix, m = new PathMatch(match));
-            } else {
-                m = mt.getValue();
-            }
+            PathMatchBuilder m = prefixMatches.computeIfAbsent(prefix, k -> new PathMatchBuilder());
             m.defaultHandler = match;
             m.requireWelcomeFileMatch = requireWelcomeFileMatch;
         }
 
         public void addExtensionMatch(final String prefix, final String extension, final ServletChain match) {
-            SubstringMap.SubstringMatch<PathMatch> mt = prefixMatches.get(prefix);
-            PathMatch m;
-            if (mt == null) {
-                prefixMatches.put(prefix, m = new PathMatch(null));
-            } else {
-                m = mt.getValue();
-            }
-            m.extensionMatches.put(extension, match);
+            prefixMatches.computeIfAbsent(prefix, k -> new PathMatchBuilder()).extensionMatches.put(extension, match);
         }
 
         public void addNameMatch(final String name, final ServletChain match) {
@@ -139,22 +145,151 @@ class ServletPathMatchesData {
         }
 
         public ServletPathMatchesData build() {
-            return new ServletPathMatchesData(exactPathMatches, prefixMatches, nameMatches);
+            final NodeBuilder root = new NodeBuilder();
+            for (Map.Entry<String, PathMatchBuilder> entry : prefixMatches.entrySet()) {
+                final String prefix = entry.getKey();
+                NodeBuilder node = root;
+                if (!prefix.isEmpty()) {
+                    //prefixes always start with a slash, each segment after it is a level in the trie
+                    int pos = 0;
+                    while (pos < prefix.length()) {
+                        final int start = pos + 1;
+                        int end = prefix.indexOf('/', start);
+                        if (end == -1) {
+                            end = prefix.length();
+                        }
+                        node = node.children.computeIfAbsent(prefix.substring(start, end), k -> new NodeBuilder());
+                        pos = end;
+                    }
+                }
+                node.match = entry.getValue().build();
+            }
+            return new ServletPathMatchesData(exactPathMatches, root.build(), nameMatches);
         }
 
     }
 
-
-    private static class PathMatch {
+    private static final class PathMatchBuilder {
 
         private final Map<String, ServletChain> extensionMatches = new HashMap<>();
-        private volatile ServletChain defaultHandler;
-        private volatile boolean requireWelcomeFileMatch;
+        private ServletChain defaultHandler;
+        private boolean requireWelcomeFileMatch;
+
+        PathMatch build() {
+            final String[] extensions = new String[extensionMatches.size()];
+            final ServletChain[] handlers = new ServletChain[extensions.length];
+            int i = 0;
+            for (Map.Entry<String, ServletChain> entry : extensionMatches.entrySet()) {
+                extensions[i] = entry.getKey();
+                handlers[i++] = entry.getValue();
+            }
+            return new PathMatch(defaultHandler, requireWelcomeFileMatch, extensions, handlers);
+        }
+    }
 
-        PathMatch(final ServletChain defaultHandler) {
+    private static final class NodeBuilder {
+
+        private final Map<String, NodeBuilder> children = new HashMap<>();
+        private PathMatch match;
+
+        Node build() {
+            final List<String> segments = new ArrayList<>(children.keySet());
+            final Node[] nodes = new Node[segments.size()];
+            for (int i = 0; i < nodes.length; ++i) {
+                nodes[i] = children.get(segments.get(i)).build();
+            }
+            return new Node(match, segments.toArray(new String[0]), nodes);
+        }
+    }
+
+    /**
+     * The matches for a prefix. Deployments generally only have a few extension mappings, so these are searched
+     * linearly.
+     */
+    private static final class PathMatch {
+
+        private final ServletChain defaultHandler;
+        private final boolean requireWelcomeFileMatch;
+        private final String[] extensions;
+        private final ServletChain[] extensionHandlers;
+
+        PathMatch(final ServletChain defaultHandler, final boolean requireWelcomeFileMatch, final String[] extensions, final ServletChain[] extensionHandlers) {
             this.defaultHandler = defaultHandler;
+            this.requireWelcomeFileMatch = requireWelcomeFileMatch;
+            this.extensions = extensions;
+            this.extensionHandlers = extensionHandlers;
+        }
+
+        ServletChain extensionMatch(final String path, final int start) {
+            final int length = path.length() - start;
+            for (int i = 0; i < extensions.length; ++i) {
+                final String extension = extensions[i];
+                if (extension.length() == length && path.regionMatches(start, extension, 0, length)) {
+                    return extensionHandlers[i];
+                }
+            }
+            return null;
         }
     }
 
+    /**
+     * A node in the prefix trie. The children are stored in an open addressing table that is probed with the hash of
+     * the path region, so looking up a segment does not need to create a string for it.
+     */
+    static final class Node {
+
+        private final PathMatch match;
+        private final String[] segments;
+        private final Node[] children;
+        private final int mask;
+
+        Node(final PathMatch match, final String[] segments, final Node[] children) {
+            this.match = match;
+            if (segments.length == 0) {
+                this.segments = segments;
+                this.children = children;
+                this.mask = -1;
+                return;
+            }
+            //keep the table at most half full so probe sequences stay short
+            final int size = Integer.highestOneBit(segments.length * 2 - 1) << 1;
+            this.segments = new String[size];
+            this.children = new Node[size];
+            this.mask = size - 1;
+            for (int i = 0; i < segments.length; ++i) {
+                int index = spread(segments[i].hashCode()) & mask;
+                while (this.segments[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                this.segments[index] = segments[i];
+                this.children[index] = children[i];
+            }
+        }
+
+        Node child(final String path, final int start, final int end) {
+            if (mask == -1) {
+                return null;
+            }
+            //same as String.hashCode() for the region
+            int hash = 0;
+            for (int i = start; i < end; ++i) {
+                hash = 31 * hash + path.charAt(i);
+            }
+            final int length = end - start;
+            int index = spread(hash) & mask;
+            String segment;
+            while ((segment = segments[index]) != null) {
+                if (segment.length() == length && segment.regionMatches(0, path, start, length)) {
+                    return children[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int spread(final int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
 
 }
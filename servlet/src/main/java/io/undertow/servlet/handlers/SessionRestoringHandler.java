@@ -21,8 +21,10 @@ package io.undertow.servlet.handlers;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionListener;
 import io.undertow.server.session.SessionManager;
 import io.undertow.servlet.UndertowServletLogger;
+import io.undertow.servlet.api.IncrementalSessionPersistenceManager;
 import io.undertow.servlet.api.SessionPersistenceManager;
 import io.undertow.servlet.core.Lifecycle;
 import io.undertow.servlet.spec.HttpSessionImpl;
@@ -35,13 +37,20 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static io.undertow.servlet.api.SessionPersistenceManager.PersistentSession;
 
 /**
  * A handler that restores persistent HTTP session state for requests in development mode.
  * <p>
- * This handler should not be used in production environments.
+ * This handler should not be used in production environments, unless the persistence manager is an
+ * {@link IncrementalSessionPersistenceManager}. In that case the sessions that have changed are written to it
+ * periodically from a background thread, and a session is only restored when it is first requested.
  *
  * @author Stuart Douglas
  */
@@ -55,6 +64,18 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
     private final SessionPersistenceManager sessionPersistenceManager;
     private volatile boolean started = false;
 
+    private final IncrementalSessionPersistenceManager incrementalPersistenceManager;
+    /**
+     * The sessions that have changed since they were last written to the incremental persistence manager
+     */
+    private final ConcurrentMap<String, Change> changes = new ConcurrentHashMap<>();
+    /**
+     * The sessions that are being restored, changes to them are not tracked until they have been fully restored
+     */
+    private final ConcurrentMap<String, CountDownLatch> restoring = new ConcurrentHashMap<>();
+    private final SessionListener changeListener = new ChangeListener();
+    private ScheduledExecutorService flushExecutor;
+
     public SessionRestoringHandler(String deploymentName, SessionManager sessionManager, ServletContextImpl servletContext, HttpHandler next, SessionPersistenceManager sessionPersistenceManager) {
         this.deploymentName = deploymentName;
         this.sessionManager = sessionManager;
@@ -62,12 +83,17 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
         this.next = next;
         this.sessionPersistenceManager = sessionPersistenceManager;
         this.data = new ConcurrentHashMap<>();
+        this.incrementalPersistenceManager = sessionPersistenceManager instanceof IncrementalSessionPersistenceManager ? (IncrementalSessionPersistenceManager) sessionPersistenceManager : null;
     }
 
     public void start() {
         ClassLoader old = getTccl();
         try {
             setTccl(servletContext.getClassLoader());
+            if (incrementalPersistenceManager != null) {
+                startIncremental();
+                return;
+            }
 
             try {
                 final Map<String, SessionPersistenceManager.PersistentSession> sessionData = sessionPersistenceManager.loadSessionAttributes(deploymentName, servletContext.getClassLoader());
@@ -83,11 +109,93 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
         }
     }
 
+    private void startIncremental() {
+        sessionManager.registerSessionListener(changeListener);
+        final ClassLoader classLoader = servletContext.getClassLoader();
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "session-journal-" + deploymentName);
+            thread.setDaemon(true);
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        });
+        final long interval = incrementalPersistenceManager.getFlushInterval();
+        flushExecutor.scheduleWithFixedDelay(this::writeChanges, interval, interval, TimeUnit.MILLISECONDS);
+        this.started = true;
+    }
+
+    private void stopIncremental() {
+        //give listeners a chance to update the session before it is written
+        for (String sessionId : sessionManager.getTransientSessions()) {
+            Session session = sessionManager.getSession(sessionId);
+            if (session != null) {
+                final HttpSessionEvent event = new HttpSessionEvent(SecurityActions.forSession(session, servletContext, false));
+                for (String attr : session.getAttributeNames()) {
+                    final Object attribute = session.getAttribute(attr);
+                    if (attribute instanceof HttpSessionActivationListener) {
+                        ((HttpSessionActivationListener) attribute).sessionWillPassivate(event);
+                    }
+                }
+            }
+        }
+        //the session manager is stopped after this handler, which must not be recorded as sessions being destroyed
+        sessionManager.removeSessionListener(changeListener);
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushExecutor = null;
+        writeChanges();
+        incrementalPersistenceManager.flush(deploymentName);
+    }
+
+    /**
+     * Writes the current state of the sessions that have changed to the incremental persistence manager
+     */
+    private void writeChanges() {
+        for (Map.Entry<String, Change> entry : changes.entrySet()) {
+            final String sessionId = entry.getKey();
+            final Change change = entry.getValue();
+            if (!changes.remove(sessionId, change)) {
+                //changed again, it will be written on the next pass
+                continue;
+            }
+            try {
+                final Session session = change == Change.REMOVED ? null : sessionManager.getSession(sessionId);
+                if (session == null) {
+                    incrementalPersistenceManager.removeSession(deploymentName, sessionId);
+                } else if (change == Change.MODIFIED) {
+                    final Map<String, Object> sessionData = new HashMap<>();
+                    for (String attr : session.getAttributeNames()) {
+                        sessionData.put(attr, session.getAttribute(attr));
+                    }
+                    incrementalPersistenceManager.persistSession(deploymentName, sessionId, new PersistentSession(expiration(session), sessionData));
+                } else {
+                    incrementalPersistenceManager.touchSession(deploymentName, sessionId, expiration(session));
+                }
+            } catch (IllegalStateException e) {
+                //the session was invalidated while it was being written
+                incrementalPersistenceManager.removeSession(deploymentName, sessionId);
+            } catch (Exception e) {
+                UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+            }
+        }
+    }
+
+    private static Date expiration(final Session session) {
+        return new Date(session.getLastAccessedTime() + (session.getMaxInactiveInterval() * 1000L));
+    }
+
     public void stop() {
         ClassLoader old = getTccl();
         try {
             setTccl(servletContext.getClassLoader());
             this.started = false;
+            if (incrementalPersistenceManager != null) {
+                stopIncremental();
+                return;
+            }
             final Map<String, SessionPersistenceManager.PersistentSession> objectData = new HashMap<>();
             for (String sessionId : sessionManager.getTransientSessions()) {
                 Session session = sessionManager.getSession(sessionId);
@@ -114,6 +222,13 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
         final String incomingSessionId = servletContext.getSessionConfig().findSessionId(exchange);
+        if (incrementalPersistenceManager != null) {
+            if (incomingSessionId != null) {
+                handleIncremental(exchange, incomingSessionId);
+            }
+            next.handleRequest(exchange);
+            return;
+        }
         if (incomingSessionId == null || !data.containsKey(incomingSessionId)) {
             next.handleRequest(exchange);
             return;
@@ -122,24 +237,75 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
         //we have some old data
         PersistentSession result = data.remove(incomingSessionId);
         if (result != null) {
-            long time = System.currentTimeMillis();
-            if (time < result.getExpiration().getTime()) {
-                final HttpSessionImpl session = servletContext.getSession(exchange, true);
-                final HttpSessionEvent event = new HttpSessionEvent(session);
-                for (Map.Entry<String, Object> entry : result.getSessionData().entrySet()) {
-
-                    if (entry.getValue() instanceof HttpSessionActivationListener) {
-                        ((HttpSessionActivationListener) entry.getValue()).sessionDidActivate(event);
-                    }
-                    if(entry.getKey().startsWith(HttpSessionImpl.IO_UNDERTOW)) {
-                        session.getSession().setAttribute(entry.getKey(), entry.getValue());
-                    } else {
-                        session.setAttribute(entry.getKey(), entry.getValue());
+            restoreSession(exchange, result);
+        }
+        next.handleRequest(exchange);
+    }
+
+    private void handleIncremental(final HttpServerExchange exchange, final String sessionId) {
+        if (sessionManager.getSession(sessionId) != null) {
+            //the expiration will change when the request completes
+            changes.merge(sessionId, Change.TOUCHED, Change::merge);
+            return;
+        }
+        if (changes.get(sessionId) == Change.REMOVED) {
+            return;
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CountDownLatch existing = restoring.putIfAbsent(sessionId, latch);
+        if (existing != null) {
+            //another request is restoring the session, wait for it so this request sees the session
+            try {
+                existing.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (sessionManager.getSession(sessionId) != null) {
+                changes.merge(sessionId, Change.TOUCHED, Change::merge);
+            }
+            return;
+        }
+        try {
+            //it may have been restored by a request that finished after the check above
+            if (sessionManager.getSession(sessionId) == null) {
+                final PersistentSession result = incrementalPersistenceManager.loadSession(deploymentName, sessionId, servletContext.getClassLoader());
+                if (result != null) {
+                    final HttpSessionImpl session = restoreSession(exchange, result);
+                    if (session != null) {
+                        //changes are not tracked while the session is restored, so it can not be written when it only
+                        //has some of its attributes
+                        changes.put(session.getId(), Change.MODIFIED);
                     }
                 }
             }
+        } finally {
+            restoring.remove(sessionId);
+            latch.countDown();
         }
-        next.handleRequest(exchange);
+    }
+
+    /**
+     * @return The restored session, or <code>null</code> if it has expired
+     */
+    private HttpSessionImpl restoreSession(final HttpServerExchange exchange, final PersistentSession result) {
+        long time = System.currentTimeMillis();
+        if (time < result.getExpiration().getTime()) {
+            final HttpSessionImpl session = servletContext.getSession(exchange, true);
+            final HttpSessionEvent event = new HttpSessionEvent(session);
+            for (Map.Entry<String, Object> entry : result.getSessionData().entrySet()) {
+
+                if (entry.getValue() instanceof HttpSessionActivationListener) {
+                    ((HttpSessionActivationListener) entry.getValue()).sessionDidActivate(event);
+                }
+                if(entry.getKey().startsWith(HttpSessionImpl.IO_UNDERTOW)) {
+                    session.getSession().setAttribute(entry.getKey(), entry.getValue());
+                } else {
+                    session.setAttribute(entry.getKey(), entry.getValue());
+                }
+            }
+            return session;
+        }
+        return null;
     }
 
     @Override
@@ -147,6 +313,59 @@ public class SessionRestoringHandler implements HttpHandler, Lifecycle {
         return started;
     }
 
+    private enum Change {
+        /**
+         * The session was accessed, so only the expiration has changed
+         */
+        TOUCHED,
+        MODIFIED,
+        REMOVED;
+
+        static Change merge(final Change existing, final Change change) {
+            return change == TOUCHED ? existing : change;
+        }
+    }
+
+    private final class ChangeListener implements SessionListener {
+
+        private void changed(final String sessionId, final Change change) {
+            if (!restoring.containsKey(sessionId)) {
+                changes.put(sessionId, change);
+            }
+        }
+
+        @Override
+        public void sessionCreated(final Session session, final HttpServerExchange exchange) {
+            changed(session.getId(), Change.MODIFIED);
+        }
+
+        @Override
+        public void sessionDestroyed(final Session session, final HttpServerExchange exchange, final SessionDestroyedReason reason) {
+            changed(session.getId(), Change.REMOVED);
+        }
+
+        @Override
+        public void attributeAdded(final Session session, final String name, final Object value) {
+            changed(session.getId(), Change.MODIFIED);
+        }
+
+        @Override
+        public void attributeUpdated(final Session session, final String name, final Object newValue, final Object oldValue) {
+            changed(session.getId(), Change.MODIFIED);
+        }
+
+        @Override
+        public void attributeRemoved(final Session session, final String name, final Object oldValue) {
+            changed(session.getId(), Change.MODIFIED);
+        }
+
+        @Override
+        public void sessionIdChanged(final Session session, final String oldSessionId) {
+            changed(oldSessionId, Change.REMOVED);
+            changed(session.getId(), Change.MODIFIED);
+        }
+    }
+
     @SuppressWarnings("removal")
     private ClassLoader getTccl() {
         if (System.getSecurityManager() == null) {
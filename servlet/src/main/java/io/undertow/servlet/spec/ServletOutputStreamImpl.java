@@ -42,6 +42,8 @@ import io.undertow.connector.PooledByteBuffer;
 import io.undertow.io.BufferWritableOutputStream;
 import io.undertow.server.protocol.http.HttpAttachments;
 import io.undertow.servlet.UndertowServletMessages;
+import io.undertow.servlet.api.Deployment;
+import io.undertow.servlet.core.DeploymentImpl;
 import io.undertow.servlet.handlers.ServletRequestContext;
 import io.undertow.util.Headers;
 import io.undertow.util.Methods;
@@ -87,6 +89,10 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
      * did not fit
      */
     private ByteBuffer[] buffersToWrite;
+    /**
+     * Pooled buffers holding copies of user data in {@link #buffersToWrite}, released once they have been written
+     */
+    private PooledByteBuffer[] pooledBuffersToWrite;
 
     private FileChannel pendingFile;
 
@@ -269,11 +275,7 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
                         if (res == 0) {
                             //write it out with a listener
                             //but we need to copy any extra data
-                            final ByteBuffer copy = ByteBuffer.allocate(userBuffer.remaining());
-                            copy.put(userBuffer);
-                            copy.flip();
-
-                            this.buffersToWrite = new ByteBuffer[]{buffer, copy};
+                            this.buffersToWrite = copyForAsyncWrite(buffer, new ByteBuffer[]{userBuffer});
                             clearFlags(FLAG_READY);
                             clearBuffer = false;
                             return;
@@ -367,11 +369,7 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
                             if (res == 0) {
                                 //write it out with a listener
                                 //but we need to copy any extra data
-                                //TODO: should really allocate from the pool here
-                                final ByteBuffer copy = ByteBuffer.allocate((int) Buffers.remaining(buffers));
-                                Buffers.copy(copy, buffers, 0, buffers.length);
-                                copy.flip();
-                                this.buffersToWrite = new ByteBuffer[] { buffer, copy };
+                                this.buffersToWrite = copyForAsyncWrite(buffer, buffers);
                                 clearFlags(FLAG_READY);
                                 channel.resumeWrites();
                                 return;
@@ -393,6 +391,59 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
         write(new ByteBuffer[]{byteBuffer});
     }
 
+    /**
+     * Copies the user data that could not be written into buffers from the connection pool, so it can be written
+     * out with a listener after the write call has returned. If that would take more than
+     * {@link #MAX_BUFFERS_TO_ALLOCATE} buffers a single heap buffer is used instead.
+     *
+     * @param buffer The response buffer, which is written first
+     * @param userBuffers The user data
+     * @return The buffers to write, starting with the response buffer
+     */
+    private ByteBuffer[] copyForAsyncWrite(final ByteBuffer buffer, final ByteBuffer[] userBuffers) {
+        final long remaining = Buffers.remaining(userBuffers);
+        final ByteBufferPool bufferPool = servletRequestContext.getExchange().getConnection().getByteBufferPool();
+        final int poolBufferSize = bufferPool.getBufferSize();
+        final int count = (int) ((remaining + poolBufferSize - 1) / poolBufferSize);
+        if (count > MAX_BUFFERS_TO_ALLOCATE) {
+            final ByteBuffer copy = ByteBuffer.allocate((int) remaining);
+            Buffers.copy(copy, userBuffers, 0, userBuffers.length);
+            copy.flip();
+            return new ByteBuffer[]{buffer, copy};
+        }
+        final PooledByteBuffer[] pooled = new PooledByteBuffer[count];
+        final ByteBuffer[] result = new ByteBuffer[count + 1];
+        result[0] = buffer;
+        try {
+            for (int i = 0; i < count; ++i) {
+                pooled[i] = bufferPool.allocate();
+                final ByteBuffer copy = pooled[i].getBuffer();
+                Buffers.copy(copy, userBuffers, 0, userBuffers.length);
+                copy.flip();
+                result[i + 1] = copy;
+            }
+        } catch (RuntimeException | Error e) {
+            for (PooledByteBuffer p : pooled) {
+                if (p != null) {
+                    p.close();
+                }
+            }
+            throw e;
+        }
+        this.pooledBuffersToWrite = pooled;
+        return result;
+    }
+
+    private void freePooledBuffersToWrite() {
+        final PooledByteBuffer[] pooled = this.pooledBuffersToWrite;
+        if (pooled != null) {
+            this.pooledBuffersToWrite = null;
+            for (PooledByteBuffer p : pooled) {
+                p.close();
+            }
+        }
+    }
+
     void updateWritten(final long len) throws IOException {
         this.written += len;
         long contentLength = servletRequestContext.getOriginalResponse().getContentLength();
@@ -453,6 +504,10 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
                 return false;
             }
         } while (written < toWrite);
+        if (bufs == buffersToWrite) {
+            buffersToWrite = null;
+            freePooledBuffersToWrite();
+        }
         buffer.clear();
         return true;
     }
@@ -731,6 +786,7 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
                 channel.resumeWrites();
             }
         } catch (IOException | RuntimeException | Error e) {
+            freePooledBuffersToWrite();
             if (pooledBuffer != null) {
                 pooledBuffer.close();
                 pooledBuffer = null;
@@ -756,7 +812,15 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
             return buffer;
         }
         if (bufferSize != null) {
-            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+            //the application has set the buffer size, so allocate from the pool for that size
+            final Deployment deployment = servletRequestContext.getDeployment();
+            if (deployment instanceof DeploymentImpl) {
+                final boolean direct = servletRequestContext.getExchange().getConnection().getByteBufferPool().isDirect();
+                this.pooledBuffer = ((DeploymentImpl) deployment).getResponseBufferPool(direct).allocate(bufferSize);
+                this.buffer = pooledBuffer.getBuffer();
+            } else {
+                this.buffer = ByteBuffer.allocateDirect(bufferSize);
+            }
             return this.buffer;
         } else {
             this.pooledBuffer = servletRequestContext.getExchange().getConnection().getByteBufferPool().allocate();
@@ -890,6 +954,7 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
                     } while (written < toWrite);
                 }
                 buffersToWrite = null;
+                freePooledBuffersToWrite();
                 buffer.clear();
             }
             if (pendingFile != null) {
@@ -968,6 +1033,7 @@ public class ServletOutputStreamImpl extends ServletOutputStream implements Buff
                 });
             } finally {
                 IoUtils.safeClose(channel, servletRequestContext.getExchange().getConnection());
+                freePooledBuffersToWrite();
                 if (pooledBuffer != null) {
                     pooledBuffer.close();
                     pooledBuffer = null;
@@ -18,6 +18,7 @@
 
 package io.undertow.servlet.spec;
 
+import io.undertow.util.Utf8Encoder;
 import jakarta.servlet.DispatcherType;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -44,6 +45,10 @@ public class ServletPrintWriter {
 
     private final ServletOutputStreamImpl outputStream;
     private final String charset;
+    /**
+     * If the charset is UTF-8 non-ascii text is encoded with {@link Utf8Encoder} rather than a charset encoder
+     */
+    private final boolean utf8;
     private CharsetEncoder charsetEncoder;
     private boolean error = false;
     private boolean closed = false;
@@ -52,6 +57,7 @@ public class ServletPrintWriter {
     public ServletPrintWriter(final ServletOutputStreamImpl outputStream, final String charset) throws UnsupportedEncodingException {
         this.charset = charset;
         this.outputStream = outputStream;
+        this.utf8 = charset.equalsIgnoreCase("utf-8");
 
         //for some known charset we get optimistic and hope that
         //only ascii will be output
@@ -94,6 +100,11 @@ public class ServletPrintWriter {
         }
         closed = true;
         try {
+            if (charsetEncoder == null && underflow != null) {
+                //a high surrogate that was never followed by a low surrogate
+                underflow = null;
+                write("?");
+            }
             boolean done = false;
             CharBuffer buffer;
             if (underflow == null) {
@@ -227,6 +238,11 @@ public class ServletPrintWriter {
                     error = true;
                     return;
                 }
+                if (underflow != null) {
+                    //the previous write ended with a high surrogate, which must be written first
+                    writeUtf8(buffer, buf, off, off + len);
+                    return;
+                }
                 //fast path, basically we are hoping this is ascii only
                 int remaining = buffer.remaining();
                 int end = off + len;
@@ -236,6 +252,10 @@ public class ServletPrintWriter {
                 if (sPos == end) {
                     return;
                 }
+                if (utf8) {
+                    writeUtf8(buffer, buf, sPos, end);
+                    return;
+                }
                 final CharBuffer cb = CharBuffer.wrap(buf, sPos, len - (sPos - off));
                 write(cb);
                 return;
@@ -321,6 +341,11 @@ public class ServletPrintWriter {
                     error = true;
                     return;
                 }
+                if (underflow != null) {
+                    //the previous write ended with a high surrogate, which must be written first
+                    writeUtf8(buffer, s, off, off + len);
+                    return;
+                }
                 //fast path, basically we are hoping this is ascii only
                 int remaining = buffer.remaining();
                 int end = off + len;
@@ -330,6 +355,10 @@ public class ServletPrintWriter {
                 if (sPos == end) {
                     return;
                 }
+                if (utf8) {
+                    writeUtf8(buffer, s, sPos, end);
+                    return;
+                }
                 //wrap(String, off, len) acts wrong in the presence of multi byte characters
                 final CharBuffer cb = CharBuffer.wrap(s.toCharArray(), sPos, len - (sPos - off));
                 write(cb);
@@ -403,6 +432,110 @@ public class ServletPrintWriter {
         return len;
     }
 
+    /**
+     * Encodes the remainder of a write that is not ascii directly into the output stream buffer, flushing it as it
+     * fills up. A high surrogate at the end of the input is kept until the next write, as the low surrogate may follow.
+     */
+    private void writeUtf8(final ByteBuffer buffer, final String s, int off, final int end) throws IOException {
+        if (underflow != null) {
+            if (off == end) {
+                return;
+            }
+            final boolean pair = Character.isLowSurrogate(s.charAt(off));
+            if (!writeUnderflow(buffer, pair ? s.charAt(off) : 0)) {
+                return;
+            }
+            if (pair) {
+                ++off;
+            }
+        }
+        long remainingContentLength = outputStream.remainingContentLength();
+        while (off < end && remainingContentLength > 0) {
+            final int start = buffer.position();
+            off = Utf8Encoder.encode(s, off, end, buffer, false);
+            long written = buffer.position() - start;
+            if (written > remainingContentLength) {
+                buffer.position(start + (int) remainingContentLength);
+                written = remainingContentLength;
+            }
+            remainingContentLength -= written;
+            outputStream.updateWritten(written);
+            if (off < end) {
+                if (buffer.remaining() >= Utf8Encoder.MAX_CHARACTER_BYTES) {
+                    underflow = new char[]{s.charAt(off)};
+                    return;
+                }
+                if (!flushUtf8(buffer)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void writeUtf8(final ByteBuffer buffer, final char[] chars, int off, final int end) throws IOException {
+        if (underflow != null) {
+            if (off == end) {
+                return;
+            }
+            final boolean pair = Character.isLowSurrogate(chars[off]);
+            if (!writeUnderflow(buffer, pair ? chars[off] : 0)) {
+                return;
+            }
+            if (pair) {
+                ++off;
+            }
+        }
+        encodeUtf8(buffer, chars, off, end, false);
+    }
+
+    /**
+     * Writes the high surrogate that was left over from the previous write, with its low surrogate if there is one
+     */
+    private boolean writeUnderflow(final ByteBuffer buffer, final char lowSurrogate) throws IOException {
+        final char[] chars = lowSurrogate == 0 ? new char[]{underflow[0]} : new char[]{underflow[0], lowSurrogate};
+        underflow = null;
+        return encodeUtf8(buffer, chars, 0, chars.length, true);
+    }
+
+    /**
+     * @return <code>false</code> if an error occurred
+     */
+    private boolean encodeUtf8(final ByteBuffer buffer, final char[] chars, int off, final int end, final boolean endOfInput) throws IOException {
+        long remainingContentLength = outputStream.remainingContentLength();
+        while (off < end && remainingContentLength > 0) {
+            final int start = buffer.position();
+            off = Utf8Encoder.encode(chars, off, end, buffer, endOfInput);
+            long written = buffer.position() - start;
+            if (written > remainingContentLength) {
+                buffer.position(start + (int) remainingContentLength);
+                written = remainingContentLength;
+            }
+            remainingContentLength -= written;
+            outputStream.updateWritten(written);
+            if (off < end) {
+                if (buffer.remaining() >= Utf8Encoder.MAX_CHARACTER_BYTES) {
+                    underflow = new char[]{chars[off]};
+                    return true;
+                }
+                if (!flushUtf8(buffer)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean flushUtf8(final ByteBuffer buffer) throws IOException {
+        final int remainingBytesBeforeFlush = buffer.remaining();
+        outputStream.flushInternal();
+        if (buffer.remaining() == remainingBytesBeforeFlush) {
+            // no progress has been made, set error to true
+            error = true;
+            return false;
+        }
+        return true;
+    }
+
     public void write(final String s) {
         write(s, 0, s.length());
     }
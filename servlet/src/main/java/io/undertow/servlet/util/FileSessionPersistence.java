@@ -0,0 +1,591 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.util;
+
+import io.undertow.servlet.UndertowServletLogger;
+import io.undertow.servlet.api.IncrementalSessionPersistenceManager;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Session persistence implementation that stores sessions in an append only journal file per deployment.
+ * <p>
+ * Each change to a session appends a record to the journal, and an index of the latest record for each session is kept
+ * in memory, so sessions can be restored one at a time when they are first requested. When more than half of the
+ * journal consists of records that have been superseded it is compacted by copying the live records to a new file,
+ * which then replaces the journal. Expired sessions are dropped when the journal is compacted.
+ * <p>
+ * As with {@link InMemorySessionPersistence} serialization is performed on a best effort basis, attributes that cannot
+ * be serialized are logged and skipped.
+ */
+public class FileSessionPersistence implements IncrementalSessionPersistenceManager, Closeable {
+
+    private static final int MAGIC = 0x554a5331;
+    private static final byte RECORD_SESSION = 1;
+    private static final byte RECORD_TOUCH = 2;
+    private static final byte RECORD_REMOVE = 3;
+    /**
+     * The record type and body length
+     */
+    private static final int HEADER_SIZE = 5;
+    private static final long DEFAULT_MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private final Path directory;
+    private final long flushInterval;
+    private volatile long minCompactionSize = DEFAULT_MIN_COMPACTION_SIZE;
+
+    private final ConcurrentMap<String, Journal> journals = new ConcurrentHashMap<>();
+
+    private final LongAdder restoredSessions = new LongAdder();
+    private final LongAdder restoreTime = new LongAdder();
+
+    /**
+     * @param directory The directory that contains the journals
+     */
+    public FileSessionPersistence(final Path directory) {
+        this(directory, 1000);
+    }
+
+    /**
+     * @param directory     The directory that contains the journals
+     * @param flushInterval The time in milliseconds between writes of changed sessions to the journal
+     */
+    public FileSessionPersistence(final Path directory, final long flushInterval) {
+        this.directory = directory;
+        this.flushInterval = flushInterval;
+    }
+
+    @Override
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public long getMinCompactionSize() {
+        return minCompactionSize;
+    }
+
+    /**
+     * Sets the number of bytes of superseded records the journal must contain before it is compacted.
+     *
+     * @param minCompactionSize The minimum size in bytes
+     */
+    public void setMinCompactionSize(final long minCompactionSize) {
+        this.minCompactionSize = minCompactionSize;
+    }
+
+    /**
+     * @return The number of sessions that have been restored from a journal
+     */
+    public long getRestoredSessionCount() {
+        return restoredSessions.sum();
+    }
+
+    /**
+     * @return The total time in nanoseconds spent restoring sessions, including loading the journal indexes
+     */
+    public long getRestoreTime() {
+        return restoreTime.sum();
+    }
+
+    @Override
+    public void persistSession(final String deploymentName, final String sessionId, final PersistentSession session) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            final Map<String, Object> attributes = session.getSessionData();
+            final List<String> names = new ArrayList<>(attributes.size());
+            final List<byte[]> values = new ArrayList<>(attributes.size());
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                try {
+                    final ByteArrayOutputStream value = new ByteArrayOutputStream();
+                    try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(value)) {
+                        objectOutputStream.writeObject(attribute.getValue());
+                    }
+                    names.add(attribute.getKey());
+                    values.add(value.toByteArray());
+                } catch (Exception e) {
+                    UndertowServletLogger.ROOT_LOGGER.failedToPersistSessionAttribute(attribute.getKey(), attribute.getValue(), sessionId, e);
+                }
+            }
+            data.writeUTF(sessionId);
+            data.writeLong(session.getExpiration().getTime());
+            data.writeInt(names.size());
+            for (int i = 0; i < names.size(); ++i) {
+                data.writeUTF(names.get(i));
+                data.writeInt(values.get(i).length);
+                data.write(values.get(i));
+            }
+        } catch (IOException e) {
+            UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+            return;
+        }
+        append(deploymentName, RECORD_SESSION, sessionId, session.getExpiration().getTime(), out.toByteArray());
+    }
+
+    @Override
+    public void touchSession(final String deploymentName, final String sessionId, final Date expiration) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            data.writeUTF(sessionId);
+            data.writeLong(expiration.getTime());
+        } catch (IOException e) {
+            UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+            return;
+        }
+        append(deploymentName, RECORD_TOUCH, sessionId, expiration.getTime(), out.toByteArray());
+    }
+
+    @Override
+    public void removeSession(final String deploymentName, final String sessionId) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            data.writeUTF(sessionId);
+        } catch (IOException e) {
+            UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+            return;
+        }
+        append(deploymentName, RECORD_REMOVE, sessionId, 0, out.toByteArray());
+    }
+
+    private void append(final String deploymentName, final byte type, final String sessionId, final long expiration, final byte[] body) {
+        try {
+            journal(deploymentName).append(type, sessionId, expiration, body);
+        } catch (IOException e) {
+            UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+        }
+    }
+
+    @Override
+    public PersistentSession loadSession(final String deploymentName, final String sessionId, final ClassLoader classLoader) {
+        final long start = System.nanoTime();
+        try {
+            final byte[] body = journal(deploymentName).read(sessionId);
+            if (body == null) {
+                return null;
+            }
+            final PersistentSession session = readSession(body, classLoader);
+            if (session != null) {
+                restoredSessions.increment();
+            }
+            return session;
+        } catch (IOException e) {
+            UndertowServletLogger.ROOT_LOGGER.failedtoLoadPersistentSessions(e);
+            return null;
+        } finally {
+            restoreTime.add(System.nanoTime() - start);
+        }
+    }
+
+    private static PersistentSession readSession(final byte[] body, final ClassLoader classLoader) throws IOException {
+        final DataInputStream data = new DataInputStream(new ByteArrayInputStream(body));
+        final String sessionId = data.readUTF();
+        final long expiration = data.readLong();
+        if (expiration <= System.currentTimeMillis()) {
+            return null;
+        }
+        final int count = data.readInt();
+        final Map<String, Object> attributes = new HashMap<>();
+        for (int i = 0; i < count; ++i) {
+            final String name = data.readUTF();
+            final byte[] value = new byte[data.readInt()];
+            data.readFully(value);
+            try (ObjectInputStream in = new ClassLoaderObjectInputStream(new ByteArrayInputStream(value), classLoader)) {
+                attributes.put(name, in.readObject());
+            } catch (Exception e) {
+                UndertowServletLogger.ROOT_LOGGER.debugf(e, "Failed to restore attribute %s of session %s", name, sessionId);
+            }
+        }
+        return new PersistentSession(new Date(expiration), attributes);
+    }
+
+    @Override
+    public void flush(final String deploymentName) {
+        final Journal journal = journals.get(deploymentName);
+        if (journal != null) {
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+            }
+        }
+    }
+
+    @Override
+    public void persistSessions(final String deploymentName, final Map<String, PersistentSession> sessionData) {
+        for (Map.Entry<String, PersistentSession> session : sessionData.entrySet()) {
+            persistSession(deploymentName, session.getKey(), session.getValue());
+        }
+        flush(deploymentName);
+    }
+
+    @Override
+    public Map<String, PersistentSession> loadSessionAttributes(final String deploymentName, final ClassLoader classLoader) {
+        final List<String> sessionIds;
+        try {
+            sessionIds = journal(deploymentName).sessionIds();
+        } catch (IOException e) {
+            UndertowServletLogger.ROOT_LOGGER.failedtoLoadPersistentSessions(e);
+            return null;
+        }
+        final Map<String, PersistentSession> ret = new HashMap<>();
+        for (String sessionId : sessionIds) {
+            final PersistentSession session = loadSession(deploymentName, sessionId, classLoader);
+            if (session != null) {
+                ret.put(sessionId, session);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void clear(final String deploymentName) {
+        final Journal journal = journals.remove(deploymentName);
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+            Files.deleteIfExists(journalFile(deploymentName));
+        } catch (IOException e) {
+            UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Journal journal : journals.values()) {
+            journal.close();
+        }
+        journals.clear();
+    }
+
+    private Journal journal(final String deploymentName) throws IOException {
+        Journal journal = journals.get(deploymentName);
+        if (journal == null) {
+            final Journal existing = journals.putIfAbsent(deploymentName, journal = new Journal(journalFile(deploymentName)));
+            if (existing != null) {
+                journal = existing;
+            }
+        }
+        journal.open();
+        return journal;
+    }
+
+    private Path journalFile(final String deploymentName) {
+        final StringBuilder name = new StringBuilder(deploymentName.length() + 9);
+        for (int i = 0; i < deploymentName.length(); ++i) {
+            final char c = deploymentName.charAt(i);
+            name.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+        }
+        return directory.resolve(name.append(".sessions").toString());
+    }
+
+    private static final class IndexEntry {
+
+        private final long offset;
+        private final int length;
+        private long expiration;
+
+        IndexEntry(final long offset, final int length, final long expiration) {
+            this.offset = offset;
+            this.length = length;
+            this.expiration = expiration;
+        }
+    }
+
+    /**
+     * The journal of a single deployment. The index is only loaded when it is first used, so deployments that are
+     * never restored do not pay for reading their journal.
+     */
+    private final class Journal {
+
+        private final Path file;
+        private final Map<String, IndexEntry> index = new HashMap<>();
+        private FileChannel channel;
+        private long size;
+        /**
+         * The number of bytes in records that have been superseded
+         */
+        private long garbage;
+
+        Journal(final Path file) {
+            this.file = file;
+        }
+
+        synchronized void open() throws IOException {
+            if (channel != null) {
+                return;
+            }
+            final long start = System.nanoTime();
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() < 4 || !loadIndex()) {
+                channel.truncate(0);
+                writeFully(channel, ByteBuffer.allocate(4).putInt(0, MAGIC), 0);
+                size = 4;
+            }
+            final long time = System.nanoTime() - start;
+            restoreTime.add(time);
+            UndertowServletLogger.ROOT_LOGGER.debugf("Loaded session journal %s with %s sessions in %sms", file, index.size(), TimeUnit.NANOSECONDS.toMillis(time));
+        }
+
+        /**
+         * @return <code>false</code> if the file is not a session journal
+         */
+        private boolean loadIndex() throws IOException {
+            final long fileSize = channel.size();
+            final InputStream stream = Channels.newInputStream(channel.position(0));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+            if (in.readInt() != MAGIC) {
+                UndertowServletLogger.ROOT_LOGGER.corruptSessionJournal(file, 0);
+                return false;
+            }
+            long position = 4;
+            while (position + HEADER_SIZE <= fileSize) {
+                final byte type = in.readByte();
+                final int length = in.readInt();
+                if (type < RECORD_SESSION || type > RECORD_REMOVE || length < 0 || position + HEADER_SIZE + length > fileSize) {
+                    break;
+                }
+                final byte[] body = new byte[length];
+                in.readFully(body);
+                final int recordSize = HEADER_SIZE + length;
+                try {
+                    final DataInputStream data = new DataInputStream(new ByteArrayInputStream(body));
+                    final String sessionId = data.readUTF();
+                    if (type == RECORD_SESSION) {
+                        addToIndex(sessionId, new IndexEntry(position, recordSize, data.readLong()));
+                    } else if (type == RECORD_TOUCH) {
+                        touchIndex(sessionId, data.readLong(), recordSize);
+                    } else {
+                        removeFromIndex(sessionId, recordSize);
+                    }
+                } catch (IOException e) {
+                    break;
+                }
+                position += recordSize;
+            }
+            if (position < fileSize) {
+                //generally a record that was only partially written when the node stopped
+                UndertowServletLogger.ROOT_LOGGER.corruptSessionJournal(file, position);
+                channel.truncate(position);
+            }
+            size = position;
+            return true;
+        }
+
+        private void addToIndex(final String sessionId, final IndexEntry entry) {
+            final IndexEntry old = index.put(sessionId, entry);
+            if (old != null) {
+                garbage += old.length;
+            }
+        }
+
+        private void touchIndex(final String sessionId, final long expiration, final int recordSize) {
+            final IndexEntry entry = index.get(sessionId);
+            if (entry != null) {
+                entry.expiration = expiration;
+            }
+            garbage += recordSize;
+        }
+
+        private void removeFromIndex(final String sessionId, final int recordSize) {
+            final IndexEntry old = index.remove(sessionId);
+            if (old != null) {
+                garbage += old.length;
+            }
+            garbage += recordSize;
+        }
+
+        synchronized void append(final byte type, final String sessionId, final long expiration, final byte[] body) throws IOException {
+            if (channel == null) {
+                open();
+            }
+            if (type != RECORD_SESSION && !index.containsKey(sessionId)) {
+                //never stored, or already removed
+                return;
+            }
+            final long position = size;
+            final int recordSize = HEADER_SIZE + body.length;
+            final ByteBuffer buffer = ByteBuffer.allocate(recordSize);
+            buffer.put(type).putInt(body.length).put(body).flip();
+            writeFully(channel, buffer, position);
+            size += recordSize;
+            if (type == RECORD_SESSION) {
+                addToIndex(sessionId, new IndexEntry(position, recordSize, expiration));
+            } else if (type == RECORD_TOUCH) {
+                touchIndex(sessionId, expiration, recordSize);
+            } else {
+                removeFromIndex(sessionId, recordSize);
+            }
+            if (garbage >= minCompactionSize && garbage * 2 > size) {
+                compact();
+            }
+        }
+
+        /**
+         * @return The body of the latest record for the session, with the current expiration
+         */
+        synchronized byte[] read(final String sessionId) throws IOException {
+            final IndexEntry entry = index.get(sessionId);
+            if (entry == null || entry.expiration <= System.currentTimeMillis()) {
+                return null;
+            }
+            final byte[] body = readBody(channel, entry);
+            //the expiration may have been updated by touch records
+            ByteBuffer.wrap(body).putLong(expirationOffset(body), entry.expiration);
+            return body;
+        }
+
+        synchronized List<String> sessionIds() {
+            return new ArrayList<>(index.keySet());
+        }
+
+        synchronized void flush() throws IOException {
+            if (channel != null) {
+                channel.force(false);
+            }
+        }
+
+        synchronized void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+                index.clear();
+                garbage = 0;
+            }
+        }
+
+        /**
+         * Copies the latest record of every session that has not expired to a new file, and then replaces the journal
+         * with it.
+         */
+        private void compact() throws IOException {
+            final long start = System.nanoTime();
+            final Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+            final Map<String, IndexEntry> newIndex = new HashMap<>();
+            final long now = System.currentTimeMillis();
+            long position = 4;
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(out, ByteBuffer.allocate(4).putInt(0, MAGIC), 0);
+                for (Map.Entry<String, IndexEntry> session : index.entrySet()) {
+                    final IndexEntry entry = session.getValue();
+                    if (entry.expiration <= now) {
+                        continue;
+                    }
+                    final byte[] body = readBody(channel, entry);
+                    ByteBuffer.wrap(body).putLong(expirationOffset(body), entry.expiration);
+                    final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + body.length);
+                    buffer.put(RECORD_SESSION).putInt(body.length).put(body).flip();
+                    writeFully(out, buffer, position);
+                    newIndex.put(session.getKey(), new IndexEntry(position, buffer.limit(), entry.expiration));
+                    position += buffer.limit();
+                }
+                out.force(false);
+            }
+            channel.close();
+            channel = null;
+            try {
+                Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index.clear();
+            index.putAll(newIndex);
+            size = position;
+            garbage = 0;
+            UndertowServletLogger.ROOT_LOGGER.debugf("Compacted session journal %s to %s sessions in %sms", file, index.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private static byte[] readBody(final FileChannel channel, final IndexEntry entry) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(entry.length - HEADER_SIZE);
+        long position = entry.offset + HEADER_SIZE;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return The offset of the expiration in a session record body, which follows the modified UTF-8 session id
+     */
+    private static int expirationOffset(final byte[] body) {
+        return 2 + (((body[0] & 0xFF) << 8) | (body[1] & 0xFF));
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static final class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        ClassLoaderObjectInputStream(final InputStream in, final ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    //fall through to the default resolution, which handles primitive types
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.lifecycle;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.ServletContainer;
+import io.undertow.servlet.api.ServletInfo;
+import io.undertow.servlet.core.DeploymentManagerImpl;
+import io.undertow.servlet.test.util.TestClassIntrospector;
+import io.undertow.testutils.category.UnitTest;
+import jakarta.servlet.GenericServlet;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests that servlets with the same load on startup value are initialized concurrently when parallel startup is enabled
+ */
+@Category(UnitTest.class)
+public class ParallelStartupTestCase {
+
+    private static final int CONCURRENT_SERVLETS = 3;
+
+    static volatile CountDownLatch concurrentInit;
+    static volatile boolean concurrentInitComplete;
+    static volatile boolean lastServletInit;
+
+    @Test
+    public void testServletsInitializedConcurrently() throws Exception {
+        concurrentInit = new CountDownLatch(CONCURRENT_SERVLETS);
+        concurrentInitComplete = false;
+        lastServletInit = false;
+        final ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_SERVLETS);
+        try {
+            final DeploymentInfo builder = new DeploymentInfo()
+                    .setClassLoader(ParallelStartupTestCase.class.getClassLoader())
+                    .setContextPath("/servletContext")
+                    .setClassIntrospecter(TestClassIntrospector.INSTANCE)
+                    .setDeploymentName("servletContext.war")
+                    .setParallelStartup(true)
+                    .setStartupExecutor(executor)
+                    .addServlet(new ServletInfo("last", LastServlet.class).setLoadOnStartup(2));
+            for (int i = 0; i < CONCURRENT_SERVLETS; ++i) {
+                builder.addServlet(new ServletInfo("concurrent" + i, ConcurrentServlet.class).setLoadOnStartup(1));
+            }
+            final DeploymentManagerImpl manager = (DeploymentManagerImpl) ServletContainer.Factory.newInstance().addDeployment(builder);
+            manager.deploy();
+            Assert.assertTrue(manager.getDeployPhaseTimes().containsKey("initializers"));
+            manager.start();
+            Assert.assertTrue(concurrentInitComplete);
+            Assert.assertTrue(lastServletInit);
+            Assert.assertTrue(manager.getStartPhaseTimes().containsKey("load-on-startup"));
+            manager.stop();
+            manager.undeploy();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static class ConcurrentServlet extends GenericServlet {
+
+        @Override
+        public void init() throws ServletException {
+            //only completes if all servlets in this load on startup level are initialized at the same time
+            concurrentInit.countDown();
+            try {
+                if (!concurrentInit.await(10, TimeUnit.SECONDS)) {
+                    throw new ServletException("servlets were not initialized concurrently");
+                }
+            } catch (InterruptedException e) {
+                throw new ServletException(e);
+            }
+            Assert.assertFalse(lastServletInit);
+            concurrentInitComplete = true;
+        }
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) {
+        }
+    }
+
+    public static class LastServlet extends GenericServlet {
+
+        @Override
+        public void init() throws ServletException {
+            Assert.assertEquals(0, concurrentInit.getCount());
+            lastServletInit = true;
+        }
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) {
+        }
+    }
+}
@@ -136,4 +136,28 @@ public class ServletPathMappingTestCase {
         }
     }
 
+    @Test
+    public void testUncachedPaths() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            //paths with identifiers are not in the match cache, so exercise the full lookup
+            for (int i = 0; i < 10; ++i) {
+                runTest(client, "/a/b/" + i + "/c", "/a/b/* - /a/b - /" + i + "/c");
+                runTest(client, "/a/b" + i, "/a/* - /a - /b" + i);
+                runTest(client, "/aa/" + i + "/page.jsp", "/aa/* - /aa - /" + i + "/page.jsp");
+                runTest(client, "/items/" + i + ".jsp", "*.jsp - /items/" + i + ".jsp - null");
+                runTest(client, "/items.jsp/" + i, "/ - /items.jsp/" + i + " - null");
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    private static void runTest(final TestHttpClient client, final String path, final String expected) throws IOException {
+        HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/servletContext" + path);
+        HttpResponse result = client.execute(get);
+        Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+        Assert.assertEquals(expected, HttpClientUtils.readResponse(result));
+    }
+
 }
@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import io.undertow.servlet.api.SessionPersistenceManager.PersistentSession;
+import io.undertow.servlet.util.FileSessionPersistence;
+import io.undertow.testutils.category.UnitTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests compaction of the session journal, and recovery from a record that was only partially written
+ */
+@Category(UnitTest.class)
+public class FileSessionPersistenceTestCase {
+
+    private static final String DEPLOYMENT = "test.war";
+
+    @Test
+    public void testCompaction() throws IOException {
+        final Path directory = Files.createTempDirectory("sessions");
+        final Path journal = directory.resolve(DEPLOYMENT + ".sessions");
+        try (FileSessionPersistence persistence = new FileSessionPersistence(directory, 100)) {
+            persistence.setMinCompactionSize(0);
+            persistence.persistSession(DEPLOYMENT, "expired", session(new Date(System.currentTimeMillis() - 1000), "old"));
+            persistence.persistSession(DEPLOYMENT, "live", session(expiration(), "0"));
+            final long singleRecord = Files.size(journal);
+            for (int i = 1; i <= 100; ++i) {
+                persistence.persistSession(DEPLOYMENT, "live", session(expiration(), String.valueOf(i)));
+                persistence.touchSession(DEPLOYMENT, "live", expiration());
+            }
+            //without compaction the journal would hold 200 more records
+            Assert.assertTrue(Files.size(journal) < singleRecord * 4);
+            Assert.assertFalse(new String(Files.readAllBytes(journal), StandardCharsets.ISO_8859_1).contains("expired"));
+            Assert.assertEquals("100", persistence.loadSession(DEPLOYMENT, "live", getClass().getClassLoader()).getSessionData().get("value"));
+        }
+        try (FileSessionPersistence restarted = new FileSessionPersistence(directory, 100)) {
+            Assert.assertNull(restarted.loadSession(DEPLOYMENT, "expired", getClass().getClassLoader()));
+            Assert.assertEquals("100", restarted.loadSession(DEPLOYMENT, "live", getClass().getClassLoader()).getSessionData().get("value"));
+            Assert.assertEquals(1, restarted.getRestoredSessionCount());
+            restarted.clear(DEPLOYMENT);
+        }
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws IOException {
+        final Path directory = Files.createTempDirectory("sessions");
+        final Path journal = directory.resolve(DEPLOYMENT + ".sessions");
+        try (FileSessionPersistence persistence = new FileSessionPersistence(directory, 100)) {
+            persistence.persistSession(DEPLOYMENT, "first", session(expiration(), "1"));
+            persistence.persistSession(DEPLOYMENT, "second", session(expiration(), "2"));
+        }
+        final long size = Files.size(journal);
+        //a session record that claims 1000 bytes, of which only a few were written before the node stopped
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            final ByteBuffer torn = ByteBuffer.allocate(8);
+            torn.put((byte) 1).putInt(1000).put(new byte[]{0, 5, 'x'});
+            torn.flip();
+            channel.write(torn);
+        }
+        try (FileSessionPersistence restarted = new FileSessionPersistence(directory, 100)) {
+            Assert.assertEquals("1", restarted.loadSession(DEPLOYMENT, "first", getClass().getClassLoader()).getSessionData().get("value"));
+            Assert.assertEquals("2", restarted.loadSession(DEPLOYMENT, "second", getClass().getClassLoader()).getSessionData().get("value"));
+            Assert.assertEquals(size, Files.size(journal));
+            //records written after the recovery must not be hidden behind the torn one
+            restarted.persistSession(DEPLOYMENT, "third", session(expiration(), "3"));
+        }
+        try (FileSessionPersistence restarted = new FileSessionPersistence(directory, 100)) {
+            Assert.assertEquals("2", restarted.loadSession(DEPLOYMENT, "second", getClass().getClassLoader()).getSessionData().get("value"));
+            Assert.assertEquals("3", restarted.loadSession(DEPLOYMENT, "third", getClass().getClassLoader()).getSessionData().get("value"));
+            restarted.clear(DEPLOYMENT);
+        }
+    }
+
+    private static Date expiration() {
+        return new Date(System.currentTimeMillis() + 60000);
+    }
+
+    private static PersistentSession session(final Date expiration, final String value) {
+        final Map<String, Object> data = Collections.singletonMap("value", value);
+        return new PersistentSession(expiration, data);
+    }
+}
@@ -24,8 +24,10 @@ import io.undertow.servlet.api.DeploymentManager;
 import io.undertow.servlet.api.ServletContainer;
 import io.undertow.servlet.api.ServletInfo;
 import io.undertow.servlet.api.ServletSessionConfig;
+import io.undertow.servlet.api.SessionPersistenceManager;
 import io.undertow.servlet.test.SimpleServletTestCase;
 import io.undertow.servlet.test.util.TestClassIntrospector;
+import io.undertow.servlet.util.FileSessionPersistence;
 import io.undertow.servlet.util.InMemorySessionPersistence;
 import io.undertow.testutils.DefaultServer;
 import io.undertow.testutils.HttpClientUtils;
@@ -39,6 +41,8 @@ import org.junit.runner.RunWith;
 
 import jakarta.servlet.ServletException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * @author Stuart Douglas
@@ -100,4 +104,57 @@ public class ServletSessionPersistenceTestCase {
         }
     }
 
+    @Test
+    public void testFileSessionPersistence() throws IOException, ServletException {
+        final Path directory = Files.createTempDirectory("sessions");
+        final PathHandler pathHandler = new PathHandler();
+        DefaultServer.setRootHandler(pathHandler);
+        TestHttpClient client = new TestHttpClient();
+        try (FileSessionPersistence persistence = new FileSessionPersistence(directory, 100)) {
+            DeploymentManager manager = deploy(pathHandler, persistence);
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/servletContext/aa/b");
+            for (int i = 1; i <= 2; ++i) {
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                Assert.assertEquals(String.valueOf(i), HttpClientUtils.readResponse(result));
+            }
+            manager.stop();
+            manager.undeploy();
+            persistence.close();
+
+            //a new instance reads the journal, as it would after a restart
+            try (FileSessionPersistence restarted = new FileSessionPersistence(directory, 100)) {
+                manager = deploy(pathHandler, restarted);
+                Assert.assertEquals(0, restarted.getRestoredSessionCount());
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                Assert.assertEquals("3", HttpClientUtils.readResponse(result));
+                Assert.assertEquals(1, restarted.getRestoredSessionCount());
+                manager.stop();
+                manager.undeploy();
+                restarted.clear("servletContext.war");
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static DeploymentManager deploy(final PathHandler pathHandler, final SessionPersistenceManager persistence) throws ServletException {
+        final ServletContainer container = ServletContainer.Factory.newInstance();
+        DeploymentInfo builder = new DeploymentInfo()
+                .setClassLoader(SimpleServletTestCase.class.getClassLoader())
+                .setContextPath("/servletContext")
+                .setClassIntrospecter(TestClassIntrospector.INSTANCE)
+                .setDeploymentName("servletContext.war")
+                .setSessionPersistenceManager(persistence)
+                .setServletSessionConfig(new ServletSessionConfig().setPath("/servletContext/aa"))
+                .addServlets(new ServletInfo("servlet", SessionServlet.class)
+                        .addMapping("/aa/b"));
+        DeploymentManager manager = container.addDeployment(builder);
+        manager.deploy();
+        pathHandler.addPrefixPath(builder.getContextPath(), manager.start());
+        return manager;
+    }
+
 }
@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.streams;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Sets the buffer size given by the size parameter, and writes reps chunks of the given chunk size from a write
+ * listener. The response is {@link #data(int, int)} of the total length.
+ */
+public class AsyncBufferSizeServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+        final int size = Integer.parseInt(req.getParameter("size"));
+        final int chunk = Integer.parseInt(req.getParameter("chunk"));
+        final int reps = Integer.parseInt(req.getParameter("reps"));
+        resp.setBufferSize(size);
+        final AsyncContext context = req.startAsync();
+        context.setTimeout(60000);
+        final ServletOutputStream outputStream = resp.getOutputStream();
+        outputStream.setWriteListener(new WriteListener() {
+
+            private int count;
+
+            @Override
+            public void onWritePossible() throws IOException {
+                while (outputStream.isReady() && count < reps) {
+                    outputStream.write(data(count * chunk, chunk));
+                    ++count;
+                }
+                if (count == reps && outputStream.isReady()) {
+                    context.complete();
+                }
+            }
+
+            @Override
+            public void onError(final Throwable t) {
+            }
+        });
+    }
+
+    /**
+     * The bytes of the response, starting at the given offset
+     */
+    public static byte[] data(int offset, int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            data[i] = (byte) ((offset + i) % 251);
+        }
+        return data;
+    }
+}
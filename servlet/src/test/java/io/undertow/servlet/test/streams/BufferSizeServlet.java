@@ -0,0 +1,51 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.test.streams;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sets the buffer size given by the size parameter, and writes the message reps times
+ */
+public class BufferSizeServlet extends HttpServlet {
+
+    public static final String MESSAGE = "0123456789";
+
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+        int size = Integer.parseInt(req.getParameter("size"));
+        int reps = Integer.parseInt(req.getParameter("reps"));
+        resp.setBufferSize(size);
+        if (resp.getBufferSize() != size) {
+            throw new IllegalStateException("Buffer size " + resp.getBufferSize());
+        }
+        byte[] message = MESSAGE.getBytes(StandardCharsets.US_ASCII);
+        ServletOutputStream outputStream = resp.getOutputStream();
+        for (int i = 0; i < reps; ++i) {
+            outputStream.write(message);
+        }
+        outputStream.close();
+    }
+}
@@ -52,6 +52,8 @@ public class ServletOutputStreamTestCase {
     public static final String ASYNC_SERVLET = "asyncOutput";
     public static final String CONTENT_LENGTH_SERVLET = "contentLength";
     public static final String RESET = "reset";
+    public static final String BUFFER_SIZE = "bufferSize";
+    public static final String ASYNC_BUFFER_SIZE = "asyncBufferSize";
 
     public static final String START = "START";
     public static final String END = "END";
@@ -71,7 +73,11 @@ public class ServletOutputStreamTestCase {
                         .setAsyncSupported(true),
                 new ServletInfo(CONTENT_LENGTH_SERVLET, ContentLengthCloseFlushServlet.class)
                         .addMapping("/" + CONTENT_LENGTH_SERVLET),
-                new ServletInfo(RESET, ResetBufferServlet.class).addMapping("/" + RESET));
+                new ServletInfo(RESET, ResetBufferServlet.class).addMapping("/" + RESET),
+                new ServletInfo(BUFFER_SIZE, BufferSizeServlet.class).addMapping("/" + BUFFER_SIZE),
+                new ServletInfo(ASYNC_BUFFER_SIZE, AsyncBufferSizeServlet.class)
+                        .addMapping("/" + ASYNC_BUFFER_SIZE)
+                        .setAsyncSupported(true));
     }
 
 
@@ -119,6 +125,52 @@ public class ServletOutputStreamTestCase {
         }
     }
 
+    @Test
+    public void testCustomBufferSize() throws Exception {
+        TestHttpClient client = createClient();
+        try {
+            //sizes that fit in a size class exactly, that are rounded up, that are not pooled and that disable buffering
+            for (int size : new int[]{0, 100, 4096, 50000, 2 * 1024 * 1024}) {
+                for (int reps : new int[]{1, 1000, 20000}) {
+                    String uri = getBaseUrl() + "/servletContext/" + BUFFER_SIZE + "?size=" + size + "&reps=" + reps;
+                    HttpResponse result = client.execute(new HttpGet(uri));
+                    Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                    String response = HttpClientUtils.readResponse(result);
+                    Assert.assertEquals(reps * BufferSizeServlet.MESSAGE.length(), response.length());
+                    for (int i = 0; i < reps; ++i) {
+                        Assert.assertTrue(response.startsWith(BufferSizeServlet.MESSAGE, i * BufferSizeServlet.MESSAGE.length()));
+                    }
+                }
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testCustomBufferSizeAsync() throws Exception {
+        Assume.assumeFalse(DefaultServer.isH2upgrade()); // FIXME UNDERTOW-1937 returns 503 instead of 200
+        TestHttpClient client = createClient();
+        try {
+            //buffer sizes in the smallest size class and above it, with chunks that are copied into one or more pooled
+            //buffers or into a heap buffer when the socket is full. Leaked pooled buffers fail the test.
+            for (int size : new int[]{100, 3000, 50000}) {
+                for (int chunk : new int[]{5000, 40000, 200000}) {
+                    int reps = 4 * 1024 * 1024 / chunk;
+                    String uri = getBaseUrl() + "/servletContext/" + ASYNC_BUFFER_SIZE + "?size=" + size + "&chunk=" + chunk + "&reps=" + reps;
+                    HttpResponse result = client.execute(new HttpGet(uri));
+                    Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                    //let the socket fill up, so the writes cannot complete straight away
+                    Thread.sleep(100);
+                    byte[] response = HttpClientUtils.readRawResponse(result);
+                    Assert.assertArrayEquals("size " + size + " chunk " + chunk, AsyncBufferSizeServlet.data(0, reps * chunk), response);
+                }
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
     @Test
     public void testBlockingServletOutputStream() throws IOException {
         Assume.assumeFalse(DefaultServer.isH2upgrade()); // FIXME UNDERTOW-1937 returns 503 instead of 200
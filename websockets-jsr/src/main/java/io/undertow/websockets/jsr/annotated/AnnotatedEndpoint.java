@@ -32,8 +32,6 @@ import jakarta.websocket.SendResult;
 import jakarta.websocket.Session;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * @author Stuart Douglas
@@ -95,11 +93,7 @@ public class AnnotatedEndpoint extends Endpoint {
         }
 
         if (webSocketOpen != null) {
-            final Map<Class<?>, Object> params = new HashMap<>();
-            params.put(Session.class, session);
-            params.put(EndpointConfig.class, endpointConfiguration);
-            params.put(Map.class, session.getPathParameters());
-            invokeMethod(params, webSocketOpen, s);
+            invokeMethod(endpointConfiguration, webSocketOpen, s);
         }
 
     }
@@ -109,17 +103,12 @@ public class AnnotatedEndpoint extends Endpoint {
             @Override
             public void onMessage(Object partialMessage, boolean last) {
 
-                final Map<Class<?>, Object> params = new HashMap<>();
-                params.put(Session.class, session);
-                params.put(Map.class, session.getPathParameters());
-                params.put(method.getMessageType(), partialMessage);
-                params.put(boolean.class, last);
                 final Object result;
                 final ClassLoader oldCL = Thread.currentThread().getContextClassLoader();
                 try {
                     Object invokeTarget = instance.getInstance();
                     Thread.currentThread().setContextClassLoader(invokeTarget.getClass().getClassLoader());
-                    result = method.invoke(invokeTarget, params);
+                    result = method.invoke(invokeTarget, session, session.getPathParameters(), partialMessage, last, null);
                 } catch (Throwable e) {
                     AnnotatedEndpoint.this.onError(session, e);
                     return;
@@ -138,16 +127,12 @@ public class AnnotatedEndpoint extends Endpoint {
             @Override
             public void onMessage(Object partialMessage) {
 
-                final Map<Class<?>, Object> params = new HashMap<>();
-                params.put(Session.class, session);
-                params.put(Map.class, session.getPathParameters());
-                params.put(method.getMessageType(), partialMessage);
                 final Object result;
                 final ClassLoader oldCL = Thread.currentThread().getContextClassLoader();
                 try {
                     Object invokeTarget = instance.getInstance();
                     Thread.currentThread().setContextClassLoader(invokeTarget.getClass().getClassLoader());
-                    result = method.invoke(invokeTarget, params);
+                    result = method.invoke(invokeTarget, session, session.getPathParameters(), partialMessage, false, null);
                 } catch (Exception e) {
                     AnnotatedEndpoint.this.onError(session, e);
                     return;
@@ -159,13 +144,13 @@ public class AnnotatedEndpoint extends Endpoint {
         });
     }
 
-    private void invokeMethod(final Map<Class<?>, Object> params, final BoundMethod method, final UndertowSession session) {
+    private void invokeMethod(final Object context, final BoundMethod method, final UndertowSession session) {
         session.getContainer().invokeEndpointMethod(session.getExecutor(), new Runnable() {
             @Override
             public void run() {
                 if(!released) {
                     try {
-                        method.invoke(instance.getInstance(), params);
+                        method.invoke(instance.getInstance(), session, session.getPathParameters(), null, false, context);
                     } catch (Exception e) {
                         onError(session, e);
                     }
@@ -199,16 +184,12 @@ public class AnnotatedEndpoint extends Endpoint {
     @Override
     public void onClose(final Session session, final CloseReason closeReason) {
         if (webSocketClose != null) {
-            final Map<Class<?>, Object> params = new HashMap<>();
-            params.put(Session.class, session);
-            params.put(Map.class, session.getPathParameters());
-            params.put(CloseReason.class, closeReason);
             ((UndertowSession) session).getContainer().invokeEndpointMethod(((UndertowSession)session).getExecutor(), new Runnable() {
                         @Override
                         public void run() {
                             if(!released) {
                                 try {
-                                    webSocketClose.invoke(instance.getInstance(), params);
+                                    webSocketClose.invoke(instance.getInstance(), session, session.getPathParameters(), null, false, closeReason);
                                 } catch (Exception e) {
                                     onError(session, e);
                                 } finally {
@@ -227,16 +208,12 @@ public class AnnotatedEndpoint extends Endpoint {
     public void onError(final Session session, final Throwable thr) {
 
         if (webSocketError != null) {
-            final Map<Class<?>, Object> params = new HashMap<>();
-            params.put(Session.class, session);
-            params.put(Throwable.class, thr);
-            params.put(Map.class, session.getPathParameters());
             ((UndertowSession) session).getContainer().invokeEndpointMethod(((UndertowSession)session).getExecutor(), new Runnable() {
                 @Override
                 public void run() {
                     if(!released) {
                         try {
-                            webSocketError.invoke(instance.getInstance(), params);
+                            webSocketError.invoke(instance.getInstance(), session, session.getPathParameters(), null, false, thr);
                         } catch (Exception e) {
                             if (e instanceof RuntimeException) {
                                 throw (RuntimeException) e;
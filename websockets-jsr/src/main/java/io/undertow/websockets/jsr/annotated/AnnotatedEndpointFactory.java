@@ -33,6 +33,9 @@ import jakarta.websocket.server.PathParam;
 import java.io.InputStream;
 import java.io.Reader;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.util.Collections;
@@ -304,14 +307,26 @@ public class AnnotatedEndpointFactory {
 
         private final int position;
         private final Class<?> type;
+        private final int argument;
 
+        /**
+         * Binds the message
+         */
         BoundSingleParameter(int position, final Class<?> type) {
             this.position = position;
             this.type = type;
+            this.argument = BoundMethod.MESSAGE;
         }
 
         BoundSingleParameter(final Method method, final Class<?> type, final boolean optional) {
             this.type = type;
+            if (type == Session.class) {
+                argument = BoundMethod.SESSION;
+            } else if (type == boolean.class) {
+                argument = BoundMethod.LAST;
+            } else {
+                argument = BoundMethod.CONTEXT;
+            }
             int pos = -1;
             for (int i = 0; i < method.getParameterCount(); ++i) {
                 boolean pathParam = false;
@@ -348,11 +363,9 @@ public class AnnotatedEndpointFactory {
         }
 
 
-        public void populate(final Object[] params, final Map<Class<?>, Object> value) {
-            if (position == -1) {
-                return;
-            }
-            params[position] = value.get(type);
+        @Override
+        public MethodHandle argument(final int position) {
+            return BoundMethod.argument(argument);
         }
 
         @Override
@@ -366,6 +379,19 @@ public class AnnotatedEndpointFactory {
      */
     private static class BoundPathParameters implements BoundParameter {
 
+        private static final MethodHandle PATH_PARAMETER;
+        private static final MethodHandle DECODE;
+
+        static {
+            try {
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+                PATH_PARAMETER = lookup.findStatic(BoundPathParameters.class, "pathParameter", MethodType.methodType(String.class, String.class, Map.class));
+                DECODE = lookup.findStatic(BoundPathParameters.class, "decode", MethodType.methodType(Object.class, Encoding.class, Class.class, String.class, Map.class));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
         private final Class<?> endpointClass;
         private final Set<String> paths;
         private final String[] positions;
@@ -413,19 +439,23 @@ public class AnnotatedEndpointFactory {
         }
 
 
-        public void populate(final Object[] params, final Map<Class<?>, Object> value) throws DecodeException {
-            final Map<String, String> data = (Map<String, String>) value.get(Map.class);
-            for (int i = 0; i < positions.length; ++i) {
-                String name = positions[i];
-                if (name != null) {
-                    Encoding encoding = encoders[i];
-                    if (encoding == null) {
-                        params[i] = data.get(name);
-                    } else {
-                        params[i] = encoding.decodeText(types[i], data.get(name));
-                    }
-                }
+        @Override
+        public MethodHandle argument(final int position) {
+            final MethodHandle value;
+            if (encoders[position] == null) {
+                value = MethodHandles.insertArguments(PATH_PARAMETER, 0, positions[position]);
+            } else {
+                value = MethodHandles.insertArguments(DECODE, 0, encoders[position], types[position], positions[position]);
             }
+            return MethodHandles.filterReturnValue(BoundMethod.argument(BoundMethod.PATH_PARAMETERS), value);
+        }
+
+        private static String pathParameter(final String name, final Map<String, String> data) {
+            return data.get(name);
+        }
+
+        private static Object decode(final Encoding encoding, final Class<?> type, final String name, final Map<String, String> data) throws DecodeException {
+            return encoding.decodeText(type, data.get(name));
         }
 
         @Override
@@ -19,25 +19,47 @@
 package io.undertow.websockets.jsr.annotated;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.lang.reflect.Modifier;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import jakarta.websocket.DeploymentException;
+import jakarta.websocket.Session;
 
 import io.undertow.websockets.jsr.JsrWebSocketMessages;
 
 /**
- * A method with bound parameters
+ * A method with bound parameters.
+ * <p>
+ * The method is bound into a {@link MethodHandle} when the endpoint is deployed. Every method is invoked with the same
+ * arguments, the session, the path parameters, the message, the last fragment flag and the context object (the
+ * endpoint config, close reason or error), and each parameter of the method is computed from one of them by the
+ * handle returned from {@link BoundParameter#argument(int)}. Invoking the method does not need a map of values or an
+ * array of parameters.
  */
 final class BoundMethod {
 
+    static final int SESSION = 0;
+    static final int PATH_PARAMETERS = 1;
+    static final int MESSAGE = 2;
+    static final int LAST = 3;
+    static final int CONTEXT = 4;
+
+    /**
+     * The types of the arguments that each parameter is computed from
+     */
+    static final List<Class<?>> ARGUMENTS = List.of(Session.class, Map.class, Object.class, boolean.class, Object.class);
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Session.class, Map.class, Object.class, boolean.class, Object.class);
+
     private final Method method;
-    private final List<BoundParameter> parameters = new ArrayList<>();
+    private final MethodHandle handle;
     private final Set<Class> paramTypes = new HashSet<>();
     private final Class<?> messageType;
     private final boolean decoderRequired;
@@ -53,8 +75,12 @@ final class BoundMethod {
             allParams.add(i);
             paramTypes.add(method.getParameterTypes()[i]);
         }
+        //if more than one binding has the same position the last one wins
+        final MethodHandle[] arguments = new MethodHandle[method.getParameterCount()];
         for (BoundParameter param : params) {
-            parameters.add(param);
+            for (Integer position : param.positions()) {
+                arguments[position] = param.argument(position);
+            }
             allParams.removeAll(param.positions());
         }
         if (!allParams.isEmpty()) {
@@ -76,23 +102,61 @@ final class BoundMethod {
             }
         }
         method.setAccessible(true);
+        this.handle = bind(method, arguments);
     }
 
-    public Object invoke(final Object instance, final Map<Class<?>, Object> values) throws Exception {
-        final Object[] params = new Object[method.getParameterCount()];
-        for (BoundParameter param : parameters) {
-            param.populate(params, values);
-        }
+    private static MethodHandle bind(final Method method, final MethodHandle[] arguments) {
+        MethodHandle handle;
         try {
-            return method.invoke(instance, params);
+            handle = MethodHandles.lookup().unreflect(method);
         } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            if(e.getCause() instanceof Exception) {
-                throw (Exception)e.getCause();
-            } else {
-                throw new RuntimeException(e.getCause());
-            }
+        }
+        if (Modifier.isStatic(method.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        handle = handle.asType(handle.type().changeParameterType(0, Object.class).changeReturnType(Object.class));
+        //replace each parameter with the handle that computes it, starting from the end so the positions do not move
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = parameterTypes.length - 1; i >= 0; --i) {
+            final MethodHandle argument = arguments[i];
+            handle = MethodHandles.collectArguments(handle, 1 + i, argument.asType(argument.type().changeReturnType(parameterTypes[i])));
+        }
+        //then make all of them share the same invocation arguments
+        final int[] reorder = new int[1 + parameterTypes.length * ARGUMENTS.size()];
+        for (int i = 1; i < reorder.length; ++i) {
+            reorder[i] = 1 + (i - 1) % ARGUMENTS.size();
+        }
+        return MethodHandles.permuteArguments(handle, INVOKER_TYPE, reorder);
+    }
+
+    /**
+     * Returns a handle that takes the invocation arguments and returns the one at the given index.
+     */
+    static MethodHandle argument(final int index) {
+        MethodHandle handle = MethodHandles.identity(ARGUMENTS.get(index));
+        handle = MethodHandles.dropArguments(handle, 0, ARGUMENTS.subList(0, index));
+        return MethodHandles.dropArguments(handle, index + 1, ARGUMENTS.subList(index + 1, ARGUMENTS.size()));
+    }
+
+    /**
+     * Invokes the method.
+     *
+     * @param instance       The endpoint instance
+     * @param session        The session
+     * @param pathParameters The path parameters of the session
+     * @param message        The message, or <code>null</code> if this is not a message handler
+     * @param last           If this is the last fragment of a partial message
+     * @param context        The endpoint config, close reason or error, depending on the method
+     * @return The return value of the method
+     */
+    public Object invoke(final Object instance, final Session session, final Map<String, String> pathParameters, final Object message, final boolean last, final Object context) throws Exception {
+        try {
+            return (Object) handle.invokeExact(instance, session, (Map) pathParameters, message, last, context);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
         }
     }
 
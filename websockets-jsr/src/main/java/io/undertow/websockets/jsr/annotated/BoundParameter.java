@@ -18,18 +18,24 @@
 
 package io.undertow.websockets.jsr.annotated;
 
-import java.util.Map;
+import java.lang.invoke.MethodHandle;
 import java.util.Set;
 
-import jakarta.websocket.DecodeException;
-
 /**
  * @author Stuart Douglas
  */
 public interface BoundParameter {
     Set<Integer> positions();
 
-    void populate(Object[] params, Map<Class<?>, Object> value) throws DecodeException;
+    /**
+     * Returns a handle that computes the value of the parameter at the given position. The handle takes the
+     * invocation arguments of {@link BoundMethod#ARGUMENTS} and may declare any return type that can be converted to
+     * the parameter type.
+     *
+     * @param position The position of the parameter, one of {@link #positions()}
+     * @return The handle
+     */
+    MethodHandle argument(int position);
 
     Class<?> getType();
 }